@@ -0,0 +1,158 @@
+package com.library.server;
+
+import com.library.model.Book;
+import com.library.service.LibraryService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares issue/return throughput of the binary NIO endpoint with the HTTP/JSON API.
+ * Both servers run in-process over the same scratch LibraryService; each client thread
+ * alternates issue and return of random books. Binary clients keep up to pipelineDepth
+ * requests in flight; HTTP clients send one request at a time over keep-alive connections.
+ * Usage: CirculationProtocolBenchmark [clients] [opsPerClient] [pipelineDepth] [books]
+ */
+public class CirculationProtocolBenchmark {
+    private static final String LIBRARY = "Benchmark Library";
+    private static final String LOCATION = "Bench";
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int opsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int pipelineDepth = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        int bookCount = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        Path dataFile = Files.createTempFile("library-protocol-bench", ".json");
+        Files.delete(dataFile);
+        PrintStream console = System.out;
+        // Book.issueBook/returnBook print per call; keep them out of the measurement
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            LibraryService service = new LibraryService(dataFile);
+            service.createLibrary(LIBRARY, LOCATION);
+            List<Book> books = new ArrayList<>();
+            for (int i = 0; i < bookCount; i++) {
+                books.add(new Book("P" + i, "Protocol Title " + i, "Bench Author", "Bench", 1_000_000));
+            }
+            service.addBooks(books);
+
+            try (BinaryCirculationServer binaryServer = new BinaryCirculationServer(service, 0);
+                 LibraryHttpServer httpServer = new LibraryHttpServer(service, 0)) {
+                binaryServer.start();
+                httpServer.start();
+
+                double binaryRate = runClients(clients, opsPerClient,
+                        client -> runBinaryClient(binaryServer.getPort(), client, opsPerClient, pipelineDepth, bookCount));
+                double httpRate = runClients(clients, opsPerClient,
+                        client -> runHttpClient(httpServer.getPort(), client, opsPerClient, bookCount));
+
+                console.printf("Clients: %d, ops/client: %d, books: %d%n", clients, opsPerClient, bookCount);
+                console.printf("Binary NIO (pipeline %d): %,10.0f ops/s (avg batch %.1f requests)%n",
+                        pipelineDepth, binaryRate, binaryServer.getAverageBatchSize());
+                console.printf("HTTP/JSON              : %,10.0f ops/s%n", httpRate);
+                console.printf("Speed-up               : %10.1fx%n", httpRate == 0 ? 0.0 : binaryRate / httpRate);
+            }
+        } finally {
+            System.setOut(console);
+            Files.deleteIfExists(dataFile);
+        }
+    }
+
+    private static double runClients(int clients, int opsPerClient, ClientTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            List<Callable<Void>> calls = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                int client = i;
+                calls.add(() -> {
+                    task.run(client);
+                    return null;
+                });
+            }
+            long start = System.nanoTime();
+            for (Future<Void> future : executor.invokeAll(calls)) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            return (double) clients * opsPerClient / (elapsed / 1_000_000_000.0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void runBinaryClient(int port, int client, int ops, int depth, int bookCount) throws IOException {
+        Random random = new Random(client);
+        List<String> issued = new ArrayList<>();
+        try (BinaryCirculationClient connection = new BinaryCirculationClient("localhost", port)) {
+            int inFlight = 0;
+            for (int i = 0; i < ops; i++) {
+                if (issued.isEmpty() || i % 2 == 0) {
+                    String bookId = "P" + random.nextInt(bookCount);
+                    connection.sendIssue(LIBRARY, LOCATION, bookId, 0);
+                    issued.add(bookId);
+                } else {
+                    connection.sendReturn(LIBRARY, LOCATION, issued.remove(issued.size() - 1), -1);
+                }
+                if (++inFlight >= depth) {
+                    expectOk(connection.receive());
+                    inFlight--;
+                }
+            }
+            while (inFlight-- > 0) {
+                expectOk(connection.receive());
+            }
+        }
+    }
+
+    private static void runHttpClient(int port, int client, int ops, int bookCount) throws Exception {
+        Random random = new Random(client);
+        List<String> issued = new ArrayList<>();
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        String query = "?library=" + URLEncoder.encode(LIBRARY, StandardCharsets.UTF_8)
+                + "&location=" + URLEncoder.encode(LOCATION, StandardCharsets.UTF_8);
+        for (int i = 0; i < ops; i++) {
+            String path;
+            if (issued.isEmpty() || i % 2 == 0) {
+                String bookId = "P" + random.nextInt(bookCount);
+                path = "/books/" + bookId + "/issue";
+                issued.add(bookId);
+            } else {
+                path = "/books/" + issued.remove(issued.size() - 1) + "/return";
+            }
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path + query))
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build();
+            HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("HTTP " + response.statusCode() + ": " + response.body());
+            }
+        }
+    }
+
+    private static void expectOk(BinaryProtocol.Response response) {
+        if (!response.isOk()) {
+            throw new IllegalStateException("Request " + response.getRequestId() + " failed: " + response.getMessage());
+        }
+    }
+
+    private interface ClientTask {
+        void run(int client) throws Exception;
+    }
+}
@@ -0,0 +1,136 @@
+package com.library.service;
+
+import com.library.model.Book;
+import com.library.model.EBook;
+import com.library.util.ZipfDistribution;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic catalogs for the JMH benchmarks.
+ * Each library gets `books` books with word-pair titles, Zipf-distributed authors (a few prolific
+ * authors, a long tail of single-book ones), about one e-book in five, and one copy in ten on loan.
+ * The same size and seed always produce the same catalog, so runs are comparable.
+ */
+final class BenchmarkCatalogs {
+    static final String LIBRARY_LOCATION = "Bench";
+    private static final long SEED = 41L;
+    private static final String[] WORDS = {"River", "Night", "Garden", "Empire", "Silent", "Glass", "Winter",
+            "Ocean", "Shadow", "Machine", "History", "Stone", "Letters", "North", "Fire", "Clock"};
+    private static final String[] CATEGORIES = {"Fiction", "Science", "History", "Poetry", "Travel", "Children"};
+
+    // A generated catalog and sample keys for lookups
+    static final class Fixture {
+        final LibraryService service;
+        final Path dataFile;
+        final String[] bookIds;
+        final String[] titles;
+        final String[] authors;
+        final int[] patronIds;
+
+        private Fixture(LibraryService service, Path dataFile, String[] bookIds, String[] titles,
+                        String[] authors, int[] patronIds) {
+            this.service = service;
+            this.dataFile = dataFile;
+            this.bookIds = bookIds;
+            this.titles = titles;
+            this.authors = authors;
+            this.patronIds = patronIds;
+        }
+
+        // Delete the data file and everything next to it
+        void delete() throws IOException {
+            Path directory = dataFile.getParent();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private BenchmarkCatalogs() {
+    }
+
+    // Book.issueBook prints a line per copy; keep it out of the measurements
+    static void silenceStdout() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    static String libraryName(int index) {
+        return "Branch " + index;
+    }
+
+    // Build and save `libraries` libraries of `books` books each; the first library is selected
+    static Fixture create(int libraries, int books, SnapshotCodec codec) throws IOException {
+        Path dataFile = Files.createTempDirectory("library-bench")
+                .resolve(codec == null ? "library-data.json" : "library-data.snap");
+        LibraryService service = new LibraryService(dataFile, codec);
+        Random random = new Random(SEED);
+        ZipfDistribution authorRanks = new ZipfDistribution(Math.max(1, books / 4), 1.1);
+
+        int patronCount = Math.max(10, books / 100);
+        int[] patronIds = new int[patronCount];
+        List<String> sampleIds = new ArrayList<>();
+        List<String> sampleTitles = new ArrayList<>();
+        List<String> sampleAuthors = new ArrayList<>();
+        service.inBatch(() -> {
+            for (int p = 0; p < patronCount; p++) {
+                patronIds[p] = service.registerPatron("Patron " + p).getPatronId();
+            }
+            for (int l = libraries - 1; l >= 0; l--) {
+                service.createLibrary(libraryName(l), LIBRARY_LOCATION);
+                List<Book> batch = new ArrayList<>(books);
+                for (int i = 0; i < books; i++) {
+                    String id = "BK-" + l + "-" + i;
+                    String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+                    String author = "Author " + authorRanks.sample(random);
+                    String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+                    int copies = 1 + random.nextInt(5);
+                    batch.add(random.nextInt(5) == 0
+                            ? new EBook(id, title, author, category, copies, "EPUB", 0.5 + random.nextInt(40) / 4.0)
+                            : new Book(id, title, author, category, copies));
+                    if (l == 0) {
+                        sampleIds.add(id);
+                        sampleTitles.add(title);
+                        sampleAuthors.add(author);
+                    }
+                }
+                service.addBooks(batch);
+                for (int i = 0; i < books / 10; i++) {
+                    Book book = batch.get(random.nextInt(books));
+                    if (book.getRemainingCopies() > 1) {
+                        service.issueBook(book.getBookId(), patronIds[random.nextInt(patronCount)]);
+                    }
+                }
+            }
+        });
+
+        // Lookups in random order, so the benchmarks do not walk the catalog sequentially
+        String[] bookIds = sampleIds.toArray(new String[0]);
+        String[] titles = sampleTitles.toArray(new String[0]);
+        String[] authors = sampleAuthors.toArray(new String[0]);
+        for (int i = bookIds.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            swap(bookIds, i, j);
+            swap(titles, i, j);
+            swap(authors, i, j);
+        }
+        return new Fixture(service, dataFile, bookIds, titles, authors, patronIds);
+    }
+
+    private static void swap(String[] values, int i, int j) {
+        String value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+}
@@ -0,0 +1,172 @@
+package com.library.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares a JMH JSON result file with a baseline and fails on regressions.
+ * A benchmark regresses when it is slower than the baseline by more than the allowed percentage
+ * and by more than the two scores' error margins combined, so run-to-run noise does not fail the
+ * gate. Benchmarks are matched by name and parameters. New benchmarks are listed; a baseline
+ * benchmark missing from the current results fails the gate too, since a run that silently drops a
+ * benchmark would otherwise pass, unless --allow-missing is given (e.g. for a filtered run).
+ * Exit code 0 = no regressions, 1 = regressions or missing benchmarks, 2 = usage or input error.
+ * Usage: BenchmarkGate [--allow-missing] baseline.json current.json [maxRegressionPercent]
+ */
+public class BenchmarkGate {
+    private static final Pattern BENCHMARK = Pattern.compile("\"benchmark\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern MODE = Pattern.compile("\"mode\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern PARAMS = Pattern.compile("\"params\"\\s*:\\s*\\{([^}]*)}");
+    private static final Pattern PARAM = Pattern.compile("\"([^\"]+)\"\\s*:\\s*\"([^\"]*)\"");
+    private static final Pattern PRIMARY_METRIC = Pattern.compile("\"primaryMetric\"\\s*:\\s*\\{");
+    private static final Pattern SCORE = Pattern.compile("\"score\"\\s*:\\s*\"?([-+0-9.eE]+|NaN)\"?");
+    private static final Pattern SCORE_ERROR = Pattern.compile("\"scoreError\"\\s*:\\s*\"?([-+0-9.eE]+|NaN)\"?");
+    private static final Pattern SCORE_UNIT = Pattern.compile("\"scoreUnit\"\\s*:\\s*\"([^\"]+)\"");
+
+    // One benchmark score from a JMH result file
+    private static final class Result {
+        final String mode;
+        final double score;
+        final double error;
+        final String unit;
+
+        Result(String mode, double score, double error, String unit) {
+            this.mode = mode;
+            this.score = score;
+            this.error = Double.isNaN(error) ? 0 : error;
+            this.unit = unit;
+        }
+
+        // Throughput is better when higher; the time modes are better when lower
+        boolean higherIsBetter() {
+            return mode.equals("thrpt");
+        }
+    }
+
+    public static void main(String[] args) {
+        boolean allowMissing = args.length > 0 && args[0].equals("--allow-missing");
+        if (allowMissing) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkGate [--allow-missing] baseline.json current.json [maxRegressionPercent]");
+            System.exit(2);
+        }
+        double maxRegression;
+        try {
+            maxRegression = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid maxRegressionPercent: " + args[2]);
+            System.exit(2);
+            return;
+        }
+        Map<String, Result> baseline;
+        Map<String, Result> current;
+        try {
+            baseline = read(args[0]);
+            current = read(args[1]);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Unable to read benchmark results: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        int regressions = 0;
+        System.out.printf("%-70s %14s %14s %9s%n", "benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result now = entry.getValue();
+            Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-70s %14s %14.3f %9s  new%n", entry.getKey(), "-", now.score, "");
+                continue;
+            }
+            if (!before.mode.equals(now.mode) || !before.unit.equals(now.unit)) {
+                System.out.printf("%-70s %14s %14s %9s  not comparable (%s %s vs %s %s)%n", entry.getKey(),
+                        "", "", "", before.mode, before.unit, now.mode, now.unit);
+                continue;
+            }
+            // Positive means worse, in percent of the baseline
+            double worse = before.higherIsBetter() ? before.score - now.score : now.score - before.score;
+            double change = 100.0 * worse / before.score;
+            boolean regressed = change > maxRegression && worse > before.error + now.error;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-70s %14.3f %14.3f %+8.1f%%%s%n", entry.getKey(), before.score, now.score,
+                    change, regressed ? "  REGRESSION" : "");
+        }
+        int missing = 0;
+        for (String name : baseline.keySet()) {
+            if (!current.containsKey(name)) {
+                missing++;
+                System.out.printf("%-70s %14.3f %14s %9s  %s%n", name, baseline.get(name).score, "-", "",
+                        allowMissing ? "missing" : "MISSING");
+            }
+        }
+
+        if (regressions > 0 || (missing > 0 && !allowMissing)) {
+            if (regressions > 0) {
+                System.out.println("FAILED: " + regressions + " benchmark(s) regressed by more than " + maxRegression + "%.");
+            }
+            if (missing > 0 && !allowMissing) {
+                System.out.println("FAILED: " + missing + " baseline benchmark(s) missing from the current results"
+                        + " (use --allow-missing for a partial run).");
+            }
+            System.exit(1);
+        }
+        System.out.println("PASSED: no regressions beyond " + maxRegression + "%.");
+    }
+
+    // Results keyed by "benchmark [param=value, ...]"
+    private static Map<String, Result> read(String file) throws IOException {
+        String json = Files.readString(Paths.get(file));
+        Map<String, Result> results = new LinkedHashMap<>();
+        Matcher benchmark = BENCHMARK.matcher(json);
+        int start = benchmark.find() ? benchmark.start() : -1;
+        while (start >= 0) {
+            String name = benchmark.group(1);
+            int end = benchmark.find() ? benchmark.start() : json.length();
+            String record = json.substring(start, end);
+            start = end < json.length() ? end : -1;
+
+            StringBuilder key = new StringBuilder(name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1));
+            Matcher params = PARAMS.matcher(record);
+            if (params.find()) {
+                Matcher param = PARAM.matcher(params.group(1));
+                String separator = " [";
+                while (param.find()) {
+                    key.append(separator).append(param.group(1)).append('=').append(param.group(2));
+                    separator = ", ";
+                }
+                if (!separator.equals(" [")) {
+                    key.append(']');
+                }
+            }
+            Matcher metric = PRIMARY_METRIC.matcher(record);
+            if (!metric.find()) {
+                throw new IllegalArgumentException("No primaryMetric for " + name + " in " + file);
+            }
+            String primary = record.substring(metric.end());
+            results.put(key.toString(), new Result(group(MODE, record, name), Double.parseDouble(group(SCORE, primary, name)),
+                    Double.parseDouble(group(SCORE_ERROR, primary, name)), group(SCORE_UNIT, primary, name)));
+        }
+        if (results.isEmpty()) {
+            throw new IllegalArgumentException("No benchmark results in " + file);
+        }
+        return results;
+    }
+
+    private static String group(Pattern pattern, String text, String benchmark) {
+        Matcher matcher = pattern.matcher(text);
+        if (!matcher.find()) {
+            throw new IllegalArgumentException("Missing " + pattern.pattern() + " for " + benchmark);
+        }
+        return matcher.group(1);
+    }
+}
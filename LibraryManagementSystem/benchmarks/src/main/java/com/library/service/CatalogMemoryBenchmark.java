@@ -0,0 +1,122 @@
+package com.library.service;
+
+import com.library.model.Book;
+import com.library.model.EBook;
+import com.library.util.IntObjectMap;
+import com.library.util.ZipfDistribution;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures retained heap per book with a private copy of every author, category and format
+ * string and a String-keyed author index, as books decoded from a data file used to be held,
+ * against the same books interned through CatalogStrings with the int-keyed author index.
+ * Authors are Zipf-distributed, as in real catalogs.
+ * Usage: CatalogMemoryBenchmark [books] [authors] [categories]
+ */
+public class CatalogMemoryBenchmark {
+    private static final String[] FIRST_NAMES = {
+        "Jane", "Mark", "Toni", "George", "Leo", "Agatha", "Haruki", "Chinua", "Paulo", "Rhonda",
+        "Virginia", "Gabriel", "Isabel", "Salman", "Zadie", "Kazuo", "Orhan", "Elena", "Jorge", "Ursula"
+    };
+    private static final String[] LAST_NAMES = {
+        "Austen", "Twain", "Morrison", "Orwell", "Tolstoy", "Christie", "Murakami", "Achebe", "Coelho", "Byrne",
+        "Woolf", "Marquez", "Allende", "Rushdie", "Smith", "Ishiguro", "Pamuk", "Ferrante", "Borges", "Le Guin"
+    };
+    private static final String[] FORMATS = {"PDF", "EPUB", "MOBI"};
+
+    public static void main(String[] args) {
+        int bookCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int authorCount = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int categoryCount = args.length > 2 ? Integer.parseInt(args[2]) : 40;
+
+        String[] authors = new String[authorCount];
+        for (int i = 0; i < authorCount; i++) {
+            authors[i] = FIRST_NAMES[i % FIRST_NAMES.length] + " " + LAST_NAMES[(i / FIRST_NAMES.length) % LAST_NAMES.length]
+                    + (i < FIRST_NAMES.length * LAST_NAMES.length ? "" : " " + (i / (FIRST_NAMES.length * LAST_NAMES.length)));
+        }
+        String[] categories = new String[categoryCount];
+        for (int i = 0; i < categoryCount; i++) {
+            categories[i] = "Category " + i;
+        }
+        ZipfDistribution authorPopularity = new ZipfDistribution(authorCount, 1.0);
+        ZipfDistribution categoryPopularity = new ZipfDistribution(categoryCount, 1.0);
+
+        // Each book gets fresh strings, as a decoder produces them
+        long baseline = usedHeap();
+        List<Book> copied = createBooks(bookCount, authors, categories, authorPopularity, categoryPopularity);
+        Map<String, List<Book>> byAuthorName = new HashMap<>();
+        for (Book book : copied) {
+            byAuthorName.computeIfAbsent(book.getAuthor().toLowerCase(), k -> new ArrayList<>()).add(book);
+        }
+        long copiedBytes = usedHeap() - baseline;
+        report("Private strings + HashMap<String, List<Book>> index", copiedBytes, copied.size());
+        int copiedAuthors = byAuthorName.size();
+        copied = null;
+        byAuthorName = null;
+
+        baseline = usedHeap();
+        List<Book> interned = createBooks(bookCount, authors, categories, authorPopularity, categoryPopularity);
+        IntObjectMap<List<Book>> byAuthorCode = new IntObjectMap<>();
+        for (Book book : interned) {
+            CatalogStrings.intern(book);
+            int key = CatalogStrings.authorKey(book);
+            List<Book> filed = byAuthorCode.get(key);
+            if (filed == null) {
+                filed = new ArrayList<>();
+                byAuthorCode.put(key, filed);
+            }
+            filed.add(book);
+        }
+        long internedBytes = usedHeap() - baseline;
+        report("Dictionary strings + IntObjectMap<List<Book>> index", internedBytes, interned.size());
+
+        System.out.printf("Saved %,d bytes (%.1f bytes/book, %.0f%%); %,d distinct authors, %,d dictionary entries%n",
+                copiedBytes - internedBytes, (double) (copiedBytes - internedBytes) / bookCount,
+                100.0 * (copiedBytes - internedBytes) / copiedBytes, copiedAuthors,
+                CatalogStrings.AUTHORS.size() + CatalogStrings.CATEGORIES.size() + CatalogStrings.FORMATS.size());
+
+        // Keep structures reachable until measured
+        if (byAuthorCode.isEmpty() || interned.isEmpty()) {
+            System.out.println("Nothing measured.");
+        }
+    }
+
+    private static List<Book> createBooks(int bookCount, String[] authors, String[] categories,
+                                          ZipfDistribution authorPopularity, ZipfDistribution categoryPopularity) {
+        Random random = new Random(17);
+        List<Book> books = new ArrayList<>(bookCount);
+        for (int i = 0; i < bookCount; i++) {
+            String author = new String(authors[authorPopularity.sample(random)]);
+            String category = new String(categories[categoryPopularity.sample(random)]);
+            if (random.nextInt(5) == 0) {
+                books.add(new EBook("MB-" + i, "Title " + i, author, category, 1,
+                        new String(FORMATS[random.nextInt(FORMATS.length)]), 1.5));
+            } else {
+                books.add(new Book("MB-" + i, "Title " + i, author, category, 1 + random.nextInt(4)));
+            }
+        }
+        return books;
+    }
+
+    private static void report(String label, long bytes, int books) {
+        System.out.printf("%-55s %,14d bytes, %8.1f bytes/book%n", label, bytes, books == 0 ? 0.0 : (double) bytes / books);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,93 @@
+package com.library.service;
+
+import com.library.model.Book;
+import com.library.model.Loan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issue followed by return of the same copy, so the catalog is unchanged between invocations.
+ * The in-memory variant calls the apply methods the public calls wrap; the persisted variant
+ * goes through issueBook/returnBook, which rewrite the JSON data file twice per invocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CirculationBenchmarks {
+
+    @State(Scope.Thread)
+    public static class Catalog {
+        @Param({"1000", "100000"})
+        int books;
+
+        BenchmarkCatalogs.Fixture fixture;
+        String[] availableIds;
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            BenchmarkCatalogs.silenceStdout();
+            fixture = BenchmarkCatalogs.create(1, books, null);
+            List<String> available = new ArrayList<>();
+            for (String bookId : fixture.bookIds) {
+                Book book = fixture.service.searchById(bookId);
+                if (book.getRemainingCopies() > 0) {
+                    available.add(bookId);
+                }
+            }
+            availableIds = available.toArray(new String[0]);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            fixture.delete();
+        }
+
+        int next() {
+            cursor = cursor + 1 == availableIds.length ? 0 : cursor + 1;
+            return cursor;
+        }
+    }
+
+    @Benchmark
+    public Loan issueReturnInMemory(Catalog catalog) {
+        LibraryService service = catalog.fixture.service;
+        int i = catalog.next();
+        String bookId = catalog.availableIds[i];
+        int patronId = catalog.fixture.patronIds[i % catalog.fixture.patronIds.length];
+        synchronized (service) {
+            Loan loan = service.applyIssue(bookId, patronId);
+            service.applyReturn(bookId, patronId);
+            return loan;
+        }
+    }
+
+    @Benchmark
+    public Loan issueReturnPersisted(Catalog catalog) {
+        LibraryService service = catalog.fixture.service;
+        int i = catalog.next();
+        String bookId = catalog.availableIds[i];
+        int patronId = catalog.fixture.patronIds[i % catalog.fixture.patronIds.length];
+        Loan loan = service.issueBook(bookId, patronId);
+        service.returnBook(bookId, patronId);
+        return loan;
+    }
+}
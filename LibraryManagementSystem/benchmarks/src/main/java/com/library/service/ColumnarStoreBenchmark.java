@@ -0,0 +1,138 @@
+package com.library.service;
+
+import com.library.model.Book;
+import com.library.model.EBook;
+import com.library.util.ZipfDistribution;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Compares a catalog held as Book objects in an ArrayList with an ID HashMap, as LibraryService
+ * holds it, against the same books in a ColumnarBookStore: retained heap per book, then the time
+ * for the statistics screen (available titles, issued copies, e-books, per-category totals) and
+ * for an author filter, as streams over the list and as loops over the columns.
+ * Usage: ColumnarStoreBenchmark [books] [iterations]
+ */
+public class ColumnarStoreBenchmark {
+    private static final int AUTHORS = 20_000;
+    private static final int CATEGORIES = 40;
+
+    public static void main(String[] args) {
+        int bookCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        // Each side owns its own ID and title strings
+        long baseline = usedHeap();
+        ColumnarBookStore store = ColumnarBookStore.of(createBooks(bookCount));
+        long columnarBytes = usedHeap() - baseline;
+
+        baseline = usedHeap();
+        List<Book> books = createBooks(bookCount);
+        Map<String, Book> byId = new HashMap<>();
+        for (Book book : books) {
+            byId.put(book.getBookId(), book);
+        }
+        long objectBytes = usedHeap() - baseline;
+        report("ArrayList<Book> + HashMap<String, Book>", objectBytes, bookCount);
+        report("ColumnarBookStore", columnarBytes, bookCount);
+        System.out.printf("Saved %.1f bytes/book (%.0f%%)%n%n", (double) (objectBytes - columnarBytes) / bookCount,
+                100.0 * (objectBytes - columnarBytes) / objectBytes);
+
+        String author = store.getAuthor(0);
+        long checksum = 0;
+        for (int round = 0; round < 2; round++) {
+            // The first round warms up both paths; the second is reported
+            boolean print = round == 1;
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                checksum += statsFromObjects(books);
+            }
+            long objectStats = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                checksum += statsFromColumns(store);
+            }
+            long columnarStats = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                checksum += books.stream().filter(book -> book.getAuthor().equalsIgnoreCase(author)).count();
+            }
+            long objectFilter = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                checksum += store.rowsByAuthor(author).length;
+            }
+            long columnarFilter = System.nanoTime() - start;
+            if (print) {
+                compare("Statistics", objectStats, columnarStats, iterations);
+                compare("Filter by author", objectFilter, columnarFilter, iterations);
+            }
+        }
+        System.out.println("Checksum: " + checksum + ", " + byId.size() + " books");
+    }
+
+    // Available titles, issued copies, e-books and per-category counts from the Book objects
+    private static long statsFromObjects(List<Book> books) {
+        long available = books.stream().filter(Book::isAvailable).count();
+        long issued = books.stream().mapToInt(Book::getIssuedCopies).sum();
+        long eBooks = books.stream().filter(book -> book instanceof EBook).count();
+        Map<String, Long> byCategory = books.stream()
+                .collect(Collectors.groupingBy(Book::getCategory, Collectors.counting()));
+        return available + issued + eBooks + byCategory.size();
+    }
+
+    private static long statsFromColumns(ColumnarBookStore store) {
+        int categories = 0;
+        for (int count : store.countByCategory()) {
+            categories += count > 0 ? 1 : 0;
+        }
+        return store.countAvailable() + store.sumIssuedCopies() + store.countEBooks() + categories;
+    }
+
+    private static List<Book> createBooks(int bookCount) {
+        Random random = new Random(17);
+        ZipfDistribution authorPopularity = new ZipfDistribution(AUTHORS, 1.0);
+        ZipfDistribution categoryPopularity = new ZipfDistribution(CATEGORIES, 1.0);
+        List<Book> books = new ArrayList<>(bookCount);
+        for (int i = 0; i < bookCount; i++) {
+            String author = "Author " + authorPopularity.sample(random);
+            String category = "Category " + categoryPopularity.sample(random);
+            Book book = random.nextInt(5) == 0
+                    ? new EBook("CB-" + i, "Title " + i, author, category, 1, "EPUB", 1.5)
+                    : new Book("CB-" + i, "Title " + i, author, category, 1 + random.nextInt(4));
+            if (!(book instanceof EBook)) {
+                book.setIssuedCopies(random.nextInt(book.getTotalCopies() + 1));
+            }
+            books.add(CatalogStrings.intern(book));
+        }
+        return books;
+    }
+
+    private static void compare(String label, long objectNanos, long columnarNanos, int iterations) {
+        System.out.printf("%-18s objects %,10.2f ms   columns %,10.2f ms   %5.1fx%n", label,
+                objectNanos / 1_000_000.0 / iterations, columnarNanos / 1_000_000.0 / iterations,
+                columnarNanos == 0 ? 0.0 : (double) objectNanos / columnarNanos);
+    }
+
+    private static void report(String label, long bytes, int books) {
+        System.out.printf("%-42s %,14d bytes, %8.1f bytes/book%n", label, bytes, books == 0 ? 0.0 : (double) bytes / books);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
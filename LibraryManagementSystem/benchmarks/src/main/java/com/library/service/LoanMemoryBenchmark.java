@@ -0,0 +1,105 @@
+package com.library.service;
+
+import com.library.model.Book;
+import com.library.model.Loan;
+import com.library.util.IntObjectMap;
+import com.library.util.LongList;
+import com.library.util.LongObjectMap;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures retained heap per open loan for the LoanLedger (primitive-keyed indexes,
+ * timing-wheel reminders) against boxed HashMap indexes holding the same loans.
+ * Usage: LoanMemoryBenchmark [loans] [books] [patrons]
+ */
+public class LoanMemoryBenchmark {
+
+    public static void main(String[] args) {
+        int loanCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int bookCount = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int patronCount = args.length > 2 ? Integer.parseInt(args[2]) : 50_000;
+
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < bookCount; i++) {
+            books.add(new Book("MB-" + i, "Title " + i, "Author", "Category", Integer.MAX_VALUE));
+        }
+
+        long baseline = usedHeap();
+        LoanLedger ledger = new LoanLedger(Clock.systemUTC());
+        Random random = new Random(11);
+        for (int i = 0; i < loanCount; i++) {
+            ledger.openLoan("bench::library", "Bench", "Library", books.get(random.nextInt(bookCount)),
+                    1 + random.nextInt(patronCount));
+        }
+        long ledgerBytes = usedHeap() - baseline;
+        report("LoanLedger total (loans, indexes, reminders)", ledgerBytes, ledger.getOpenLoanCount());
+
+        List<Loan> loans = ledger.getOpenLoans();
+        ledger = null;
+        baseline = usedHeap();
+        Map<Long, Loan> byId = new HashMap<>();
+        Map<Integer, List<Long>> byPatron = new HashMap<>();
+        Map<String, List<Long>> byBook = new HashMap<>();
+        for (Loan loan : loans) {
+            byId.put(loan.getLoanId(), loan);
+            byPatron.computeIfAbsent(loan.getPatronId(), k -> new ArrayList<>()).add(loan.getLoanId());
+            byBook.computeIfAbsent(loan.getBookId(), k -> new ArrayList<>()).add(loan.getLoanId());
+        }
+        long boxedIndexBytes = usedHeap() - baseline;
+        report("Index only: boxed HashMap<Long/Integer/String, ...>", boxedIndexBytes, byId.size());
+        byId = null;
+        byPatron = null;
+        byBook = null;
+
+        baseline = usedHeap();
+        LongObjectMap<Loan> primitiveById = new LongObjectMap<>();
+        IntObjectMap<LongList> primitiveByPatron = new IntObjectMap<>();
+        IntObjectMap<LongList> primitiveByBook = new IntObjectMap<>();
+        Map<String, Integer> bookOrdinals = new HashMap<>();
+        for (Loan loan : loans) {
+            primitiveById.put(loan.getLoanId(), loan);
+            addLoanId(primitiveByPatron, loan.getPatronId(), loan.getLoanId());
+            int ordinal = bookOrdinals.computeIfAbsent(loan.getBookId(), k -> bookOrdinals.size() + 1);
+            addLoanId(primitiveByBook, ordinal, loan.getLoanId());
+        }
+        long primitiveIndexBytes = usedHeap() - baseline;
+        report("Index only: primitive-keyed maps + loan-ID lists", primitiveIndexBytes, primitiveById.size());
+
+        // Keep structures reachable until measured
+        if (primitiveByPatron.isEmpty() || primitiveByBook.isEmpty() || books.isEmpty()) {
+            System.out.println("Nothing measured.");
+        }
+    }
+
+    private static void addLoanId(IntObjectMap<LongList> index, int key, long loanId) {
+        LongList loanIds = index.get(key);
+        if (loanIds == null) {
+            loanIds = new LongList(2);
+            index.put(key, loanIds);
+        }
+        loanIds.add(loanId);
+    }
+
+    private static void report(String label, long bytes, int loans) {
+        System.out.printf("%-55s %,12d bytes, %8.1f bytes/loan%n", label, bytes, loans == 0 ? 0.0 : (double) bytes / loans);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
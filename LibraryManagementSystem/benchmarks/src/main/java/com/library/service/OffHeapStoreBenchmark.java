@@ -0,0 +1,262 @@
+package com.library.service;
+
+import com.library.model.Book;
+import com.library.model.EBook;
+import com.library.util.LatencyHistogram;
+import com.library.util.ZipfDistribution;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * GC pauses and throughput of one catalog store under archive-style churn: ID lookups that issue
+ * or return a copy, title reads, and replacement of old records by new ones. Stores are Book
+ * objects in a HashMap (what LibraryService keeps on the heap), a ColumnarBookStore, and an
+ * OffHeapBookStore in direct memory or a mapped file. Run each store in its own JVM with the same
+ * heap settings, since a store's garbage and live set affect whatever runs after it.
+ * Usage: OffHeapStoreBenchmark objects|columnar|direct|mapped [books] [seconds]
+ */
+public class OffHeapStoreBenchmark {
+    private static final int AUTHORS = 20_000;
+    private static final int CATEGORIES = 40;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: OffHeapStoreBenchmark objects|columnar|direct|mapped [books] [seconds]");
+            System.exit(2);
+        }
+        String mode = args[0];
+        int bookCount = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        LatencyHistogram pauses = new LatencyHistogram();
+        listenForPauses(pauses);
+
+        Path mappedFile = null;
+        Catalog catalog;
+        switch (mode) {
+            case "objects":
+                catalog = new ObjectCatalog();
+                break;
+            case "columnar":
+                catalog = new StoreCatalog(new ColumnarBookStore(bookCount));
+                break;
+            case "direct":
+                catalog = new StoreCatalog(new OffHeapBookStore());
+                break;
+            case "mapped":
+                mappedFile = Files.createTempFile("book-store", ".slabs");
+                catalog = new StoreCatalog(OffHeapBookStore.mapped(mappedFile));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown store: " + mode);
+        }
+
+        Random random = new Random(23);
+        ZipfDistribution authors = new ZipfDistribution(AUTHORS, 1.0);
+        ZipfDistribution categories = new ZipfDistribution(CATEGORIES, 1.0);
+        int[] serials = new int[bookCount];
+        long start = System.nanoTime();
+        for (int i = 0; i < bookCount; i++) {
+            serials[i] = i;
+            catalog.add(createBook(i, random, authors, categories));
+        }
+        long loadNanos = System.nanoTime() - start;
+        System.out.printf("Store: %s, books: %,d, loaded in %,.0f ms (%,d GC pauses, max %,.1f ms)%n", mode, bookCount,
+                loadNanos / 1_000_000.0, pauses.getCount(), pauses.getMaxNanos() / 1_000_000.0);
+
+        // Churn: 70% lookups that issue or return, 10% title reads, 20% replacements
+        pauses.reset();
+        int nextSerial = bookCount;
+        long operations = 0;
+        long checksum = 0;
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        start = System.nanoTime();
+        while ((operations & 1023) != 0 || System.nanoTime() < end) {
+            int slot = random.nextInt(bookCount);
+            String bookId = "OB-" + serials[slot];
+            int kind = random.nextInt(10);
+            if (kind < 7) {
+                checksum += catalog.circulate(bookId, random.nextBoolean()) ? 1 : 0;
+            } else if (kind < 8) {
+                checksum += catalog.title(bookId).length();
+            } else {
+                catalog.remove(bookId);
+                serials[slot] = nextSerial;
+                catalog.add(createBook(nextSerial++, random, authors, categories));
+            }
+            operations++;
+        }
+        long churnNanos = System.nanoTime() - start;
+        System.out.printf("Churn: %,d operations in %,.1f s, %,.0f ops/s%n", operations, churnNanos / 1e9,
+                operations / (churnNanos / 1e9));
+        System.out.printf("GC pauses: %,d, total %,.1f ms, p50 %,.1f ms, p99 %,.1f ms, max %,.1f ms%n",
+                pauses.getCount(), pauses.getTotalNanos() / 1_000_000.0,
+                pauses.getValueAtPercentile(50) / 1_000_000.0, pauses.getValueAtPercentile(99) / 1_000_000.0,
+                pauses.getMaxNanos() / 1_000_000.0);
+
+        // A full collection has to trace whatever the store keeps on the heap
+        Runtime runtime = Runtime.getRuntime();
+        start = System.nanoTime();
+        System.gc();
+        System.out.printf("Full GC: %,.1f ms, heap in use after it: %,d MB%s%n", (System.nanoTime() - start) / 1_000_000.0,
+                (runtime.totalMemory() - runtime.freeMemory()) >> 20, catalog.describe());
+        System.out.println("Checksum: " + checksum + ", " + catalog.size() + " books");
+
+        catalog.close();
+        if (mappedFile != null) {
+            Files.deleteIfExists(mappedFile);
+        }
+    }
+
+    // Record stop-the-world collections; concurrent cycles run beside the application
+    private static void listenForPauses(LatencyHistogram pauses) {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!(collector instanceof NotificationEmitter)) {
+                continue;
+            }
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    return;
+                }
+                GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                if (!info.getGcName().contains("Concurrent") && !info.getGcAction().contains("concurrent")) {
+                    pauses.record(info.getGcInfo().getDuration() * 1_000_000L);
+                }
+            }, null, null);
+        }
+    }
+
+    private static Book createBook(int serial, Random random, ZipfDistribution authors, ZipfDistribution categories) {
+        String author = "Author " + authors.sample(random);
+        String category = "Category " + categories.sample(random);
+        Book book = random.nextInt(5) == 0
+                ? new EBook("OB-" + serial, "Archive record " + serial, author, category, 1, "PDF", 2.5)
+                : new Book("OB-" + serial, "Archive record " + serial, author, category, 1 + random.nextInt(3));
+        return CatalogStrings.intern(book);
+    }
+
+    private interface Catalog {
+        void add(Book book);
+
+        void remove(String bookId);
+
+        // Issue or return a copy; false if the book has none to issue or return
+        boolean circulate(String bookId, boolean issue);
+
+        String title(String bookId);
+
+        int size();
+
+        String describe();
+
+        default void close() throws Exception {
+        }
+    }
+
+    private static final class ObjectCatalog implements Catalog {
+        private final Map<String, Book> books = new HashMap<>();
+
+        @Override
+        public void add(Book book) {
+            books.put(book.getBookId(), book);
+        }
+
+        @Override
+        public void remove(String bookId) {
+            books.remove(bookId);
+        }
+
+        @Override
+        public boolean circulate(String bookId, boolean issue) {
+            Book book = books.get(bookId);
+            if (issue) {
+                if (!book.isAvailable()) {
+                    return false;
+                }
+                book.setIssuedCopies(book.getIssuedCopies() + (book instanceof EBook ? 0 : 1));
+                return true;
+            }
+            if (book.getIssuedCopies() == 0) {
+                return false;
+            }
+            book.setIssuedCopies(book.getIssuedCopies() - 1);
+            return true;
+        }
+
+        @Override
+        public String title(String bookId) {
+            return books.get(bookId).getTitle();
+        }
+
+        @Override
+        public int size() {
+            return books.size();
+        }
+
+        @Override
+        public String describe() {
+            return "";
+        }
+    }
+
+    private static final class StoreCatalog implements Catalog {
+        private final BookStore store;
+
+        StoreCatalog(BookStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public void add(Book book) {
+            store.add(book);
+        }
+
+        @Override
+        public void remove(String bookId) {
+            store.remove(bookId);
+        }
+
+        @Override
+        public boolean circulate(String bookId, boolean issue) {
+            int row = store.rowOf(bookId);
+            return issue ? store.issue(row) : store.returnCopy(row);
+        }
+
+        @Override
+        public String title(String bookId) {
+            return store.getTitle(store.rowOf(bookId));
+        }
+
+        @Override
+        public int size() {
+            return store.size();
+        }
+
+        @Override
+        public String describe() {
+            if (!(store instanceof OffHeapBookStore)) {
+                return "";
+            }
+            OffHeapBookStore offHeap = (OffHeapBookStore) store;
+            return String.format(", off-heap: %,d MB reserved, %,d MB live", offHeap.getReservedBytes() >> 20,
+                    offHeap.getLiveBytes() >> 20);
+        }
+
+        @Override
+        public void close() throws Exception {
+            if (store instanceof OffHeapBookStore) {
+                ((OffHeapBookStore) store).close();
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.library.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and loading the whole data file, per storage format, and JSON encoding alone.
+ * Catalogs have four libraries of `books` books each.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceBenchmarks {
+    private static final int LIBRARIES = 4;
+
+    @State(Scope.Thread)
+    public static class StoredCatalog {
+        @Param({"1000", "100000"})
+        int books;
+
+        // JSON or a SnapshotCodec name
+        @Param({"JSON", "DEFLATE"})
+        String format;
+
+        BenchmarkCatalogs.Fixture fixture;
+        SnapshotCodec codec;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            BenchmarkCatalogs.silenceStdout();
+            codec = format.equals("JSON") ? null : SnapshotCodec.valueOf(format);
+            fixture = BenchmarkCatalogs.create(LIBRARIES, books, codec);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            fixture.delete();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class JsonCatalog {
+        @Param({"1000", "100000"})
+        int books;
+
+        BenchmarkCatalogs.Fixture fixture;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            BenchmarkCatalogs.silenceStdout();
+            fixture = BenchmarkCatalogs.create(LIBRARIES, books, null);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            fixture.delete();
+        }
+    }
+
+    @Benchmark
+    public void saveData(StoredCatalog catalog) {
+        synchronized (catalog.fixture.service) {
+            catalog.fixture.service.saveData();
+        }
+    }
+
+    @Benchmark
+    public LibraryService loadData(StoredCatalog catalog) {
+        return new LibraryService(catalog.fixture.dataFile, catalog.codec);
+    }
+
+    @Benchmark
+    public String toJsonArray(JsonCatalog catalog) {
+        synchronized (catalog.fixture.service) {
+            return catalog.fixture.service.toJsonArray(0);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.library.service;
+
+import com.library.model.Book;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups, sorting and library selection on the in-memory indexes of the current library.
+ * Title misses fall back to a scan of the catalog, so they are measured separately from hits.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmarks {
+
+    @State(Scope.Thread)
+    public static class Catalog {
+        @Param({"1000", "100000"})
+        int books;
+
+        BenchmarkCatalogs.Fixture fixture;
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            BenchmarkCatalogs.silenceStdout();
+            fixture = BenchmarkCatalogs.create(1, books, null);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            fixture.delete();
+        }
+
+        int next() {
+            cursor = cursor + 1 == books ? 0 : cursor + 1;
+            return cursor;
+        }
+    }
+
+    // Two libraries, so every selection switches library and rebuilds the indexes
+    @State(Scope.Thread)
+    public static class TwoLibraries {
+        @Param({"1000", "100000"})
+        int books;
+
+        BenchmarkCatalogs.Fixture fixture;
+        int selected;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            BenchmarkCatalogs.silenceStdout();
+            fixture = BenchmarkCatalogs.create(2, books, null);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            fixture.delete();
+        }
+    }
+
+    @Benchmark
+    public Book searchById(Catalog catalog) {
+        return catalog.fixture.service.searchById(catalog.fixture.bookIds[catalog.next()]);
+    }
+
+    @Benchmark
+    public List<Book> searchByTitleHit(Catalog catalog) {
+        return catalog.fixture.service.searchByTitle(catalog.fixture.titles[catalog.next()]);
+    }
+
+    @Benchmark
+    public List<Book> searchByTitleMiss(Catalog catalog) {
+        return catalog.fixture.service.searchByTitle("No Such Title " + catalog.next());
+    }
+
+    @Benchmark
+    public List<Book> searchByAuthor(Catalog catalog) {
+        return catalog.fixture.service.searchByAuthor(catalog.fixture.authors[catalog.next()]);
+    }
+
+    @Benchmark
+    public List<Book> sortByTitle(Catalog catalog) {
+        return catalog.fixture.service.sortByTitle();
+    }
+
+    @Benchmark
+    public int selectLibrary(TwoLibraries libraries) {
+        libraries.selected ^= 1;
+        libraries.fixture.service.selectLibrary(BenchmarkCatalogs.libraryName(libraries.selected),
+                BenchmarkCatalogs.LIBRARY_LOCATION);
+        return libraries.fixture.service.getCurrentLibraryBookCount();
+    }
+}
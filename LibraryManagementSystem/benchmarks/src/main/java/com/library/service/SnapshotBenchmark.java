@@ -0,0 +1,136 @@
+package com.library.service;
+
+import com.library.model.Book;
+import com.library.model.EBook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the JSON data file with block-compressed snapshots for each SnapshotCodec:
+ * file size, size relative to JSON, and median save and load times.
+ * Usage: SnapshotBenchmark [dataFile | books] [rounds]
+ * With a data file it is copied and converted; otherwise a synthetic catalog is generated.
+ */
+public class SnapshotBenchmark {
+    private static final String[] WORDS = {"River", "Night", "Garden", "Empire", "Silent", "Glass", "Winter",
+            "Ocean", "Shadow", "Machine", "History", "Stone", "Letters", "North", "Fire", "Clock"};
+    private static final String[] AUTHORS = {"Ada Moore", "Ben Okafor", "Chen Li", "Dana Ruiz", "Eli Novak",
+            "Farah Khan", "Gus Berg", "Hana Sato", "Ivan Petrov", "June O'Neil"};
+    private static final String[] CATEGORIES = {"Fiction", "Science", "History", "Poetry", "Travel", "Children"};
+
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Path workDir = Files.createTempDirectory("snapshot-bench");
+        Path source = workDir.resolve("source.json");
+
+        PrintStream console = System.out;
+        // Book.issueBook prints a line per copy
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            if (args.length > 0 && Files.exists(Paths.get(args[0]))) {
+                Files.copy(Paths.get(args[0]), source);
+            } else {
+                generate(source, args.length > 0 ? Integer.parseInt(args[0]) : 100_000);
+            }
+        } finally {
+            System.setOut(console);
+        }
+
+        System.out.printf("%-8s %12s %8s %10s %10s%n", "format", "bytes", "vs JSON", "save ms", "load ms");
+        long jsonSize = 0;
+        SnapshotCodec[] formats = {null, SnapshotCodec.NONE, SnapshotCodec.DEFLATE, SnapshotCodec.GZIP};
+        for (SnapshotCodec codec : formats) {
+            Path file = workDir.resolve(codec == null ? "data.json" : "data." + codec.name().toLowerCase());
+            Files.copy(source, file, StandardCopyOption.REPLACE_EXISTING);
+            LibraryService service = new LibraryService(file, codec);
+
+            long[] saveNanos = new long[rounds];
+            for (int i = 0; i < rounds; i++) {
+                long start = System.nanoTime();
+                service.saveData();
+                saveNanos[i] = System.nanoTime() - start;
+            }
+            long[] loadNanos = new long[rounds];
+            int books = 0;
+            for (int i = 0; i < rounds; i++) {
+                long start = System.nanoTime();
+                LibraryService loaded = new LibraryService(file, codec);
+                loadNanos[i] = System.nanoTime() - start;
+                books = countBooks(loaded);
+            }
+            if (books != countBooks(service)) {
+                throw new IllegalStateException("Loaded " + books + " books, expected " + countBooks(service));
+            }
+
+            long size = Files.size(file);
+            if (codec == null) {
+                jsonSize = size;
+            }
+            System.out.printf("%-8s %,12d %7.1f%% %,10.1f %,10.1f%n", codec == null ? "JSON" : codec.name(), size,
+                    100.0 * size / jsonSize, median(saveNanos) / 1e6, median(loadNanos) / 1e6);
+        }
+
+        for (Path file : Files.newDirectoryStream(workDir)) {
+            Files.delete(file);
+        }
+        Files.delete(workDir);
+    }
+
+    // Four libraries with books, e-books, patrons and open loans
+    private static void generate(Path file, int bookCount) {
+        LibraryService service = new LibraryService(file);
+        Random random = new Random(38);
+        service.inBatch(() -> {
+            List<Integer> patronIds = new ArrayList<>();
+            for (int i = 0; i < 1_000; i++) {
+                patronIds.add(service.registerPatron("Patron " + i).getPatronId());
+            }
+            int libraries = 4;
+            for (int l = 0; l < libraries; l++) {
+                service.createLibrary("Branch " + l, "District " + l);
+                List<Book> books = new ArrayList<>();
+                for (int i = l; i < bookCount; i += libraries) {
+                    String id = "SB-" + i;
+                    String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+                    String author = AUTHORS[random.nextInt(AUTHORS.length)];
+                    String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+                    int copies = 1 + random.nextInt(5);
+                    books.add(random.nextInt(5) == 0
+                            ? new EBook(id, title, author, category, copies, "EPUB", 0.5 + random.nextInt(40) / 4.0)
+                            : new Book(id, title, author, category, copies));
+                }
+                service.addBooks(books);
+                for (int i = 0; i < books.size() / 10; i++) {
+                    Book book = books.get(random.nextInt(books.size()));
+                    if (book.isAvailable()) {
+                        service.issueBook(book.getBookId(), patronIds.get(random.nextInt(patronIds.size())));
+                    }
+                }
+            }
+        });
+    }
+
+    private static int countBooks(LibraryService service) {
+        int total = 0;
+        for (LibraryInfo library : service.getLibraries()) {
+            total += library.getBookCount();
+        }
+        return total;
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
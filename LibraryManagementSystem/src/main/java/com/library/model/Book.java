@@ -2,11 +2,16 @@ package com.library.model;
 
 import com.library.interfaces.Borrowable;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Represents a book in the library system
  * Demonstrates encapsulation, constructors, and string handling
  */
 public class Book implements Borrowable {
+    // Letters, spaces, apostrophes, hyphens and periods, starting with a letter
+    public static final String AUTHOR_NAME_PATTERN = "^[A-Za-z][A-Za-z .'-]*$";
+
     // Private fields for encapsulation
     private String bookId;
     private String title;
@@ -14,11 +19,9 @@ public class Book implements Borrowable {
     private String category;
     private int totalCopies;
     private int issuedCopies;
-    private int remainingCopies;
-    private boolean isAvailable;
     
-    // Static variable to track total number of books
-    private static int totalBooksCount = 0;
+    // Static variable to track total number of books; atomic because snapshots decode books in parallel
+    private static final AtomicInteger totalBooksCount = new AtomicInteger();
 
     // Constructor to initialize book details
     public Book(String bookId, String title, String author, String category, int totalCopies) {
@@ -28,9 +31,7 @@ public class Book implements Borrowable {
         this.category = category;
         this.totalCopies = totalCopies;
         this.issuedCopies = 0;
-        this.remainingCopies = totalCopies; // Arithmetic operation: remaining = total - issued
-        this.isAvailable = totalCopies > 0;
-        totalBooksCount++; // Increment static counter
+        totalBooksCount.incrementAndGet(); // Increment static counter
     }
 
     // Public getters and setters
@@ -72,8 +73,6 @@ public class Book implements Borrowable {
 
     public void setTotalCopies(int totalCopies) {
         this.totalCopies = totalCopies;
-        // Recalculate remaining copies
-        this.remainingCopies = totalCopies - issuedCopies;
     }
 
     public int getIssuedCopies() {
@@ -82,33 +81,26 @@ public class Book implements Borrowable {
 
     public void setIssuedCopies(int issuedCopies) {
         this.issuedCopies = issuedCopies;
-        this.remainingCopies = totalCopies - issuedCopies; // Arithmetic operation
-        this.isAvailable = remainingCopies > 0;
     }
 
+    // Derived rather than stored, so it can never disagree with the copy counts
     public int getRemainingCopies() {
-        return remainingCopies;
+        return totalCopies - issuedCopies; // Arithmetic operation: remaining = total - issued
     }
 
     public boolean isAvailable() {
-        return isAvailable;
-    }
-
-    public void setAvailable(boolean available) {
-        isAvailable = available;
+        return getRemainingCopies() > 0;
     }
 
     // Static method to get total books count
     public static int getTotalBooksCount() {
-        return totalBooksCount;
+        return totalBooksCount.get();
     }
 
     // Method to issue a book
     public void issueBook() {
-        if (isAvailable && remainingCopies > 0) {
+        if (isAvailable()) {
             issuedCopies++; // Arithmetic operation: increment issued
-            remainingCopies = totalCopies - issuedCopies; // Arithmetic operation: calculate remaining
-            isAvailable = remainingCopies > 0; // Condition check
             System.out.println("Book issued successfully!");
         } else {
             System.out.println("Book is not available for issue.");
@@ -119,8 +111,6 @@ public class Book implements Borrowable {
     public void returnBook() {
         if (issuedCopies > 0) {
             issuedCopies--; // Arithmetic operation: decrement issued
-            remainingCopies = totalCopies - issuedCopies; // Arithmetic operation: calculate remaining
-            isAvailable = remainingCopies > 0; // Condition check
             System.out.println("Book returned successfully!");
         } else {
             System.out.println("No copies are currently issued.");
@@ -160,8 +150,8 @@ public class Book implements Borrowable {
             "Available: %s\n" +
             "═══════════════════════════════════════",
             bookId, getTitleUpperCase(), author, getAuthorLastName(),
-            category, totalCopies, issuedCopies, remainingCopies,
-            isAvailable ? "Yes" : "No"
+            category, totalCopies, issuedCopies, getRemainingCopies(),
+            isAvailable() ? "Yes" : "No"
         );
     }
 
@@ -174,7 +164,7 @@ public class Book implements Borrowable {
     @Override
     public String toString() {
         return String.format("Book[ID=%s, Title=%s, Author=%s, Available=%s, Remaining=%d]",
-                bookId, title, author, isAvailable, remainingCopies);
+                bookId, title, author, isAvailable(), getRemainingCopies());
     }
 }
 
@@ -0,0 +1,64 @@
+package com.library.model;
+
+/**
+ * An open loan of one copy of a book to a patron.
+ * The due time is derived from the item's borrowDuration() when the loan is opened.
+ */
+public class Loan {
+    private final long loanId;
+    private final String libraryName;
+    private final String libraryLocation;
+    private final String bookId;
+    private final int patronId;
+    private final long issuedAtMillis;
+    private final long dueAtMillis;
+
+    public Loan(long loanId, String libraryName, String libraryLocation, String bookId, int patronId,
+                long issuedAtMillis, long dueAtMillis) {
+        this.loanId = loanId;
+        this.libraryName = libraryName;
+        this.libraryLocation = libraryLocation;
+        this.bookId = bookId;
+        this.patronId = patronId;
+        this.issuedAtMillis = issuedAtMillis;
+        this.dueAtMillis = dueAtMillis;
+    }
+
+    public long getLoanId() {
+        return loanId;
+    }
+
+    public String getLibraryName() {
+        return libraryName;
+    }
+
+    public String getLibraryLocation() {
+        return libraryLocation;
+    }
+
+    public String getBookId() {
+        return bookId;
+    }
+
+    public int getPatronId() {
+        return patronId;
+    }
+
+    public long getIssuedAtMillis() {
+        return issuedAtMillis;
+    }
+
+    public long getDueAtMillis() {
+        return dueAtMillis;
+    }
+
+    public boolean isOverdue(long nowMillis) {
+        return nowMillis > dueAtMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Loan[ID=%d, Book=%s, Patron=%d, Library=%s (%s)]",
+                loanId, bookId, patronId, libraryName, libraryLocation);
+    }
+}
@@ -0,0 +1,27 @@
+package com.library.model;
+
+/**
+ * Reminder raised by the loan ledger when a loan is about to fall due or has become overdue.
+ */
+public class LoanEvent {
+    public enum Type {
+        DUE_SOON,
+        OVERDUE
+    }
+
+    private final Type type;
+    private final Loan loan;
+
+    public LoanEvent(Type type, Loan loan) {
+        this.type = type;
+        this.loan = loan;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Loan getLoan() {
+        return loan;
+    }
+}
@@ -0,0 +1,31 @@
+package com.library.model;
+
+/**
+ * A registered library patron, identified by a numeric ID.
+ */
+public class Patron {
+    private final int patronId;
+    private String name;
+
+    public Patron(int patronId, String name) {
+        this.patronId = patronId;
+        this.name = name;
+    }
+
+    public int getPatronId() {
+        return patronId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Patron[ID=%d, Name=%s]", patronId, name);
+    }
+}
@@ -0,0 +1,101 @@
+package com.library.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Blocking client for the binary circulation protocol.
+ * send() only buffers a request, so callers can pipeline many requests before
+ * flush() and then read the responses back in order with receive(). Keep the number of
+ * unanswered requests bounded (a few thousand at most): the server stops reading from a
+ * connection whose responses are not being read. Not thread-safe; use one client per thread.
+ */
+public class BinaryCirculationClient implements AutoCloseable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private int nextRequestId = 1;
+
+    public BinaryCirculationClient(String host, int port) throws IOException {
+        this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+        in.flip();
+    }
+
+    public int sendIssue(String library, String location, String bookId, int patronId) throws IOException {
+        return send(BinaryProtocol.OP_ISSUE, library, location, bookId, patronId);
+    }
+
+    // patronId -1 returns the oldest loan of the book regardless of patron
+    public int sendReturn(String library, String location, String bookId, int patronId) throws IOException {
+        return send(BinaryProtocol.OP_RETURN, library, location, bookId, patronId);
+    }
+
+    public int sendStatus(String library, String location, String bookId) throws IOException {
+        return send(BinaryProtocol.OP_STATUS, library, location, bookId, 0);
+    }
+
+    // Buffer one request and return its request ID; flushes first when the buffer is nearly full
+    public int send(byte op, String library, String location, String bookId, int patronId) throws IOException {
+        if (out.remaining() < BinaryProtocol.MAX_REQUEST_BYTES) {
+            flush();
+        }
+        int requestId = nextRequestId++;
+        BinaryProtocol.writeRequest(out, op, requestId, library, location, bookId, patronId);
+        return requestId;
+    }
+
+    public void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    // Read the next response, flushing any buffered requests first
+    public BinaryProtocol.Response receive() throws IOException {
+        if (out.position() > 0) {
+            flush();
+        }
+        fill(4);
+        int length = in.getInt(in.position());
+        if (length <= 0 || length > BinaryProtocol.MAX_RESPONSE_BYTES) {
+            throw new IOException("Bad response length: " + length);
+        }
+        fill(4 + length);
+        in.getInt();
+        return new BinaryProtocol.Response(in.getInt(), in.get(), in.getInt(), BinaryProtocol.getString(in));
+    }
+
+    // Send one request and wait for its response
+    public BinaryProtocol.Response call(byte op, String library, String location, String bookId, int patronId)
+            throws IOException {
+        send(op, library, location, bookId, patronId);
+        return receive();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Make at least count bytes readable, reading from the socket as needed
+    private void fill(int count) throws IOException {
+        if (in.remaining() >= count) {
+            return;
+        }
+        in.compact();
+        while (in.position() < count) {
+            if (channel.read(in) < 0) {
+                throw new EOFException("Server closed the connection.");
+            }
+        }
+        in.flip();
+    }
+}
@@ -0,0 +1,404 @@
+package com.library.server;
+
+import com.library.model.Book;
+import com.library.service.AdmissionClass;
+import com.library.service.AdmissionController;
+import com.library.service.LibraryService;
+import com.library.service.ServiceSaturatedException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Non-blocking TCP endpoint for the binary circulation protocol (see BinaryProtocol).
+ * One selector thread reads every complete frame from all ready connections, applies
+ * the whole round as one LibraryService batch (one lock hold, one save), then writes
+ * the responses back in request order. Each connection uses a pair of pooled direct
+ * buffers; a connection whose output buffer is full stops being read until it drains.
+ * Each batch takes one CIRCULATION slot from the AdmissionController without queueing for
+ * it, so the selector thread never waits; when no slot is free (e.g. HTTP clients sharing the
+ * controller hold them all), the whole batch is answered with STATUS_BUSY.
+ */
+public class BinaryCirculationServer implements AutoCloseable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final LibraryService libraryService;
+    private final AdmissionController admissionController;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread selectorThread;
+    private final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<>();
+    private final List<Request> pending = new ArrayList<>();
+    private final List<Connection> dirty = new ArrayList<>();
+    private volatile boolean running = true;
+    private volatile long batchCount;
+    private volatile long requestCount;
+
+    public BinaryCirculationServer(LibraryService libraryService, int port) throws IOException {
+        this(libraryService, port, new AdmissionController());
+    }
+
+    public BinaryCirculationServer(LibraryService libraryService, int port, AdmissionController admissionController)
+            throws IOException {
+        this.libraryService = libraryService;
+        this.admissionController = admissionController;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.selectorThread = new Thread(this::runSelector, "BinaryCirculationSelector");
+        this.selectorThread.setDaemon(true);
+    }
+
+    public void start() {
+        selectorThread.start();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    // Average requests applied per batch so far
+    public double getAverageBatchSize() {
+        long batches = batchCount;
+        return batches == 0 ? 0.0 : (double) requestCount / batches;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runSelector() {
+        try {
+            while (running) {
+                // Frames picked up while draining a connection are still waiting to be applied
+                if (pending.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.selectNow();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handleKey(key);
+                }
+                if (!pending.isEmpty()) {
+                    applyBatch();
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Binary circulation server stopped: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Shutting down anyway
+            }
+        }
+    }
+
+    private void handleKey(SelectionKey key) {
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                accept();
+                return;
+            }
+            Connection connection = (Connection) key.attachment();
+            if (key.isWritable()) {
+                flush(connection);
+            }
+            if (key.isValid() && key.isReadable()) {
+                read(connection);
+            }
+        } catch (IOException | IllegalArgumentException | BufferUnderflowException e) {
+            // Broken pipe or malformed frame: drop the connection
+            closeQuietly(key);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel, borrowBuffer(), borrowBuffer());
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    private void read(Connection connection) throws IOException {
+        int read = connection.channel.read(connection.in);
+        if (read < 0) {
+            closeQuietly(connection.key);
+            return;
+        }
+        parseFrames(connection);
+    }
+
+    // Queue every complete frame, leaving partial frames in the buffer for the next read
+    private void parseFrames(Connection connection) {
+        ByteBuffer in = connection.in;
+        in.flip();
+        try {
+            while (in.remaining() >= 4) {
+                int length = in.getInt(in.position());
+                if (length <= 0 || length > BinaryProtocol.MAX_REQUEST_BYTES) {
+                    throw new IllegalArgumentException("Bad frame length: " + length);
+                }
+                if (in.remaining() < 4 + length) {
+                    break;
+                }
+                if (connection.out.remaining() < (connection.queued + 1) * BinaryProtocol.MAX_RESPONSE_BYTES) {
+                    // No room to answer another request: stop reading until the client drains responses
+                    connection.key.interestOps(SelectionKey.OP_WRITE);
+                    break;
+                }
+
+                in.getInt();
+                int limit = in.limit();
+                int end = in.position() + length;
+                // Fields that overrun the frame fail with BufferUnderflowException instead of reading the next one
+                in.limit(end);
+                Request request = new Request(connection, in.get(), in.getInt(), BinaryProtocol.getString(in),
+                        BinaryProtocol.getString(in), BinaryProtocol.getString(in), in.getInt());
+                if (in.position() != end) {
+                    throw new IllegalArgumentException("Frame length does not match its fields.");
+                }
+                in.limit(limit);
+                pending.add(request);
+                connection.queued++;
+            }
+        } finally {
+            in.compact();
+        }
+    }
+
+    private void applyBatch() {
+        try {
+            admissionController.tryExecute(AdmissionClass.CIRCULATION, () -> {
+                libraryService.inBatch(() -> {
+                    for (Request request : pending) {
+                        execute(request);
+                    }
+                });
+                return null;
+            });
+        } catch (ServiceSaturatedException e) {
+            for (Request request : pending) {
+                request.status = BinaryProtocol.STATUS_BUSY;
+                request.issuedCopies = (int) Math.min(Integer.MAX_VALUE, e.getRetryAfterMillis());
+                request.message = e.getMessage();
+            }
+        } catch (IllegalStateException e) {
+            // The round's journal commit failed: none of its changes is durable
+            for (Request request : pending) {
+                request.status = BinaryProtocol.STATUS_ERROR;
+                request.issuedCopies = 0;
+                request.message = e.getMessage();
+            }
+        }
+        batchCount++;
+        requestCount += pending.size();
+
+        for (Request request : pending) {
+            Connection connection = request.connection;
+            connection.queued--;
+            if (!connection.channel.isOpen()) {
+                continue;
+            }
+            BinaryProtocol.writeResponse(connection.out, request.requestId, request.status, request.issuedCopies,
+                    request.message);
+            if (!connection.dirty) {
+                connection.dirty = true;
+                dirty.add(connection);
+            }
+        }
+        pending.clear();
+
+        for (Connection connection : dirty) {
+            connection.dirty = false;
+            try {
+                flush(connection);
+            } catch (IOException | IllegalArgumentException e) {
+                closeQuietly(connection.key);
+            }
+        }
+        dirty.clear();
+    }
+
+    // Runs inside the service batch; a named library is used without selecting it
+    private void execute(Request request) {
+        try {
+            boolean named = !request.library.isEmpty();
+            switch (request.op) {
+                case BinaryProtocol.OP_ISSUE:
+                    if (named) {
+                        libraryService.issueBook(request.library, request.location, request.bookId, request.patronId);
+                    } else {
+                        libraryService.issueBook(request.bookId, request.patronId);
+                    }
+                    break;
+                case BinaryProtocol.OP_RETURN:
+                    if (request.patronId < 0) {
+                        if (named) {
+                            libraryService.returnBook(request.library, request.location, request.bookId);
+                        } else {
+                            libraryService.returnBook(request.bookId);
+                        }
+                    } else if (named) {
+                        libraryService.returnBook(request.library, request.location, request.bookId, request.patronId);
+                    } else {
+                        libraryService.returnBook(request.bookId, request.patronId);
+                    }
+                    break;
+                case BinaryProtocol.OP_STATUS:
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown op code: " + request.op);
+            }
+            Book book = named ? libraryService.searchById(request.library, request.location, request.bookId)
+                    : libraryService.searchById(request.bookId);
+            if (book == null) {
+                throw new IllegalArgumentException("Book ID not found: " + request.bookId);
+            }
+            request.status = BinaryProtocol.STATUS_OK;
+            request.issuedCopies = book.getIssuedCopies();
+        } catch (IllegalArgumentException e) {
+            request.status = BinaryProtocol.STATUS_BAD_REQUEST;
+            request.message = e.getMessage();
+        } catch (IllegalStateException e) {
+            request.status = BinaryProtocol.STATUS_CONFLICT;
+            request.message = e.getMessage();
+        } catch (RuntimeException e) {
+            request.status = BinaryProtocol.STATUS_ERROR;
+            request.message = e.toString();
+        }
+    }
+
+    private void flush(Connection connection) throws IOException {
+        ByteBuffer out = connection.out;
+        out.flip();
+        try {
+            connection.channel.write(out);
+        } finally {
+            out.compact();
+        }
+        if (out.position() > 0) {
+            connection.key.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+        if (connection.key.interestOps() != SelectionKey.OP_READ) {
+            // Drained after back-pressure: resume reading and pick up frames already buffered
+            connection.key.interestOps(SelectionKey.OP_READ);
+            parseFrames(connection);
+        }
+    }
+
+    private void closeQuietly(SelectionKey key) {
+        key.cancel();
+        Object attachment = key.attachment();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Already broken
+        }
+        if (attachment instanceof Connection) {
+            Connection connection = (Connection) attachment;
+            if (connection.in != null) {
+                returnBuffer(connection.in);
+                returnBuffer(connection.out);
+                connection.in = null;
+                connection.out = null;
+            }
+        }
+    }
+
+    private ByteBuffer borrowBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private void returnBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        bufferPool.push(buffer);
+    }
+
+    private static final class Connection {
+        final SocketChannel channel;
+        ByteBuffer in;
+        ByteBuffer out;
+        SelectionKey key;
+        // Requests parsed but not yet answered
+        int queued;
+        boolean dirty;
+
+        Connection(SocketChannel channel, ByteBuffer in, ByteBuffer out) {
+            this.channel = channel;
+            this.in = in;
+            this.out = out;
+        }
+    }
+
+    private static final class Request {
+        final Connection connection;
+        final byte op;
+        final int requestId;
+        final String library;
+        final String location;
+        final String bookId;
+        final int patronId;
+        byte status;
+        int issuedCopies = -1;
+        String message = "";
+
+        Request(Connection connection, byte op, int requestId, String library, String location, String bookId,
+                int patronId) {
+            this.connection = connection;
+            this.op = op;
+            this.requestId = requestId;
+            this.library = library;
+            this.location = location;
+            this.bookId = bookId;
+            this.patronId = patronId;
+        }
+    }
+
+    /**
+     * Usage: BinaryCirculationServer [port] [dataFile]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 9090;
+        LibraryService service = args.length > 1 ? new LibraryService(Paths.get(args[1])) : new LibraryService();
+        BinaryCirculationServer server = new BinaryCirculationServer(service, port);
+        server.start();
+        System.out.println("Binary circulation endpoint listening on port " + server.getPort());
+        server.selectorThread.join();
+    }
+}
@@ -0,0 +1,124 @@
+package com.library.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format of the binary circulation protocol. Every frame starts with a 4-byte
+ * big-endian length of the bytes that follow.
+ *
+ * Request:  length | op (1) | requestId (4) | library | location | bookId | patronId (4)
+ * Response: length | requestId (4) | status (1) | issuedCopies (4) | message
+ *
+ * Strings are a 2-byte length followed by UTF-8 bytes. Responses on a connection come
+ * back in request order, so clients may pipeline any number of requests.
+ */
+public final class BinaryProtocol {
+    public static final byte OP_ISSUE = 1;
+    public static final byte OP_RETURN = 2;
+    public static final byte OP_STATUS = 3;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_BAD_REQUEST = 1;
+    public static final byte STATUS_CONFLICT = 2;
+    public static final byte STATUS_ERROR = 3;
+    // Refused by admission control; the issuedCopies field carries the retry delay in milliseconds
+    public static final byte STATUS_BUSY = 4;
+
+    static final int MAX_STRING_BYTES = 1024;
+    static final int MAX_REQUEST_BYTES = 4 + 1 + 4 + 3 * (2 + MAX_STRING_BYTES) + 4;
+    static final int MAX_MESSAGE_BYTES = 256;
+    static final int MAX_RESPONSE_BYTES = 4 + 4 + 1 + 4 + 2 + MAX_MESSAGE_BYTES;
+
+    private BinaryProtocol() {
+    }
+
+    static void writeRequest(ByteBuffer out, byte op, int requestId, String library, String location, String bookId,
+                             int patronId) {
+        int lengthPosition = out.position();
+        out.putInt(0);
+        out.put(op);
+        out.putInt(requestId);
+        putString(out, library, MAX_STRING_BYTES);
+        putString(out, location, MAX_STRING_BYTES);
+        putString(out, bookId, MAX_STRING_BYTES);
+        out.putInt(patronId);
+        out.putInt(lengthPosition, out.position() - lengthPosition - 4);
+    }
+
+    static void writeResponse(ByteBuffer out, int requestId, byte status, int issuedCopies, String message) {
+        int lengthPosition = out.position();
+        out.putInt(0);
+        out.putInt(requestId);
+        out.put(status);
+        out.putInt(issuedCopies);
+        putString(out, message, MAX_MESSAGE_BYTES);
+        out.putInt(lengthPosition, out.position() - lengthPosition - 4);
+    }
+
+    // Write a length-prefixed UTF-8 string, truncating to maxBytes
+    static void putString(ByteBuffer out, String value, int maxBytes) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, maxBytes);
+        out.putShort((short) length);
+        out.put(bytes, 0, length);
+    }
+
+    static String getString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        if (length > MAX_STRING_BYTES || length > in.remaining()) {
+            throw new IllegalArgumentException("Malformed string field of " + length + " bytes.");
+        }
+        if (in.hasArray()) {
+            String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decoded response frame.
+     */
+    public static final class Response {
+        private final int requestId;
+        private final byte status;
+        private final int issuedCopies;
+        private final String message;
+
+        Response(int requestId, byte status, int issuedCopies, String message) {
+            this.requestId = requestId;
+            this.status = status;
+            this.issuedCopies = issuedCopies;
+            this.message = message;
+        }
+
+        public int getRequestId() {
+            return requestId;
+        }
+
+        public byte getStatus() {
+            return status;
+        }
+
+        public boolean isOk() {
+            return status == STATUS_OK;
+        }
+
+        // Issued copies of the book after the operation, or -1 when it failed
+        public int getIssuedCopies() {
+            return issuedCopies;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        // Suggested back-off for a STATUS_BUSY response, 0 otherwise
+        public int getRetryAfterMillis() {
+            return status == STATUS_BUSY ? issuedCopies : 0;
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package com.library.server;
+
+import com.library.model.Book;
+import com.library.model.EBook;
+import com.library.model.Loan;
+import com.library.service.AdmissionClass;
+import com.library.service.AdmissionController;
+import com.library.service.ExportFormat;
+import com.library.service.ExportOptions;
+import com.library.service.LibraryInfo;
+import com.library.service.LibraryService;
+import com.library.service.LoanLedger;
+import com.library.service.ServiceSaturatedException;
+import com.library.util.VirtualThreads;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded HTTP/JSON API over LibraryService, built on the JDK's com.sun.net.httpserver.
+ * Each exchange runs on its own virtual thread (platform threads before Java 21), and
+ * connections are kept alive between requests. Book listings are streamed with chunked
+ * encoding so large catalogs are never built as one response string.
+ *
+ * Requests name their library with ?library=&location= (the current library when omitted). A named
+ * library is looked up by key without selecting it, so clients never move each other's or the
+ * console's selection.
+ * Reads take a SEARCH admission slot, issue/return CIRCULATION and exports CATALOG;
+ * a request the AdmissionController refuses gets 503 with Retry-After.
+ *
+ *   GET  /libraries
+ *   GET  /books?sort=title|author|id
+ *   GET  /books/{id}
+ *   GET  /search?title=... or ?author=...
+ *   POST /books/{id}/issue?patron=
+ *   POST /books/{id}/return?patron=
+ *   GET  /export?format=csv|jsonl|binary&category=&available=true&loans=true&gzip=true
+ *        (all libraries unless library= is given)
+ */
+public class LibraryHttpServer implements AutoCloseable {
+    private static final int STREAM_BUFFER_SIZE = 16 * 1024;
+
+    private final LibraryService libraryService;
+    private final AdmissionController admissionController;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public LibraryHttpServer(LibraryService libraryService, int port) throws IOException {
+        this(libraryService, port, new AdmissionController());
+    }
+
+    public LibraryHttpServer(LibraryService libraryService, int port, AdmissionController admissionController)
+            throws IOException {
+        this.libraryService = libraryService;
+        this.admissionController = admissionController;
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        this.executor = VirtualThreads.newPerTaskExecutor("LibraryHttp");
+        server.setExecutor(executor);
+        server.createContext("/libraries", exchange -> handle(exchange, this::libraries));
+        server.createContext("/books", exchange -> handle(exchange, this::books));
+        server.createContext("/search", exchange -> handle(exchange, this::search));
+        server.createContext("/export", exchange -> handle(exchange, this::export));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void libraries(HttpExchange exchange, Map<String, String> query) throws IOException {
+        requireMethod(exchange, "GET");
+        List<LibraryInfo> libraries = admissionController.execute(AdmissionClass.SEARCH, libraryService::getLibraries);
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < libraries.size(); i++) {
+            LibraryInfo library = libraries.get(i);
+            json.append(i == 0 ? "" : ",").append("{\"name\":").append(quote(library.getName()))
+                    .append(",\"location\":").append(quote(library.getLocation()))
+                    .append(",\"books\":").append(library.getBookCount()).append('}');
+        }
+        sendJson(exchange, 200, json.append(']').toString());
+    }
+
+    private void books(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String[] path = exchange.getRequestURI().getPath().split("/");
+        // path: "", "books", [id], [action]
+        if (path.length <= 2) {
+            requireMethod(exchange, "GET");
+            List<Book> listing = admissionController.execute(AdmissionClass.SEARCH,
+                    () -> sorted(query, query.getOrDefault("sort", "")));
+            streamBooks(exchange, listing);
+            return;
+        }
+
+        String bookId = path[2];
+        if (path.length == 3) {
+            requireMethod(exchange, "GET");
+            String json = admissionController.execute(AdmissionClass.SEARCH, () -> {
+                synchronized (libraryService) {
+                    Book book = searchById(query, bookId);
+                    if (book == null) {
+                        throw new IllegalArgumentException("Book not found: " + bookId);
+                    }
+                    return toJson(book);
+                }
+            });
+            sendJson(exchange, 200, json);
+            return;
+        }
+
+        requireMethod(exchange, "POST");
+        String action = path[3];
+        String json;
+        if ("issue".equals(action)) {
+            int patronId = parsePatron(query, LoanLedger.WALK_IN_PATRON);
+            json = admissionController.execute(AdmissionClass.CIRCULATION, () -> {
+                String library = query.get("library");
+                Loan loan = library == null ? libraryService.issueBook(bookId, patronId)
+                        : libraryService.issueBook(library, query.getOrDefault("location", ""), bookId, patronId);
+                return "{\"loanId\":" + loan.getLoanId() + ",\"bookId\":" + quote(loan.getBookId())
+                        + ",\"patronId\":" + loan.getPatronId() + ",\"dueAt\":" + loan.getDueAtMillis() + "}";
+            });
+        } else if ("return".equals(action)) {
+            json = admissionController.execute(AdmissionClass.CIRCULATION, () -> {
+                synchronized (libraryService) {
+                    String library = query.get("library");
+                    String location = query.getOrDefault("location", "");
+                    if (query.containsKey("patron")) {
+                        int patronId = parsePatron(query, LoanLedger.WALK_IN_PATRON);
+                        if (library == null) {
+                            libraryService.returnBook(bookId, patronId);
+                        } else {
+                            libraryService.returnBook(library, location, bookId, patronId);
+                        }
+                    } else if (library == null) {
+                        libraryService.returnBook(bookId);
+                    } else {
+                        libraryService.returnBook(library, location, bookId);
+                    }
+                    return toJson(searchById(query, bookId));
+                }
+            });
+        } else {
+            throw new IllegalArgumentException("Unknown book action: " + action);
+        }
+        sendJson(exchange, 200, json);
+    }
+
+    private void search(HttpExchange exchange, Map<String, String> query) throws IOException {
+        requireMethod(exchange, "GET");
+        List<Book> found = admissionController.execute(AdmissionClass.SEARCH, () -> {
+            String library = query.get("library");
+            String location = query.getOrDefault("location", "");
+            synchronized (libraryService) {
+                if (query.containsKey("title")) {
+                    return library == null ? libraryService.searchByTitle(query.get("title"))
+                            : libraryService.searchByTitle(library, location, query.get("title"));
+                } else if (query.containsKey("author")) {
+                    return library == null ? libraryService.searchByAuthor(query.get("author"))
+                            : libraryService.searchByAuthor(library, location, query.get("author"));
+                }
+            }
+            throw new IllegalArgumentException("Search needs a title or author parameter.");
+        });
+        streamBooks(exchange, found);
+    }
+
+    // Streams the dump straight into the chunked response body, holding a CATALOG admission slot throughout
+    private void export(HttpExchange exchange, Map<String, String> query) throws IOException {
+        requireMethod(exchange, "GET");
+        ExportOptions options = new ExportOptions()
+                .setFormat(ExportFormat.valueOf(query.getOrDefault("format", "jsonl").toUpperCase(Locale.ROOT)))
+                .setCategory(query.get("category"))
+                .setAvailableOnly(Boolean.parseBoolean(query.get("available")))
+                .setIncludeLoans(Boolean.parseBoolean(query.get("loans")))
+                .setGzip(Boolean.parseBoolean(query.get("gzip")));
+        if (query.containsKey("library")) {
+            options.setLibrary(query.get("library"), query.getOrDefault("location", ""));
+            if (!libraryService.libraryExists(options.getLibraryName(), options.getLibraryLocation())) {
+                throw new IllegalArgumentException("Library not found: " + options.getLibraryName());
+            }
+        }
+        // Errors after the headers go out can only cut the stream short, so check options first
+        options.validate();
+        String contentType = options.getFormat() == ExportFormat.CSV ? "text/csv"
+                : options.getFormat() == ExportFormat.JSONL ? "application/x-ndjson" : "application/octet-stream";
+        try {
+            admissionController.execute(AdmissionClass.CATALOG, () -> {
+                try {
+                    exchange.getResponseHeaders().set("Content-Type", options.isGzip() ? "application/gzip" : contentType);
+                    exchange.sendResponseHeaders(200, 0);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        return libraryService.exportBooks(options, Channels.newChannel(out));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // The book in the requested library, which stays unselected, or in the current one
+    private Book searchById(Map<String, String> query, String bookId) {
+        String library = query.get("library");
+        return library == null ? libraryService.searchById(bookId)
+                : libraryService.searchById(library, query.getOrDefault("location", ""), bookId);
+    }
+
+    private List<Book> sorted(Map<String, String> query, String sort) {
+        String library = query.get("library");
+        if (library == null) {
+            synchronized (libraryService) {
+                return sorted(sort);
+            }
+        }
+        String location = query.getOrDefault("location", "");
+        switch (sort) {
+            case "":
+                return libraryService.getAllBooks(library, location);
+            case "title":
+                return libraryService.sortByTitle(library, location);
+            case "author":
+                return libraryService.sortByAuthor(library, location);
+            case "id":
+                return libraryService.sortById(library, location);
+            default:
+                throw new IllegalArgumentException("Unknown sort: " + sort);
+        }
+    }
+
+    // Caller holds the service lock
+    private List<Book> sorted(String sort) {
+        switch (sort) {
+            case "":
+                return libraryService.getAllBooks();
+            case "title":
+                return libraryService.sortByTitle();
+            case "author":
+                return libraryService.sortByAuthor();
+            case "id":
+                return libraryService.sortById();
+            default:
+                throw new IllegalArgumentException("Unknown sort: " + sort);
+        }
+    }
+
+    // Chunked response written through a fixed buffer, one book at a time
+    private void streamBooks(HttpExchange exchange, List<Book> listing) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8),
+                STREAM_BUFFER_SIZE)) {
+            out.write('[');
+            for (int i = 0; i < listing.size(); i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                // Snapshot each book under the lock so a concurrent issue cannot tear its counters
+                String json;
+                synchronized (libraryService) {
+                    json = toJson(listing.get(i));
+                }
+                out.write(json);
+            }
+            out.write(']');
+        }
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        try {
+            handler.handle(exchange, parseQuery(exchange.getRequestURI().getRawQuery()));
+        } catch (MethodNotAllowedException e) {
+            sendError(exchange, 405, e.getMessage());
+        } catch (ServiceSaturatedException e) {
+            if (exchange.getResponseCode() == -1) {
+                exchange.getResponseHeaders().set("Retry-After", Long.toString((e.getRetryAfterMillis() + 999) / 1000));
+            }
+            sendError(exchange, 503, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            String message = e.getMessage() == null ? "Bad request." : e.getMessage();
+            sendError(exchange, message.contains("not found") ? 404 : 400, message);
+        } catch (IllegalStateException e) {
+            sendError(exchange, 409, e.getMessage());
+        } catch (RuntimeException e) {
+            sendError(exchange, 500, e.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!method.equals(exchange.getRequestMethod())) {
+            throw new MethodNotAllowedException(exchange.getRequestMethod() + " not allowed, use " + method + ".");
+        }
+    }
+
+    private static int parsePatron(Map<String, String> query, int defaultPatron) {
+        String patron = query.get("patron");
+        if (patron == null || patron.isEmpty()) {
+            return defaultPatron;
+        }
+        try {
+            return Integer.parseInt(patron);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid patron: " + patron);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            // Headers already sent (failure mid-stream); closing the exchange is all we can do
+            return;
+        }
+        sendJson(exchange, status, "{\"error\":" + quote(message) + "}");
+    }
+
+    static String toJson(Book book) {
+        return "{\"bookId\":" + quote(book.getBookId())
+                + ",\"title\":" + quote(book.getTitle())
+                + ",\"author\":" + quote(book.getAuthor())
+                + ",\"category\":" + quote(book.getCategory())
+                + ",\"type\":\"" + (book instanceof EBook ? "EBOOK" : "BOOK") + "\""
+                + ",\"totalCopies\":" + book.getTotalCopies()
+                + ",\"issuedCopies\":" + book.getIssuedCopies()
+                + ",\"available\":" + book.isAvailable() + "}";
+    }
+
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange, Map<String, String> query) throws IOException;
+    }
+
+    private static final class MethodNotAllowedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        MethodNotAllowedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Usage: LibraryHttpServer [port] [dataFile] [traceFile]
+     * With a trace file, every service call is captured for WorkloadReplayer until shutdown.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        LibraryService service = args.length > 1 ? new LibraryService(Paths.get(args[1])) : new LibraryService();
+        if (args.length > 2) {
+            service.startCapture(Paths.get(args[2]));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    System.out.println("Captured " + service.stopCapture() + " calls to " + args[2]);
+                } catch (IOException e) {
+                    System.out.println("Warning: Unable to close workload trace. " + e.getMessage());
+                }
+            }));
+        }
+        LibraryHttpServer httpServer = new LibraryHttpServer(service, port);
+        httpServer.start();
+        System.out.println("Library HTTP API listening on port " + httpServer.getPort()
+                + (VirtualThreads.isSupported() ? " (virtual threads)" : " (platform threads)"));
+    }
+}
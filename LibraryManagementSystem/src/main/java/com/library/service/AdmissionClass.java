@@ -0,0 +1,11 @@
+package com.library.service;
+
+/**
+ * Groups of service operations that get separate admission limits,
+ * so a burst in one group cannot starve the others.
+ */
+public enum AdmissionClass {
+    SEARCH,
+    CIRCULATION,
+    CATALOG
+}
@@ -0,0 +1,151 @@
+package com.library.service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounds how many operations of each AdmissionClass run and wait at once.
+ * Callers beyond the concurrency limit queue up to a bounded depth; past that,
+ * or after the queue timeout, they fail fast with ServiceSaturatedException.
+ * tryExecute() never queues, for callers such as a selector thread that must not block.
+ */
+public class AdmissionController {
+    // Indexed by AdmissionClass ordinal; replaced as a whole on reconfiguration
+    private volatile Lane[] lanes;
+
+    public AdmissionController() {
+        this.lanes = new Lane[AdmissionClass.values().length];
+        int cores = Runtime.getRuntime().availableProcessors();
+        configure(AdmissionClass.SEARCH, cores * 2, 256, 50);
+        configure(AdmissionClass.CIRCULATION, 4, 512, 200);
+        configure(AdmissionClass.CATALOG, 2, 64, 500);
+    }
+
+    // Replace the limits for one class; operations already admitted keep their slots
+    public synchronized void configure(AdmissionClass admissionClass, int maxConcurrent, int maxQueued,
+                                       long queueTimeoutMillis) {
+        if (maxConcurrent < 1 || maxQueued < 0 || queueTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Invalid admission limits for " + admissionClass);
+        }
+        Lane[] updated = lanes.clone();
+        updated[admissionClass.ordinal()] = new Lane(maxConcurrent, maxQueued, queueTimeoutMillis);
+        lanes = updated;
+    }
+
+    public <T> T execute(AdmissionClass admissionClass, Supplier<T> operation) {
+        Lane lane = lanes[admissionClass.ordinal()];
+        lane.acquire(admissionClass);
+        try {
+            return operation.get();
+        } finally {
+            lane.release();
+        }
+    }
+
+    // Run the operation only if a slot is free right now; otherwise fail at once, without queueing
+    public <T> T tryExecute(AdmissionClass admissionClass, Supplier<T> operation) {
+        Lane lane = lanes[admissionClass.ordinal()];
+        lane.tryAcquire(admissionClass);
+        try {
+            return operation.get();
+        } finally {
+            lane.release();
+        }
+    }
+
+    public int getQueueDepth(AdmissionClass admissionClass) {
+        return lanes[admissionClass.ordinal()].waiting.get();
+    }
+
+    public int getPeakQueueDepth(AdmissionClass admissionClass) {
+        return lanes[admissionClass.ordinal()].peakWaiting.get();
+    }
+
+    public int getInFlight(AdmissionClass admissionClass) {
+        Lane lane = lanes[admissionClass.ordinal()];
+        return lane.maxConcurrent - lane.permits.availablePermits();
+    }
+
+    public long getAdmitted(AdmissionClass admissionClass) {
+        return lanes[admissionClass.ordinal()].admitted.get();
+    }
+
+    public long getRejected(AdmissionClass admissionClass) {
+        return lanes[admissionClass.ordinal()].rejected.get();
+    }
+
+    public String getFormattedStats() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-12s %8s %8s %8s %10s %10s%n",
+                "Class", "InFlight", "Queued", "Peak", "Admitted", "Rejected"));
+        for (AdmissionClass admissionClass : AdmissionClass.values()) {
+            sb.append(String.format("%-12s %8d %8d %8d %10d %10d%n", admissionClass,
+                    getInFlight(admissionClass), getQueueDepth(admissionClass), getPeakQueueDepth(admissionClass),
+                    getAdmitted(admissionClass), getRejected(admissionClass)));
+        }
+        return sb.toString();
+    }
+
+    private static final class Lane {
+        final int maxConcurrent;
+        final int maxQueued;
+        final long queueTimeoutMillis;
+        final Semaphore permits;
+        final AtomicInteger waiting = new AtomicInteger();
+        final AtomicInteger peakWaiting = new AtomicInteger();
+        final AtomicLong admitted = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+
+        Lane(int maxConcurrent, int maxQueued, long queueTimeoutMillis) {
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueued = maxQueued;
+            this.queueTimeoutMillis = queueTimeoutMillis;
+            this.permits = new Semaphore(maxConcurrent, true);
+        }
+
+        void acquire(AdmissionClass admissionClass) {
+            if (permits.tryAcquire()) {
+                admitted.incrementAndGet();
+                return;
+            }
+
+            int depth = waiting.incrementAndGet();
+            try {
+                if (depth > maxQueued) {
+                    throw reject(admissionClass, "queue is full (" + maxQueued + " waiting)");
+                }
+                peakWaiting.accumulateAndGet(depth, Math::max);
+                if (!permits.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    throw reject(admissionClass, "timed out after " + queueTimeoutMillis + " ms in queue");
+                }
+                admitted.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw reject(admissionClass, "interrupted while queued");
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+
+        void tryAcquire(AdmissionClass admissionClass) {
+            if (!permits.tryAcquire()) {
+                throw reject(admissionClass, "has no free slot (" + maxConcurrent + " in flight)");
+            }
+            admitted.incrementAndGet();
+        }
+
+        void release() {
+            permits.release();
+        }
+
+        private ServiceSaturatedException reject(AdmissionClass admissionClass, String reason) {
+            rejected.incrementAndGet();
+            return new ServiceSaturatedException(admissionClass,
+                    "Service busy, " + admissionClass + " " + reason + ". Please retry.",
+                    Math.max(10, queueTimeoutMillis));
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.library.service;
+
+import com.library.model.Book;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking facade over LibraryService.
+ * Every operation runs on a bounded executor and returns a CompletableFuture.
+ * Identical reads that are already in flight share one execution instead of
+ * queueing a second one. Reads hold the LibraryService monitor while they run,
+ * like its synchronized mutations do.
+ */
+public class AsyncLibraryService implements AutoCloseable {
+    private final LibraryService libraryService;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, CompletableFuture<?>> inFlightReads;
+
+    public AsyncLibraryService(LibraryService libraryService) {
+        this(libraryService, Runtime.getRuntime().availableProcessors(), 10_000);
+    }
+
+    public AsyncLibraryService(LibraryService libraryService, int threads, int queueCapacity) {
+        if (threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Thread count and queue capacity must be greater than 0.");
+        }
+        this.libraryService = libraryService;
+        this.inFlightReads = new ConcurrentHashMap<>();
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, "AsyncLibraryService-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public CompletableFuture<Boolean> issueBook(String bookId) {
+        return submit(() -> libraryService.issueBook(bookId));
+    }
+
+    public CompletableFuture<Boolean> returnBook(String bookId) {
+        return submit(() -> libraryService.returnBook(bookId));
+    }
+
+    public CompletableFuture<Boolean> addBook(Book book) {
+        return submit(() -> libraryService.addBook(book));
+    }
+
+    public CompletableFuture<Boolean> deleteBook(String bookId) {
+        return submit(() -> libraryService.deleteBook(bookId));
+    }
+
+    public CompletableFuture<Book> searchById(String bookId) {
+        return coalesce("id:" + bookId, () -> libraryService.searchById(bookId));
+    }
+
+    public CompletableFuture<List<Book>> searchByTitle(String title) {
+        return coalesceList("title:" + title.toLowerCase(), () -> libraryService.searchByTitle(title));
+    }
+
+    public CompletableFuture<List<Book>> searchByAuthor(String author) {
+        return coalesceList("author:" + author.toLowerCase(), () -> libraryService.searchByAuthor(author));
+    }
+
+    public CompletableFuture<List<Book>> sortByTitle() {
+        return coalesceList("sort:title", libraryService::sortByTitle);
+    }
+
+    public CompletableFuture<List<Book>> sortByAuthor() {
+        return coalesceList("sort:author", libraryService::sortByAuthor);
+    }
+
+    public CompletableFuture<List<Book>> sortById() {
+        return coalesceList("sort:id", libraryService::sortById);
+    }
+
+    public CompletableFuture<List<Book>> getAllBooks() {
+        return coalesceList("all", libraryService::getAllBooks);
+    }
+
+    // Number of distinct reads currently executing or queued
+    public int getInFlightReadCount() {
+        return inFlightReads.size();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> operation) {
+        try {
+            return CompletableFuture.supplyAsync(operation, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // Each caller gets its own copy so a shared result list is never mutated across callers
+    private CompletableFuture<List<Book>> coalesceList(String query, Supplier<List<Book>> operation) {
+        return coalesce(query, operation).thenApply(ArrayList::new);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> coalesce(String query, Supplier<T> operation) {
+        // Reads are relative to the selected library, so it is part of the key
+        String library;
+        synchronized (libraryService) {
+            library = currentLibrary();
+        }
+        String key = library + "::" + query;
+
+        CompletableFuture<T> created = new CompletableFuture<>();
+        CompletableFuture<T> existing = (CompletableFuture<T>) inFlightReads.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            executor.execute(() -> {
+                T result;
+                try {
+                    // Writers on this pool change the books and indexes under the service monitor
+                    synchronized (libraryService) {
+                        if (!library.equals(currentLibrary())) {
+                            throw new IllegalStateException("Selected library changed before the read ran.");
+                        }
+                        result = operation.get();
+                    }
+                } catch (Throwable t) {
+                    inFlightReads.remove(key, created);
+                    created.completeExceptionally(t);
+                    return;
+                }
+                // Unregister before completing so later callers start a fresh read
+                inFlightReads.remove(key, created);
+                created.complete(result);
+            });
+        } catch (RejectedExecutionException e) {
+            inFlightReads.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    private String currentLibrary() {
+        return libraryService.getCurrentLibraryName() + "::" + libraryService.getCurrentLibraryLocation();
+    }
+}
@@ -0,0 +1,288 @@
+package com.library.service;
+
+import com.library.model.Book;
+import com.library.util.LongList;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Streaming reader/validator behind LibraryService.importBooks.
+ * Lines are read in chunks, then trimmed, validated and turned into Books in parallel on a
+ * fixed pool, with only a few chunks in flight; chunks are merged back in file order so
+ * duplicates inside the file are reported against the later row. Besides the chunks in
+ * flight, memory holds only the Books accepted so far, which the import then adds.
+ * CSV files need a header row naming the columns (same names as the data file fields:
+ * bookId, title, author, category, totalCopies, issuedCopies, type, fileFormat, fileSizeMB),
+ * one record per line. JSONL files hold one book object per line.
+ */
+final class BookImporter {
+    private static final int CHUNK_LINES = 2048;
+
+    private final LibraryService rowParser;
+    private final int threads;
+
+    BookImporter(LibraryService rowParser, int threads) {
+        this.rowParser = rowParser;
+        this.threads = Math.max(1, threads);
+    }
+
+    // Read and validate every row, returning the valid, file-unique rows in file order as Books
+    List<Row> read(Path file, ImportReport report) throws IOException {
+        boolean csv = isCsv(file);
+        List<Row> accepted = new ArrayList<>();
+        Set<String> seenIds = new HashSet<>();
+        ArrayDeque<Future<List<Row>>> inFlight = new ArrayDeque<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "BookImportValidator");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String[] header = null;
+            List<String> chunk = new ArrayList<>(CHUNK_LINES);
+            LongList chunkLines = new LongList(CHUNK_LINES);
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                if (csv && header == null) {
+                    header = parseHeader(line);
+                    continue;
+                }
+                chunk.add(line);
+                chunkLines.add(lineNumber);
+                if (chunk.size() == CHUNK_LINES) {
+                    inFlight.add(submit(pool, chunk, chunkLines, header));
+                    chunk = new ArrayList<>(CHUNK_LINES);
+                    chunkLines = new LongList(CHUNK_LINES);
+                    if (inFlight.size() > threads * 2) {
+                        merge(await(inFlight.poll()), accepted, seenIds, report);
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                inFlight.add(submit(pool, chunk, chunkLines, header));
+            }
+            while (!inFlight.isEmpty()) {
+                merge(await(inFlight.poll()), accepted, seenIds, report);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return accepted;
+    }
+
+    private Future<List<Row>> submit(ExecutorService pool, List<String> lines, LongList lineNumbers, String[] header) {
+        return pool.submit(() -> {
+            List<Row> rows = new ArrayList<>(lines.size());
+            for (int i = 0; i < lines.size(); i++) {
+                rows.add(parseAndValidate(lineNumbers.get(i), lines.get(i), header));
+            }
+            return rows;
+        });
+    }
+
+    private void merge(List<Row> rows, List<Row> accepted, Set<String> seenIds, ImportReport report) {
+        for (Row row : rows) {
+            report.rowRead();
+            if (row.error != null) {
+                report.error(row.lineNumber, row.bookId, row.error);
+            } else if (!seenIds.add(row.bookId)) {
+                report.error(row.lineNumber, row.bookId, "Duplicate book ID in file.");
+            } else {
+                accepted.add(row);
+            }
+        }
+    }
+
+    private Row parseAndValidate(long lineNumber, String line, String[] header) {
+        Map<String, String> fields;
+        try {
+            fields = header != null ? toCsvRow(header, line) : rowParser.parseObject(line.trim());
+        } catch (IllegalArgumentException e) {
+            return new Row(lineNumber, "", null, e.getMessage());
+        }
+        // Store the values as validated, the same way the Add Book form trims its input
+        fields.replaceAll((column, value) -> value == null ? null : value.trim());
+        String bookId = trimmed(fields.get("bookId"));
+        fields.put("bookId", bookId);
+        String error = validate(fields);
+        return new Row(lineNumber, bookId, error == null ? rowParser.fromBookRow(fields) : null, error);
+    }
+
+    // Same rules as the Add Book form; returns null when the row is valid
+    private static String validate(Map<String, String> fields) {
+        if (fields.get("bookId").isEmpty()) {
+            return "Missing book ID.";
+        }
+        if (trimmed(fields.get("title")).isEmpty()) {
+            return "Missing title.";
+        }
+        String author = trimmed(fields.get("author"));
+        if (!author.matches(Book.AUTHOR_NAME_PATTERN)) {
+            return "Invalid author name: '" + author + "'.";
+        }
+
+        String type = trimmed(fields.get("type")).toUpperCase(Locale.ROOT);
+        if (!type.isEmpty() && !"BOOK".equals(type) && !"EBOOK".equals(type)) {
+            return "Unknown type: " + fields.get("type") + ".";
+        }
+
+        int totalCopies = 1;
+        String total = trimmed(fields.get("totalCopies"));
+        if (!total.isEmpty()) {
+            try {
+                totalCopies = Integer.parseInt(total);
+            } catch (NumberFormatException e) {
+                return "Total copies is not a number: " + total + ".";
+            }
+            if (totalCopies < 1) {
+                return "Total copies must be greater than 0.";
+            }
+        }
+        String issued = trimmed(fields.get("issuedCopies"));
+        if (!issued.isEmpty()) {
+            try {
+                int issuedCopies = Integer.parseInt(issued);
+                if (issuedCopies < 0 || issuedCopies > totalCopies) {
+                    return "Issued copies must be between 0 and " + totalCopies + ".";
+                }
+            } catch (NumberFormatException e) {
+                return "Issued copies is not a number: " + issued + ".";
+            }
+        }
+        String fileSize = trimmed(fields.get("fileSizeMB"));
+        if ("EBOOK".equals(type) && !fileSize.isEmpty()) {
+            try {
+                if (Double.parseDouble(fileSize) < 0) {
+                    return "File size cannot be negative.";
+                }
+            } catch (NumberFormatException e) {
+                return "File size is not a number: " + fileSize + ".";
+            }
+        }
+        return null;
+    }
+
+    private static String[] parseHeader(String line) {
+        List<String> columns = splitCsv(line);
+        String[] header = new String[columns.size()];
+        boolean hasBookId = false;
+        for (int i = 0; i < header.length; i++) {
+            header[i] = columns.get(i).trim();
+            hasBookId |= "bookId".equals(header[i]);
+        }
+        if (!hasBookId) {
+            throw new IllegalArgumentException("CSV header must contain a bookId column: " + line);
+        }
+        return header;
+    }
+
+    private static Map<String, String> toCsvRow(String[] header, String line) {
+        List<String> values = splitCsv(line);
+        if (values.size() > header.length) {
+            throw new IllegalArgumentException("Row has " + values.size() + " fields but the header has " + header.length + ".");
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            fields.put(header[i], values.get(i));
+        }
+        return fields;
+    }
+
+    // RFC 4180 fields within one line: commas separate, quotes wrap, "" is a literal quote
+    private static List<String> splitCsv(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field.");
+        }
+        values.add(field.toString());
+        return values;
+    }
+
+    private static boolean isCsv(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return true;
+        }
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+            return false;
+        }
+        throw new IllegalArgumentException("Unsupported import file (use .csv, .jsonl or .ndjson): " + file);
+    }
+
+    private static String trimmed(String value) {
+        return value == null ? "" : value.trim();
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Import validation failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * One parsed input row; error is null when the row passed validation.
+     */
+    static final class Row {
+        final long lineNumber;
+        final String bookId;
+        // Null when the row is invalid
+        final Book book;
+        final String error;
+
+        Row(long lineNumber, String bookId, Book book, String error) {
+            this.lineNumber = lineNumber;
+            this.bookId = bookId;
+            this.book = book;
+            this.error = error;
+        }
+    }
+}
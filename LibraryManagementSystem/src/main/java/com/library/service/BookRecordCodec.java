@@ -0,0 +1,164 @@
+package com.library.service;
+
+import com.library.model.Book;
+import com.library.model.EBook;
+import com.library.model.Loan;
+import com.library.model.Patron;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary encoding of catalog records, shared by binary exports and snapshots.
+ * A stream is a header followed by tagged records and an END tag. Books and loans belong
+ * to the most recent LIBRARY record, so library names are written once per library
+ * rather than on every row. Strings are a 4-byte length and UTF-8 bytes. Snapshots follow the
+ * LIBRARY record of a library kept in a BookStore with a STORE record naming the store's kind;
+ * exports never contain one.
+ */
+public final class BookRecordCodec {
+    public static final int MAGIC = 0x4C424B31; // "LBK1"
+
+    public static final byte TAG_END = 0;
+    public static final byte TAG_LIBRARY = 1;
+    public static final byte TAG_BOOK = 2;
+    public static final byte TAG_LOAN = 3;
+    public static final byte TAG_PATRON = 4;
+    public static final byte TAG_STORE = 5;
+
+    private static final byte TYPE_BOOK = 0;
+    private static final byte TYPE_EBOOK = 1;
+    private static final int MAX_STRING_BYTES = 1 << 20;
+
+    private BookRecordCodec() {
+    }
+
+    public static void writeHeader(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+    }
+
+    public static void readHeader(DataInput in) throws IOException {
+        int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("Not a binary catalog stream (magic " + Integer.toHexString(magic) + ").");
+        }
+    }
+
+    public static void writeLibrary(DataOutput out, String name, String location) throws IOException {
+        out.writeByte(TAG_LIBRARY);
+        writeString(out, name);
+        writeString(out, location);
+    }
+
+    public static void writeStore(DataOutput out, String kind) throws IOException {
+        out.writeByte(TAG_STORE);
+        writeString(out, kind);
+    }
+
+    public static void writeBook(DataOutput out, Book book) throws IOException {
+        out.writeByte(TAG_BOOK);
+        boolean isEbook = book instanceof EBook;
+        out.writeByte(isEbook ? TYPE_EBOOK : TYPE_BOOK);
+        writeString(out, book.getBookId());
+        writeString(out, book.getTitle());
+        writeString(out, book.getAuthor());
+        writeString(out, book.getCategory());
+        out.writeInt(book.getTotalCopies());
+        out.writeInt(book.getIssuedCopies());
+        if (isEbook) {
+            EBook eBook = (EBook) book;
+            writeString(out, eBook.getFileFormat());
+            out.writeDouble(eBook.getFileSizeMB());
+        }
+    }
+
+    public static void writeLoan(DataOutput out, Loan loan) throws IOException {
+        out.writeByte(TAG_LOAN);
+        out.writeLong(loan.getLoanId());
+        writeString(out, loan.getBookId());
+        out.writeInt(loan.getPatronId());
+        out.writeLong(loan.getIssuedAtMillis());
+        out.writeLong(loan.getDueAtMillis());
+    }
+
+    public static void writePatron(DataOutput out, Patron patron) throws IOException {
+        out.writeByte(TAG_PATRON);
+        out.writeInt(patron.getPatronId());
+        writeString(out, patron.getName());
+    }
+
+    public static void writeEnd(DataOutput out) throws IOException {
+        out.writeByte(TAG_END);
+    }
+
+    // Read the tag of the next record
+    public static byte readTag(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        if (tag < TAG_END || tag > TAG_STORE) {
+            throw new IOException("Unknown record tag: " + tag);
+        }
+        return tag;
+    }
+
+    // Body of a LIBRARY record as {name, location}
+    public static String[] readLibrary(DataInput in) throws IOException {
+        return new String[]{readString(in), readString(in)};
+    }
+
+    // Body of a STORE record: the BookStore kind
+    public static String readStore(DataInput in) throws IOException {
+        return readString(in);
+    }
+
+    public static Book readBook(DataInput in) throws IOException {
+        byte type = in.readByte();
+        String bookId = readString(in);
+        String title = readString(in);
+        String author = readString(in);
+        String category = readString(in);
+        int totalCopies = in.readInt();
+        int issuedCopies = in.readInt();
+        Book book;
+        if (type == TYPE_EBOOK) {
+            book = new EBook(bookId, title, author, category, totalCopies, readString(in), in.readDouble());
+        } else if (type == TYPE_BOOK) {
+            book = new Book(bookId, title, author, category, totalCopies);
+        } else {
+            throw new IOException("Unknown book type: " + type);
+        }
+        book.setIssuedCopies(issuedCopies);
+        return CatalogStrings.intern(book);
+    }
+
+    public static Loan readLoan(DataInput in, String libraryName, String libraryLocation) throws IOException {
+        long loanId = in.readLong();
+        String bookId = readString(in);
+        int patronId = in.readInt();
+        long issuedAt = in.readLong();
+        long dueAt = in.readLong();
+        return new Loan(loanId, libraryName, libraryLocation, bookId, patronId, issuedAt, dueAt);
+    }
+
+    public static Patron readPatron(DataInput in) throws IOException {
+        int patronId = in.readInt();
+        return new Patron(patronId, readString(in));
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IOException("Corrupt string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,188 @@
+package com.library.service;
+
+import com.library.model.Book;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compact storage for a large catalog that keeps book fields out of Book objects. Books are
+ * addressed by an int row handle: ColumnarBookStore numbers rows densely, OffHeapBookStore uses
+ * record addresses. Stats and filters run over the stored fields without creating Book objects.
+ * Implementations are not thread-safe.
+ */
+public interface BookStore {
+    int size();
+
+    // Kind saved with a library kept in this store, so the next load refills an ofKind() store;
+    // null saves the library's books as objects
+    default String kind() {
+        return null;
+    }
+
+    // An empty store of a saved kind
+    static BookStore ofKind(String kind) {
+        switch (kind) {
+            case ColumnarBookStore.KIND:
+                return new ColumnarBookStore();
+            case OffHeapBookStore.KIND:
+                return new OffHeapBookStore();
+            default:
+                throw new IllegalArgumentException("Unknown book store kind: " + kind);
+        }
+    }
+
+    // Store the book's fields and return its row; the Book itself is not kept
+    int add(Book book);
+
+    // Row of the book, or -1 if it is not stored
+    int rowOf(String bookId);
+
+    // Row at a scan position from 0 to size() - 1; removals move the last row into the gap
+    int rowAt(int position);
+
+    // Scan position of a row; the inverse of rowAt()
+    int positionOf(int row);
+
+    boolean remove(String bookId);
+
+    String getBookId(int row);
+
+    String getTitle(int row);
+
+    String getAuthor(int row);
+
+    String getCategory(int row);
+
+    int getTotalCopies(int row);
+
+    int getIssuedCopies(int row);
+
+    default int getRemainingCopies(int row) {
+        return getTotalCopies(row) - getIssuedCopies(row);
+    }
+
+    default boolean isAvailable(int row) {
+        return getRemainingCopies(row) > 0;
+    }
+
+    boolean isEBook(int row);
+
+    // File format of an e-book row; null for printed books
+    String getFileFormat(int row);
+
+    double getFileSizeMB(int row);
+
+    // Issue a copy with the same rules as Book.issueBook(): printed books count it,
+    // e-books are downloads and only need to be available. Returns false if not available.
+    boolean issue(int row);
+
+    // Return a copy as Book.returnBook() does; false if none is issued
+    boolean returnCopy(int row);
+
+    // Overwrite the issued count, e.g. with a Book copy's count after it was issued or returned
+    void setIssuedCopies(int row, int issuedCopies);
+
+    // Read-only view of one row
+    BookView view(int row);
+
+    // Materialize a row as a standalone Book or EBook
+    Book toBook(int row);
+
+    // Books with at least one copy on the shelf
+    int countAvailable();
+
+    long sumIssuedCopies();
+
+    long sumTotalCopies();
+
+    int countEBooks();
+
+    // Books per category, indexed by CatalogStrings.CATEGORIES code
+    int[] countByCategory();
+
+    // Books per category name, in dictionary order; categories without books are left out
+    default Map<String, Integer> categoryTotals() {
+        int[] counts = countByCategory();
+        Map<String, Integer> totals = new LinkedHashMap<>();
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] > 0) {
+                totals.put(CatalogStrings.CATEGORIES.decode(code), counts[code]);
+            }
+        }
+        return totals;
+    }
+
+    // Rows with at least one copy on the shelf
+    int[] availableRows();
+
+    // Rows whose author matches ignoring case, like LibraryService.searchByAuthor()
+    int[] rowsByAuthor(String author);
+
+    // Rows in the category, matched exactly
+    int[] rowsByCategory(String category);
+
+    /**
+     * A book as one row of a BookStore: the getters of Book, read from the store.
+     * Holds only the store and row, so scanning a store allocates no Book objects.
+     */
+    final class BookView {
+        private final BookStore store;
+        private final int row;
+
+        BookView(BookStore store, int row) {
+            this.store = store;
+            this.row = row;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public String getBookId() {
+            return store.getBookId(row);
+        }
+
+        public String getTitle() {
+            return store.getTitle(row);
+        }
+
+        public String getAuthor() {
+            return store.getAuthor(row);
+        }
+
+        public String getCategory() {
+            return store.getCategory(row);
+        }
+
+        public int getTotalCopies() {
+            return store.getTotalCopies(row);
+        }
+
+        public int getIssuedCopies() {
+            return store.getIssuedCopies(row);
+        }
+
+        public int getRemainingCopies() {
+            return store.getRemainingCopies(row);
+        }
+
+        public boolean isAvailable() {
+            return store.isAvailable(row);
+        }
+
+        public boolean isEBook() {
+            return store.isEBook(row);
+        }
+
+        public Book toBook() {
+            return store.toBook(row);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("BookView[ID=%s, Title=%s, Author=%s, Available=%s, Remaining=%d]",
+                    getBookId(), getTitle(), getAuthor(), isAvailable(), getRemainingCopies());
+        }
+    }
+}
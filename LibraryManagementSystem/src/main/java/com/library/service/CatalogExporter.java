@@ -0,0 +1,300 @@
+package com.library.service;
+
+import com.library.model.Book;
+import com.library.model.EBook;
+import com.library.model.Loan;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming export behind LibraryService.exportBooks.
+ * Each library is walked in slices of SLICE_BOOKS: a slice is encoded into a reusable
+ * buffer while holding the service lock, then written to the channel after releasing it,
+ * so a slow reader never blocks circulation for the whole dump. The export is not a
+ * point-in-time snapshot; books added during the export may or may not be included.
+ */
+public final class CatalogExporter {
+    private static final int SLICE_BOOKS = 512;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    // Recently exported books, used to find our place again after concurrent deletes
+    private static final int RESYNC_WINDOW = 64;
+    private static final String CSV_HEADER = "libraryName,libraryLocation,bookId,title,author,category,type,"
+            + "totalCopies,issuedCopies,available,fileFormat,fileSizeMB\n";
+
+    private final LibraryService libraryService;
+    private final ExportOptions options;
+    private final ByteArrayOutputStream slice = new ByteArrayOutputStream(STREAM_BUFFER_SIZE);
+    private final DataOutputStream sliceData = new DataOutputStream(slice);
+    private final Book[] recent = new Book[RESYNC_WINDOW];
+    private long recentCount;
+
+    CatalogExporter(LibraryService libraryService, ExportOptions options) {
+        options.validate();
+        this.libraryService = libraryService;
+        this.options = options;
+    }
+
+    // Write the export and return the number of books written
+    long export(WritableByteChannel channel) throws IOException {
+        List<String> keys = libraryService.exportKeys(options.getLibraryName(), options.getLibraryLocation());
+        OutputStream out = Channels.newOutputStream(channel);
+        GZIPOutputStream gzip = null;
+        if (options.isGzip()) {
+            gzip = new GZIPOutputStream(out, STREAM_BUFFER_SIZE);
+            out = gzip;
+        }
+        out = new BufferedOutputStream(out, STREAM_BUFFER_SIZE);
+
+        long exported = 0;
+        if (options.getFormat() == ExportFormat.CSV) {
+            out.write(CSV_HEADER.getBytes(StandardCharsets.UTF_8));
+        } else if (options.getFormat() == ExportFormat.BINARY) {
+            BookRecordCodec.writeHeader(sliceData);
+            flushSlice(out);
+        }
+        for (String key : keys) {
+            exported += exportLibrary(key, out);
+        }
+        if (options.getFormat() == ExportFormat.BINARY) {
+            BookRecordCodec.writeEnd(sliceData);
+            flushSlice(out);
+        }
+
+        // Finish the gzip trailer and drain buffers without closing the caller's channel
+        out.flush();
+        if (gzip != null) {
+            gzip.finish();
+        }
+        return exported;
+    }
+
+    private long exportLibrary(String key, OutputStream out) throws IOException {
+        long exported = 0;
+        int position = 0;
+        String name = null;
+        String location = null;
+        recentCount = 0;
+        // Walks the library instead of position once it keeps its books in a store
+        LibraryCatalog.StoreScan scan = null;
+
+        try {
+            while (true) {
+                synchronized (libraryService) {
+                    LibraryCatalog catalog = libraryService.catalogForKey(key);
+                    if (catalog == null) {
+                        // Library deleted mid-export
+                        break;
+                    }
+                    if (name == null) {
+                        name = catalog.name;
+                        location = catalog.location;
+                        if (options.getFormat() == ExportFormat.BINARY) {
+                            BookRecordCodec.writeLibrary(sliceData, name, location);
+                        }
+                    }
+                    if (catalog.isStored()) {
+                        // Store copies would fail resync's identity check; the scan tracks rows deletes move
+                        if (scan == null) {
+                            scan = catalog.openScan(position);
+                        }
+                        List<Book> slice = scan.nextSlice(SLICE_BOOKS);
+                        if (slice.isEmpty()) {
+                            break;
+                        }
+                        for (Book book : slice) {
+                            if (matches(book)) {
+                                writeBook(name, location, book);
+                                exported++;
+                            }
+                        }
+                    } else {
+                        List<Book> books = catalog.books();
+                        position = resync(books, position);
+                        int end = Math.min(books.size(), position + SLICE_BOOKS);
+                        for (; position < end; position++) {
+                            Book book = books.get(position);
+                            recent[(int) (recentCount++ % RESYNC_WINDOW)] = book;
+                            if (matches(book)) {
+                                writeBook(name, location, book);
+                                exported++;
+                            }
+                        }
+                        if (position >= books.size()) {
+                            break;
+                        }
+                    }
+                }
+                flushSlice(out);
+            }
+        } finally {
+            if (scan != null) {
+                synchronized (libraryService) {
+                    scan.close();
+                }
+            }
+        }
+        flushSlice(out);
+
+        if (options.isIncludeLoans() && name != null) {
+            int inSlice = 0;
+            for (Loan loan : libraryService.getLoanLedger().getLoansForLibrary(key)) {
+                writeLoan(name, location, loan);
+                if (++inSlice == SLICE_BOOKS) {
+                    flushSlice(out);
+                    inSlice = 0;
+                }
+            }
+            flushSlice(out);
+        }
+        return exported;
+    }
+
+    // If books before our position were deleted, move back to just after the newest exported book still present
+    private int resync(List<Book> books, int position) {
+        if (position == 0) {
+            return 0;
+        }
+        Book lastExported = recent[(int) ((recentCount - 1) % RESYNC_WINDOW)];
+        if (position <= books.size() && books.get(position - 1) == lastExported) {
+            return position;
+        }
+        // Deletes only shift books left, so an exported book still present sits before our old position
+        long oldest = Math.max(0, recentCount - RESYNC_WINDOW);
+        for (long i = recentCount - 1; i >= oldest; i--) {
+            Book book = recent[(int) (i % RESYNC_WINDOW)];
+            for (int j = Math.min(position, books.size()) - 1; j >= 0; j--) {
+                if (books.get(j) == book) {
+                    return j + 1;
+                }
+            }
+        }
+        return Math.min(position, books.size());
+    }
+
+    private boolean matches(Book book) {
+        if (options.isAvailableOnly() && !book.isAvailable()) {
+            return false;
+        }
+        String category = options.getCategory();
+        return category == null || category.equalsIgnoreCase(book.getCategory());
+    }
+
+    private void writeBook(String name, String location, Book book) throws IOException {
+        boolean isEbook = book instanceof EBook;
+        String fileFormat = isEbook ? ((EBook) book).getFileFormat() : "";
+        double fileSize = isEbook ? ((EBook) book).getFileSizeMB() : 0.0;
+        switch (options.getFormat()) {
+            case BINARY:
+                BookRecordCodec.writeBook(sliceData, book);
+                break;
+            case CSV:
+                writeText(csv(name) + "," + csv(location) + "," + csv(book.getBookId()) + "," + csv(book.getTitle())
+                        + "," + csv(book.getAuthor()) + "," + csv(book.getCategory()) + "," + (isEbook ? "EBOOK" : "BOOK")
+                        + "," + book.getTotalCopies() + "," + book.getIssuedCopies() + "," + book.isAvailable()
+                        + "," + csv(fileFormat) + "," + fileSize + "\n");
+                break;
+            default:
+                writeText("{\"recordType\":\"BOOK\",\"libraryName\":\"" + LibraryService.escapeJson(name)
+                        + "\",\"libraryLocation\":\"" + LibraryService.escapeJson(location)
+                        + "\",\"type\":\"" + (isEbook ? "EBOOK" : "BOOK")
+                        + "\",\"bookId\":\"" + LibraryService.escapeJson(book.getBookId())
+                        + "\",\"title\":\"" + LibraryService.escapeJson(book.getTitle())
+                        + "\",\"author\":\"" + LibraryService.escapeJson(book.getAuthor())
+                        + "\",\"category\":\"" + LibraryService.escapeJson(book.getCategory())
+                        + "\",\"totalCopies\":" + book.getTotalCopies()
+                        + ",\"issuedCopies\":" + book.getIssuedCopies()
+                        + ",\"available\":" + book.isAvailable()
+                        + ",\"fileFormat\":\"" + LibraryService.escapeJson(fileFormat)
+                        + "\",\"fileSizeMB\":" + fileSize + "}\n");
+        }
+    }
+
+    private void writeLoan(String name, String location, Loan loan) throws IOException {
+        if (options.getFormat() == ExportFormat.BINARY) {
+            BookRecordCodec.writeLoan(sliceData, loan);
+            return;
+        }
+        writeText("{\"recordType\":\"LOAN\",\"libraryName\":\"" + LibraryService.escapeJson(name)
+                + "\",\"libraryLocation\":\"" + LibraryService.escapeJson(location)
+                + "\",\"loanId\":" + loan.getLoanId()
+                + ",\"bookId\":\"" + LibraryService.escapeJson(loan.getBookId())
+                + "\",\"patronId\":" + loan.getPatronId()
+                + ",\"issuedAt\":" + loan.getIssuedAtMillis()
+                + ",\"dueAt\":" + loan.getDueAtMillis() + "}\n");
+    }
+
+    private void writeText(String text) throws IOException {
+        sliceData.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void flushSlice(OutputStream out) throws IOException {
+        sliceData.flush();
+        if (slice.size() > 0) {
+            slice.writeTo(out);
+            slice.reset();
+        }
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Usage: CatalogExporter dataFile outputFile [--format=csv|jsonl|binary] [--library=name] [--location=loc]
+     *        [--category=c] [--available] [--loans] [--gzip]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: CatalogExporter dataFile outputFile [--format=csv|jsonl|binary] [--library=name]"
+                    + " [--location=loc] [--category=c] [--available] [--loans] [--gzip]");
+            return;
+        }
+        ExportOptions options = new ExportOptions();
+        String library = null;
+        String location = "";
+        for (int i = 2; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("--format=")) {
+                options.setFormat(ExportFormat.valueOf(arg.substring("--format=".length()).toUpperCase()));
+            } else if (arg.startsWith("--library=")) {
+                library = arg.substring("--library=".length());
+            } else if (arg.startsWith("--location=")) {
+                location = arg.substring("--location=".length());
+            } else if (arg.startsWith("--category=")) {
+                options.setCategory(arg.substring("--category=".length()));
+            } else if (arg.equals("--available")) {
+                options.setAvailableOnly(true);
+            } else if (arg.equals("--loans")) {
+                options.setIncludeLoans(true);
+            } else if (arg.equals("--gzip")) {
+                options.setGzip(true);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if (library != null) {
+            options.setLibrary(library, location);
+        }
+
+        LibraryService service = new LibraryService(Paths.get(args[0]));
+        long start = System.nanoTime();
+        long books = service.exportBooks(options, Paths.get(args[1]));
+        System.out.printf("Exported %,d books to %s in %,d ms%n", books, args[1], (System.nanoTime() - start) / 1_000_000);
+    }
+}
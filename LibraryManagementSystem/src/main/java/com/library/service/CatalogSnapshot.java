@@ -0,0 +1,587 @@
+package com.library.service;
+
+import com.library.model.Book;
+import com.library.model.Loan;
+import com.library.model.Patron;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Block-compressed binary snapshot of every library, used instead of the JSON data file
+ * when LibraryService is given a SnapshotCodec.
+ * Records are BookRecordCodec records cut into blocks of about BLOCK_SIZE raw bytes. Each
+ * block is compressed on its own and repeats its LIBRARY record, so blocks are compressed
+ * on save and decoded on load in parallel. A library kept in a BookStore also repeats a STORE
+ * record naming the store kind, and on load its books go into a new store of that kind as each
+ * group of blocks is decoded, so they never collect on the heap as Book objects. The file is
+ * replaced atomically via a synced temp
+ * file. Layout: magic, version, codec id, save sequence, block count, then per block its raw
+ * length, stored length, CRC32 of the raw bytes and the stored bytes.
+ */
+final class CatalogSnapshot {
+    static final int MAGIC = 0x4C534E31; // "LSN1"
+    // Version 2 added the save sequence; version 1 files are still read
+    private static final int VERSION = 2;
+    private static final int BLOCK_SIZE = 256 * 1024;
+    private static final int HEADER_BYTES = 18;
+    private static final int BLOCK_HEADER_BYTES = 12;
+    private static final int CHECKPOINT_SLICE = 512;
+    // Full blocks compressed in parallel by StreamWriter, and stored blocks decoded in parallel by read()
+    private static final int PARALLEL_BLOCKS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    final List<Patron> patrons = new ArrayList<>();
+    final List<Section> sections = new ArrayList<>();
+    // Stores of the libraries saved from a BookStore, by library name and location
+    private final Map<String, BookStore> stores = new HashMap<>();
+    // Incremented by every save, so processes sharing the file can tell whether it changed
+    long sequence;
+
+    // Books and loans of one library, in file order; a library may span several sections
+    static final class Section {
+        final String name;
+        final String location;
+        final ArrayList<Book> books = new ArrayList<>();
+        final List<Loan> loans = new ArrayList<>();
+        // Kind named by the library's STORE record, or null
+        String storeKind;
+        // Set on the first section of a stored library: the store holding all its books
+        BookStore store;
+
+        Section(String name, String location) {
+            this.name = name;
+            this.location = location;
+        }
+    }
+
+    CatalogSnapshot() {
+    }
+
+    // Patrons, libraries, books and loans in this image
+    long recordCount() {
+        long count = patrons.size() + sections.size();
+        for (Section section : sections) {
+            count += section.books.size() + section.loans.size();
+        }
+        for (BookStore store : stores.values()) {
+            count += store.size();
+        }
+        return count;
+    }
+
+    // Move a section's books into the store of its library, creating the store for the library's
+    // first section; the first book read with each ID is kept, as for libraries of objects
+    void moveToStore(Section section, String kind) throws IOException {
+        String key = section.name + '\n' + section.location;
+        BookStore store = stores.get(key);
+        if (store == null) {
+            try {
+                store = BookStore.ofKind(kind);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            stores.put(key, store);
+            section.store = store;
+        }
+        section.storeKind = kind;
+        for (Book book : section.books) {
+            if (store.rowOf(book.getBookId()) < 0) {
+                store.add(book);
+            }
+        }
+        section.books.clear();
+        section.books.trimToSize();
+    }
+
+    // True if the file starts with the snapshot magic rather than JSON text
+    static boolean isSnapshot(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] magic = in.readNBytes(4);
+            return magic.length == 4 && ByteBuffer.wrap(magic).getInt() == MAGIC;
+        }
+    }
+
+    // Save sequence from the header without reading the blocks; 0 for version 1 files
+    static long readSequence(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            ByteBuffer header = ByteBuffer.wrap(in.readNBytes(14));
+            if (header.limit() < 14 || header.getInt() != MAGIC || header.get() < 2) {
+                return 0;
+            }
+            header.get();
+            return header.getLong();
+        }
+    }
+
+    // Write all libraries, their books and open loans, and patrons; returns the file size
+    static long write(Path file, SnapshotCodec codec, long sequence, List<Patron> patrons,
+                      Map<String, LibraryCatalog> libraries, LoanLedger loanLedger) throws IOException {
+        BlockEncoder encoder = new BlockEncoder();
+        for (Patron patron : patrons) {
+            BookRecordCodec.writePatron(encoder.data, patron);
+            encoder.endRecord(null);
+        }
+        for (Map.Entry<String, LibraryCatalog> entry : libraries.entrySet()) {
+            LibraryCatalog catalog = entry.getValue();
+            encoder.startLibrary(catalog);
+            for (Book book : catalog.books()) {
+                BookRecordCodec.writeBook(encoder.data, book);
+                encoder.endRecord(catalog);
+            }
+            for (Loan loan : loanLedger.getLoansForLibrary(entry.getKey())) {
+                BookRecordCodec.writeLoan(encoder.data, loan);
+                encoder.endRecord(catalog);
+            }
+        }
+        return writeBlocks(file, codec, sequence, encoder.finish());
+    }
+
+    // Write a checkpoint without holding the service lock for the whole catalog.
+    // Each library's book list is copied under the lock, or a stored library opens a StoreScan,
+    // then encoded in slices of CHECKPOINT_SLICE books, taking the lock per slice so the book
+    // fields are consistent.
+    // The result is fuzzy: mutations during the checkpoint may or may not be included,
+    // so it must be paired with journal replay from before the checkpoint started.
+    static long writeFuzzy(Path file, SnapshotCodec codec, LibraryService libraryService) throws IOException {
+        BlockEncoder encoder = new BlockEncoder();
+        for (Patron patron : libraryService.getPatrons()) {
+            BookRecordCodec.writePatron(encoder.data, patron);
+            encoder.endRecord(null);
+        }
+        for (String key : libraryService.exportKeys(null, null)) {
+            LibraryCatalog catalog;
+            List<Book> books = null;
+            LibraryCatalog.StoreScan scan = null;
+            synchronized (libraryService) {
+                catalog = libraryService.catalogForKey(key);
+                if (catalog == null) {
+                    continue;
+                }
+                // A stored library is walked by a scan instead of copying all its rows
+                if (catalog.isStored()) {
+                    scan = catalog.openScan(0);
+                } else {
+                    books = new ArrayList<>(catalog.books());
+                }
+                encoder.startLibrary(catalog);
+            }
+            if (scan != null) {
+                try {
+                    boolean more = true;
+                    while (more) {
+                        synchronized (libraryService) {
+                            List<Book> slice = scan.nextSlice(CHECKPOINT_SLICE);
+                            for (Book book : slice) {
+                                BookRecordCodec.writeBook(encoder.data, book);
+                                encoder.endRecord(catalog);
+                            }
+                            more = !slice.isEmpty();
+                        }
+                    }
+                } finally {
+                    synchronized (libraryService) {
+                        scan.close();
+                    }
+                }
+            } else {
+                for (int start = 0; start < books.size(); start += CHECKPOINT_SLICE) {
+                    int end = Math.min(books.size(), start + CHECKPOINT_SLICE);
+                    synchronized (libraryService) {
+                        for (int i = start; i < end; i++) {
+                            BookRecordCodec.writeBook(encoder.data, books.get(i));
+                            encoder.endRecord(catalog);
+                        }
+                    }
+                }
+            }
+            for (Loan loan : libraryService.getLoanLedger().getLoansForLibrary(key)) {
+                BookRecordCodec.writeLoan(encoder.data, loan);
+                encoder.endRecord(catalog);
+            }
+        }
+        return writeBlocks(file, codec, 0, encoder.finish());
+    }
+
+    // Compress blocks in parallel and replace the file atomically; returns the file size
+    private static long writeBlocks(Path file, SnapshotCodec codec, long sequence, List<BlockBuffer> blocks)
+            throws IOException {
+        List<byte[]> compressed = compress(codec, blocks);
+
+        long size = HEADER_BYTES;
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+            writeHeader(out, codec, sequence, blocks.size());
+            for (int i = 0; i < blocks.size(); i++) {
+                size += writeBlock(out, blocks.get(i), compressed.get(i));
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return size;
+    }
+
+    private static List<byte[]> compress(SnapshotCodec codec, List<BlockBuffer> blocks) throws IOException {
+        try {
+            return blocks.parallelStream()
+                    .map(block -> {
+                        try {
+                            return codec.compress(block.array(), block.size());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, SnapshotCodec codec, long sequence, int blockCount)
+            throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(codec.getId());
+        out.writeLong(sequence);
+        out.writeInt(blockCount);
+    }
+
+    // Returns the bytes written
+    private static int writeBlock(DataOutputStream out, BlockBuffer block, byte[] stored) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(block.array(), 0, block.size());
+        out.writeInt(block.size());
+        out.writeInt(stored.length);
+        out.writeInt((int) crc.getValue());
+        out.write(stored);
+        return BLOCK_HEADER_BYTES + stored.length;
+    }
+
+    /**
+     * Writes a snapshot record by record, compressing and writing full blocks as it goes, so the
+     * file can be far larger than the heap. Records must arrive in file order: patrons first, then
+     * each library followed by its books and loans. The block count in the header is filled in by
+     * commit(), which also moves the file into place; closing without commit() discards it.
+     */
+    static final class StreamWriter implements Closeable {
+        private final Path file;
+        private final Path temp;
+        private final SnapshotCodec codec;
+        private final FileChannel channel;
+        private final DataOutputStream out;
+        private final BlockEncoder encoder = new BlockEncoder();
+        private LibraryCatalog library;
+        private int blockCount;
+        private long size = HEADER_BYTES;
+        private boolean committed;
+
+        StreamWriter(Path file, SnapshotCodec codec, long sequence) throws IOException {
+            this.file = file;
+            this.temp = file.resolveSibling(file.getFileName() + ".tmp");
+            this.codec = codec;
+            this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+            writeHeader(out, codec, sequence, 0);
+        }
+
+        void patron(Patron patron) throws IOException {
+            if (library != null) {
+                throw new IllegalStateException("Patrons must be written before the first library.");
+            }
+            BookRecordCodec.writePatron(encoder.data, patron);
+            encoder.endRecord(null);
+            writeFullBlocks(false);
+        }
+
+        void library(String name, String location) throws IOException {
+            library = new LibraryCatalog(name, location);
+            encoder.startLibrary(library);
+            writeFullBlocks(false);
+        }
+
+        void book(Book book) throws IOException {
+            BookRecordCodec.writeBook(encoder.data, book);
+            encoder.endRecord(requireLibrary());
+            writeFullBlocks(false);
+        }
+
+        void loan(Loan loan) throws IOException {
+            BookRecordCodec.writeLoan(encoder.data, loan);
+            encoder.endRecord(requireLibrary());
+            writeFullBlocks(false);
+        }
+
+        // Write the last block, fill in the block count and replace the file; returns the file size
+        long commit() throws IOException {
+            encoder.finish();
+            writeFullBlocks(true);
+            out.flush();
+            channel.write(ByteBuffer.allocate(4).putInt(0, blockCount), HEADER_BYTES - 4);
+            channel.force(true);
+            channel.close();
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+            return size;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                channel.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        private LibraryCatalog requireLibrary() {
+            if (library == null) {
+                throw new IllegalStateException("Books and loans must follow a library.");
+            }
+            return library;
+        }
+
+        private void writeFullBlocks(boolean all) throws IOException {
+            if (encoder.blocks.isEmpty() || (!all && encoder.blocks.size() < PARALLEL_BLOCKS)) {
+                return;
+            }
+            List<byte[]> compressed = compress(codec, encoder.blocks);
+            for (int i = 0; i < compressed.size(); i++) {
+                size += writeBlock(out, encoder.blocks.get(i), compressed.get(i));
+            }
+            blockCount += compressed.size();
+            encoder.blocks.clear();
+        }
+    }
+
+    // Reads the file block by block at long offsets, so a snapshot may exceed 2 GB; each group of
+    // PARALLEL_BLOCKS stored blocks is decoded in parallel before the next group is read
+    static CatalogSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate((int) Math.min(HEADER_BYTES, fileSize));
+            readFully(channel, header, 0, file);
+            header.flip();
+            if (header.limit() < 10 || header.getInt() != MAGIC) {
+                throw new IOException("Not a catalog snapshot: " + file);
+            }
+            int version = header.get();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported snapshot version: " + version);
+            }
+            SnapshotCodec codec;
+            try {
+                codec = SnapshotCodec.fromId(header.get());
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            long sequence = 0;
+            if (version >= 2) {
+                if (header.remaining() < 12) {
+                    throw new IOException("Truncated snapshot header: " + file);
+                }
+                sequence = header.getLong();
+            }
+            int blockCount = header.getInt();
+            if (blockCount < 0) {
+                throw new IOException("Corrupt snapshot block count: " + blockCount);
+            }
+
+            CatalogSnapshot snapshot = new CatalogSnapshot();
+            snapshot.sequence = sequence;
+            long position = header.position();
+            ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+            List<StoredBlock> group = new ArrayList<>(PARALLEL_BLOCKS);
+            for (int i = 0; i < blockCount; i++) {
+                if (fileSize - position < BLOCK_HEADER_BYTES) {
+                    throw new IOException("Truncated snapshot at block " + i + " of " + blockCount);
+                }
+                blockHeader.clear();
+                readFully(channel, blockHeader, position, file);
+                blockHeader.flip();
+                int rawLength = blockHeader.getInt();
+                int stored = blockHeader.getInt();
+                int crc = blockHeader.getInt();
+                position += BLOCK_HEADER_BYTES;
+                if (stored < 0 || stored > fileSize - position) {
+                    throw new IOException("Truncated snapshot at block " + i + " of " + blockCount);
+                }
+                ByteBuffer data = ByteBuffer.allocate(stored);
+                readFully(channel, data, position, file);
+                position += stored;
+                group.add(new StoredBlock(i, rawLength, crc, data.array()));
+                if (group.size() == PARALLEL_BLOCKS || i == blockCount - 1) {
+                    for (CatalogSnapshot block : decodeBlocks(codec, group)) {
+                        snapshot.patrons.addAll(block.patrons);
+                        for (Section section : block.sections) {
+                            if (section.storeKind != null) {
+                                snapshot.moveToStore(section, section.storeKind);
+                            }
+                        }
+                        snapshot.sections.addAll(block.sections);
+                    }
+                    group.clear();
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, Path file) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated snapshot: " + file);
+            }
+        }
+    }
+
+    // One block as stored in the file, not yet decompressed
+    private static final class StoredBlock {
+        final int index;
+        final int rawLength;
+        final int crc;
+        final byte[] data;
+
+        StoredBlock(int index, int rawLength, int crc, byte[] data) {
+            this.index = index;
+            this.rawLength = rawLength;
+            this.crc = crc;
+            this.data = data;
+        }
+    }
+
+    private static List<CatalogSnapshot> decodeBlocks(SnapshotCodec codec, List<StoredBlock> blocks) throws IOException {
+        try {
+            return blocks.parallelStream()
+                    .map(block -> {
+                        try {
+                            return decodeBlock(codec, block);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static CatalogSnapshot decodeBlock(SnapshotCodec codec, StoredBlock stored) throws IOException {
+        int index = stored.index;
+        if (stored.rawLength < 0) {
+            throw new IOException("Corrupt raw length in snapshot block " + index);
+        }
+        byte[] raw = codec.decompress(stored.data, 0, stored.data.length, stored.rawLength);
+        CRC32 crc = new CRC32();
+        crc.update(raw, 0, raw.length);
+        if ((int) crc.getValue() != stored.crc) {
+            throw new IOException("Checksum mismatch in snapshot block " + index);
+        }
+
+        CatalogSnapshot block = new CatalogSnapshot();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+        Section section = null;
+        while (true) {
+            byte tag = BookRecordCodec.readTag(in);
+            switch (tag) {
+                case BookRecordCodec.TAG_END:
+                    return block;
+                case BookRecordCodec.TAG_LIBRARY: {
+                    String[] library = BookRecordCodec.readLibrary(in);
+                    section = new Section(library[0], library[1]);
+                    block.sections.add(section);
+                    break;
+                }
+                case BookRecordCodec.TAG_PATRON:
+                    block.patrons.add(BookRecordCodec.readPatron(in));
+                    break;
+                case BookRecordCodec.TAG_STORE:
+                    if (section == null) {
+                        throw new IOException("Store record without library in snapshot block " + index);
+                    }
+                    section.storeKind = BookRecordCodec.readStore(in);
+                    break;
+                default:
+                    if (section == null) {
+                        throw new IOException("Record without library in snapshot block " + index);
+                    }
+                    if (tag == BookRecordCodec.TAG_BOOK) {
+                        section.books.add(BookRecordCodec.readBook(in));
+                    } else {
+                        section.loans.add(BookRecordCodec.readLoan(in, section.name, section.location));
+                    }
+            }
+        }
+    }
+
+    // ByteArrayOutputStream whose buffer can be compressed without copying
+    private static final class BlockBuffer extends ByteArrayOutputStream {
+        BlockBuffer() {
+            super(BLOCK_SIZE + 4 * 1024);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    // Cuts the record stream into blocks, repeating the LIBRARY record at the start of each block
+    private static final class BlockEncoder {
+        private final List<BlockBuffer> blocks = new ArrayList<>();
+        private BlockBuffer current = new BlockBuffer();
+        DataOutputStream data = new DataOutputStream(current);
+
+        void startLibrary(LibraryCatalog catalog) throws IOException {
+            writeLibrary(catalog);
+            endRecord(catalog);
+        }
+
+        // Close the block once it is full; the next block reopens the current library
+        void endRecord(LibraryCatalog catalog) throws IOException {
+            if (current.size() < BLOCK_SIZE) {
+                return;
+            }
+            BookRecordCodec.writeEnd(data);
+            blocks.add(current);
+            current = new BlockBuffer();
+            data = new DataOutputStream(current);
+            if (catalog != null) {
+                writeLibrary(catalog);
+            }
+        }
+
+        private void writeLibrary(LibraryCatalog catalog) throws IOException {
+            BookRecordCodec.writeLibrary(data, catalog.name, catalog.location);
+            if (catalog.storeKind() != null) {
+                BookRecordCodec.writeStore(data, catalog.storeKind());
+            }
+        }
+
+        List<BlockBuffer> finish() throws IOException {
+            BookRecordCodec.writeEnd(data);
+            blocks.add(current);
+            return blocks;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.library.service;
+
+import com.library.model.Book;
+import com.library.model.EBook;
+import com.library.util.StringDictionary;
+
+/**
+ * Process-wide dictionaries for the book fields that repeat across a catalog: authors,
+ * categories and e-book formats. Books decoded from files or added to a service are pointed at
+ * the dictionary's instances, so a million books by a few thousand authors hold a few thousand
+ * author strings rather than a million copies. The author codes also key the author index.
+ */
+final class CatalogStrings {
+    static final StringDictionary AUTHORS = new StringDictionary();
+    static final StringDictionary CATEGORIES = new StringDictionary();
+    static final StringDictionary FORMATS = new StringDictionary();
+
+    private CatalogStrings() {
+    }
+
+    // Replace the book's repeated strings with the shared instances; returns the book
+    static Book intern(Book book) {
+        book.setAuthor(AUTHORS.intern(book.getAuthor()));
+        book.setCategory(CATEGORIES.intern(book.getCategory()));
+        if (book instanceof EBook) {
+            EBook eBook = (EBook) book;
+            eBook.setFileFormat(FORMATS.intern(eBook.getFileFormat()));
+        }
+        return book;
+    }
+
+    // Author index key: the code of the author's lowercase form
+    static int authorKey(Book book) {
+        return authorKeyOf(book.getAuthor());
+    }
+
+    // Author index key of a stored author, e.g. a BookStore row's; adds the author if new
+    static int authorKeyOf(String author) {
+        return AUTHORS.lowercaseCode(AUTHORS.encode(author));
+    }
+
+    // Author index key for a search, or -1 if no book has ever had this author
+    static int authorKey(String author) {
+        return AUTHORS.codeOf(author.toLowerCase());
+    }
+
+    // Author codes that match author ignoring case, as a mask indexed by code; null if none can.
+    // Lets a scan test each row with one array load instead of a lowercase lookup.
+    static boolean[] authorMatches(String author) {
+        int key = authorKey(author);
+        if (key < 0) {
+            return null;
+        }
+        boolean[] matches = new boolean[AUTHORS.size()];
+        for (int code = 0; code < matches.length; code++) {
+            matches[code] = AUTHORS.lowercaseCode(code) == key;
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,424 @@
+package com.library.service;
+
+import com.library.model.Book;
+import com.library.model.EBook;
+import com.library.util.StringDictionary;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Struct-of-arrays book store for multi-million-book catalogs. Every book field is a column:
+ * IDs and titles in String arrays, authors, categories and e-book formats as CatalogStrings
+ * codes, and the copy counts in int arrays. A row costs about 36 bytes of array slots plus its ID
+ * and title, instead of a Book object, its header and a list entry. Remaining copies and
+ * availability are derived from the counts, and stats and filters are plain loops over the int
+ * columns that the JIT can unroll and vectorize.
+ * Rows are dense: remove() moves the last row into the gap, so row numbers stay valid only
+ * until the next removal.
+ */
+public final class ColumnarBookStore implements BookStore {
+    static final String KIND = "COLUMNAR";
+    // Code of a null string
+    private static final int NONE = -1;
+    // formatCodes entry of a printed book
+    private static final int PRINTED = Integer.MIN_VALUE;
+
+    private String[] bookIds;
+    private String[] titles;
+    private int[] authorCodes;
+    private int[] categoryCodes;
+    private int[] formatCodes;
+    private double[] fileSizesMB;
+    private int[] totalCopies;
+    private int[] issuedCopies;
+    private int size;
+
+    // Open-addressing ID index holding row + 1 per slot, 0 when free; linear probing
+    private int[] idSlots;
+    private int idMask;
+
+    public ColumnarBookStore() {
+        this(1024);
+    }
+
+    public ColumnarBookStore(int expectedBooks) {
+        int capacity = Math.max(expectedBooks, 16);
+        bookIds = new String[capacity];
+        titles = new String[capacity];
+        authorCodes = new int[capacity];
+        categoryCodes = new int[capacity];
+        formatCodes = new int[capacity];
+        fileSizesMB = new double[capacity];
+        totalCopies = new int[capacity];
+        issuedCopies = new int[capacity];
+        allocateIdSlots(capacity);
+    }
+
+    // Store copies of the given books, e.g. a LibraryService catalog
+    public static ColumnarBookStore of(Collection<Book> books) {
+        ColumnarBookStore store = new ColumnarBookStore(books.size());
+        for (Book book : books) {
+            store.add(book);
+        }
+        return store;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String kind() {
+        return KIND;
+    }
+
+    // Append the book's fields as a new row; the Book itself is not kept. Returns the row.
+    @Override
+    public int add(Book book) {
+        String bookId = book.getBookId();
+        if (rowOf(bookId) >= 0) {
+            throw new IllegalArgumentException("Book ID already exists in this store: " + bookId);
+        }
+        if (size == bookIds.length) {
+            grow(size * 2);
+        }
+        int row = size++;
+        bookIds[row] = bookId;
+        titles[row] = book.getTitle();
+        authorCodes[row] = encode(CatalogStrings.AUTHORS, book.getAuthor());
+        categoryCodes[row] = encode(CatalogStrings.CATEGORIES, book.getCategory());
+        if (book instanceof EBook) {
+            EBook eBook = (EBook) book;
+            formatCodes[row] = encode(CatalogStrings.FORMATS, eBook.getFileFormat());
+            fileSizesMB[row] = eBook.getFileSizeMB();
+        } else {
+            formatCodes[row] = PRINTED;
+            fileSizesMB[row] = 0;
+        }
+        totalCopies[row] = book.getTotalCopies();
+        issuedCopies[row] = book.getIssuedCopies();
+        insertIdSlot(row);
+        return row;
+    }
+
+    @Override
+    public int rowOf(String bookId) {
+        int slot = mix(bookId.hashCode()) & idMask;
+        int entry;
+        while ((entry = idSlots[slot]) != 0) {
+            if (bookIds[entry - 1].equals(bookId)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & idMask;
+        }
+        return -1;
+    }
+
+    // Rows are dense, so a row is its own scan position
+    @Override
+    public int rowAt(int position) {
+        return checkRow(position);
+    }
+
+    @Override
+    public int positionOf(int row) {
+        return checkRow(row);
+    }
+
+    // Remove a book; the last row moves into its place
+    @Override
+    public boolean remove(String bookId) {
+        int row = rowOf(bookId);
+        if (row < 0) {
+            return false;
+        }
+        deleteIdSlot(slotOf(row));
+        int last = --size;
+        if (row != last) {
+            idSlots[slotOf(last)] = row + 1;
+            bookIds[row] = bookIds[last];
+            titles[row] = titles[last];
+            authorCodes[row] = authorCodes[last];
+            categoryCodes[row] = categoryCodes[last];
+            formatCodes[row] = formatCodes[last];
+            fileSizesMB[row] = fileSizesMB[last];
+            totalCopies[row] = totalCopies[last];
+            issuedCopies[row] = issuedCopies[last];
+        }
+        bookIds[last] = null;
+        titles[last] = null;
+        return true;
+    }
+
+    @Override
+    public String getBookId(int row) {
+        return bookIds[checkRow(row)];
+    }
+
+    @Override
+    public String getTitle(int row) {
+        return titles[checkRow(row)];
+    }
+
+    @Override
+    public String getAuthor(int row) {
+        return decode(CatalogStrings.AUTHORS, authorCodes[checkRow(row)]);
+    }
+
+    @Override
+    public String getCategory(int row) {
+        return decode(CatalogStrings.CATEGORIES, categoryCodes[checkRow(row)]);
+    }
+
+    @Override
+    public int getTotalCopies(int row) {
+        return totalCopies[checkRow(row)];
+    }
+
+    @Override
+    public int getIssuedCopies(int row) {
+        return issuedCopies[checkRow(row)];
+    }
+
+    @Override
+    public int getRemainingCopies(int row) {
+        return totalCopies[checkRow(row)] - issuedCopies[row];
+    }
+
+    @Override
+    public boolean isAvailable(int row) {
+        return getRemainingCopies(row) > 0;
+    }
+
+    @Override
+    public boolean isEBook(int row) {
+        return formatCodes[checkRow(row)] != PRINTED;
+    }
+
+    @Override
+    public String getFileFormat(int row) {
+        return decode(CatalogStrings.FORMATS, formatCodes[checkRow(row)]);
+    }
+
+    @Override
+    public double getFileSizeMB(int row) {
+        return fileSizesMB[checkRow(row)];
+    }
+
+    @Override
+    public boolean issue(int row) {
+        if (!isAvailable(row)) {
+            return false;
+        }
+        if (formatCodes[row] == PRINTED) {
+            issuedCopies[row]++;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean returnCopy(int row) {
+        if (issuedCopies[checkRow(row)] == 0) {
+            return false;
+        }
+        issuedCopies[row]--;
+        return true;
+    }
+
+    @Override
+    public void setIssuedCopies(int row, int issuedCopies) {
+        this.issuedCopies[checkRow(row)] = issuedCopies;
+    }
+
+    // Valid until the next removal
+    @Override
+    public BookView view(int row) {
+        return new BookView(this, checkRow(row));
+    }
+
+    @Override
+    public Book toBook(int row) {
+        Book book = isEBook(row)
+                ? new EBook(getBookId(row), getTitle(row), getAuthor(row), getCategory(row), getTotalCopies(row),
+                        getFileFormat(row), getFileSizeMB(row))
+                : new Book(getBookId(row), getTitle(row), getAuthor(row), getCategory(row), getTotalCopies(row));
+        book.setIssuedCopies(getIssuedCopies(row));
+        return book;
+    }
+
+    @Override
+    public int countAvailable() {
+        int[] total = totalCopies;
+        int[] issued = issuedCopies;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            // Sign bit of issued - total is set exactly when copies remain
+            count += (issued[i] - total[i]) >>> 31;
+        }
+        return count;
+    }
+
+    @Override
+    public long sumIssuedCopies() {
+        return sum(issuedCopies);
+    }
+
+    @Override
+    public long sumTotalCopies() {
+        return sum(totalCopies);
+    }
+
+    @Override
+    public int countEBooks() {
+        int[] formats = formatCodes;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            count += formats[i] == PRINTED ? 0 : 1;
+        }
+        return count;
+    }
+
+    @Override
+    public int[] countByCategory() {
+        int[] counts = new int[CatalogStrings.CATEGORIES.size()];
+        int[] categories = categoryCodes;
+        for (int i = 0; i < size; i++) {
+            int code = categories[i];
+            if (code >= 0) {
+                counts[code]++;
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public int[] availableRows() {
+        int[] total = totalCopies;
+        int[] issued = issuedCopies;
+        int[] rows = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            rows[count] = i;
+            count += (issued[i] - total[i]) >>> 31;
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    @Override
+    public int[] rowsByAuthor(String author) {
+        boolean[] matches = CatalogStrings.authorMatches(author);
+        return matches == null ? new int[0] : rowsWithCode(authorCodes, matches);
+    }
+
+    @Override
+    public int[] rowsByCategory(String category) {
+        int code = CatalogStrings.CATEGORIES.codeOf(category);
+        if (code < 0) {
+            return new int[0];
+        }
+        boolean[] matches = new boolean[code + 1];
+        matches[code] = true;
+        return rowsWithCode(categoryCodes, matches);
+    }
+
+    private int[] rowsWithCode(int[] column, boolean[] matches) {
+        int[] rows = new int[Math.min(size, 64)];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int code = column[i];
+            if (code >= 0 && code < matches.length && matches[code]) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, Math.max(count * 2, 16));
+                }
+                rows[count++] = i;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private long sum(int[] column) {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += column[i];
+        }
+        return total;
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " outside 0.." + (size - 1));
+        }
+        return row;
+    }
+
+    private void grow(int capacity) {
+        bookIds = Arrays.copyOf(bookIds, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        authorCodes = Arrays.copyOf(authorCodes, capacity);
+        categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+        formatCodes = Arrays.copyOf(formatCodes, capacity);
+        fileSizesMB = Arrays.copyOf(fileSizesMB, capacity);
+        totalCopies = Arrays.copyOf(totalCopies, capacity);
+        issuedCopies = Arrays.copyOf(issuedCopies, capacity);
+        allocateIdSlots(capacity);
+        for (int row = 0; row < size; row++) {
+            insertIdSlot(row);
+        }
+    }
+
+    // Keep the ID index at most half full
+    private void allocateIdSlots(int rowCapacity) {
+        int slots = Integer.highestOneBit(Math.max(rowCapacity, 8) - 1) << 2;
+        idSlots = new int[slots];
+        idMask = slots - 1;
+    }
+
+    private void insertIdSlot(int row) {
+        int slot = mix(bookIds[row].hashCode()) & idMask;
+        while (idSlots[slot] != 0) {
+            slot = (slot + 1) & idMask;
+        }
+        idSlots[slot] = row + 1;
+    }
+
+    private int slotOf(int row) {
+        int slot = mix(bookIds[row].hashCode()) & idMask;
+        while (idSlots[slot] != row + 1) {
+            slot = (slot + 1) & idMask;
+        }
+        return slot;
+    }
+
+    // Backward-shift deletion, as in IntObjectMap, so there are no tombstones
+    private void deleteIdSlot(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & idMask;
+            int entry = idSlots[slot];
+            if (entry == 0) {
+                break;
+            }
+            int home = mix(bookIds[entry - 1].hashCode()) & idMask;
+            if (((slot - home) & idMask) >= ((slot - gap) & idMask)) {
+                idSlots[gap] = entry;
+                gap = slot;
+            }
+        }
+        idSlots[gap] = 0;
+    }
+
+    private static int encode(StringDictionary dictionary, String value) {
+        return value == null ? NONE : dictionary.encode(value);
+    }
+
+    private static String decode(StringDictionary dictionary, int code) {
+        return code < 0 ? null : dictionary.decode(code);
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
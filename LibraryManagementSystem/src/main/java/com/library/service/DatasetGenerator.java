@@ -0,0 +1,399 @@
+package com.library.service;
+
+import com.library.model.Book;
+import com.library.model.EBook;
+import com.library.model.Loan;
+import com.library.model.Patron;
+import com.library.util.ZipfDistribution;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * Writes synthetic data files of any size in the formats LibraryService loads: the JSON data
+ * file or a block-compressed snapshot. Output is a pure function of the DatasetProfile, seed
+ * included, and is streamed record by record, so memory use does not grow with the file.
+ * Each library's books come from their own seeded Random; the books are generated a second
+ * time to emit the library's loans after them, instead of being kept in memory.
+ */
+public class DatasetGenerator {
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    // Granularity of per-book demand; rank 0 is the most borrowed
+    private static final int DEMAND_LEVELS = 1_000;
+
+    private static final String[] ADJECTIVES = {"Silent", "Lost", "Hidden", "Last", "Broken", "Golden", "Dark",
+            "Little", "Secret", "Burning", "Quiet", "Wild", "Distant", "Forgotten", "Bright", "Cold", "Endless",
+            "Hollow", "Painted", "Restless", "Scarlet", "Shattered", "Sleeping", "Northern", "Crimson", "Gentle"};
+    private static final String[] NOUNS = {"River", "Garden", "House", "Empire", "Night", "Sea", "Mountain", "City",
+            "Winter", "Kingdom", "Door", "Shadow", "Machine", "Island", "Letter", "Forest", "Station", "Library",
+            "Storm", "Bridge", "Orchard", "Harbor", "Lantern", "Clockmaker", "Daughter", "Stranger", "Map", "Song",
+            "Archive", "Voyage", "Frontier", "Mirror", "Signal", "Empress", "Tide"};
+    private static final String[] SUBJECTS = {"History", "Physics", "Economics", "Gardening", "Philosophy",
+            "Cooking", "Mathematics", "Astronomy", "Design", "Psychology", "Music", "Architecture", "Biology"};
+    private static final String[] FIRST_NAMES = {"Ada", "Ben", "Chen", "Dana", "Eli", "Farah", "Gus", "Hana",
+            "Ivan", "June", "Kofi", "Lena", "Marco", "Nadia", "Omar", "Priya", "Quinn", "Rosa", "Sam", "Tomas",
+            "Uma", "Viktor", "Wen", "Xena", "Yusuf", "Zoe", "Amara", "Bruno", "Clara", "Dmitri", "Elena", "Felix"};
+    private static final String[] LAST_NAMES = {"Moore", "Okafor", "Li", "Ruiz", "Novak", "Khan", "Berg", "Sato",
+            "Petrov", "O'Neil", "Mensah", "Fischer", "Rossi", "Haddad", "Silva", "Sharma", "Walsh", "Costa",
+            "Kim", "Nowak", "Dubois", "Larsen", "Tanaka", "Adeyemi", "Murphy", "Jensen", "Garcia", "Ivanova",
+            "Cohen", "Lindqvist", "Park", "Mwangi", "Schmidt", "Yilmaz", "Bianchi", "Quispe"};
+    private static final String[] CITIES = {"Springfield", "Riverton", "Lakeside", "Fairview", "Greenville",
+            "Kingston", "Ashford", "Brookfield", "Clearwater", "Dunmore", "Eastwick", "Millbrook", "Northgate",
+            "Oakridge", "Pinecrest", "Westport"};
+    // Most common first, since categories are drawn with Zipf popularity
+    private static final String[] CATEGORIES = {"Fiction", "Children", "Mystery", "Science", "History",
+            "Biography", "Fantasy", "Poetry", "Travel", "Reference"};
+    private static final String[] EBOOK_FORMATS = {"EPUB", "PDF", "MOBI"};
+
+    private final DatasetProfile profile;
+    private final long[] librarySizes;
+    private final ZipfDistribution authorRanks;
+    private final ZipfDistribution adjectiveRanks;
+    private final ZipfDistribution nounRanks;
+    private final ZipfDistribution categoryRanks;
+    private final ZipfDistribution patronRanks;
+    private final ZipfDistribution demandRanks;
+    // Mean demand weight, so the average loan share matches the profile
+    private final double meanDemandWeight;
+
+    private long bookCount;
+    private long ebookCount;
+    private long loanCount;
+
+    public DatasetGenerator(DatasetProfile profile) {
+        this.profile = profile;
+        this.librarySizes = librarySizes(profile.getBooks(), profile.getLibraries(), profile.getLibrarySkew());
+        double exponent = profile.getZipfExponent();
+        this.authorRanks = new ZipfDistribution(profile.getAuthors(), exponent);
+        this.adjectiveRanks = new ZipfDistribution(ADJECTIVES.length, exponent);
+        this.nounRanks = new ZipfDistribution(NOUNS.length, exponent);
+        this.categoryRanks = new ZipfDistribution(CATEGORIES.length, exponent);
+        this.patronRanks = new ZipfDistribution(profile.getPatrons(), exponent);
+        this.demandRanks = new ZipfDistribution(DEMAND_LEVELS, exponent);
+
+        // For a Zipf sample d with weight w(d) = 1/(d+1)^s, E[w] = sum(w^2) / sum(w)
+        double sum = 0;
+        double sumOfSquares = 0;
+        for (int d = 0; d < DEMAND_LEVELS; d++) {
+            double weight = demandWeight(d);
+            sum += weight;
+            sumOfSquares += weight * weight;
+        }
+        this.meanDemandWeight = sumOfSquares / sum;
+    }
+
+    // Receives the generated records in file order
+    private interface RecordSink {
+        void patron(Patron patron) throws IOException;
+
+        void library(String name, String location) throws IOException;
+
+        void book(Book book) throws IOException;
+
+        void loan(Loan loan) throws IOException;
+    }
+
+    // Write the JSON data file; returns its size in bytes
+    public long writeJson(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            StringBuilder record = new StringBuilder(1024);
+            writer.write("[\n");
+            LibraryService.appendHeaderRecord(record, 1);
+            writer.append(record);
+            generate(new RecordSink() {
+                private String libraryName;
+                private String libraryLocation;
+
+                @Override
+                public void patron(Patron patron) throws IOException {
+                    record.setLength(0);
+                    record.append(",\n");
+                    LibraryService.appendPatronRecord(record, patron);
+                    writer.append(record);
+                }
+
+                @Override
+                public void library(String name, String location) throws IOException {
+                    libraryName = name;
+                    libraryLocation = location;
+                    record.setLength(0);
+                    record.append(",\n");
+                    LibraryService.appendLibraryRecord(record, name, location);
+                    writer.append(record);
+                }
+
+                @Override
+                public void book(Book book) throws IOException {
+                    record.setLength(0);
+                    record.append(",\n");
+                    LibraryService.appendBookRecord(record, libraryName, libraryLocation, book);
+                    writer.append(record);
+                }
+
+                @Override
+                public void loan(Loan loan) throws IOException {
+                    record.setLength(0);
+                    record.append(",\n");
+                    LibraryService.appendLoanRecord(record, libraryName, libraryLocation, loan);
+                    writer.append(record);
+                }
+            });
+            writer.write("\n]");
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(file);
+    }
+
+    // Write a block-compressed snapshot; returns its size in bytes
+    public long writeSnapshot(Path file, SnapshotCodec codec) throws IOException {
+        try (CatalogSnapshot.StreamWriter writer = new CatalogSnapshot.StreamWriter(file, codec, 1)) {
+            generate(new RecordSink() {
+                @Override
+                public void patron(Patron patron) throws IOException {
+                    writer.patron(patron);
+                }
+
+                @Override
+                public void library(String name, String location) throws IOException {
+                    writer.library(name, location);
+                }
+
+                @Override
+                public void book(Book book) throws IOException {
+                    writer.book(book);
+                }
+
+                @Override
+                public void loan(Loan loan) throws IOException {
+                    writer.loan(loan);
+                }
+            });
+            return writer.commit();
+        }
+    }
+
+    public long getBookCount() {
+        return bookCount;
+    }
+
+    public long getEbookCount() {
+        return ebookCount;
+    }
+
+    public long getLoanCount() {
+        return loanCount;
+    }
+
+    private void generate(RecordSink sink) throws IOException {
+        bookCount = 0;
+        ebookCount = 0;
+        loanCount = 0;
+        for (int p = 1; p <= profile.getPatrons(); p++) {
+            sink.patron(new Patron(p, personName(p - 1, profile.getPatrons())));
+        }
+
+        long nextLoanId = 1;
+        for (int library = 0; library < librarySizes.length; library++) {
+            String name = "Branch " + (library + 1);
+            String location = CITIES[library % CITIES.length] + " District " + (library / CITIES.length + 1);
+            sink.library(name, location);
+
+            Random bookRandom = libraryRandom(library, 0);
+            for (long i = 0; i < librarySizes[library]; i++) {
+                Book book = nextBook(bookRandom, library, i);
+                sink.book(book);
+                bookCount++;
+                if (book instanceof EBook) {
+                    ebookCount++;
+                }
+            }
+
+            // Same seed, same books: replay them to write one loan per issued copy
+            bookRandom = libraryRandom(library, 0);
+            Random loanRandom = libraryRandom(library, 1);
+            for (long i = 0; i < librarySizes[library]; i++) {
+                Book book = nextBook(bookRandom, library, i);
+                long loanDays = book.borrowDuration();
+                for (int copy = 0; copy < book.getIssuedCopies(); copy++) {
+                    int patronId = patronRanks.sample(loanRandom) + 1;
+                    // Up to 1.5 loan periods ago, so some loans are overdue
+                    long issuedAt = profile.getAsOfMillis() - (long) (loanRandom.nextDouble() * 1.5 * loanDays * DAY_MILLIS);
+                    sink.loan(new Loan(nextLoanId++, name, location, book.getBookId(), patronId,
+                            issuedAt, issuedAt + loanDays * DAY_MILLIS));
+                    loanCount++;
+                }
+            }
+        }
+    }
+
+    private Book nextBook(Random random, int library, long index) {
+        String bookId = "L" + (library + 1) + "-" + index;
+        String title = nextTitle(random);
+        String author = personName(authorRanks.sample(random), profile.getAuthors());
+        String category = CATEGORIES[categoryRanks.sample(random)];
+
+        // Mostly one or two copies, occasionally many
+        int copies = 1;
+        while (copies < 20 && random.nextInt(100) < 35) {
+            copies++;
+        }
+
+        Book book;
+        if (random.nextInt(100) < profile.getEbookPercent()) {
+            String format = EBOOK_FORMATS[random.nextInt(EBOOK_FORMATS.length)];
+            double sizeMB = Math.round(Math.exp(random.nextGaussian() * 0.8 + 1.5) * 10) / 10.0;
+            book = new EBook(bookId, title, author, category, copies, format, sizeMB);
+        } else {
+            book = new Book(bookId, title, author, category, copies);
+        }
+
+        // Copies on loan follow the book's demand: a few titles are fully out, most are on the shelf
+        double loanChance = Math.min(1.0, profile.getLoanPercent() / 100.0
+                * demandWeight(demandRanks.sample(random)) / meanDemandWeight);
+        int issued = 0;
+        for (int copy = 0; copy < copies; copy++) {
+            if (random.nextDouble() < loanChance) {
+                issued++;
+            }
+        }
+        book.setIssuedCopies(issued);
+        return book;
+    }
+
+    private String nextTitle(Random random) {
+        String adjective = ADJECTIVES[adjectiveRanks.sample(random)];
+        String noun = NOUNS[nounRanks.sample(random)];
+        switch (random.nextInt(6)) {
+            case 0:
+                return "The " + adjective + " " + noun;
+            case 1:
+                return "The " + noun + " of " + NOUNS[nounRanks.sample(random)];
+            case 2:
+                return adjective + " " + noun + "s";
+            case 3:
+                return "A " + noun + " in " + CITIES[random.nextInt(CITIES.length)];
+            case 4:
+                return "An Introduction to " + SUBJECTS[random.nextInt(SUBJECTS.length)];
+            default:
+                return "The " + adjective + " " + noun + ", Book " + (1 + random.nextInt(7));
+        }
+    }
+
+    // Distinct name for each rank; a middle initial is added once first/last pairs run out
+    private static String personName(int rank, int poolSize) {
+        int pairs = FIRST_NAMES.length * LAST_NAMES.length;
+        String first = FIRST_NAMES[rank % FIRST_NAMES.length];
+        String last = LAST_NAMES[(rank / FIRST_NAMES.length) % LAST_NAMES.length];
+        if (poolSize <= pairs) {
+            return first + " " + last;
+        }
+        int middle = rank / pairs;
+        return first + " " + (char) ('A' + middle % 26) + (middle >= 26 ? String.valueOf(middle / 26) : "") + ". " + last;
+    }
+
+    private double demandWeight(int rank) {
+        return 1.0 / Math.pow(rank + 1, profile.getZipfExponent());
+    }
+
+    private Random libraryRandom(int library, int stream) {
+        return new Random(profile.getSeed() * 0x9E3779B97F4A7C15L + library * 31L + stream);
+    }
+
+    // Split the total into Zipf-weighted library sizes that add up exactly
+    private static long[] librarySizes(long books, int libraries, double skew) {
+        double[] weights = new double[libraries];
+        double sum = 0;
+        for (int i = 0; i < libraries; i++) {
+            weights[i] = 1.0 / Math.pow(i + 1, skew);
+            sum += weights[i];
+        }
+        long[] sizes = new long[libraries];
+        long assigned = 0;
+        for (int i = 0; i < libraries; i++) {
+            sizes[i] = (long) (books * weights[i] / sum);
+            assigned += sizes[i];
+        }
+        for (int i = 0; assigned < books; i = (i + 1) % libraries) {
+            sizes[i]++;
+            assigned++;
+        }
+        return sizes;
+    }
+
+    /**
+     * Usage: DatasetGenerator [--out=library-data.json] [--format=json|NONE|DEFLATE|GZIP]
+     *                         [--libraries=N] [--books=N] [--patrons=N] [--authors=N]
+     *                         [--ebooks=PERCENT] [--loans=PERCENT] [--library-skew=S]
+     *                         [--zipf=S] [--seed=N] [--as-of=EPOCH_MILLIS]
+     */
+    public static void main(String[] args) throws IOException {
+        DatasetProfile profile = new DatasetProfile();
+        Path out = Paths.get("library-data.json");
+        SnapshotCodec codec = null;
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            switch (parts[0]) {
+                case "--out":
+                    out = Paths.get(parts[1]);
+                    break;
+                case "--format":
+                    codec = parts[1].equalsIgnoreCase("json") ? null : SnapshotCodec.valueOf(parts[1].toUpperCase());
+                    break;
+                case "--libraries":
+                    profile.setLibraries(Integer.parseInt(parts[1]));
+                    break;
+                case "--books":
+                    profile.setBooks(Long.parseLong(parts[1]));
+                    break;
+                case "--patrons":
+                    profile.setPatrons(Integer.parseInt(parts[1]));
+                    break;
+                case "--authors":
+                    profile.setAuthors(Integer.parseInt(parts[1]));
+                    break;
+                case "--ebooks":
+                    profile.setEbookPercent(Integer.parseInt(parts[1]));
+                    break;
+                case "--loans":
+                    profile.setLoanPercent(Integer.parseInt(parts[1]));
+                    break;
+                case "--library-skew":
+                    profile.setLibrarySkew(Double.parseDouble(parts[1]));
+                    break;
+                case "--zipf":
+                    profile.setZipfExponent(Double.parseDouble(parts[1]));
+                    break;
+                case "--seed":
+                    profile.setSeed(Long.parseLong(parts[1]));
+                    break;
+                case "--as-of":
+                    profile.setAsOfMillis(Long.parseLong(parts[1]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + parts[0]);
+            }
+        }
+
+        DatasetGenerator generator = new DatasetGenerator(profile);
+        long start = System.nanoTime();
+        long size = codec == null ? generator.writeJson(out) : generator.writeSnapshot(out, codec);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Wrote %s (%s): %,d libraries, %,d books (%,d e-books), %,d loans, %,d patrons%n",
+                out, codec == null ? "JSON" : codec.name(), profile.getLibraries(), generator.getBookCount(),
+                generator.getEbookCount(), generator.getLoanCount(), profile.getPatrons());
+        System.out.printf("%,d bytes in %.1f s (%.1f MB/s)%n", size, seconds, size / 1e6 / seconds);
+    }
+}
@@ -0,0 +1,136 @@
+package com.library.service;
+
+/**
+ * Settings for a DatasetGenerator run: catalog size and shape, and the seed.
+ * Library sizes, author and title-word popularity, patron activity and per-book demand are all
+ * Zipf-skewed; the exponents control how strongly a few items dominate.
+ */
+public class DatasetProfile {
+    private int libraries = 10;
+    private long books = 100_000;
+    private int patrons = 10_000;
+    private int authors = 20_000;
+    private int ebookPercent = 20;
+    private int loanPercent = 10;
+    private double librarySkew = 0.8;
+    private double zipfExponent = 1.0;
+    private long seed = 42L;
+    // Loans are dated relative to this instant, so output does not depend on the clock
+    private long asOfMillis = 1_735_689_600_000L; // 2025-01-01T00:00:00Z
+
+    public int getLibraries() {
+        return libraries;
+    }
+
+    public DatasetProfile setLibraries(int libraries) {
+        this.libraries = (int) requirePositive(libraries, "libraries");
+        return this;
+    }
+
+    // Total across all libraries
+    public long getBooks() {
+        return books;
+    }
+
+    public DatasetProfile setBooks(long books) {
+        this.books = requirePositive(books, "books");
+        return this;
+    }
+
+    public int getPatrons() {
+        return patrons;
+    }
+
+    public DatasetProfile setPatrons(int patrons) {
+        this.patrons = (int) requirePositive(patrons, "patrons");
+        return this;
+    }
+
+    // Size of the author pool books are drawn from
+    public int getAuthors() {
+        return authors;
+    }
+
+    public DatasetProfile setAuthors(int authors) {
+        this.authors = (int) requirePositive(authors, "authors");
+        return this;
+    }
+
+    public int getEbookPercent() {
+        return ebookPercent;
+    }
+
+    public DatasetProfile setEbookPercent(int ebookPercent) {
+        this.ebookPercent = requirePercent(ebookPercent, "ebookPercent");
+        return this;
+    }
+
+    // Average share of copies on loan; popular books are out far more often than the rest
+    public int getLoanPercent() {
+        return loanPercent;
+    }
+
+    public DatasetProfile setLoanPercent(int loanPercent) {
+        this.loanPercent = requirePercent(loanPercent, "loanPercent");
+        return this;
+    }
+
+    // Zipf exponent of library sizes; 0 makes all libraries the same size
+    public double getLibrarySkew() {
+        return librarySkew;
+    }
+
+    public DatasetProfile setLibrarySkew(double librarySkew) {
+        this.librarySkew = requireNonNegative(librarySkew, "librarySkew");
+        return this;
+    }
+
+    // Zipf exponent of author, title word, patron and demand popularity
+    public double getZipfExponent() {
+        return zipfExponent;
+    }
+
+    public DatasetProfile setZipfExponent(double zipfExponent) {
+        this.zipfExponent = requireNonNegative(zipfExponent, "zipfExponent");
+        return this;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public DatasetProfile setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public long getAsOfMillis() {
+        return asOfMillis;
+    }
+
+    public DatasetProfile setAsOfMillis(long asOfMillis) {
+        this.asOfMillis = asOfMillis;
+        return this;
+    }
+
+    private static long requirePositive(long value, String name) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be greater than 0.");
+        }
+        return value;
+    }
+
+    private static int requirePercent(int value, String name) {
+        if (value < 0 || value > 100) {
+            throw new IllegalArgumentException(name + " must be between 0 and 100.");
+        }
+        return value;
+    }
+
+    private static double requireNonNegative(double value, String name) {
+        if (value < 0) {
+            throw new IllegalArgumentException(name + " cannot be negative.");
+        }
+        return value;
+    }
+}
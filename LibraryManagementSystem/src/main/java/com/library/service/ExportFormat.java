@@ -0,0 +1,12 @@
+package com.library.service;
+
+/**
+ * Output formats of LibraryService.exportBooks.
+ * CSV and JSONL use the data file's field names, so both can be fed back to importBooks.
+ * BINARY uses BookRecordCodec.
+ */
+public enum ExportFormat {
+    CSV,
+    JSONL,
+    BINARY
+}
@@ -0,0 +1,88 @@
+package com.library.service;
+
+/**
+ * Settings for a catalog export: format, which libraries and books, and compression.
+ * By default every library is exported as uncompressed JSONL.
+ */
+public class ExportOptions {
+    private ExportFormat format = ExportFormat.JSONL;
+    private String libraryName;
+    private String libraryLocation = "";
+    private String category;
+    private boolean availableOnly;
+    private boolean includeLoans;
+    private boolean gzip;
+
+    public ExportFormat getFormat() {
+        return format;
+    }
+
+    public ExportOptions setFormat(ExportFormat format) {
+        if (format == null) {
+            throw new IllegalArgumentException("Export format cannot be null.");
+        }
+        this.format = format;
+        return this;
+    }
+
+    // Null when exporting all libraries
+    public String getLibraryName() {
+        return libraryName;
+    }
+
+    public String getLibraryLocation() {
+        return libraryLocation;
+    }
+
+    // Export a single library instead of all of them
+    public ExportOptions setLibrary(String libraryName, String libraryLocation) {
+        this.libraryName = libraryName;
+        this.libraryLocation = libraryLocation == null ? "" : libraryLocation;
+        return this;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    // Only books of this category (case-insensitive); null for all categories
+    public ExportOptions setCategory(String category) {
+        this.category = category;
+        return this;
+    }
+
+    public boolean isAvailableOnly() {
+        return availableOnly;
+    }
+
+    public ExportOptions setAvailableOnly(boolean availableOnly) {
+        this.availableOnly = availableOnly;
+        return this;
+    }
+
+    public boolean isIncludeLoans() {
+        return includeLoans;
+    }
+
+    // Also export each library's open loans (JSONL and BINARY only)
+    public ExportOptions setIncludeLoans(boolean includeLoans) {
+        this.includeLoans = includeLoans;
+        return this;
+    }
+
+    // Reject combinations no format can express
+    public void validate() {
+        if (includeLoans && format == ExportFormat.CSV) {
+            throw new IllegalArgumentException("Loans can only be exported as JSONL or BINARY.");
+        }
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    public ExportOptions setGzip(boolean gzip) {
+        this.gzip = gzip;
+        return this;
+    }
+}
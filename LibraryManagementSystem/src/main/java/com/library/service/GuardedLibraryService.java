@@ -0,0 +1,64 @@
+package com.library.service;
+
+import com.library.model.Book;
+
+import java.util.List;
+
+/**
+ * LibraryService facade that passes every call through an AdmissionController.
+ * Searches, circulation (issue/return) and catalog changes have separate limits,
+ * so a burst of one kind cannot pile unbounded waiters onto the service monitor.
+ */
+public class GuardedLibraryService {
+    private final LibraryService libraryService;
+    private final AdmissionController admissionController;
+
+    public GuardedLibraryService(LibraryService libraryService, AdmissionController admissionController) {
+        this.libraryService = libraryService;
+        this.admissionController = admissionController;
+    }
+
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    public boolean issueBook(String bookId) {
+        return admissionController.execute(AdmissionClass.CIRCULATION, () -> libraryService.issueBook(bookId));
+    }
+
+    public boolean returnBook(String bookId) {
+        return admissionController.execute(AdmissionClass.CIRCULATION, () -> libraryService.returnBook(bookId));
+    }
+
+    public boolean addBook(Book book) {
+        return admissionController.execute(AdmissionClass.CATALOG, () -> libraryService.addBook(book));
+    }
+
+    public boolean deleteBook(String bookId) {
+        return admissionController.execute(AdmissionClass.CATALOG, () -> libraryService.deleteBook(bookId));
+    }
+
+    public Book searchById(String bookId) {
+        return admissionController.execute(AdmissionClass.SEARCH, () -> libraryService.searchById(bookId));
+    }
+
+    public List<Book> searchByTitle(String title) {
+        return admissionController.execute(AdmissionClass.SEARCH, () -> libraryService.searchByTitle(title));
+    }
+
+    public List<Book> searchByAuthor(String author) {
+        return admissionController.execute(AdmissionClass.SEARCH, () -> libraryService.searchByAuthor(author));
+    }
+
+    public List<Book> sortByTitle() {
+        return admissionController.execute(AdmissionClass.SEARCH, libraryService::sortByTitle);
+    }
+
+    public List<Book> sortByAuthor() {
+        return admissionController.execute(AdmissionClass.SEARCH, libraryService::sortByAuthor);
+    }
+
+    public List<Book> sortById() {
+        return admissionController.execute(AdmissionClass.SEARCH, libraryService::sortById);
+    }
+}
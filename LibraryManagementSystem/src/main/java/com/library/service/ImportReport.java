@@ -0,0 +1,81 @@
+package com.library.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of LibraryService.importBooks: row counts, throughput and per-row errors.
+ * Only the first MAX_STORED_ERRORS errors are kept; getErrorCount() counts all of them.
+ */
+public class ImportReport {
+    public static final int MAX_STORED_ERRORS = 1000;
+
+    private final String source;
+    private long rowsRead;
+    private long rowsImported;
+    private long errorCount;
+    private long elapsedNanos;
+    private final List<String> errors = new ArrayList<>();
+
+    ImportReport(String source) {
+        this.source = source;
+    }
+
+    void rowRead() {
+        rowsRead++;
+    }
+
+    void rowsImported(long count) {
+        rowsImported += count;
+    }
+
+    void error(long lineNumber, String bookId, String message) {
+        errorCount++;
+        if (errors.size() < MAX_STORED_ERRORS) {
+            String id = bookId == null || bookId.isEmpty() ? "" : " (" + bookId + ")";
+            errors.add("Line " + lineNumber + id + ": " + message);
+        }
+    }
+
+    void finish(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getRowsImported() {
+        return rowsImported;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : rowsRead / (elapsedNanos / 1_000_000_000.0);
+    }
+
+    public String getFormattedReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Imported %,d of %,d rows from %s in %,d ms (%,.0f rows/sec), %,d error(s)%n",
+                rowsImported, rowsRead, source, getElapsedMillis(), getRowsPerSecond(), errorCount));
+        for (String error : errors) {
+            sb.append("  ").append(error).append(System.lineSeparator());
+        }
+        if (errorCount > errors.size()) {
+            sb.append("  ... ").append(errorCount - errors.size()).append(" more").append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,19 @@
+package com.library.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for rebuilding the ID, title and author indexes of the selected library.
+ */
+@Name("com.library.IndexRebuild")
+@Label("Index Rebuild")
+@Category({"Library", "Indexes"})
+final class IndexRebuildEvent extends jdk.jfr.Event {
+    @Label("Library")
+    String library;
+
+    @Label("Books Indexed")
+    int bookCount;
+}
@@ -1,18 +1,456 @@
 package com.library.service;
 
 import com.library.model.Book;
+import com.library.model.EBook;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+/**
+ * One library's books with running totals of them, so statistics and the library list never scan
+ * the books. Change the books only through the methods below, which keep the totals in step, and
+ * report copy counts changed in place with copiesChanged().
+ * After moveTo(), the books are rows of a BookStore instead of Book objects: books() and find()
+ * hand out copies of the rows, copiesChanged() writes a copy's issued count back to its row, and
+ * replace() and update() swap in a new row. Titles and authors are indexed by row in RowIndexes, so
+ * searches decode only the rows they return. A removal moves the store's last row into the gap,
+ * so code that walks a stored library across lock releases uses a StoreScan.
+ */
 class LibraryCatalog {
     final String name;
     String location;
-    final List<Book> books;
+    // Empty once the books were moved to a store
+    private final ArrayList<Book> bookList;
+    // Holds the books instead of bookList after moveTo()
+    private BookStore store;
+    // Store rows by the hash of the lowercase title, and by CatalogStrings.authorKeyOf()
+    private RowIndex rowsByTitle;
+    private RowIndex rowsByAuthor;
+    // Open walks over the store, told about rows that removals move
+    private final List<StoreScan> scans = new ArrayList<>(0);
+
+    private int availableTitles;
+    private long issuedCopies;
+    private int eBooks;
+    // Titles per category, indexed by CatalogStrings.CATEGORIES code
+    private int[] categoryTitles = new int[16];
+    // Handed out by getLibraries() until the totals change
+    private LibraryInfo info;
 
     LibraryCatalog(String name, String location) {
         this.name = name;
         this.location = location;
-        this.books = new ArrayList<>();
+        this.bookList = new ArrayList<>();
+    }
+
+    int size() {
+        return store == null ? bookList.size() : store.size();
+    }
+
+    boolean isStored() {
+        return store != null;
+    }
+
+    // The books in catalog order; for a stored library, a view that copies each row it returns
+    List<Book> books() {
+        if (store == null) {
+            return bookList;
+        }
+        BookStore rows = store;
+        return new AbstractList<Book>() {
+            @Override
+            public Book get(int position) {
+                return rows.toBook(rows.rowAt(position));
+            }
+
+            @Override
+            public int size() {
+                return rows.size();
+            }
+        };
+    }
+
+    // The book with this ID, or null; a copy for a stored library
+    Book find(String bookId) {
+        if (store == null) {
+            for (Book book : bookList) {
+                if (book.getBookId().equals(bookId)) {
+                    return book;
+                }
+            }
+            return null;
+        }
+        int row = store.rowOf(bookId);
+        return row < 0 ? null : store.toBook(row);
+    }
+
+    boolean contains(String bookId) {
+        return store == null ? find(bookId) != null : store.rowOf(bookId) >= 0;
+    }
+
+    // Books whose title matches ignoring case; a stored library decodes only the rows its title index holds
+    List<Book> findByTitle(String title) {
+        List<Book> found = new ArrayList<>();
+        if (store == null) {
+            for (Book book : bookList) {
+                if (book.compareTitleIgnoreCase(title)) {
+                    found.add(book);
+                }
+            }
+            return found;
+        }
+        // The key is a hash, so other titles may share it
+        for (int row : rowsByTitle.rows(titleKey(title))) {
+            if (title.equalsIgnoreCase(store.getTitle(row))) {
+                found.add(store.toBook(row));
+            }
+        }
+        return found;
+    }
+
+    // Books by an author, ignoring case; a stored library reads its author index
+    List<Book> findByAuthor(String author) {
+        List<Book> found = new ArrayList<>();
+        if (store == null) {
+            for (Book book : bookList) {
+                if (book.getAuthor().equalsIgnoreCase(author)) {
+                    found.add(book);
+                }
+            }
+            return found;
+        }
+        int key = CatalogStrings.authorKey(author);
+        if (key >= 0) {
+            for (int row : rowsByAuthor.rows(key)) {
+                found.add(store.toBook(row));
+            }
+        }
+        return found;
+    }
+
+    // Keep the books in a store from now on: the list's books are added after any rows the store
+    // already holds, e.g. a saved library's, skipping IDs it has; the list is released and the
+    // totals are counted from the store
+    void moveTo(BookStore target) {
+        if (store != null) {
+            throw new IllegalStateException(name + " already keeps its books in a book store.");
+        }
+        for (Book book : bookList) {
+            if (target.rowOf(book.getBookId()) < 0) {
+                target.add(book);
+            }
+        }
+        bookList.clear();
+        bookList.trimToSize();
+        store = target;
+        rowsByTitle = new RowIndex(target.size());
+        rowsByAuthor = new RowIndex(target.size());
+        for (int position = 0; position < target.size(); position++) {
+            int row = target.rowAt(position);
+            indexRow(row, target.getTitle(row), target.getAuthor(row));
+        }
+        availableTitles = target.countAvailable();
+        issuedCopies = target.sumIssuedCopies();
+        eBooks = target.countEBooks();
+        int[] categories = target.countByCategory();
+        categoryTitles = Arrays.copyOf(categories, Math.max(categories.length, 16));
+        info = null;
+    }
+
+    // Kind of store saved with the library, or null when its books are saved as objects
+    String storeKind() {
+        return store == null ? null : store.kind();
+    }
+
+    // Rows missing from the title and author indexes of a stored library, for integrity checks
+    List<String> verifyRowIndexes() {
+        List<String> violations = new ArrayList<>();
+        if (store == null) {
+            return violations;
+        }
+        for (int position = 0; position < store.size(); position++) {
+            int row = store.rowAt(position);
+            String title = store.getTitle(row);
+            String author = store.getAuthor(row);
+            if (title != null && !rowsByTitle.contains(titleKey(title), row)) {
+                violations.add(name + " (" + location + ") book " + store.getBookId(row) + ": not in the title index");
+            }
+            if (author != null && !rowsByAuthor.contains(CatalogStrings.authorKeyOf(author), row)) {
+                violations.add(name + " (" + location + ") book " + store.getBookId(row) + ": not in the author index");
+            }
+        }
+        if (rowsByTitle.size() > store.size() || rowsByAuthor.size() > store.size()) {
+            violations.add(name + " (" + location + "): row indexes hold more entries than the store has rows");
+        }
+        return violations;
+    }
+
+    void add(Book book) {
+        if (store == null) {
+            bookList.add(book);
+        } else {
+            indexRow(store.add(book), book.getTitle(), book.getAuthor());
+        }
+        count(book, 1);
+    }
+
+    // Remove a book by ID; returns it, or null if the library does not hold it. A stored library
+    // returns a copy, and its last row takes the removed row's place.
+    Book remove(String bookId) {
+        if (store != null) {
+            return removeRow(bookId);
+        }
+        for (int i = 0; i < bookList.size(); i++) {
+            Book book = bookList.get(i);
+            if (book.getBookId().equals(bookId)) {
+                bookList.remove(i);
+                count(book, -1);
+                return book;
+            }
+        }
+        return null;
+    }
+
+    // Put book in the place of replaced, e.g. a newer version of the same record; a stored library
+    // removes the old row and adds the new one at the end
+    void replace(Book replaced, Book book) {
+        if (store != null) {
+            removeRow(replaced.getBookId());
+            add(book);
+            return;
+        }
+        bookList.set(bookList.indexOf(replaced), book);
+        count(replaced, -1);
+        count(book, 1);
+    }
+
+    // Copy a newer version of the same record, of the same class, into book, so references to it stay valid.
+    // A stored library hands out copies, so it replaces the row instead.
+    void update(Book book, Book values) {
+        if (store != null) {
+            replace(book, values);
+            return;
+        }
+        count(book, -1);
+        book.setTitle(values.getTitle());
+        book.setAuthor(values.getAuthor());
+        book.setCategory(values.getCategory());
+        book.setTotalCopies(values.getTotalCopies());
+        book.setIssuedCopies(values.getIssuedCopies());
+        if (book instanceof EBook) {
+            ((EBook) book).setFileFormat(((EBook) values).getFileFormat());
+            ((EBook) book).setFileSizeMB(((EBook) values).getFileSizeMB());
+        }
+        count(book, 1);
+    }
+
+    // A book's issued copies changed in place, from issuedBefore to its current count
+    void copiesChanged(Book book, int issuedBefore) {
+        if (store != null) {
+            int row = store.rowOf(book.getBookId());
+            if (row < 0) {
+                throw new IllegalArgumentException("Book ID not found: " + book.getBookId());
+            }
+            store.setIssuedCopies(row, book.getIssuedCopies());
+        }
+        issuedCopies += book.getIssuedCopies() - issuedBefore;
+        boolean wasAvailable = book.getTotalCopies() - issuedBefore > 0;
+        if (wasAvailable != book.isAvailable()) {
+            availableTitles += book.isAvailable() ? 1 : -1;
+        }
+        info = null;
+    }
+
+    LibraryInfo info() {
+        if (info == null) {
+            info = new LibraryInfo(name, location, size(), availableTitles, issuedCopies);
+        }
+        return info;
+    }
+
+    LibraryStatistics statistics() {
+        return new LibraryStatistics(name, location, 1, size(), availableTitles, issuedCopies, eBooks,
+                categoryNames(categoryTitles));
+    }
+
+    // Totals over several libraries, from their running totals
+    static LibraryStatistics rollUp(String name, Iterable<LibraryCatalog> catalogs) {
+        int libraryCount = 0;
+        int titles = 0;
+        int available = 0;
+        long issued = 0;
+        int eBooks = 0;
+        int[] categories = new int[CatalogStrings.CATEGORIES.size()];
+        for (LibraryCatalog catalog : catalogs) {
+            libraryCount++;
+            titles += catalog.size();
+            available += catalog.availableTitles;
+            issued += catalog.issuedCopies;
+            eBooks += catalog.eBooks;
+            for (int code = 0; code < catalog.categoryTitles.length && code < categories.length; code++) {
+                categories[code] += catalog.categoryTitles[code];
+            }
+        }
+        return new LibraryStatistics(name, "", libraryCount, titles, available, issued, eBooks, categoryNames(categories));
+    }
+
+    // The same totals counted from the books, for integrity checks; a store counts its columns
+    LibraryStatistics recount() {
+        if (store != null) {
+            return new LibraryStatistics(name, location, 1, store.size(), store.countAvailable(),
+                    store.sumIssuedCopies(), store.countEBooks(), categoryNames(store.countByCategory()));
+        }
+        int available = 0;
+        long issued = 0;
+        int eBookCount = 0;
+        int[] categories = new int[CatalogStrings.CATEGORIES.size()];
+        for (Book book : bookList) {
+            available += book.isAvailable() ? 1 : 0;
+            issued += book.getIssuedCopies();
+            eBookCount += book instanceof EBook ? 1 : 0;
+            if (book.getCategory() != null) {
+                int code = CatalogStrings.CATEGORIES.encode(book.getCategory());
+                if (code >= categories.length) {
+                    categories = Arrays.copyOf(categories, code + 1);
+                }
+                categories[code]++;
+            }
+        }
+        return new LibraryStatistics(name, location, 1, bookList.size(), available, issued, eBookCount,
+                categoryNames(categories));
+    }
+
+    /**
+     * A walk over a stored library in slices, taking the service lock per slice. Every book that
+     * stays in the library for the whole walk is returned exactly once: when a removal moves a row
+     * not yet reached into the part already walked, the catalog queues that book for the next slice.
+     * Books added during the walk may or may not be returned. Close it when done.
+     */
+    final class StoreScan implements AutoCloseable {
+        private int position;
+        // IDs of books moved behind position, returned first by the next slice
+        private final List<String> moved = new ArrayList<>();
+
+        private StoreScan(int position) {
+            this.position = position;
+        }
+
+        // The next books as copies, at most max; empty once the walk is over
+        List<Book> nextSlice(int max) {
+            List<Book> slice = new ArrayList<>(Math.min(max, 1024));
+            while (!moved.isEmpty() && slice.size() < max) {
+                int row = store.rowOf(moved.remove(moved.size() - 1));
+                if (row >= 0) {
+                    slice.add(store.toBook(row));
+                }
+            }
+            for (; position < store.size() && slice.size() < max; position++) {
+                slice.add(store.toBook(store.rowAt(position)));
+            }
+            return slice;
+        }
+
+        @Override
+        public void close() {
+            scans.remove(this);
+        }
+    }
+
+    // Start a StoreScan at a scan position, e.g. 0; callers hold the service monitor for the scan's calls
+    StoreScan openScan(int position) {
+        if (store == null) {
+            throw new IllegalStateException(name + " does not keep its books in a book store.");
+        }
+        StoreScan scan = new StoreScan(position);
+        scans.add(scan);
+        return scan;
+    }
+
+    // Remove a stored row, keeping the row indexes and open scans in step with the row the store moves
+    private Book removeRow(String bookId) {
+        int row = store.rowOf(bookId);
+        if (row < 0) {
+            return null;
+        }
+        Book book = store.toBook(row);
+        unindexRow(row, book.getTitle(), book.getAuthor());
+        int position = store.positionOf(row);
+        int lastPosition = store.size() - 1;
+        int lastRow = store.rowAt(lastPosition);
+        String movedId = position == lastPosition ? null : store.getBookId(lastRow);
+        store.remove(bookId);
+        for (StoreScan scan : scans) {
+            scan.moved.remove(bookId);
+            if (movedId != null && position < scan.position && lastPosition >= scan.position) {
+                scan.moved.add(movedId);
+            }
+        }
+        if (movedId != null) {
+            // ColumnarBookStore renumbers the moved row; OffHeapBookStore keeps its address
+            int movedRow = store.rowOf(movedId);
+            if (movedRow != lastRow) {
+                String title = store.getTitle(movedRow);
+                String author = store.getAuthor(movedRow);
+                if (title != null) {
+                    rowsByTitle.renumber(titleKey(title), lastRow, movedRow);
+                }
+                if (author != null) {
+                    rowsByAuthor.renumber(CatalogStrings.authorKeyOf(author), lastRow, movedRow);
+                }
+            }
+        }
+        count(book, -1);
+        return book;
+    }
+
+    private void indexRow(int row, String title, String author) {
+        if (title != null) {
+            rowsByTitle.add(titleKey(title), row);
+        }
+        if (author != null) {
+            rowsByAuthor.add(CatalogStrings.authorKeyOf(author), row);
+        }
+    }
+
+    private void unindexRow(int row, String title, String author) {
+        if (title != null) {
+            rowsByTitle.remove(titleKey(title), row);
+        }
+        if (author != null) {
+            rowsByAuthor.remove(CatalogStrings.authorKeyOf(author), row);
+        }
+    }
+
+    private static int titleKey(String title) {
+        return title.toLowerCase().hashCode();
+    }
+
+    // Add (delta 1) or take away (delta -1) a book's contribution to the totals
+    private void count(Book book, int delta) {
+        availableTitles += book.isAvailable() ? delta : 0;
+        issuedCopies += (long) delta * book.getIssuedCopies();
+        eBooks += book instanceof EBook ? delta : 0;
+        if (book.getCategory() != null) {
+            int code = CatalogStrings.CATEGORIES.encode(book.getCategory());
+            if (code >= categoryTitles.length) {
+                categoryTitles = Arrays.copyOf(categoryTitles, Math.max(code + 1, categoryTitles.length * 2));
+            }
+            categoryTitles[code] += delta;
+        }
+        info = null;
+    }
+
+    private static Map<String, Integer> categoryNames(int[] counts) {
+        Map<String, Integer> byName = new TreeMap<>();
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] != 0) {
+                byName.put(CatalogStrings.CATEGORIES.decode(code), counts[code]);
+            }
+        }
+        return byName;
     }
 }
@@ -0,0 +1,20 @@
+package com.library.service;
+
+import java.util.Map;
+
+/**
+ * JMX view of the ServiceMetrics gauges, read from the service when queried.
+ */
+public interface LibraryGaugesMXBean {
+    int getLibraryCount();
+
+    long getTotalBooks();
+
+    // Book count keyed by "name (location)"
+    Map<String, Integer> getBooksPerLibrary();
+
+    int getOpenLoans();
+
+    // -1 if the data file does not exist yet
+    long getDataFileBytes();
+}
@@ -4,11 +4,19 @@ public class LibraryInfo {
     private final String name;
     private final String location;
     private final int bookCount;
+    private final int availableBookCount;
+    private final long issuedCopies;
 
     public LibraryInfo(String name, String location, int bookCount) {
+        this(name, location, bookCount, bookCount, 0);
+    }
+
+    public LibraryInfo(String name, String location, int bookCount, int availableBookCount, long issuedCopies) {
         this.name = name;
         this.location = location;
         this.bookCount = bookCount;
+        this.availableBookCount = availableBookCount;
+        this.issuedCopies = issuedCopies;
     }
 
     public String getName() {
@@ -22,4 +30,13 @@ public class LibraryInfo {
     public int getBookCount() {
         return bookCount;
     }
+
+    // Titles with at least one copy on the shelf
+    public int getAvailableBookCount() {
+        return availableBookCount;
+    }
+
+    public long getIssuedCopies() {
+        return issuedCopies;
+    }
 }
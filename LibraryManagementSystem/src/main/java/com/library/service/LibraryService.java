@@ -2,27 +2,62 @@ package com.library.service;
 
 import com.library.model.Book;
 import com.library.model.EBook;
+import com.library.model.Loan;
+import com.library.model.Patron;
+import com.library.util.IntObjectMap;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
  * Service class for library operations.
- * Supports multiple libraries persisted in a shared JSON file.
+ * Supports multiple libraries persisted in a shared JSON file, or in a block-compressed
+ * binary snapshot when constructed with a SnapshotCodec. With enableJournal(), mutations are
+ * appended to a redo journal and the snapshot is rewritten by background checkpoints.
+ * With enableSharedAccess(), several processes can safely share one data file.
+ * With moveLibraryToStore(), a very large library keeps its books in a BookStore instead of Book objects.
  */
 public class LibraryService {
-    private static final Path DATA_FILE_PATH = Paths.get("library-data.json");
+    private static final Path DEFAULT_DATA_FILE_PATH = Paths.get("library-data.json");
     private static final String DEFAULT_LIBRARY_NAME = "Default Library";
-
+    // Version of the JSON layout written in its HEADER record
+    private static final int DATA_FORMAT_VERSION = 2;
+    private static final Pattern JSON_HEADER_SEQUENCE =
+            Pattern.compile("\"recordType\":\\s*\"HEADER\"[^}]*\"sequence\":\\s*(\\d+)");
+    private static final Comparator<Book> TITLE_ORDER = Comparator.comparing(Book::getTitle, String.CASE_INSENSITIVE_ORDER);
+    private static final Comparator<Book> AUTHOR_ORDER = Comparator.comparing(Book::getAuthor, String.CASE_INSENSITIVE_ORDER);
+    private static final Comparator<Book> ID_ORDER = Comparator.comparing(Book::getBookId);
+
+    private final Path dataFilePath;
+    // Null to save as JSON
+    private final SnapshotCodec snapshotCodec;
     private final Map<String, LibraryCatalog> libraries;
     private String currentLibraryKey;
 
@@ -30,21 +65,87 @@ public class LibraryService {
     private final List<Book> books;
     private final Map<String, Book> booksById;
     private final Map<String, List<Book>> booksByTitle;
-    private final Map<String, List<Book>> booksByAuthor;
+    // Keyed by CatalogStrings.authorKey(), the dictionary code of the lowercase author
+    private final IntObjectMap<List<Book>> booksByAuthor;
+    private boolean indexesStale;
+    // Nesting depth of inBatch(); saves requested inside a batch are deferred to its end
+    private int batchDepth;
+    private boolean saveDeferred;
+
+    private final LoanLedger loanLedger;
+    private final IntObjectMap<Patron> patrons;
+    private int nextPatronId = 1;
+
+    // Redo journal; null unless enableJournal() was called
+    private MutationJournal journal;
+    private ScheduledExecutorService checkpointScheduler;
+    // Serializes checkpoints; taken before the service monitor
+    private final Object checkpointLock = new Object();
+    // Journal segments were replayed on load and are still on disk
+    private boolean journalRecovered;
+
+    // Cross-process lock and change watcher; null unless enableSharedAccess() was called
+    private SharedDataFile sharedFile;
+    // Save sequence of the data file as last read or written by this process
+    private long loadedSequence;
+    // Saves that failed with an I/O error since startup
+    private long failedSaves;
+
+    // Always-on operation latencies and gauges
+    private final ServiceMetrics metrics = new ServiceMetrics(this);
+
+    // Workload capture for WorkloadReplayer; read without the monitor by searches
+    private volatile WorkloadTrace.Writer capture;
 
     public LibraryService() {
+        this(DEFAULT_DATA_FILE_PATH);
+    }
+
+    // Use a specific data file, e.g. a scratch copy for load tests
+    public LibraryService(Path dataFilePath) {
+        this(dataFilePath, null);
+    }
+
+    // Save as a binary snapshot with the given codec; either format is read on load
+    public LibraryService(Path dataFilePath, SnapshotCodec snapshotCodec) {
+        this.dataFilePath = dataFilePath;
+        this.snapshotCodec = snapshotCodec;
         this.libraries = new LinkedHashMap<>();
         this.books = new ArrayList<>();
         this.booksById = new HashMap<>();
         this.booksByTitle = new HashMap<>();
-        this.booksByAuthor = new HashMap<>();
+        this.booksByAuthor = new IntObjectMap<>();
+        this.loanLedger = new LoanLedger(Clock.systemUTC());
+        this.patrons = new IntObjectMap<>();
         loadData();
     }
 
-    public List<LibraryInfo> getLibraries() {
-        return libraries.values().stream()
-                .map(library -> new LibraryInfo(library.name, library.location, library.books.size()))
-                .collect(Collectors.toList());
+    public ServiceMetrics getMetrics() {
+        return metrics;
+    }
+
+    Path getDataFilePath() {
+        return dataFilePath;
+    }
+
+    // One entry per library from its running totals; entries are reused until the library changes
+    public synchronized List<LibraryInfo> getLibraries() {
+        List<LibraryInfo> result = new ArrayList<>(libraries.size());
+        for (LibraryCatalog catalog : libraries.values()) {
+            result.add(catalog.info());
+        }
+        return result;
+    }
+
+    // Totals for the current library, maintained on every mutation
+    public synchronized LibraryStatistics getStatistics() {
+        ensureLibrarySelected();
+        return getCurrentLibraryCatalog().statistics();
+    }
+
+    // Totals over all libraries, rolled up from each library's running totals
+    public synchronized LibraryStatistics getGlobalStatistics() {
+        return LibraryCatalog.rollUp("All Libraries", libraries.values());
     }
 
     public boolean libraryExists(String libraryName, String location) {
@@ -52,29 +153,71 @@ public class LibraryService {
     }
 
     public synchronized void createLibrary(String libraryName, String location) {
-        String name = requireLibraryName(libraryName);
-        String normalizedLocation = normalizeLocation(location);
-        String key = normalizeLibraryKey(name, normalizedLocation);
-        if (libraries.containsKey(key)) {
-            throw new IllegalArgumentException("Library already exists at this location: " + name + " (" + normalizedLocation + ")");
+        if (capture != null) {
+            capture.call(WorkloadTrace.CREATE_LIBRARY, libraryName, location);
         }
+        sharedWrite(() -> {
+            String name = requireLibraryName(libraryName);
+            String normalizedLocation = normalizeLocation(location);
+            String key = normalizeLibraryKey(name, normalizedLocation);
+            if (libraries.containsKey(key)) {
+                throw new IllegalArgumentException("Library already exists at this location: " + name + " (" + normalizedLocation + ")");
+            }
 
-        libraries.put(key, new LibraryCatalog(name, normalizedLocation));
-        selectLibrary(name, normalizedLocation);
-        saveData();
+            libraries.put(key, new LibraryCatalog(name, normalizedLocation));
+            if (journal != null) {
+                journal.library(name, normalizedLocation);
+            }
+            currentLibraryKey = key;
+            rebuildIndexesFromCurrentLibrary();
+            saveData();
+            return null;
+        });
     }
 
     public synchronized void selectLibrary(String libraryName, String location) {
+        if (capture != null) {
+            capture.call(WorkloadTrace.SELECT_LIBRARY, libraryName, location);
+        }
         String key = normalizeLibraryKey(libraryName, location);
         LibraryCatalog catalog = libraries.get(key);
         if (catalog == null) {
             throw new IllegalArgumentException("Library not found: " + libraryName + " (" + normalizeLocation(location) + ")");
         }
 
+        // Re-selecting the current library keeps its indexes; they are maintained on every mutation
+        if (key.equals(currentLibraryKey) && !indexesStale) {
+            return;
+        }
         currentLibraryKey = key;
         rebuildIndexesFromCurrentLibrary();
     }
 
+    // Keep a library's books in an empty BookStore instead of Book objects, e.g. an OffHeapBookStore
+    // for an archive whose tens of millions of Book objects make old-generation collections long.
+    // The library keeps every operation except shared access; searches return copies of the stored
+    // books. The caller keeps ownership of the store. The store's kind() is saved with the library,
+    // at once or by the next checkpoint when journaling, and later loads read the library's books
+    // straight into a new store of that kind.
+    public synchronized void moveLibraryToStore(String libraryName, String location, BookStore store) {
+        if (sharedFile != null) {
+            throw new IllegalStateException("A book store cannot be combined with shared access.");
+        }
+        String key = normalizeLibraryKey(libraryName, location);
+        LibraryCatalog catalog = libraries.get(key);
+        if (catalog == null) {
+            throw new IllegalArgumentException("Library not found: " + libraryName + " (" + normalizeLocation(location) + ")");
+        }
+        if (store.size() != 0) {
+            throw new IllegalArgumentException("The book store for " + catalog.name + " must be empty.");
+        }
+        catalog.moveTo(store);
+        if (key.equals(currentLibraryKey)) {
+            rebuildIndexesFromCurrentLibrary();
+        }
+        saveData();
+    }
+
     public String getCurrentLibraryName() {
         LibraryCatalog current = getCurrentLibraryCatalog();
         return current == null ? "" : current.name;
@@ -85,99 +228,750 @@ public class LibraryService {
         return current == null ? "" : current.location;
     }
 
+    public LoanLedger getLoanLedger() {
+        return loanLedger;
+    }
+
+    public synchronized Patron registerPatron(String name) {
+        if (capture != null) {
+            capture.call(WorkloadTrace.REGISTER_PATRON, defaultString(name));
+        }
+        return sharedWrite(() -> {
+            String patronName = defaultString(name).trim();
+            if (patronName.isEmpty()) {
+                throw new IllegalArgumentException("Patron name cannot be empty.");
+            }
+
+            Patron patron = new Patron(nextPatronId++, patronName);
+            patrons.put(patron.getPatronId(), patron);
+            if (journal != null) {
+                journal.patron(patron);
+            }
+            saveData();
+            return patron;
+        });
+    }
+
+    public synchronized Patron getPatron(int patronId) {
+        return patrons.get(patronId);
+    }
+
+    public synchronized List<Patron> getPatrons() {
+        List<Patron> result = new ArrayList<>();
+        patrons.forEachValue(result::add);
+        result.sort(Comparator.comparingInt(Patron::getPatronId));
+        return result;
+    }
+
+    // Open loans of a patron across all libraries, oldest first
+    public List<Loan> getLoansForPatron(int patronId) {
+        return loanLedger.getLoansForPatron(patronId);
+    }
+
+    // Open loans for a book in the current library, oldest first
+    public synchronized List<Loan> getLoansForBook(String bookId) {
+        ensureLibrarySelected();
+        return loanLedger.getLoansForBook(currentLibraryKey, bookId);
+    }
+
     public int getCurrentLibraryBookCount() {
-        return books.size();
+        LibraryCatalog current = getCurrentLibraryCatalog();
+        return current == null ? 0 : current.size();
     }
 
     // Add a book to the current library
     public synchronized boolean addBook(Book book) {
+        return sharedWrite(() -> {
+            applyAdd(book);
+            saveData();
+            return true;
+        });
+    }
+
+    // Add several books to the current library and persist once
+    public synchronized int addBooks(List<Book> newBooks) {
+        if (capture != null) {
+            capture.addBooks(newBooks);
+        }
+        return sharedWrite(() -> {
+            long start = System.nanoTime();
+            ensureLibrarySelected();
+
+            Map<String, Book> pending = new HashMap<>();
+            for (Book book : newBooks) {
+                if (currentLibraryHolds(book.getBookId()) || pending.put(book.getBookId(), book) != null) {
+                    throw new IllegalArgumentException("Book ID already exists in this library: " + book.getBookId());
+                }
+            }
+
+            LibraryCatalog catalog = getCurrentLibraryCatalog();
+            for (Book book : newBooks) {
+                CatalogStrings.intern(book);
+                addToCurrentLibrary(catalog, book);
+                if (journal != null) {
+                    journal.book(catalog.name, catalog.location, book);
+                }
+            }
+            // One sample per call, however many books it adds
+            metrics.record(ServiceMetrics.Operation.ADD, start);
+            saveData();
+            return newBooks.size();
+        });
+    }
+
+    // Bulk-load books from a CSV or JSONL file into the current library.
+    // Rows are streamed and validated in parallel outside the lock; valid rows not already in
+    // the catalog are then added in one batch and persisted once.
+    public ImportReport importBooks(Path file) throws IOException {
         ensureLibrarySelected();
+        long start = System.nanoTime();
+        ImportReport report = new ImportReport(file.getFileName().toString());
+        List<BookImporter.Row> rows = new BookImporter(this, Runtime.getRuntime().availableProcessors()).read(file, report);
+
+        synchronized (this) {
+            sharedWrite(() -> {
+                ensureLibrarySelected();
+                LibraryCatalog catalog = getCurrentLibraryCatalog();
+                List<Book> imported = new ArrayList<>();
+                for (BookImporter.Row row : rows) {
+                    if (currentLibraryHolds(row.bookId)) {
+                        report.error(row.lineNumber, row.bookId, "Book ID already exists in this library.");
+                        continue;
+                    }
+                    Book book = row.book;
+                    addToCurrentLibrary(catalog, book);
+                    if (journal != null) {
+                        journal.book(catalog.name, catalog.location, book);
+                    }
+                    imported.add(book);
+                }
+                if (!imported.isEmpty()) {
+                    // Replayed as one addBooks call, so later calls on the imported books find them
+                    if (capture != null) {
+                        capture.addBooks(imported);
+                    }
+                    saveData();
+                }
+                report.rowsImported(imported.size());
+                return null;
+            });
+        }
+        report.finish(System.nanoTime() - start);
+        return report;
+    }
+
+    // Stream books (and optionally open loans) to a channel; see ExportOptions.
+    // Books are encoded in small slices under the lock and written out between slices,
+    // so neither a full list nor the whole dump is ever held in memory.
+    public long exportBooks(ExportOptions options, WritableByteChannel channel) throws IOException {
+        return new CatalogExporter(this, options).export(channel);
+    }
+
+    public long exportBooks(ExportOptions options, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            return exportBooks(options, channel);
+        }
+    }
+
+    public synchronized boolean issueBook(String bookId) {
+        issueBook(bookId, LoanLedger.WALK_IN_PATRON);
+        return true;
+    }
+
+    // Issue a copy to a patron and record the loan with its due date
+    public synchronized Loan issueBook(String bookId, int patronId) {
+        return sharedWrite(() -> {
+            Loan loan = applyIssue(bookId, patronId);
+            saveData();
+            return loan;
+        });
+    }
+
+    // Return a copy, closing the oldest open loan for the book
+    public synchronized boolean returnBook(String bookId) {
+        return sharedWrite(() -> {
+            applyReturn(bookId, LoanLedger.ANY_PATRON);
+            saveData();
+            return true;
+        });
+    }
 
-        if (booksById.containsKey(book.getBookId())) {
+    // Return the copy a specific patron borrowed
+    public synchronized boolean returnBook(String bookId, int patronId) {
+        return sharedWrite(() -> {
+            applyReturn(bookId, patronId);
+            saveData();
+            return true;
+        });
+    }
+
+    public synchronized boolean deleteBook(String bookId) {
+        return sharedWrite(() -> {
+            applyDelete(bookId);
+            completeBatch();
+            return true;
+        });
+    }
+
+    // Mutations without persistence; callers hold the service monitor and finish with completeBatch()
+    void applyAdd(Book book) {
+        long start = System.nanoTime();
+        if (capture != null) {
+            capture.addBook(book);
+        }
+        ensureLibrarySelected();
+
+        if (currentLibraryHolds(book.getBookId())) {
             throw new IllegalArgumentException("Book ID already exists in this library: " + book.getBookId());
         }
 
         LibraryCatalog catalog = getCurrentLibraryCatalog();
-        catalog.books.add(book);
-        addBookToIndexes(book);
-        saveData();
-        return true;
+        CatalogStrings.intern(book);
+        addToCurrentLibrary(catalog, book);
+        if (journal != null) {
+            journal.book(catalog.name, catalog.location, book);
+        }
+        metrics.record(ServiceMetrics.Operation.ADD, start);
     }
 
-    public synchronized boolean issueBook(String bookId) {
+    Loan applyIssue(String bookId, int patronId) {
+        long start = System.nanoTime();
+        if (capture != null) {
+            capture.call(WorkloadTrace.ISSUE, bookId, patronId);
+        }
         ensureLibrarySelected();
+        return issue(currentLibraryKey, bookId, patronId, start);
+    }
 
-        Book book = booksById.get(bookId);
-        if (book == null) {
-            throw new IllegalArgumentException("Book ID not found: " + bookId);
+    void applyReturn(String bookId, int patronId) {
+        long start = System.nanoTime();
+        if (capture != null) {
+            capture.call(WorkloadTrace.RETURN, bookId, patronId);
+        }
+        ensureLibrarySelected();
+        returnCopy(currentLibraryKey, bookId, patronId, start);
+    }
+
+    // Issue from the library with this key, selected or not
+    private Loan issue(String key, String bookId, int patronId, long start) {
+        Book book = requireBook(key, bookId);
+        if (patronId != LoanLedger.WALK_IN_PATRON && !patrons.containsKey(patronId)) {
+            throw new IllegalArgumentException("Patron ID not found: " + patronId);
         }
         if (!book.isAvailable()) {
             throw new IllegalStateException("Book is not available for issue.");
         }
+        LibraryCatalog catalog = libraries.get(key);
+        int issuedBefore = book.getIssuedCopies();
         book.issueBook();
-        saveData();
-        return true;
+        catalog.copiesChanged(book, issuedBefore);
+        Loan loan = loanLedger.openLoan(key, catalog.name, catalog.location, book, patronId);
+        if (journal != null) {
+            journal.bookCopies(catalog.name, catalog.location, book);
+            journal.loanOpened(loan);
+        }
+        metrics.record(ServiceMetrics.Operation.ISSUE, start);
+        return loan;
     }
 
-    public synchronized boolean returnBook(String bookId) {
-        ensureLibrarySelected();
-
-        Book book = booksById.get(bookId);
-        if (book == null) {
-            throw new IllegalArgumentException("Book ID not found: " + bookId);
+    private void returnCopy(String key, String bookId, int patronId, long start) {
+        Book book = requireBook(key, bookId);
+        Loan closed = loanLedger.closeLoan(key, bookId, patronId);
+        if (closed == null && patronId != LoanLedger.ANY_PATRON) {
+            throw new IllegalStateException("Patron " + patronId + " has no open loan for book " + bookId + ".");
         }
+        LibraryCatalog catalog = libraries.get(key);
+        int issuedBefore = book.getIssuedCopies();
         book.returnBook();
-        saveData();
-        return true;
+        catalog.copiesChanged(book, issuedBefore);
+        if (journal != null) {
+            journal.bookCopies(catalog.name, catalog.location, book);
+            if (closed != null) {
+                journal.loanClosed(closed);
+            }
+        }
+        metrics.record(ServiceMetrics.Operation.RETURN, start);
     }
 
-    public synchronized boolean deleteBook(String bookId) {
-        ensureLibrarySelected();
-
-        Book existing = booksById.get(bookId);
-        if (existing == null) {
-            throw new IllegalArgumentException("Book ID not found: " + bookId);
+    // Removes the book from the catalog and ID index; title/author indexes are rebuilt by completeBatch().
+    // A stored library keeps its own row indexes current.
+    void applyDelete(String bookId) {
+        long start = System.nanoTime();
+        if (capture != null) {
+            capture.call(WorkloadTrace.DELETE_BOOK, bookId);
         }
+        requireBook(bookId);
 
         LibraryCatalog catalog = getCurrentLibraryCatalog();
-        catalog.books.removeIf(book -> book.getBookId().equals(bookId));
-        rebuildIndexesFromCurrentLibrary();
-        saveData();
-        return true;
+        catalog.remove(bookId);
+        if (!catalog.isStored()) {
+            booksById.remove(bookId);
+            indexesStale = true;
+        }
+        loanLedger.closeLoansForBook(currentLibraryKey, bookId);
+        if (journal != null) {
+            journal.bookDeleted(catalog.name, catalog.location, bookId);
+        }
+        metrics.record(ServiceMetrics.Operation.DELETE, start);
     }
 
-    public synchronized void deleteCurrentLibrary() {
-        ensureLibrarySelected();
+    // Run several public operations under one lock hold, persisting once at the end
+    public synchronized void inBatch(Runnable work) {
+        sharedWrite(() -> {
+            batchDepth++;
+            try {
+                work.run();
+            } finally {
+                batchDepth--;
+                if (batchDepth == 0 && saveDeferred) {
+                    saveDeferred = false;
+                    saveData();
+                }
+            }
+            return null;
+        });
+    }
 
-        String removedKey = currentLibraryKey;
-        libraries.remove(removedKey);
+    // Append mutations to a redo journal instead of rewriting the data file on every save,
+    // and checkpoint the catalog to the data file every checkpointIntervalMillis.
+    // Recovery after a crash replays at most one interval's worth of journal.
+    public synchronized void enableJournal(long checkpointIntervalMillis) throws IOException {
+        if (snapshotCodec == null) {
+            throw new IllegalStateException("Journaling requires a snapshot codec.");
+        }
+        if (journal != null) {
+            throw new IllegalStateException("Journaling is already enabled.");
+        }
+        if (sharedFile != null) {
+            throw new IllegalStateException("Journaling cannot be combined with shared access.");
+        }
+        if (checkpointIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive.");
+        }
+        journal = new MutationJournal(dataFilePath);
+        journalRecovered = false;
 
-        if (libraries.isEmpty()) {
-            currentLibraryKey = null;
-            books.clear();
-            booksById.clear();
-            booksByTitle.clear();
-            booksByAuthor.clear();
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "JournalCheckpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Warning: Journal checkpoint failed. " + e.getMessage());
+            }
+        }, checkpointIntervalMillis, checkpointIntervalMillis, TimeUnit.MILLISECONDS);
+        checkpointScheduler = scheduler;
+    }
+
+    // Write a fuzzy snapshot while mutations continue, then drop the journal segments it covers
+    public void checkpoint() throws IOException {
+        synchronized (checkpointLock) {
+            long firstUncovered;
+            synchronized (this) {
+                if (journal == null) {
+                    throw new IllegalStateException("Journaling is not enabled.");
+                }
+                firstUncovered = journal.rotate();
+            }
+            CatalogSnapshot.writeFuzzy(dataFilePath, snapshotCodec, this);
+            MutationJournal.deleteSegmentsBefore(dataFilePath, firstUncovered);
+        }
+    }
+
+    // Stop checkpointing, write a final consistent snapshot and remove the journal
+    public void closeJournal() throws IOException {
+        ScheduledExecutorService scheduler;
+        synchronized (this) {
+            scheduler = checkpointScheduler;
+            checkpointScheduler = null;
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (checkpointLock) {
+            synchronized (this) {
+                if (journal == null) {
+                    return;
+                }
+                journal.close();
+                journal = null;
+                CatalogSnapshot.write(dataFilePath, snapshotCodec, ++loadedSequence, getPatrons(), libraries, loanLedger);
+                MutationJournal.deleteSegmentsBefore(dataFilePath, Long.MAX_VALUE);
+            }
+        }
+    }
+
+    // Coordinate with other processes using the same data file. Each write takes a cross-process
+    // lock and first applies what others saved since this process last read the file, so saves
+    // no longer overwrite each other; a file watcher applies their saves as they happen.
+    public synchronized void enableSharedAccess() throws IOException {
+        if (sharedFile != null) {
+            return;
+        }
+        if (journal != null) {
+            throw new IllegalStateException("Shared access cannot be combined with journaling.");
+        }
+        for (LibraryCatalog catalog : libraries.values()) {
+            if (catalog.isStored()) {
+                throw new IllegalStateException("Shared access cannot be combined with a book store: " + catalog.name);
+            }
+        }
+        sharedFile = new SharedDataFile(dataFilePath, this::onDataFileChanged);
+        try {
+            refreshFromDisk();
+        } catch (IOException | RuntimeException e) {
+            SharedDataFile closing = sharedFile;
+            sharedFile = null;
+            closing.close();
+            throw e;
+        }
+    }
+
+    public void disableSharedAccess() throws IOException {
+        SharedDataFile closing;
+        synchronized (this) {
+            closing = sharedFile;
+            sharedFile = null;
+        }
+        if (closing != null) {
+            closing.close();
+        }
+    }
+
+    // Save sequence of the data file this process last read or wrote
+    public synchronized long getDataFileSequence() {
+        return loadedSequence;
+    }
+
+    // Saves that could not write the data file since startup; each also printed a warning
+    public synchronized long getFailedSaves() {
+        return failedSaves;
+    }
+
+    // Log every service call to traceFile for WorkloadReplayer. The current state is saved next
+    // to it as "<trace>.base", so a replay starts from exactly what the calls ran against.
+    public synchronized void startCapture(Path traceFile) throws IOException {
+        if (capture != null) {
+            throw new IllegalStateException("A workload capture is already running.");
+        }
+        CatalogSnapshot.write(WorkloadTrace.basePath(traceFile), SnapshotCodec.DEFLATE, loadedSequence,
+                getPatrons(), libraries, loanLedger);
+        LibraryCatalog current = getCurrentLibraryCatalog();
+        capture = new WorkloadTrace.Writer(traceFile, current == null ? "" : current.name,
+                current == null ? "" : current.location);
+    }
+
+    // Stop capturing and close the trace; returns the number of calls it holds
+    public synchronized long stopCapture() throws IOException {
+        WorkloadTrace.Writer closing = capture;
+        if (closing == null) {
+            return 0;
+        }
+        capture = null;
+        closing.close();
+        return closing.getCalls();
+    }
+
+    // Trace a call made without the service monitor; text is null for calls without arguments
+    // A call on a named library: the library record, then the call
+    private void traceCallIn(String key, byte op, String text) {
+        if (capture != null) {
+            traceLibrary(key);
+            traceCall(op, text);
+        }
+    }
+
+    private void traceLibrary(String key) {
+        WorkloadTrace.Writer writer = capture;
+        if (writer != null) {
+            LibraryCatalog catalog = libraries.get(key);
+            writer.inLibrary(catalog.name, catalog.location);
+        }
+    }
+
+    private void traceCall(byte op, String text) {
+        WorkloadTrace.Writer writer = capture;
+        if (writer == null) {
+            return;
+        }
+        if (text == null) {
+            writer.call(op);
         } else {
-            currentLibraryKey = libraries.keySet().iterator().next();
-            rebuildIndexesFromCurrentLibrary();
+            writer.call(op, text);
+        }
+    }
+
+    // Run a mutation holding the shared file lock, after catching up with other processes' saves.
+    // If their saves cannot be read, the mutation is not run: saving over a file this process has
+    // not caught up with would drop their changes. Nested calls, and all calls when sharing is off,
+    // run the mutation directly. Callers hold the service monitor.
+    <T> T sharedWrite(Supplier<T> mutation) {
+        if (sharedFile == null || sharedFile.isLocked()) {
+            return mutation.get();
+        }
+        try {
+            sharedFile.lock();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to lock shared data file: " + e.getMessage(), e);
+        }
+        try {
+            try {
+                refreshFromDisk();
+            } catch (IOException | RuntimeException e) {
+                throw new IllegalStateException("Unable to reload shared data file: " + e.getMessage(), e);
+            }
+            return mutation.get();
+        } finally {
+            try {
+                sharedFile.unlock();
+            } catch (IOException e) {
+                System.err.println("Warning: Unable to release shared data file lock. " + e.getMessage());
+            }
+        }
+    }
+
+    private void onDataFileChanged() {
+        synchronized (this) {
+            if (sharedFile == null) {
+                return;
+            }
+            try {
+                refreshFromDisk();
+            } catch (IOException | RuntimeException e) {
+                // The next write retries the reload, and refuses to save until it succeeds
+                System.err.println("Warning: Unable to reload shared library data. " + e.getMessage());
+            }
         }
+    }
+
+    // Apply another process's save if the file's sequence moved on; returns the records changed
+    private int refreshFromDisk() throws IOException {
+        if (!Files.exists(dataFilePath) || readFileSequence() == loadedSequence) {
+            return 0;
+        }
+        LoadEvent event = new LoadEvent();
+        event.begin();
+        CatalogSnapshot image = readDataFile(event);
+        long buildStart = System.nanoTime();
+        int changes = applyExternalChanges(image);
+        loadedSequence = image.sequence;
+        event.buildTime = System.nanoTime() - buildStart;
+        event.dataFile = dataFilePath.toString();
+        event.reload = true;
+        event.recordCount = image.recordCount();
+        event.commit();
+        return changes;
+    }
+
+    // Keys of the libraries an export covers: one library, or all when libraryName is null
+    synchronized List<String> exportKeys(String libraryName, String location) {
+        if (libraryName == null) {
+            return new ArrayList<>(libraries.keySet());
+        }
+        String key = normalizeLibraryKey(libraryName, location);
+        if (!libraries.containsKey(key)) {
+            throw new IllegalArgumentException("Library not found: " + libraryName + " (" + normalizeLocation(location) + ")");
+        }
+        List<String> keys = new ArrayList<>();
+        keys.add(key);
+        return keys;
+    }
 
+    // Catalog for a library key, or null if it was deleted; callers hold the service monitor
+    LibraryCatalog catalogForKey(String key) {
+        return libraries.get(key);
+    }
+
+    void completeBatch() {
+        if (indexesStale) {
+            rebuildIndexesFromCurrentLibrary();
+        }
         saveData();
     }
 
+    public synchronized void deleteCurrentLibrary() {
+        if (capture != null) {
+            capture.call(WorkloadTrace.DELETE_LIBRARY);
+        }
+        sharedWrite(() -> {
+            ensureLibrarySelected();
+
+            String removedKey = currentLibraryKey;
+            LibraryCatalog removed = libraries.remove(removedKey);
+            loanLedger.closeLoansForLibrary(removedKey);
+            if (journal != null) {
+                journal.libraryDeleted(removed.name, removed.location);
+            }
+
+            if (libraries.isEmpty()) {
+                currentLibraryKey = null;
+                books.clear();
+                booksById.clear();
+                booksByTitle.clear();
+                booksByAuthor.clear();
+            } else {
+                currentLibraryKey = libraries.keySet().iterator().next();
+                rebuildIndexesFromCurrentLibrary();
+            }
+
+            saveData();
+            return null;
+        });
+    }
+
     public List<Book> getAllBooks() {
-        return new ArrayList<>(books);
+        return new ArrayList<>(currentBooks());
+    }
+
+    public Book searchById(String bookId) {
+        long start = System.nanoTime();
+        traceCall(WorkloadTrace.SEARCH_BY_ID, bookId);
+        Book book = findInCurrentLibrary(bookId);
+        metrics.record(ServiceMetrics.Operation.SEARCH_BY_ID, start);
+        return book;
+    }
+
+    public List<Book> searchByTitle(String title) {
+        long start = System.nanoTime();
+        traceCall(WorkloadTrace.SEARCH_BY_TITLE, title);
+        List<Book> result = titleMatchesInCurrentLibrary(title);
+        metrics.record(ServiceMetrics.Operation.SEARCH_BY_TITLE, start);
+        return result;
+    }
+
+    public List<Book> searchByAuthor(String author) {
+        long start = System.nanoTime();
+        traceCall(WorkloadTrace.SEARCH_BY_AUTHOR, author);
+        List<Book> result = authorMatchesInCurrentLibrary(author);
+        metrics.record(ServiceMetrics.Operation.SEARCH_BY_AUTHOR, start);
+        return result;
+    }
+
+    // The methods taking a library name and location act on that library without selecting it, so
+    // server clients neither move the console's selection nor make it rebuild its indexes. The
+    // selected library answers from its indexes; any other library is scanned.
+
+    public synchronized Book searchById(String libraryName, String location, String bookId) {
+        long start = System.nanoTime();
+        String key = requireLibraryKey(libraryName, location);
+        traceCallIn(key, WorkloadTrace.SEARCH_BY_ID, bookId);
+        Book book = key.equals(currentLibraryKey) ? findInCurrentLibrary(bookId) : libraries.get(key).find(bookId);
+        metrics.record(ServiceMetrics.Operation.SEARCH_BY_ID, start);
+        return book;
+    }
+
+    public synchronized List<Book> searchByTitle(String libraryName, String location, String title) {
+        long start = System.nanoTime();
+        String key = requireLibraryKey(libraryName, location);
+        traceCallIn(key, WorkloadTrace.SEARCH_BY_TITLE, title);
+        List<Book> result = key.equals(currentLibraryKey)
+                ? titleMatchesInCurrentLibrary(title) : libraries.get(key).findByTitle(title);
+        metrics.record(ServiceMetrics.Operation.SEARCH_BY_TITLE, start);
+        return result;
+    }
+
+    public synchronized List<Book> searchByAuthor(String libraryName, String location, String author) {
+        long start = System.nanoTime();
+        String key = requireLibraryKey(libraryName, location);
+        traceCallIn(key, WorkloadTrace.SEARCH_BY_AUTHOR, author);
+        List<Book> result = key.equals(currentLibraryKey)
+                ? authorMatchesInCurrentLibrary(author) : libraries.get(key).findByAuthor(author);
+        metrics.record(ServiceMetrics.Operation.SEARCH_BY_AUTHOR, start);
+        return result;
+    }
+
+    public synchronized List<Book> getAllBooks(String libraryName, String location) {
+        return new ArrayList<>(libraries.get(requireLibraryKey(libraryName, location)).books());
+    }
+
+    public synchronized List<Book> sortByTitle(String libraryName, String location) {
+        return sortIn(libraryName, location, WorkloadTrace.SORT_BY_TITLE, TITLE_ORDER);
+    }
+
+    public synchronized List<Book> sortByAuthor(String libraryName, String location) {
+        return sortIn(libraryName, location, WorkloadTrace.SORT_BY_AUTHOR, AUTHOR_ORDER);
+    }
+
+    public synchronized List<Book> sortById(String libraryName, String location) {
+        return sortIn(libraryName, location, WorkloadTrace.SORT_BY_ID, ID_ORDER);
+    }
+
+    public synchronized Loan issueBook(String libraryName, String location, String bookId, int patronId) {
+        return sharedWrite(() -> {
+            long start = System.nanoTime();
+            String key = requireLibraryKey(libraryName, location);
+            if (capture != null) {
+                traceLibrary(key);
+                capture.call(WorkloadTrace.ISSUE, bookId, patronId);
+            }
+            Loan loan = issue(key, bookId, patronId, start);
+            saveData();
+            return loan;
+        });
+    }
+
+    public synchronized boolean returnBook(String libraryName, String location, String bookId) {
+        return returnBookIn(libraryName, location, bookId, LoanLedger.ANY_PATRON);
+    }
+
+    public synchronized boolean returnBook(String libraryName, String location, String bookId, int patronId) {
+        return returnBookIn(libraryName, location, bookId, patronId);
+    }
+
+    private boolean returnBookIn(String libraryName, String location, String bookId, int patronId) {
+        return sharedWrite(() -> {
+            long start = System.nanoTime();
+            String key = requireLibraryKey(libraryName, location);
+            if (capture != null) {
+                traceLibrary(key);
+                capture.call(WorkloadTrace.RETURN, bookId, patronId);
+            }
+            returnCopy(key, bookId, patronId, start);
+            saveData();
+            return true;
+        });
+    }
+
+    private List<Book> sortIn(String libraryName, String location, byte op, Comparator<Book> order) {
+        long start = System.nanoTime();
+        String key = requireLibraryKey(libraryName, location);
+        traceCallIn(key, op, null);
+        List<Book> sorted = new ArrayList<>(key.equals(currentLibraryKey) ? currentBooks() : libraries.get(key).books());
+        sorted.sort(order);
+        metrics.record(ServiceMetrics.Operation.SORT, start);
+        return sorted;
+    }
+
+    // Key of an existing library
+    private String requireLibraryKey(String libraryName, String location) {
+        String key = normalizeLibraryKey(libraryName, location);
+        if (!libraries.containsKey(key)) {
+            throw new IllegalArgumentException("Library not found: " + libraryName + " (" + normalizeLocation(location) + ")");
+        }
+        return key;
     }
 
-    public Book searchById(String bookId) {
-        return booksById.get(bookId);
+    private Book findInCurrentLibrary(String bookId) {
+        LibraryCatalog stored = storedCurrentLibrary();
+        return stored == null ? booksById.get(bookId) : stored.find(bookId);
     }
 
-    public List<Book> searchByTitle(String title) {
+    private List<Book> titleMatchesInCurrentLibrary(String title) {
         String titleKey = title.toLowerCase();
         List<Book> foundBooks = booksByTitle.get(titleKey);
-        if (foundBooks == null) {
+        LibraryCatalog stored = storedCurrentLibrary();
+        if (stored != null) {
+            return stored.findByTitle(title);
+        } else if (foundBooks == null) {
             return books.stream()
                     .filter(book -> book.compareTitleIgnoreCase(title))
                     .collect(Collectors.toList());
@@ -185,10 +979,13 @@ public class LibraryService {
         return new ArrayList<>(foundBooks);
     }
 
-    public List<Book> searchByAuthor(String author) {
-        String authorKey = author.toLowerCase();
-        List<Book> foundBooks = booksByAuthor.get(authorKey);
-        if (foundBooks == null) {
+    private List<Book> authorMatchesInCurrentLibrary(String author) {
+        int authorKey = CatalogStrings.authorKey(author);
+        List<Book> foundBooks = authorKey < 0 ? null : booksByAuthor.get(authorKey);
+        LibraryCatalog stored = storedCurrentLibrary();
+        if (stored != null) {
+            return stored.findByAuthor(author);
+        } else if (foundBooks == null) {
             return books.stream()
                     .filter(book -> book.getAuthor().equalsIgnoreCase(author))
                     .collect(Collectors.toList());
@@ -197,20 +994,29 @@ public class LibraryService {
     }
 
     public List<Book> sortByTitle() {
-        List<Book> sorted = new ArrayList<>(books);
-        sorted.sort(Comparator.comparing(Book::getTitle, String.CASE_INSENSITIVE_ORDER));
+        long start = System.nanoTime();
+        traceCall(WorkloadTrace.SORT_BY_TITLE, null);
+        List<Book> sorted = new ArrayList<>(currentBooks());
+        sorted.sort(TITLE_ORDER);
+        metrics.record(ServiceMetrics.Operation.SORT, start);
         return sorted;
     }
 
     public List<Book> sortByAuthor() {
-        List<Book> sorted = new ArrayList<>(books);
-        sorted.sort(Comparator.comparing(Book::getAuthor, String.CASE_INSENSITIVE_ORDER));
+        long start = System.nanoTime();
+        traceCall(WorkloadTrace.SORT_BY_AUTHOR, null);
+        List<Book> sorted = new ArrayList<>(currentBooks());
+        sorted.sort(AUTHOR_ORDER);
+        metrics.record(ServiceMetrics.Operation.SORT, start);
         return sorted;
     }
 
     public List<Book> sortById() {
-        List<Book> sorted = new ArrayList<>(books);
-        sorted.sort(Comparator.comparing(Book::getBookId));
+        long start = System.nanoTime();
+        traceCall(WorkloadTrace.SORT_BY_ID, null);
+        List<Book> sorted = new ArrayList<>(currentBooks());
+        sorted.sort(ID_ORDER);
+        metrics.record(ServiceMetrics.Operation.SORT, start);
         return sorted;
     }
 
@@ -220,39 +1026,159 @@ public class LibraryService {
         System.out.println("                 ALL BOOKS IN LIBRARY");
         System.out.println("=======================================================");
 
-        if (books.isEmpty()) {
+        List<Book> shown = currentBooks();
+        if (shown.isEmpty()) {
             System.out.println("No books in the library.");
             return;
         }
 
-        books.forEach(book -> {
+        shown.forEach(book -> {
             System.out.println(book.getFormattedDetails());
             System.out.println();
         });
 
-        System.out.println("Books in Current Library: " + books.size());
+        System.out.println("Books in Current Library: " + shown.size());
         System.out.println("=======================================================\n");
     }
 
+    // Read from the running totals, so the cost does not grow with the number of books
     public void displayStatistics() {
-        long totalBooks = books.size();
-        long availableBooks = books.stream()
-                .filter(Book::isAvailable)
-                .count();
-        long totalIssued = books.stream()
-                .mapToInt(Book::getIssuedCopies)
-                .sum();
+        LibraryStatistics stats;
+        LibraryStatistics all;
+        synchronized (this) {
+            LibraryCatalog current = getCurrentLibraryCatalog();
+            stats = current == null ? LibraryCatalog.rollUp("", new ArrayList<>()) : current.statistics();
+            all = getGlobalStatistics();
+        }
 
         System.out.println("\n=======================================");
-        System.out.println("Library: " + getCurrentLibraryName());
+        System.out.println("Library: " + stats.getName());
         System.out.println("           LIBRARY STATISTICS");
         System.out.println("=======================================");
-        System.out.println("Total Books: " + totalBooks);
-        System.out.println("Available Books: " + availableBooks);
-        System.out.println("Total Issued Copies: " + totalIssued);
+        System.out.println("Total Books: " + stats.getTitles());
+        System.out.println("Available Books: " + stats.getAvailableTitles());
+        System.out.println("Total Issued Copies: " + stats.getIssuedCopies());
+        System.out.println("EBooks: " + stats.getEBooks());
+        if (!stats.getCategoryTitles().isEmpty()) {
+            System.out.println("Books by Category:");
+            stats.getCategoryTitles().forEach((category, count) -> System.out.println("  " + category + ": " + count));
+        }
+        if (all.getLibraryCount() > 1) {
+            System.out.println("---------------------------------------");
+            System.out.println("All " + all.getLibraryCount() + " Libraries: " + all.getTitles() + " books, "
+                    + all.getAvailableTitles() + " available, " + all.getIssuedCopies() + " issued copies");
+        }
         System.out.println("=======================================\n");
     }
 
+    // Check catalog and index invariants; returns a description of each violation found
+    public synchronized List<String> verifyIntegrity() {
+        List<String> violations = new ArrayList<>();
+
+        for (Map.Entry<String, LibraryCatalog> entry : libraries.entrySet()) {
+            LibraryCatalog catalog = entry.getValue();
+            Map<String, Book> seenIds = new HashMap<>();
+            LibraryStatistics kept = catalog.statistics();
+            LibraryStatistics counted = catalog.recount();
+            if (kept.getAvailableTitles() != counted.getAvailableTitles() || kept.getIssuedCopies() != counted.getIssuedCopies()
+                    || kept.getEBooks() != counted.getEBooks() || !kept.getCategoryTitles().equals(counted.getCategoryTitles())) {
+                violations.add(catalog.name + " (" + catalog.location + "): running totals differ from the books");
+            }
+            violations.addAll(catalog.verifyRowIndexes());
+            for (Book book : catalog.books()) {
+                String where = catalog.name + " (" + catalog.location + ") book " + book.getBookId();
+                if (seenIds.put(book.getBookId(), book) != null) {
+                    violations.add(where + ": duplicate book ID");
+                }
+                if (book.getIssuedCopies() < 0 || book.getIssuedCopies() > book.getTotalCopies()) {
+                    violations.add(where + ": issuedCopies " + book.getIssuedCopies()
+                            + " outside 0.." + book.getTotalCopies());
+                }
+                int openLoans = loanLedger.countLoansForBook(entry.getKey(), book.getBookId());
+                if (!(book instanceof EBook) && openLoans > book.getIssuedCopies()) {
+                    violations.add(where + ": " + openLoans + " open loans but only "
+                            + book.getIssuedCopies() + " issued copies");
+                }
+            }
+        }
+
+        LibraryCatalog current = getCurrentLibraryCatalog();
+        if (current == null) {
+            if (currentLibraryKey != null) {
+                violations.add("Selected library key " + currentLibraryKey + " has no catalog");
+            } else if (!libraries.isEmpty()) {
+                violations.add("Libraries exist but none is selected");
+            }
+            if (!books.isEmpty() || !booksById.isEmpty()) {
+                violations.add("Indexes are not empty while no library is selected");
+            }
+            return violations;
+        }
+
+        if (current.isStored()) {
+            // A stored library is searched through its store
+            if (!books.isEmpty() || !booksById.isEmpty() || !booksByTitle.isEmpty() || booksByAuthor.size() != 0) {
+                violations.add("Indexes are not empty for stored library " + current.name);
+            }
+            return violations;
+        }
+        if (!books.equals(current.books())) {
+            violations.add("Book list index differs from catalog " + current.name);
+        }
+        if (booksById.size() != current.size()) {
+            violations.add("ID index has " + booksById.size() + " entries for " + current.size() + " books");
+        }
+        for (Book book : current.books()) {
+            if (booksById.get(book.getBookId()) != book) {
+                violations.add("ID index does not map " + book.getBookId() + " to its catalog entry");
+            }
+        }
+        checkIndex(violations, "Title", booksByTitle, current.books(), book -> book.getTitle().toLowerCase());
+        int[] authorEntries = {0};
+        booksByAuthor.forEachValue(filed -> {
+            for (Book book : filed) {
+                authorEntries[0]++;
+                if (booksByAuthor.get(CatalogStrings.authorKey(book)) != filed) {
+                    violations.add("Author index files " + book.getBookId() + " under the wrong author");
+                }
+            }
+        });
+        if (authorEntries[0] != current.size()) {
+            violations.add("Author index has " + authorEntries[0] + " entries for " + current.size() + " books");
+        }
+        return violations;
+    }
+
+    private void checkIndex(List<String> violations, String indexName, Map<String, List<Book>> index,
+                            List<Book> catalogBooks, Function<Book, String> keyOf) {
+        int entries = 0;
+        for (Map.Entry<String, List<Book>> entry : index.entrySet()) {
+            for (Book book : entry.getValue()) {
+                entries++;
+                if (!entry.getKey().equals(keyOf.apply(book))) {
+                    violations.add(indexName + " index files " + book.getBookId() + " under wrong key " + entry.getKey());
+                }
+            }
+        }
+        if (entries != catalogBooks.size()) {
+            violations.add(indexName + " index has " + entries + " entries for " + catalogBooks.size() + " books");
+        }
+    }
+
+    private Book requireBook(String bookId) {
+        ensureLibrarySelected();
+        return requireBook(currentLibraryKey, bookId);
+    }
+
+    // From the indexes for the selected library, by scanning any other
+    private Book requireBook(String key, String bookId) {
+        Book book = key.equals(currentLibraryKey) ? findInCurrentLibrary(bookId) : libraries.get(key).find(bookId);
+        if (book == null) {
+            throw new IllegalArgumentException("Book ID not found: " + bookId);
+        }
+        return book;
+    }
+
     private void ensureLibrarySelected() {
         if (getCurrentLibraryCatalog() == null) {
             throw new IllegalStateException("No library selected.");
@@ -260,19 +1186,30 @@ public class LibraryService {
     }
 
     private void rebuildIndexesFromCurrentLibrary() {
+        long start = System.nanoTime();
+        IndexRebuildEvent event = new IndexRebuildEvent();
+        event.begin();
+        indexesStale = false;
         books.clear();
         booksById.clear();
         booksByTitle.clear();
         booksByAuthor.clear();
 
         LibraryCatalog current = getCurrentLibraryCatalog();
-        if (current == null) {
+        // A stored library is searched through its store
+        if (current == null || current.isStored()) {
             return;
         }
 
-        for (Book book : current.books) {
+        for (Book book : current.books()) {
             addBookToIndexes(book);
         }
+        metrics.record(ServiceMetrics.Operation.INDEX_REBUILD, start);
+        if (event.shouldCommit()) {
+            event.library = current.name + " (" + current.location + ")";
+            event.bookCount = current.size();
+            event.commit();
+        }
     }
 
     private LibraryCatalog getCurrentLibraryCatalog() {
@@ -282,78 +1219,577 @@ public class LibraryService {
         return libraries.get(currentLibraryKey);
     }
 
+    // The current library if it keeps its books in a store, else null
+    private LibraryCatalog storedCurrentLibrary() {
+        LibraryCatalog current = getCurrentLibraryCatalog();
+        return current != null && current.isStored() ? current : null;
+    }
+
+    // The current library's books: the indexed list, or a view copying rows of a stored library
+    private List<Book> currentBooks() {
+        LibraryCatalog stored = storedCurrentLibrary();
+        return stored == null ? books : stored.books();
+    }
+
+    // Whether the current library holds a book, from the ID index or the library's store
+    private boolean currentLibraryHolds(String bookId) {
+        LibraryCatalog stored = storedCurrentLibrary();
+        return stored == null ? booksById.containsKey(bookId) : stored.contains(bookId);
+    }
+
+    // A stored library indexes its own rows
+    private void addToCurrentLibrary(LibraryCatalog catalog, Book book) {
+        catalog.add(book);
+        if (!catalog.isStored()) {
+            addBookToIndexes(book);
+        }
+    }
+
     private void addBookToIndexes(Book book) {
         books.add(book);
         booksById.put(book.getBookId(), book);
+        addSearchKeys(book);
+    }
 
+    // File a book under its title and author
+    private void addSearchKeys(Book book) {
         String titleKey = book.getTitle().toLowerCase();
         booksByTitle.computeIfAbsent(titleKey, k -> new ArrayList<>()).add(book);
 
-        String authorKey = book.getAuthor().toLowerCase();
-        booksByAuthor.computeIfAbsent(authorKey, k -> new ArrayList<>()).add(book);
+        int authorKey = CatalogStrings.authorKey(book);
+        List<Book> byAuthor = booksByAuthor.get(authorKey);
+        if (byAuthor == null) {
+            byAuthor = new ArrayList<>();
+            booksByAuthor.put(authorKey, byAuthor);
+        }
+        byAuthor.add(book);
+    }
+
+    // Take a book out of its title and author lists, dropping lists left empty
+    private void removeSearchKeys(Book book) {
+        String titleKey = book.getTitle().toLowerCase();
+        List<Book> byTitle = booksByTitle.get(titleKey);
+        if (byTitle != null && byTitle.remove(book) && byTitle.isEmpty()) {
+            booksByTitle.remove(titleKey);
+        }
+        int authorKey = CatalogStrings.authorKey(book);
+        List<Book> byAuthor = booksByAuthor.get(authorKey);
+        if (byAuthor != null && byAuthor.remove(book) && byAuthor.isEmpty()) {
+            booksByAuthor.remove(authorKey);
+        }
     }
 
-    private void saveData() {
+    // Rewrite the data file, or mark it dirty when inside inBatch(). When journaling, a failed
+    // journal commit throws IllegalStateException instead of printing a warning.
+    void saveData() {
+        if (batchDepth > 0) {
+            saveDeferred = true;
+            return;
+        }
+        long start = System.nanoTime();
+        SaveEvent event = new SaveEvent();
+        event.begin();
         try {
-            Files.writeString(DATA_FILE_PATH, toJsonArray());
+            if (journal != null) {
+                // The data file is rewritten by checkpoints
+                int records = journal.getPendingRecords();
+                long segmentBytes = journal.getSegmentBytes();
+                try {
+                    journal.commit();
+                } catch (IOException e) {
+                    // The caller's change is in memory but not durable, so it must not look saved
+                    failedSaves++;
+                    throw new IllegalStateException("Unable to write the library journal. " + e.getMessage(), e);
+                }
+                metrics.record(ServiceMetrics.Operation.SAVE, start);
+                if (event.shouldCommit()) {
+                    event.dataFile = dataFilePath.toString();
+                    event.format = "JOURNAL";
+                    event.bytesWritten = journal.getSegmentBytes() - segmentBytes;
+                    event.recordCount = records;
+                    event.sequence = loadedSequence;
+                    event.commit();
+                }
+                return;
+            }
+            long sequence = loadedSequence + 1;
+            if (snapshotCodec != null) {
+                CatalogSnapshot.write(dataFilePath, snapshotCodec, sequence, getPatrons(), libraries, loanLedger);
+            } else {
+                Path temp = dataFilePath.resolveSibling(dataFilePath.getFileName() + ".tmp");
+                Files.writeString(temp, toJsonArray(sequence));
+                Files.move(temp, dataFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            loadedSequence = sequence;
+            if (journalRecovered) {
+                // Replayed segments are now part of the data file
+                MutationJournal.deleteSegmentsBefore(dataFilePath, Long.MAX_VALUE);
+                journalRecovered = false;
+            }
+            metrics.record(ServiceMetrics.Operation.SAVE, start);
+            if (event.shouldCommit()) {
+                event.dataFile = dataFilePath.toString();
+                event.format = snapshotCodec != null ? snapshotCodec.name() : "JSON";
+                event.bytesWritten = Files.size(dataFilePath);
+                event.recordCount = countRecords();
+                event.sequence = sequence;
+                event.commit();
+            }
         } catch (IOException e) {
-            System.out.println("Warning: Unable to save library data. " + e.getMessage());
+            failedSaves++;
+            System.err.println("Warning: Unable to save library data. " + e.getMessage());
         }
     }
 
-    private void loadData() {
-        if (!Files.exists(DATA_FILE_PATH)) {
-            return;
+    // Patrons, libraries, books and loans a full save writes
+    private long countRecords() {
+        long count = patrons.size() + libraries.size() + loanLedger.getOpenLoanCount();
+        for (LibraryCatalog catalog : libraries.values()) {
+            count += catalog.size();
         }
+        return count;
+    }
 
+    private void loadData() {
+        long start = System.nanoTime();
+        LoadEvent event = new LoadEvent();
+        event.begin();
         try {
-            String json = Files.readString(DATA_FILE_PATH);
-            List<Map<String, String>> rows = parseJsonArray(json);
+            if (Files.exists(dataFilePath)) {
+                CatalogSnapshot image = readDataFile(event);
+                long buildStart = System.nanoTime();
+                applyLoadedImage(image);
+                event.buildTime = System.nanoTime() - buildStart;
+                event.recordCount = image.recordCount();
+                loadedSequence = image.sequence;
+            }
+            // Redo mutations made after the last checkpoint
+            if (MutationJournal.hasSegments(dataFilePath)) {
+                long replayStart = System.nanoTime();
+                MutationJournal.replay(dataFilePath, new JournalRedo());
+                event.replayTime = System.nanoTime() - replayStart;
+                journalRecovered = true;
+            }
+
+            if (!libraries.isEmpty()) {
+                String firstKey = libraries.keySet().iterator().next();
+                currentLibraryKey = firstKey;
+                long buildStart = System.nanoTime();
+                rebuildIndexesFromCurrentLibrary();
+                event.buildTime += System.nanoTime() - buildStart;
+            }
+            metrics.record(ServiceMetrics.Operation.LOAD, start);
+            event.dataFile = dataFilePath.toString();
+            event.commit();
+        } catch (Exception e) {
+            System.err.println("Warning: Unable to load existing library data. " + e.getMessage());
+        }
+    }
+
+    // Parse the data file, JSON or binary snapshot, without touching the service state;
+    // the size, format and phase timings go into the event
+    private CatalogSnapshot readDataFile(LoadEvent event) throws IOException {
+        event.bytesRead = Files.size(dataFilePath);
+        if (CatalogSnapshot.isSnapshot(dataFilePath)) {
+            long readStart = System.nanoTime();
+            CatalogSnapshot image = CatalogSnapshot.read(dataFilePath);
+            event.readTime = System.nanoTime() - readStart;
+            event.format = "SNAPSHOT";
+            return image;
+        }
+        event.format = "JSON";
+        return parseJsonFile(event);
+    }
+
+    // Save sequence from the file header; 0 for files written before sequences existed
+    private long readFileSequence() throws IOException {
+        if (CatalogSnapshot.isSnapshot(dataFilePath)) {
+            return CatalogSnapshot.readSequence(dataFilePath);
+        }
+        try (InputStream in = Files.newInputStream(dataFilePath)) {
+            Matcher matcher = JSON_HEADER_SEQUENCE.matcher(new String(in.readNBytes(512), StandardCharsets.UTF_8));
+            return matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+        }
+    }
+
+    private void applyLoadedImage(CatalogSnapshot image) {
+        // Book IDs per library, so duplicate rows are skipped without scanning the library
+        Map<LibraryCatalog, Set<String>> loadedIds = new HashMap<>();
+        for (Patron patron : image.patrons) {
+            if (patron.getPatronId() > 0) {
+                patrons.put(patron.getPatronId(), patron);
+                nextPatronId = Math.max(nextPatronId, patron.getPatronId() + 1);
+            }
+        }
+        for (CatalogSnapshot.Section section : image.sections) {
+            LibraryCatalog catalog = ensureLibraryCatalog(section.name, section.location);
+            if (section.store != null && !catalog.isStored()) {
+                catalog.moveTo(section.store);
+            }
+            for (Book book : section.books) {
+                addLoadedBook(loadedIds, catalog, book);
+            }
+            for (Loan loan : section.loans) {
+                loanLedger.restoreLoan(normalizeLibraryKey(catalog.name, catalog.location), loan);
+            }
+        }
+    }
+
+    private CatalogSnapshot parseJsonFile(LoadEvent event) throws IOException {
+        long readStart = System.nanoTime();
+        String json = Files.readString(dataFilePath);
+        long splitStart = System.nanoTime();
+        List<String> objectJsonList = splitTopLevelObjects(json);
+        long parseStart = System.nanoTime();
+        event.readTime = splitStart - readStart;
+        event.splitTime = parseStart - splitStart;
+        CatalogSnapshot image = new CatalogSnapshot();
+        CatalogSnapshot.Section section = null;
 
-            for (Map<String, String> row : rows) {
-                String recordType = defaultString(row.get("recordType"));
+        for (String objectJson : objectJsonList) {
+            Map<String, String> row = parseObject(objectJson);
+            String recordType = defaultString(row.get("recordType"));
+
+            if ("HEADER".equalsIgnoreCase(recordType)) {
+                image.sequence = parseLong(row.get("sequence"), 0);
+                continue;
+            }
 
-                if ("LIBRARY".equalsIgnoreCase(recordType)) {
-                    String libraryName = requireLibraryName(row.get("libraryName"));
-                    String libraryLocation = normalizeLocation(row.get("libraryLocation"));
-                    ensureLibraryCatalog(libraryName, libraryLocation);
-                    continue;
+            if ("LIBRARY".equalsIgnoreCase(recordType)) {
+                String libraryName = requireLibraryName(row.get("libraryName"));
+                String libraryLocation = normalizeLocation(row.get("libraryLocation"));
+                section = sectionFor(image, section, libraryName, libraryLocation);
+                String storeKind = defaultString(row.get("bookStore"));
+                if (!storeKind.isEmpty()) {
+                    image.moveToStore(section, storeKind);
                 }
+                continue;
+            }
 
-                String libraryName = defaultString(row.get("libraryName"));
-                if (libraryName.isEmpty()) {
-                    libraryName = DEFAULT_LIBRARY_NAME;
+            if ("PATRON".equalsIgnoreCase(recordType)) {
+                int patronId = parseInt(row.get("patronId"), -1);
+                if (patronId > 0) {
+                    image.patrons.add(new Patron(patronId, defaultString(row.get("patronName"))));
                 }
-                String libraryLocation = normalizeLocation(row.get("libraryLocation"));
-                LibraryCatalog catalog = ensureLibraryCatalog(libraryName, libraryLocation);
+                continue;
+            }
 
-                Book book = fromBookRow(row);
-                if (book == null) {
-                    continue;
+            if ("LOAN".equalsIgnoreCase(recordType)) {
+                Loan loan = fromLoanRow(row);
+                if (loan != null) {
+                    section = sectionFor(image, section, requireLibraryName(loan.getLibraryName()),
+                            normalizeLocation(loan.getLibraryLocation()));
+                    section.loans.add(loan);
                 }
-                if (containsBookId(catalog.books, book.getBookId())) {
-                    continue;
+                continue;
+            }
+
+            String libraryName = defaultString(row.get("libraryName"));
+            if (libraryName.isEmpty()) {
+                libraryName = DEFAULT_LIBRARY_NAME;
+            }
+            section = sectionFor(image, section, libraryName, normalizeLocation(row.get("libraryLocation")));
+
+            Book book = fromBookRow(row);
+            if (book == null) {
+                continue;
+            }
+            // A stored library's rows go straight into its store
+            if (section.store == null) {
+                section.books.add(book);
+            } else if (section.store.rowOf(book.getBookId()) < 0) {
+                section.store.add(book);
+            }
+        }
+        event.parseTime = System.nanoTime() - parseStart;
+        return image;
+    }
+
+    // Continue the current section while rows belong to the same library
+    private CatalogSnapshot.Section sectionFor(CatalogSnapshot image, CatalogSnapshot.Section current,
+                                               String libraryName, String libraryLocation) {
+        if (current != null && current.name.equals(libraryName) && current.location.equals(libraryLocation)) {
+            return current;
+        }
+        CatalogSnapshot.Section section = new CatalogSnapshot.Section(libraryName, libraryLocation);
+        image.sections.add(section);
+        return section;
+    }
+
+    // Bring memory in line with a file saved by another process. Memory matches the file this
+    // process last read or wrote, so every difference is theirs. Books keep their objects, changed
+    // ones are updated in place, and the selected library's indexes change only where books did.
+    private int applyExternalChanges(CatalogSnapshot image) {
+        int changes = 0;
+
+        Map<Integer, Patron> filePatrons = new LinkedHashMap<>();
+        for (Patron patron : image.patrons) {
+            if (patron.getPatronId() > 0) {
+                filePatrons.putIfAbsent(patron.getPatronId(), patron);
+            }
+        }
+        for (Patron patron : getPatrons()) {
+            if (!filePatrons.containsKey(patron.getPatronId())) {
+                patrons.remove(patron.getPatronId());
+                changes++;
+            }
+        }
+        for (Patron patron : filePatrons.values()) {
+            Patron existing = patrons.get(patron.getPatronId());
+            if (existing == null) {
+                patrons.put(patron.getPatronId(), patron);
+                changes++;
+            } else if (!existing.getName().equals(patron.getName())) {
+                existing.setName(patron.getName());
+                changes++;
+            }
+            nextPatronId = Math.max(nextPatronId, patron.getPatronId() + 1);
+        }
+
+        Map<String, LibraryCatalog> fileLibraries = new LinkedHashMap<>();
+        Map<String, Loan> fileLoans = new HashMap<>();
+        Map<LibraryCatalog, Set<String>> loadedIds = new HashMap<>();
+        for (CatalogSnapshot.Section section : image.sections) {
+            String name = requireLibraryName(section.name);
+            String location = normalizeLocation(section.location);
+            String key = normalizeLibraryKey(name, location);
+            LibraryCatalog catalog = fileLibraries.computeIfAbsent(key, k -> new LibraryCatalog(name, location));
+            if (section.store != null) {
+                // Shared access keeps every library as objects
+                for (int position = 0; position < section.store.size(); position++) {
+                    addLoadedBook(loadedIds, catalog, section.store.toBook(section.store.rowAt(position)));
                 }
-                catalog.books.add(book);
             }
+            for (Book book : section.books) {
+                addLoadedBook(loadedIds, catalog, book);
+            }
+            for (Loan loan : section.loans) {
+                fileLoans.put(key + "#" + loan.getLoanId(), loan);
+            }
+        }
+
+        Iterator<Map.Entry<String, LibraryCatalog>> iterator = libraries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            String key = iterator.next().getKey();
+            if (!fileLibraries.containsKey(key)) {
+                iterator.remove();
+                loanLedger.closeLoansForLibrary(key);
+                changes++;
+            }
+        }
+        for (Map.Entry<String, LibraryCatalog> entry : fileLibraries.entrySet()) {
+            String key = entry.getKey();
+            LibraryCatalog existing = libraries.get(key);
+            if (existing == null) {
+                libraries.put(key, entry.getValue());
+                changes += 1 + entry.getValue().size();
+                continue;
+            }
+            changes += mergeBooks(key, existing, entry.getValue().books());
+        }
+
+        Map<Long, Loan> openLoans = new HashMap<>();
+        for (Loan loan : loanLedger.getOpenLoans()) {
+            openLoans.put(loan.getLoanId(), loan);
+        }
+        for (Loan loan : openLoans.values()) {
+            Loan saved = fileLoans.get(loanKey(loan) + "#" + loan.getLoanId());
+            if (saved == null || !sameLoan(loan, saved)) {
+                loanLedger.closeLoanById(loan.getLoanId());
+                changes++;
+            }
+        }
+        for (Map.Entry<String, Loan> entry : fileLoans.entrySet()) {
+            Loan loan = entry.getValue();
+            Loan open = openLoans.get(loan.getLoanId());
+            if (open == null || !sameLoan(open, loan) || !loanKey(open).equals(loanKey(loan))) {
+                loanLedger.restoreLoan(loanKey(loan), loan);
+                changes++;
+            }
+        }
 
+        if (currentLibraryKey != null && !libraries.containsKey(currentLibraryKey)) {
+            currentLibraryKey = null;
+            books.clear();
+            booksById.clear();
+            booksByTitle.clear();
+            booksByAuthor.clear();
             if (!libraries.isEmpty()) {
-                String firstKey = libraries.keySet().iterator().next();
-                currentLibraryKey = firstKey;
+                currentLibraryKey = libraries.keySet().iterator().next();
                 rebuildIndexesFromCurrentLibrary();
             }
-        } catch (Exception e) {
-            System.out.println("Warning: Unable to load existing library data. " + e.getMessage());
         }
+        return changes;
+    }
+
+    // Apply the saved list's differences to a library: new books are appended, changed ones updated
+    // in place (replaced only if they became a different class), removed ones dropped. For the selected
+    // library, the same books are added to or removed from the indexes; returns the books changed.
+    private int mergeBooks(String key, LibraryCatalog catalog, List<Book> savedBooks) {
+        boolean indexed = key.equals(currentLibraryKey);
+        Map<String, Book> existingById = new HashMap<>();
+        for (Book book : catalog.books()) {
+            existingById.put(book.getBookId(), book);
+        }
+        int changes = 0;
+        for (Book saved : savedBooks) {
+            Book existing = existingById.remove(saved.getBookId());
+            if (existing == null) {
+                catalog.add(saved);
+                if (indexed) {
+                    addBookToIndexes(saved);
+                }
+                changes++;
+            } else if (!sameBook(existing, saved)) {
+                if (indexed) {
+                    removeSearchKeys(existing);
+                }
+                if (existing.getClass() == saved.getClass()) {
+                    catalog.update(existing, saved);
+                } else {
+                    catalog.replace(existing, saved);
+                    if (indexed) {
+                        books.set(books.indexOf(existing), saved);
+                        booksById.put(saved.getBookId(), saved);
+                    }
+                    existing = saved;
+                }
+                if (indexed) {
+                    addSearchKeys(existing);
+                }
+                changes++;
+            }
+        }
+        for (Book removed : existingById.values()) {
+            catalog.remove(removed.getBookId());
+            if (indexed) {
+                books.remove(removed);
+                booksById.remove(removed.getBookId());
+                removeSearchKeys(removed);
+            }
+            loanLedger.closeLoansForBook(key, removed.getBookId());
+            changes++;
+        }
+        return changes;
+    }
+
+    private static boolean sameBook(Book a, Book b) {
+        if (a.getClass() != b.getClass()
+                || !Objects.equals(a.getTitle(), b.getTitle())
+                || !Objects.equals(a.getAuthor(), b.getAuthor())
+                || !Objects.equals(a.getCategory(), b.getCategory())
+                || a.getTotalCopies() != b.getTotalCopies()
+                || a.getIssuedCopies() != b.getIssuedCopies()) {
+            return false;
+        }
+        if (a instanceof EBook) {
+            EBook ea = (EBook) a;
+            EBook eb = (EBook) b;
+            return Objects.equals(ea.getFileFormat(), eb.getFileFormat()) && ea.getFileSizeMB() == eb.getFileSizeMB();
+        }
+        return true;
     }
 
-    private boolean containsBookId(List<Book> existingBooks, String bookId) {
-        for (Book book : existingBooks) {
-            if (book.getBookId().equals(bookId)) {
-                return true;
+    private static boolean sameLoan(Loan a, Loan b) {
+        return a.getLoanId() == b.getLoanId() && a.getBookId().equals(b.getBookId())
+                && a.getPatronId() == b.getPatronId() && a.getIssuedAtMillis() == b.getIssuedAtMillis()
+                && a.getDueAtMillis() == b.getDueAtMillis();
+    }
+
+    private String loanKey(Loan loan) {
+        return normalizeLibraryKey(requireLibraryName(loan.getLibraryName()), normalizeLocation(loan.getLibraryLocation()));
+    }
+
+    // Applies journal records on load; each record sets absolute state, so replay is idempotent
+    private final class JournalRedo implements MutationJournal.RedoHandler {
+        private final Map<LibraryCatalog, Map<String, Book>> booksById = new HashMap<>();
+
+        private Map<String, Book> index(LibraryCatalog catalog) {
+            return booksById.computeIfAbsent(catalog, c -> {
+                Map<String, Book> byId = new HashMap<>();
+                for (Book book : c.books()) {
+                    byId.put(book.getBookId(), book);
+                }
+                return byId;
+            });
+        }
+
+        @Override
+        public void library(String name, String location) {
+            ensureLibraryCatalog(name, location);
+        }
+
+        @Override
+        public void libraryDeleted(String name, String location) {
+            String key = normalizeLibraryKey(name, normalizeLocation(location));
+            LibraryCatalog removed = libraries.remove(key);
+            if (removed != null) {
+                booksById.remove(removed);
+            }
+            loanLedger.closeLoansForLibrary(key);
+        }
+
+        @Override
+        public void patron(Patron patron) {
+            patrons.put(patron.getPatronId(), patron);
+            nextPatronId = Math.max(nextPatronId, patron.getPatronId() + 1);
+        }
+
+        // A stored library finds rows through its store and needs no index of objects
+        private Book find(LibraryCatalog catalog, String bookId) {
+            return catalog.isStored() ? catalog.find(bookId) : index(catalog).get(bookId);
+        }
+
+        @Override
+        public void book(String name, String location, Book book) {
+            LibraryCatalog catalog = ensureLibraryCatalog(name, location);
+            Book replaced = catalog.isStored() ? catalog.find(book.getBookId()) : index(catalog).put(book.getBookId(), book);
+            if (replaced == null) {
+                catalog.add(book);
+            } else {
+                catalog.replace(replaced, book);
+            }
+        }
+
+        @Override
+        public void bookCopies(String name, String location, String bookId, int issuedCopies) {
+            LibraryCatalog catalog = ensureLibraryCatalog(name, location);
+            Book book = find(catalog, bookId);
+            if (book != null) {
+                int issuedBefore = book.getIssuedCopies();
+                book.setIssuedCopies(issuedCopies);
+                catalog.copiesChanged(book, issuedBefore);
+            }
+        }
+
+        @Override
+        public void bookDeleted(String name, String location, String bookId) {
+            LibraryCatalog catalog = ensureLibraryCatalog(name, location);
+            if (catalog.isStored() || index(catalog).remove(bookId) != null) {
+                catalog.remove(bookId);
             }
+            loanLedger.closeLoansForBook(normalizeLibraryKey(catalog.name, catalog.location), bookId);
+        }
+
+        @Override
+        public void loanOpened(String name, String location, Loan loan) {
+            LibraryCatalog catalog = ensureLibraryCatalog(name, location);
+            loanLedger.restoreLoan(normalizeLibraryKey(catalog.name, catalog.location), loan);
+        }
+
+        @Override
+        public void loanClosed(long loanId) {
+            loanLedger.closeLoanById(loanId);
+        }
+    }
+
+    // Keep the first row for each book ID within a library; a stored library checks its store
+    private void addLoadedBook(Map<LibraryCatalog, Set<String>> loadedIds, LibraryCatalog catalog, Book book) {
+        boolean first = catalog.isStored() ? !catalog.contains(book.getBookId())
+                : loadedIds.computeIfAbsent(catalog, k -> new HashSet<>()).add(book.getBookId());
+        if (first) {
+            catalog.add(book);
         }
-        return false;
     }
 
     private LibraryCatalog ensureLibraryCatalog(String libraryName, String location) {
@@ -370,46 +1806,30 @@ public class LibraryService {
         return created;
     }
 
-    private String toJsonArray() {
+    // Package-private for the benchmarks module
+    String toJsonArray(long sequence) {
         StringBuilder sb = new StringBuilder();
         sb.append("[\n");
-        boolean firstRecord = true;
+        appendHeaderRecord(sb, sequence);
 
-        for (LibraryCatalog catalog : libraries.values()) {
-            if (!firstRecord) {
+        for (Patron patron : getPatrons()) {
+            sb.append(",\n");
+            appendPatronRecord(sb, patron);
+        }
+
+        for (Map.Entry<String, LibraryCatalog> entry : libraries.entrySet()) {
+            LibraryCatalog catalog = entry.getValue();
+            sb.append(",\n");
+            appendLibraryRecord(sb, catalog.name, catalog.location, catalog.storeKind());
+
+            for (Book book : catalog.books()) {
                 sb.append(",\n");
+                appendBookRecord(sb, catalog.name, catalog.location, book);
             }
-            firstRecord = false;
-            sb.append("  {\n");
-            appendStringField(sb, "recordType", "LIBRARY", true);
-            appendStringField(sb, "libraryName", catalog.name, true);
-            appendStringField(sb, "libraryLocation", catalog.location, false);
-            sb.append("  }");
 
-            for (Book book : catalog.books) {
+            for (Loan loan : loanLedger.getLoansForLibrary(entry.getKey())) {
                 sb.append(",\n");
-                boolean isEbook = book instanceof EBook;
-                sb.append("  {\n");
-                appendStringField(sb, "recordType", "BOOK", true);
-                appendStringField(sb, "libraryName", catalog.name, true);
-                appendStringField(sb, "libraryLocation", catalog.location, true);
-                appendStringField(sb, "type", isEbook ? "EBOOK" : "BOOK", true);
-                appendStringField(sb, "bookId", book.getBookId(), true);
-                appendStringField(sb, "title", book.getTitle(), true);
-                appendStringField(sb, "author", book.getAuthor(), true);
-                appendStringField(sb, "category", book.getCategory(), true);
-                appendNumberField(sb, "totalCopies", String.valueOf(book.getTotalCopies()), true);
-                appendNumberField(sb, "issuedCopies", String.valueOf(book.getIssuedCopies()), true);
-
-                if (isEbook) {
-                    EBook eBook = (EBook) book;
-                    appendStringField(sb, "fileFormat", eBook.getFileFormat(), true);
-                    appendNumberField(sb, "fileSizeMB", String.valueOf(eBook.getFileSizeMB()), false);
-                } else {
-                    appendStringField(sb, "fileFormat", "", true);
-                    appendNumberField(sb, "fileSizeMB", "0.0", false);
-                }
-                sb.append("  }");
+                appendLoanRecord(sb, catalog.name, catalog.location, loan);
             }
         }
 
@@ -417,7 +1837,79 @@ public class LibraryService {
         return sb.toString();
     }
 
-    private void appendStringField(StringBuilder sb, String key, String value, boolean comma) {
+    // Record writers for the JSON data file, shared with DatasetGenerator
+
+    static void appendHeaderRecord(StringBuilder sb, long sequence) {
+        sb.append("  {\n");
+        appendStringField(sb, "recordType", "HEADER", true);
+        appendNumberField(sb, "formatVersion", String.valueOf(DATA_FORMAT_VERSION), true);
+        appendNumberField(sb, "sequence", String.valueOf(sequence), false);
+        sb.append("  }");
+    }
+
+    static void appendPatronRecord(StringBuilder sb, Patron patron) {
+        sb.append("  {\n");
+        appendStringField(sb, "recordType", "PATRON", true);
+        appendNumberField(sb, "patronId", String.valueOf(patron.getPatronId()), true);
+        appendStringField(sb, "patronName", patron.getName(), false);
+        sb.append("  }");
+    }
+
+    static void appendLibraryRecord(StringBuilder sb, String libraryName, String libraryLocation) {
+        appendLibraryRecord(sb, libraryName, libraryLocation, null);
+    }
+
+    // bookStore names the BookStore kind of a library kept in a store; omitted otherwise
+    static void appendLibraryRecord(StringBuilder sb, String libraryName, String libraryLocation, String storeKind) {
+        sb.append("  {\n");
+        appendStringField(sb, "recordType", "LIBRARY", true);
+        appendStringField(sb, "libraryName", libraryName, true);
+        appendStringField(sb, "libraryLocation", libraryLocation, storeKind != null);
+        if (storeKind != null) {
+            appendStringField(sb, "bookStore", storeKind, false);
+        }
+        sb.append("  }");
+    }
+
+    static void appendBookRecord(StringBuilder sb, String libraryName, String libraryLocation, Book book) {
+        boolean isEbook = book instanceof EBook;
+        sb.append("  {\n");
+        appendStringField(sb, "recordType", "BOOK", true);
+        appendStringField(sb, "libraryName", libraryName, true);
+        appendStringField(sb, "libraryLocation", libraryLocation, true);
+        appendStringField(sb, "type", isEbook ? "EBOOK" : "BOOK", true);
+        appendStringField(sb, "bookId", book.getBookId(), true);
+        appendStringField(sb, "title", book.getTitle(), true);
+        appendStringField(sb, "author", book.getAuthor(), true);
+        appendStringField(sb, "category", book.getCategory(), true);
+        appendNumberField(sb, "totalCopies", String.valueOf(book.getTotalCopies()), true);
+        appendNumberField(sb, "issuedCopies", String.valueOf(book.getIssuedCopies()), true);
+
+        if (isEbook) {
+            EBook eBook = (EBook) book;
+            appendStringField(sb, "fileFormat", eBook.getFileFormat(), true);
+            appendNumberField(sb, "fileSizeMB", String.valueOf(eBook.getFileSizeMB()), false);
+        } else {
+            appendStringField(sb, "fileFormat", "", true);
+            appendNumberField(sb, "fileSizeMB", "0.0", false);
+        }
+        sb.append("  }");
+    }
+
+    static void appendLoanRecord(StringBuilder sb, String libraryName, String libraryLocation, Loan loan) {
+        sb.append("  {\n");
+        appendStringField(sb, "recordType", "LOAN", true);
+        appendStringField(sb, "libraryName", libraryName, true);
+        appendStringField(sb, "libraryLocation", libraryLocation, true);
+        appendNumberField(sb, "loanId", String.valueOf(loan.getLoanId()), true);
+        appendStringField(sb, "bookId", loan.getBookId(), true);
+        appendNumberField(sb, "patronId", String.valueOf(loan.getPatronId()), true);
+        appendNumberField(sb, "issuedAt", String.valueOf(loan.getIssuedAtMillis()), true);
+        appendNumberField(sb, "dueAt", String.valueOf(loan.getDueAtMillis()), false);
+        sb.append("  }");
+    }
+
+    private static void appendStringField(StringBuilder sb, String key, String value, boolean comma) {
         sb.append("    \"").append(key).append("\": \"").append(escapeJson(value)).append("\"");
         if (comma) {
             sb.append(",");
@@ -425,7 +1917,7 @@ public class LibraryService {
         sb.append("\n");
     }
 
-    private void appendNumberField(StringBuilder sb, String key, String value, boolean comma) {
+    private static void appendNumberField(StringBuilder sb, String key, String value, boolean comma) {
         sb.append("    \"").append(key).append("\": ").append(value);
         if (comma) {
             sb.append(",");
@@ -433,15 +1925,6 @@ public class LibraryService {
         sb.append("\n");
     }
 
-    private List<Map<String, String>> parseJsonArray(String json) {
-        List<Map<String, String>> result = new ArrayList<>();
-        List<String> objectJsonList = splitTopLevelObjects(json);
-        for (String objectJson : objectJsonList) {
-            result.add(parseObject(objectJson));
-        }
-        return result;
-    }
-
     private List<String> splitTopLevelObjects(String json) {
         List<String> objects = new ArrayList<>();
         int depth = 0;
@@ -482,7 +1965,7 @@ public class LibraryService {
         return objects;
     }
 
-    private Map<String, String> parseObject(String objectJson) {
+    Map<String, String> parseObject(String objectJson) {
         Map<String, String> map = new LinkedHashMap<>();
         int index = 0;
 
@@ -587,7 +2070,7 @@ public class LibraryService {
         return null;
     }
 
-    private Book fromBookRow(Map<String, String> row) {
+    Book fromBookRow(Map<String, String> row) {
         String bookId = row.get("bookId");
         if (bookId == null || bookId.trim().isEmpty()) {
             return null;
@@ -628,7 +2111,35 @@ public class LibraryService {
         }
 
         book.setIssuedCopies(issuedCopies);
-        return book;
+        return CatalogStrings.intern(book);
+    }
+
+    private Loan fromLoanRow(Map<String, String> row) {
+        String bookId = row.get("bookId");
+        long loanId = parseLong(row.get("loanId"), -1);
+        long issuedAt = parseLong(row.get("issuedAt"), -1);
+        long dueAt = parseLong(row.get("dueAt"), -1);
+        if (bookId == null || bookId.trim().isEmpty() || loanId < 1 || issuedAt < 0 || dueAt < issuedAt) {
+            return null;
+        }
+
+        return new Loan(
+                loanId,
+                requireLibraryName(row.get("libraryName")),
+                normalizeLocation(row.get("libraryLocation")),
+                bookId,
+                parseInt(row.get("patronId"), LoanLedger.WALK_IN_PATRON),
+                issuedAt,
+                dueAt
+        );
+    }
+
+    private long parseLong(String value, long fallback) {
+        try {
+            return Long.parseLong(value);
+        } catch (Exception e) {
+            return fallback;
+        }
     }
 
     private int parseInt(String value, int fallback) {
@@ -668,7 +2179,7 @@ public class LibraryService {
         return value == null ? "" : value;
     }
 
-    private String escapeJson(String value) {
+    static String escapeJson(String value) {
         if (value == null) {
             return "";
         }
@@ -0,0 +1,67 @@
+package com.library.service;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Totals for one library, or rolled up over all of them, read from the running aggregates the
+ * service keeps up to date on every mutation rather than by scanning books.
+ */
+public class LibraryStatistics {
+    private final String name;
+    private final String location;
+    private final int libraryCount;
+    private final int titles;
+    private final int availableTitles;
+    private final long issuedCopies;
+    private final int eBooks;
+    private final Map<String, Integer> categoryTitles;
+
+    public LibraryStatistics(String name, String location, int libraryCount, int titles, int availableTitles,
+                             long issuedCopies, int eBooks, Map<String, Integer> categoryTitles) {
+        this.name = name;
+        this.location = location;
+        this.libraryCount = libraryCount;
+        this.titles = titles;
+        this.availableTitles = availableTitles;
+        this.issuedCopies = issuedCopies;
+        this.eBooks = eBooks;
+        this.categoryTitles = Collections.unmodifiableMap(categoryTitles);
+    }
+
+    // Library name, or "All Libraries" for the roll-up
+    public String getName() {
+        return name;
+    }
+
+    // Empty for the roll-up
+    public String getLocation() {
+        return location;
+    }
+
+    public int getLibraryCount() {
+        return libraryCount;
+    }
+
+    public int getTitles() {
+        return titles;
+    }
+
+    // Titles with at least one copy on the shelf
+    public int getAvailableTitles() {
+        return availableTitles;
+    }
+
+    public long getIssuedCopies() {
+        return issuedCopies;
+    }
+
+    public int getEBooks() {
+        return eBooks;
+    }
+
+    // Titles per category, by category name
+    public Map<String, Integer> getCategoryTitles() {
+        return categoryTitles;
+    }
+}
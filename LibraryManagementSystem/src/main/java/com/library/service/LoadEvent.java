@@ -0,0 +1,59 @@
+package com.library.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for reading the data file, at startup or when another process saved it,
+ * with the time spent in each phase. Snapshot files are read, decompressed and decoded in one
+ * step, which is reported as the read phase.
+ */
+@Name("com.library.Load")
+@Label("Catalog Load")
+@Category({"Library", "Persistence"})
+@Description("Data file read at startup or reloaded after another process saved it")
+final class LoadEvent extends jdk.jfr.Event {
+    @Label("Data File")
+    String dataFile;
+
+    @Label("Format")
+    String format;
+
+    @Label("Reload")
+    @Description("True when applying another process's save to a running service")
+    boolean reload;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Records")
+    long recordCount;
+
+    @Label("Read Time")
+    @Timespan
+    long readTime;
+
+    @Label("Split Time")
+    @Description("Splitting JSON text into records")
+    @Timespan
+    long splitTime;
+
+    @Label("Parse Time")
+    @Description("Parsing JSON records into books, loans and patrons")
+    @Timespan
+    long parseTime;
+
+    @Label("Build Time")
+    @Description("Building catalogs, loans and indexes from the parsed records")
+    @Timespan
+    long buildTime;
+
+    @Label("Journal Replay Time")
+    @Timespan
+    long replayTime;
+}
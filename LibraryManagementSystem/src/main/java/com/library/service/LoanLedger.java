@@ -0,0 +1,335 @@
+package com.library.service;
+
+import com.library.model.Book;
+import com.library.model.Loan;
+import com.library.model.LoanEvent;
+import com.library.util.IntObjectMap;
+import com.library.util.LongList;
+import com.library.util.LongObjectMap;
+import com.library.util.TimingWheel;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Ledger of open loans across all libraries.
+ * Each loan gets a due time from the item's borrowDuration(), and a due-soon and an
+ * overdue reminder on a hierarchical timing wheel, so firing reminders never scans
+ * the open loans.
+ * Loans are indexed by patron and by book in primitive-keyed maps (patron ID and a
+ * per-book ordinal) holding loan-ID lists, so desk queries touch only matching loans.
+ * Walk-in loans are not indexed by patron: they would all share one list, and closing
+ * each would scan it.
+ * A per-library due-date index lets batch jobs walk loans in due order from a checkpoint.
+ */
+public class LoanLedger {
+    public static final int WALK_IN_PATRON = 0;
+    static final int ANY_PATRON = -1;
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final long REMINDER_LEAD_MILLIS = DAY_MILLIS;
+    private static final long WHEEL_TICK_MILLIS = 60_000L;
+
+    private final Clock clock;
+    private final TimingWheel<LoanEvent> reminders;
+    private final LongObjectMap<OpenLoan> openLoans;
+    private final IntObjectMap<LongList> loansByPatron;
+    private final IntObjectMap<LongList> loansByBook;
+    // libraryKey -> bookId -> book ordinal used as the loansByBook key
+    private final Map<String, Map<String, Integer>> bookOrdinals;
+    // libraryKey -> due time -> loan IDs due at that time
+    private final Map<String, TreeMap<Long, LongList>> dueIndex;
+    private volatile BiConsumer<String, Loan> loanOpenedListener;
+    private volatile BiConsumer<String, Loan> loanClosedListener;
+    private int nextBookOrdinal = 1;
+    private long nextLoanId = 1;
+
+    public LoanLedger(Clock clock) {
+        this.clock = clock;
+        this.reminders = new TimingWheel<>(WHEEL_TICK_MILLIS, clock.millis());
+        this.openLoans = new LongObjectMap<>();
+        this.loansByPatron = new IntObjectMap<>();
+        this.loansByBook = new IntObjectMap<>();
+        this.bookOrdinals = new LinkedHashMap<>();
+        this.dueIndex = new HashMap<>();
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    public synchronized int getOpenLoanCount() {
+        return openLoans.size();
+    }
+
+    public synchronized List<Loan> getOpenLoans() {
+        List<Loan> loans = new ArrayList<>();
+        openLoans.forEachValue(openLoan -> loans.add(openLoan.loan));
+        return loans;
+    }
+
+    // Open loans of one patron across all libraries, oldest first
+    public synchronized List<Loan> getLoansForPatron(int patronId) {
+        if (patronId != WALK_IN_PATRON) {
+            return resolve(loansByPatron.get(patronId));
+        }
+        List<Loan> loans = new ArrayList<>();
+        openLoans.forEachValue(openLoan -> {
+            if (openLoan.loan.getPatronId() == WALK_IN_PATRON) {
+                loans.add(openLoan.loan);
+            }
+        });
+        loans.sort(Comparator.comparingLong(Loan::getLoanId));
+        return loans;
+    }
+
+    // Fire every reminder whose time has come; call periodically from a background thread
+    public List<LoanEvent> collectDueEvents() {
+        return reminders.advance(clock.millis());
+    }
+
+    // Called with the library key and loan whenever a loan is opened or restored, under the ledger lock
+    void setLoanOpenedListener(BiConsumer<String, Loan> listener) {
+        this.loanOpenedListener = listener;
+    }
+
+    // Called with the library key and loan whenever an open loan is closed, under the ledger lock
+    void setLoanClosedListener(BiConsumer<String, Loan> listener) {
+        this.loanClosedListener = listener;
+    }
+
+    synchronized List<String> getLibraryKeysWithLoans() {
+        return new ArrayList<>(dueIndex.keySet());
+    }
+
+    // Visit open loans of a library with fromExclusive < due time <= toInclusive, in due order
+    synchronized int walkDueRange(String libraryKey, long fromExclusive, long toInclusive, Consumer<Loan> visitor) {
+        TreeMap<Long, LongList> byDue = dueIndex.get(libraryKey);
+        if (byDue == null || fromExclusive >= toInclusive) {
+            return 0;
+        }
+        int visited = 0;
+        for (LongList loanIds : byDue.subMap(fromExclusive, false, toInclusive, true).values()) {
+            for (int i = 0; i < loanIds.size(); i++) {
+                visitor.accept(openLoans.get(loanIds.get(i)).loan);
+                visited++;
+            }
+        }
+        return visited;
+    }
+
+    synchronized Loan openLoan(String libraryKey, String libraryName, String libraryLocation, Book book, int patronId) {
+        long now = clock.millis();
+        Loan loan = new Loan(nextLoanId++, libraryName, libraryLocation, book.getBookId(), patronId,
+                now, now + book.borrowDuration() * DAY_MILLIS);
+        register(libraryKey, loan);
+        return loan;
+    }
+
+    // Re-register a loan read from the data file
+    synchronized void restoreLoan(String libraryKey, Loan loan) {
+        if (openLoans.containsKey(loan.getLoanId())) {
+            return;
+        }
+        nextLoanId = Math.max(nextLoanId, loan.getLoanId() + 1);
+        register(libraryKey, loan);
+    }
+
+    // Close the oldest open loan of the book, restricted to one patron unless ANY_PATRON
+    synchronized Loan closeLoan(String libraryKey, String bookId, int patronId) {
+        LongList loanIds = loansByBook.get(ordinalOf(libraryKey, bookId));
+        if (loanIds == null) {
+            return null;
+        }
+        for (int i = 0; i < loanIds.size(); i++) {
+            OpenLoan openLoan = openLoans.get(loanIds.get(i));
+            if (patronId == ANY_PATRON || openLoan.loan.getPatronId() == patronId) {
+                unregister(openLoan);
+                return openLoan.loan;
+            }
+        }
+        return null;
+    }
+
+    // Close a loan by ID, e.g. when replaying the journal; returns false if it was not open
+    synchronized boolean closeLoanById(long loanId) {
+        OpenLoan openLoan = openLoans.get(loanId);
+        if (openLoan == null) {
+            return false;
+        }
+        unregister(openLoan);
+        return true;
+    }
+
+    synchronized void closeLoansForBook(String libraryKey, String bookId) {
+        int ordinal = ordinalOf(libraryKey, bookId);
+        closeAll(ordinal);
+        Map<String, Integer> ordinals = bookOrdinals.get(libraryKey);
+        if (ordinals != null) {
+            ordinals.remove(bookId);
+        }
+    }
+
+    synchronized void closeLoansForLibrary(String libraryKey) {
+        Map<String, Integer> ordinals = bookOrdinals.remove(libraryKey);
+        if (ordinals == null) {
+            return;
+        }
+        for (int ordinal : ordinals.values()) {
+            closeAll(ordinal);
+        }
+    }
+
+    synchronized int countLoansForBook(String libraryKey, String bookId) {
+        LongList loanIds = loansByBook.get(ordinalOf(libraryKey, bookId));
+        return loanIds == null ? 0 : loanIds.size();
+    }
+
+    synchronized List<Loan> getLoansForBook(String libraryKey, String bookId) {
+        return resolve(loansByBook.get(ordinalOf(libraryKey, bookId)));
+    }
+
+    synchronized List<Loan> getLoansForLibrary(String libraryKey) {
+        Map<String, Integer> ordinals = bookOrdinals.get(libraryKey);
+        if (ordinals == null) {
+            return Collections.emptyList();
+        }
+        List<Loan> loans = new ArrayList<>();
+        for (int ordinal : ordinals.values()) {
+            loans.addAll(resolve(loansByBook.get(ordinal)));
+        }
+        return loans;
+    }
+
+    private void register(String libraryKey, Loan loan) {
+        int ordinal = bookOrdinals.computeIfAbsent(libraryKey, k -> new LinkedHashMap<>())
+                .computeIfAbsent(loan.getBookId(), k -> nextBookOrdinal++);
+        OpenLoan openLoan = new OpenLoan(libraryKey, loan, ordinal);
+        long now = clock.millis();
+        if (loan.getDueAtMillis() > now) {
+            openLoan.dueSoonReminder = reminders.schedule(loan.getDueAtMillis() - REMINDER_LEAD_MILLIS,
+                    new LoanEvent(LoanEvent.Type.DUE_SOON, loan));
+        }
+        openLoan.overdueReminder = reminders.schedule(loan.getDueAtMillis(),
+                new LoanEvent(LoanEvent.Type.OVERDUE, loan));
+
+        openLoans.put(loan.getLoanId(), openLoan);
+        addLoanId(loansByBook, ordinal, loan.getLoanId());
+        if (loan.getPatronId() != WALK_IN_PATRON) {
+            addLoanId(loansByPatron, loan.getPatronId(), loan.getLoanId());
+        }
+        dueIndex.computeIfAbsent(libraryKey, k -> new TreeMap<>())
+                .computeIfAbsent(loan.getDueAtMillis(), k -> new LongList(1))
+                .add(loan.getLoanId());
+
+        BiConsumer<String, Loan> listener = loanOpenedListener;
+        if (listener != null) {
+            listener.accept(libraryKey, loan);
+        }
+    }
+
+    private void unregister(OpenLoan openLoan) {
+        long loanId = openLoan.loan.getLoanId();
+        openLoans.remove(loanId);
+        removeLoanId(loansByBook, openLoan.bookOrdinal, loanId);
+        if (openLoan.loan.getPatronId() != WALK_IN_PATRON) {
+            removeLoanId(loansByPatron, openLoan.loan.getPatronId(), loanId);
+        }
+        removeFromDueIndex(openLoan);
+
+        if (openLoan.dueSoonReminder != null) {
+            openLoan.dueSoonReminder.cancel();
+        }
+        if (openLoan.overdueReminder != null) {
+            openLoan.overdueReminder.cancel();
+        }
+
+        BiConsumer<String, Loan> listener = loanClosedListener;
+        if (listener != null) {
+            listener.accept(openLoan.libraryKey, openLoan.loan);
+        }
+    }
+
+    private void removeFromDueIndex(OpenLoan openLoan) {
+        TreeMap<Long, LongList> byDue = dueIndex.get(openLoan.libraryKey);
+        if (byDue == null) {
+            return;
+        }
+        long dueAt = openLoan.loan.getDueAtMillis();
+        LongList loanIds = byDue.get(dueAt);
+        if (loanIds != null && loanIds.removeValue(openLoan.loan.getLoanId()) && loanIds.isEmpty()) {
+            byDue.remove(dueAt);
+            if (byDue.isEmpty()) {
+                dueIndex.remove(openLoan.libraryKey);
+            }
+        }
+    }
+
+    private void closeAll(int ordinal) {
+        LongList loanIds = loansByBook.get(ordinal);
+        if (loanIds == null) {
+            return;
+        }
+        for (long loanId : loanIds.toArray()) {
+            unregister(openLoans.get(loanId));
+        }
+    }
+
+    private int ordinalOf(String libraryKey, String bookId) {
+        Map<String, Integer> ordinals = bookOrdinals.get(libraryKey);
+        if (ordinals == null) {
+            return -1;
+        }
+        Integer ordinal = ordinals.get(bookId);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    private List<Loan> resolve(LongList loanIds) {
+        List<Loan> loans = new ArrayList<>();
+        if (loanIds != null) {
+            for (int i = 0; i < loanIds.size(); i++) {
+                loans.add(openLoans.get(loanIds.get(i)).loan);
+            }
+        }
+        return loans;
+    }
+
+    private static void addLoanId(IntObjectMap<LongList> index, int key, long loanId) {
+        LongList loanIds = index.get(key);
+        if (loanIds == null) {
+            loanIds = new LongList(2);
+            index.put(key, loanIds);
+        }
+        loanIds.add(loanId);
+    }
+
+    private static void removeLoanId(IntObjectMap<LongList> index, int key, long loanId) {
+        LongList loanIds = index.get(key);
+        if (loanIds != null && loanIds.removeValue(loanId) && loanIds.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static final class OpenLoan {
+        final String libraryKey;
+        final Loan loan;
+        final int bookOrdinal;
+        TimingWheel.Entry<LoanEvent> dueSoonReminder;
+        TimingWheel.Entry<LoanEvent> overdueReminder;
+
+        OpenLoan(String libraryKey, Loan loan, int bookOrdinal) {
+            this.libraryKey = libraryKey;
+            this.loan = loan;
+            this.bookOrdinal = bookOrdinal;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.library.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event for time spent waiting on the cross-process data file lock. Waits on the
+ * LibraryService monitor itself are already reported by the JDK's jdk.JavaMonitorEnter event.
+ */
+@Name("com.library.LockWait")
+@Label("Data File Lock Wait")
+@Category({"Library", "Locking"})
+@Description("Wait for the shared data file lock held by another process")
+@Threshold("1 ms")
+final class LockWaitEvent extends jdk.jfr.Event {
+    @Label("Lock File")
+    String lockFile;
+}
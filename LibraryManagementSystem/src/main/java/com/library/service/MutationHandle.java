@@ -0,0 +1,59 @@
+package com.library.service;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Completion handle for a mutation published to a MutationPipeline.
+ * Completed by the writer thread once the mutation is applied and persisted.
+ */
+public class MutationHandle {
+    private static final int PENDING = 0;
+    private static final int SUCCEEDED = 1;
+    private static final int FAILED = 2;
+
+    private volatile int state = PENDING;
+    private volatile Thread waiter;
+    private RuntimeException failure;
+
+    public boolean isDone() {
+        return state != PENDING;
+    }
+
+    // Block until the mutation is applied; rethrows the service exception if it failed
+    public boolean await() {
+        if (state == PENDING) {
+            waiter = Thread.currentThread();
+            while (state == PENDING) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    waiter = null;
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for mutation.");
+                }
+            }
+            waiter = null;
+        }
+        if (state == FAILED) {
+            throw failure;
+        }
+        return true;
+    }
+
+    void complete() {
+        state = SUCCEEDED;
+        wakeWaiter();
+    }
+
+    void fail(RuntimeException exception) {
+        failure = exception;
+        state = FAILED;
+        wakeWaiter();
+    }
+
+    private void wakeWaiter() {
+        Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
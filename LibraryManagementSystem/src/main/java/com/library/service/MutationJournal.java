@@ -0,0 +1,368 @@
+package com.library.service;
+
+import com.library.model.Book;
+import com.library.model.Loan;
+import com.library.model.Patron;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only redo log of catalog mutations, kept next to the data file as numbered segments
+ * ("library-data.json.journal.000001", ...). Records hold absolute values (the book as added,
+ * its issued copy count, the loan opened or closed), so replaying them is idempotent: a
+ * checkpoint only has to be newer than the start of the segments replayed after it.
+ * Each record is framed as length, CRC32 and payload; replay stops a segment at the first
+ * torn or corrupt record, which is how a crash mid-append is recovered.
+ * Records are buffered by the mutating thread and written on commit(), which also forces them
+ * to the device before returning: an acknowledged save survives power loss, not just a killed
+ * process. A batch (inBatch, MutationPipeline, a binary circulation round) commits once, so its
+ * mutations share one fsync. All calls except replay and deleteSegmentsBefore are made while
+ * holding the LibraryService monitor.
+ */
+final class MutationJournal implements Closeable {
+    private static final String SEGMENT_SUFFIX = ".journal.";
+    private static final int MAX_RECORD_BYTES = 8 << 20;
+
+    private static final byte OP_LIBRARY = 1;
+    private static final byte OP_LIBRARY_DELETE = 2;
+    private static final byte OP_PATRON = 3;
+    private static final byte OP_BOOK = 4;
+    private static final byte OP_BOOK_COPIES = 5;
+    private static final byte OP_BOOK_DELETE = 6;
+    private static final byte OP_LOAN_OPEN = 7;
+    private static final byte OP_LOAN_CLOSE = 8;
+
+    // Applies replayed records; implemented by LibraryService
+    interface RedoHandler {
+        void library(String name, String location);
+
+        void libraryDeleted(String name, String location);
+
+        void patron(Patron patron);
+
+        void book(String name, String location, Book book);
+
+        void bookCopies(String name, String location, String bookId, int issuedCopies);
+
+        void bookDeleted(String name, String location, String bookId);
+
+        void loanOpened(String name, String location, Loan loan);
+
+        void loanClosed(long loanId);
+    }
+
+    private final Path dataFile;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(4096);
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+    private final DataOutputStream recordData = new DataOutputStream(record);
+    private FileChannel segment;
+    private long segmentSeq;
+    private long segmentBytes;
+    private int pendingRecords;
+
+    // Start a new segment after any existing ones
+    MutationJournal(Path dataFile) throws IOException {
+        this.dataFile = dataFile;
+        List<Path> existing = segments(dataFile);
+        long lastSeq = existing.isEmpty() ? 0 : sequenceOf(dataFile, existing.get(existing.size() - 1));
+        openSegment(lastSeq + 1);
+    }
+
+    void library(String name, String location) {
+        try {
+            recordData.writeByte(OP_LIBRARY);
+            BookRecordCodec.writeLibrary(recordData, name, location);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode journal record.", e);
+        }
+        endRecord();
+    }
+
+    void libraryDeleted(String name, String location) {
+        try {
+            recordData.writeByte(OP_LIBRARY_DELETE);
+            BookRecordCodec.writeLibrary(recordData, name, location);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode journal record.", e);
+        }
+        endRecord();
+    }
+
+    void patron(Patron patron) {
+        try {
+            recordData.writeByte(OP_PATRON);
+            BookRecordCodec.writePatron(recordData, patron);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode journal record.", e);
+        }
+        endRecord();
+    }
+
+    void book(String name, String location, Book book) {
+        try {
+            recordData.writeByte(OP_BOOK);
+            BookRecordCodec.writeLibrary(recordData, name, location);
+            BookRecordCodec.writeBook(recordData, book);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode journal record.", e);
+        }
+        endRecord();
+    }
+
+    void bookCopies(String name, String location, Book book) {
+        try {
+            recordData.writeByte(OP_BOOK_COPIES);
+            BookRecordCodec.writeLibrary(recordData, name, location);
+            recordData.writeUTF(book.getBookId());
+            recordData.writeInt(book.getIssuedCopies());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode journal record.", e);
+        }
+        endRecord();
+    }
+
+    void bookDeleted(String name, String location, String bookId) {
+        try {
+            recordData.writeByte(OP_BOOK_DELETE);
+            BookRecordCodec.writeLibrary(recordData, name, location);
+            recordData.writeUTF(bookId);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode journal record.", e);
+        }
+        endRecord();
+    }
+
+    void loanOpened(Loan loan) {
+        try {
+            recordData.writeByte(OP_LOAN_OPEN);
+            BookRecordCodec.writeLibrary(recordData, loan.getLibraryName(), loan.getLibraryLocation());
+            BookRecordCodec.writeLoan(recordData, loan);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode journal record.", e);
+        }
+        endRecord();
+    }
+
+    void loanClosed(Loan loan) {
+        try {
+            recordData.writeByte(OP_LOAN_CLOSE);
+            recordData.writeLong(loan.getLoanId());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode journal record.", e);
+        }
+        endRecord();
+    }
+
+    // Frame the current record into the pending buffer
+    private void endRecord() {
+        byte[] body = record.toByteArray();
+        record.reset();
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        ByteBuffer frame = ByteBuffer.allocate(8);
+        frame.putInt(body.length).putInt((int) crc.getValue());
+        pending.write(frame.array(), 0, 8);
+        pending.write(body, 0, body.length);
+        pendingRecords++;
+    }
+
+    // Append buffered records to the current segment and force them to disk. If that fails, the
+    // segment is cut back to its last commit and the records stay buffered for the next one.
+    void commit() throws IOException {
+        if (pending.size() == 0) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+        long committedBytes = segmentBytes;
+        try {
+            while (buffer.hasRemaining()) {
+                segmentBytes += segment.write(buffer);
+            }
+            // File data only: the segment's length is recovered from its framing, not its metadata
+            segment.force(false);
+        } catch (IOException e) {
+            segmentBytes = committedBytes;
+            try {
+                segment.truncate(committedBytes);
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+            }
+            throw e;
+        }
+        pending.reset();
+        pendingRecords = 0;
+    }
+
+    // Commit, then continue in a new segment; returns its sequence number.
+    // A checkpoint started after this call covers everything in earlier segments.
+    long rotate() throws IOException {
+        commit();
+        segment.close();
+        openSegment(segmentSeq + 1);
+        return segmentSeq;
+    }
+
+    long getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    // Records buffered since the last commit
+    int getPendingRecords() {
+        return pendingRecords;
+    }
+
+    // Delete segments made redundant by a checkpoint
+    static void deleteSegmentsBefore(Path dataFile, long seq) throws IOException {
+        for (Path path : segments(dataFile)) {
+            if (sequenceOf(dataFile, path) < seq) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        commit();
+        segment.close();
+    }
+
+    private void openSegment(long seq) throws IOException {
+        segmentSeq = seq;
+        segmentBytes = 0;
+        segment = FileChannel.open(segmentPath(dataFile, seq), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        forceDirectory(dataFile.toAbsolutePath().getParent());
+    }
+
+    // Make a newly created segment's directory entry durable; not every platform can open a directory
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Best effort: the segment data itself is still forced on commit
+        }
+    }
+
+    // Replay every segment in order; returns the number of records applied
+    static long replay(Path dataFile, RedoHandler handler) throws IOException {
+        long applied = 0;
+        for (Path path : segments(dataFile)) {
+            byte[] data = Files.readAllBytes(path);
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.remaining() >= 8) {
+                int length = buffer.getInt();
+                int expectedCrc = buffer.getInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES || length > buffer.remaining()) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(data, buffer.position(), length);
+                if ((int) crc.getValue() != expectedCrc) {
+                    break;
+                }
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, buffer.position(), length));
+                buffer.position(buffer.position() + length);
+                apply(in, handler);
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    private static void apply(DataInputStream in, RedoHandler handler) throws IOException {
+        byte op = in.readByte();
+        if (op == OP_PATRON) {
+            expectTag(in, BookRecordCodec.TAG_PATRON);
+            handler.patron(BookRecordCodec.readPatron(in));
+            return;
+        }
+        if (op == OP_LOAN_CLOSE) {
+            handler.loanClosed(in.readLong());
+            return;
+        }
+
+        expectTag(in, BookRecordCodec.TAG_LIBRARY);
+        String[] library = BookRecordCodec.readLibrary(in);
+        switch (op) {
+            case OP_LIBRARY:
+                handler.library(library[0], library[1]);
+                break;
+            case OP_LIBRARY_DELETE:
+                handler.libraryDeleted(library[0], library[1]);
+                break;
+            case OP_BOOK:
+                expectTag(in, BookRecordCodec.TAG_BOOK);
+                handler.book(library[0], library[1], BookRecordCodec.readBook(in));
+                break;
+            case OP_BOOK_COPIES:
+                handler.bookCopies(library[0], library[1], in.readUTF(), in.readInt());
+                break;
+            case OP_BOOK_DELETE:
+                handler.bookDeleted(library[0], library[1], in.readUTF());
+                break;
+            case OP_LOAN_OPEN:
+                expectTag(in, BookRecordCodec.TAG_LOAN);
+                handler.loanOpened(library[0], library[1], BookRecordCodec.readLoan(in, library[0], library[1]));
+                break;
+            default:
+                throw new IOException("Unknown journal operation: " + op);
+        }
+    }
+
+    private static void expectTag(DataInputStream in, byte expected) throws IOException {
+        byte tag = BookRecordCodec.readTag(in);
+        if (tag != expected) {
+            throw new IOException("Unexpected record tag " + tag + " in journal, expected " + expected);
+        }
+    }
+
+    static boolean hasSegments(Path dataFile) throws IOException {
+        return !segments(dataFile).isEmpty();
+    }
+
+    // Existing segments, oldest first
+    static List<Path> segments(Path dataFile) throws IOException {
+        Path directory = dataFile.toAbsolutePath().getParent();
+        String prefix = dataFile.getFileName().toString() + SEGMENT_SUFFIX;
+        List<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path path : stream) {
+                if (sequenceOf(dataFile, path) > 0) {
+                    result.add(path);
+                }
+            }
+        }
+        result.sort(Comparator.comparingLong(path -> sequenceOf(dataFile, path)));
+        return result;
+    }
+
+    private static Path segmentPath(Path dataFile, long seq) {
+        return dataFile.resolveSibling(dataFile.getFileName() + SEGMENT_SUFFIX + String.format("%06d", seq));
+    }
+
+    // Sequence number of a segment file, or -1 if the name does not parse
+    private static long sequenceOf(Path dataFile, Path segment) {
+        String name = segment.getFileName().toString();
+        String prefix = dataFile.getFileName().toString() + SEGMENT_SUFFIX;
+        try {
+            return Long.parseLong(name.substring(prefix.length()));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.library.service;
+
+import com.library.model.Book;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Optional single-writer mode for LibraryService mutations.
+ * Callers publish issue/return/add/delete requests into a pre-allocated ring buffer
+ * and wait on a MutationHandle; one writer thread applies them in publish order,
+ * rebuilding indexes and saving the data file once per batch instead of once per call.
+ */
+public class MutationPipeline implements AutoCloseable {
+    private static final int ISSUE = 1;
+    private static final int RETURN = 2;
+    private static final int ADD = 3;
+    private static final int DELETE = 4;
+    private static final int MAX_BATCH_SIZE = 1024;
+    // Set in claimSequence by close(); claims that see it are refused
+    private static final long CLOSED = 1L << 62;
+
+    private final LibraryService libraryService;
+    private final Slot[] ring;
+    private final int mask;
+    private final AtomicLong claimSequence;
+    private final Thread writer;
+    private final RuntimeException[] batchFailures;
+
+    // Last sequence applied by the writer
+    private volatile long consumedSequence = -1;
+    private volatile boolean writerIdle;
+    private volatile boolean running = true;
+    // Sequences claimed before close(); the writer drains exactly these
+    private volatile long closedAt;
+
+    public MutationPipeline(LibraryService libraryService, int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two.");
+        }
+        this.libraryService = libraryService;
+        this.ring = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+        this.claimSequence = new AtomicLong();
+        this.batchFailures = new RuntimeException[Math.min(capacity, MAX_BATCH_SIZE)];
+        this.writer = new Thread(this::runWriter, "MutationPipelineWriter");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public MutationHandle issueBook(String bookId) {
+        return publish(ISSUE, bookId, null);
+    }
+
+    public MutationHandle returnBook(String bookId) {
+        return publish(RETURN, bookId, null);
+    }
+
+    public MutationHandle addBook(Book book) {
+        return publish(ADD, book.getBookId(), book);
+    }
+
+    public MutationHandle deleteBook(String bookId) {
+        return publish(DELETE, bookId, null);
+    }
+
+    // Mutations published but not yet applied
+    public long getBacklog() {
+        long claimed = claimSequence.get();
+        if ((claimed & CLOSED) != 0) {
+            claimed = closedAt;
+        }
+        return Math.max(0, claimed - 1 - consumedSequence);
+    }
+
+    // Stop accepting mutations and wait for the writer to drain the ring
+    @Override
+    public void close() {
+        long claimed = claimSequence.get();
+        while ((claimed & CLOSED) == 0 && !claimSequence.compareAndSet(claimed, claimed | CLOSED)) {
+            claimed = claimSequence.get();
+        }
+        if ((claimed & CLOSED) == 0) {
+            closedAt = claimed;
+            running = false;
+        }
+        LockSupport.unpark(writer);
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private MutationHandle publish(int operation, String bookId, Book book) {
+        // Claiming and closing are ordered by claimSequence, so a claim either lands
+        // before close() and is drained, or sees CLOSED and takes no slot
+        long sequence = claimSequence.getAndIncrement();
+        if ((sequence & CLOSED) != 0) {
+            throw new IllegalStateException("Mutation pipeline is closed.");
+        }
+        // Wait until the writer has consumed the previous lap of this slot
+        while (sequence - ring.length > consumedSequence) {
+            LockSupport.parkNanos(1_000);
+        }
+
+        MutationHandle handle = new MutationHandle();
+        Slot slot = ring[(int) (sequence & mask)];
+        slot.operation = operation;
+        slot.bookId = bookId;
+        slot.book = book;
+        slot.handle = handle;
+        slot.sequence = sequence;
+
+        if (writerIdle) {
+            LockSupport.unpark(writer);
+        }
+        return handle;
+    }
+
+    private void runWriter() {
+        long next = 0;
+        while (true) {
+            int available = 0;
+            while (available < batchFailures.length && ring[(int) ((next + available) & mask)].sequence == next + available) {
+                available++;
+            }
+
+            if (available == 0) {
+                if (!running && next == closedAt) {
+                    return;
+                }
+                writerIdle = true;
+                if (ring[(int) (next & mask)].sequence != next) {
+                    LockSupport.parkNanos(100_000);
+                }
+                writerIdle = false;
+                continue;
+            }
+
+            applyBatch(next, available);
+            next += available;
+        }
+    }
+
+    private void applyBatch(long first, int count) {
+        RuntimeException batchError = null;
+        synchronized (libraryService) {
+            try {
+                libraryService.sharedWrite(() -> {
+                    for (int i = 0; i < count; i++) {
+                        Slot slot = ring[(int) ((first + i) & mask)];
+                        batchFailures[i] = null;
+                        try {
+                            apply(slot);
+                        } catch (RuntimeException e) {
+                            batchFailures[i] = e;
+                        }
+                    }
+                    libraryService.completeBatch();
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                batchError = e;
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            Slot slot = ring[(int) ((first + i) & mask)];
+            MutationHandle handle = slot.handle;
+            slot.book = null;
+            slot.handle = null;
+
+            RuntimeException failure = batchFailures[i] != null ? batchFailures[i] : batchError;
+            batchFailures[i] = null;
+            if (failure == null) {
+                handle.complete();
+            } else {
+                handle.fail(failure);
+            }
+        }
+        consumedSequence = first + count - 1;
+    }
+
+    private void apply(Slot slot) {
+        switch (slot.operation) {
+            case ISSUE:
+                libraryService.applyIssue(slot.bookId, LoanLedger.WALK_IN_PATRON);
+                break;
+            case RETURN:
+                libraryService.applyReturn(slot.bookId, LoanLedger.ANY_PATRON);
+                break;
+            case ADD:
+                libraryService.applyAdd(slot.book);
+                break;
+            case DELETE:
+                libraryService.applyDelete(slot.bookId);
+                break;
+            default:
+                throw new IllegalStateException("Unknown mutation: " + slot.operation);
+        }
+    }
+
+    private static final class Slot {
+        volatile long sequence = -1;
+        int operation;
+        String bookId;
+        Book book;
+        MutationHandle handle;
+    }
+}
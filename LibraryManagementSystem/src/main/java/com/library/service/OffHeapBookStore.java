@@ -0,0 +1,603 @@
+package com.library.service;
+
+import com.library.model.Book;
+import com.library.model.EBook;
+import com.library.util.StringDictionary;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * BookStore that keeps every book record outside the Java heap, for catalogs of tens of millions
+ * of books where Book objects make old-generation collections long. Records live in 1 MiB slabs
+ * of direct memory, or of a memory-mapped file so the OS can page cold records out. Each slab is
+ * carved into blocks of one power-of-two size from 64 bytes up; freed blocks go on a free list for
+ * their size, threaded through the blocks themselves, and are reused by the next record that fits.
+ * The heap holds only int arrays: record addresses in row order for scans, and an open-addressing
+ * ID index of addresses. A row is a record address and stays valid until that record is removed.
+ * The mapped file is scratch space, not a persistence format.
+ */
+public final class OffHeapBookStore implements BookStore, Closeable {
+    // A mapped store is saved under the same kind and reloads into direct memory
+    static final String KIND = "OFF_HEAP";
+    private static final int SLAB_SHIFT = 20;
+    private static final int SLAB_SIZE = 1 << SLAB_SHIFT;
+    // Addresses count 16-byte units: slab number in the high bits, unit within the slab in the low 16
+    private static final int UNIT_SHIFT = 4;
+    private static final int UNIT_BITS = SLAB_SHIFT - UNIT_SHIFT;
+    private static final int UNIT_MASK = (1 << UNIT_BITS) - 1;
+    private static final int MAX_SLABS = 1 << (31 - UNIT_BITS);
+    private static final int MIN_BLOCK_SHIFT = 6;
+    private static final int SIZE_CLASSES = SLAB_SHIFT - MIN_BLOCK_SHIFT + 1;
+    private static final int NO_BLOCK = -1;
+
+    // Record layout; the position field holds the next free block while a block is free
+    private static final int POSITION = 0;
+    private static final int TOTAL_COPIES = 4;
+    private static final int ISSUED_COPIES = 8;
+    private static final int AUTHOR_CODE = 12;
+    private static final int CATEGORY_CODE = 16;
+    private static final int FORMAT_CODE = 20;
+    private static final int FILE_SIZE_MB = 24;
+    private static final int ID_LENGTH = 32;
+    private static final int TITLE_LENGTH = 36;
+    private static final int HEADER = 40;
+
+    // Code and length of a null string, and FORMAT_CODE of a printed book
+    private static final int NONE = -1;
+    private static final int PRINTED = Integer.MIN_VALUE;
+
+    // Null for direct memory
+    private final FileChannel channel;
+    private ByteBuffer[] slabs = new ByteBuffer[16];
+    private int slabCount;
+    // Per size class: first free block, and the slab and offset blocks are carved from next
+    private final int[] freeLists = new int[SIZE_CLASSES];
+    private final int[] carveSlabs = new int[SIZE_CLASSES];
+    private final int[] carveOffsets = new int[SIZE_CLASSES];
+    private long liveBytes;
+
+    private int[] addresses = new int[1024];
+    private int size;
+
+    // Address + 1 per slot, 0 when free; linear probing on the hash of the UTF-8 book ID
+    private int[] idSlots;
+    private int idMask;
+
+    // Records in direct memory
+    public OffHeapBookStore() {
+        this(null);
+    }
+
+    private OffHeapBookStore(FileChannel channel) {
+        this.channel = channel;
+        Arrays.fill(freeLists, NO_BLOCK);
+        Arrays.fill(carveSlabs, NO_BLOCK);
+        allocateIdSlots(addresses.length);
+    }
+
+    // Records in a memory-mapped scratch file, created or truncated; the caller deletes it after close()
+    public static OffHeapBookStore mapped(Path file) throws IOException {
+        return new OffHeapBookStore(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String kind() {
+        return KIND;
+    }
+
+    // Memory reserved for slabs
+    public long getReservedBytes() {
+        return (long) slabCount * SLAB_SIZE;
+    }
+
+    // Memory in blocks holding live records
+    public long getLiveBytes() {
+        return liveBytes;
+    }
+
+    @Override
+    public int add(Book book) {
+        String bookId = book.getBookId();
+        byte[] id = bookId.getBytes(StandardCharsets.UTF_8);
+        if (find(id) >= 0) {
+            throw new IllegalArgumentException("Book ID already exists in this store: " + bookId);
+        }
+        byte[] title = book.getTitle() == null ? null : book.getTitle().getBytes(StandardCharsets.UTF_8);
+        int recordSize = HEADER + id.length + (title == null ? 0 : title.length);
+        if (recordSize > SLAB_SIZE) {
+            throw new IllegalArgumentException("Book record is larger than a slab: " + bookId);
+        }
+        if (size == addresses.length) {
+            growAddresses(size * 2);
+        }
+
+        int sizeClass = sizeClass(recordSize);
+        int address = allocate(sizeClass);
+        ByteBuffer slab = slabs[address >>> UNIT_BITS];
+        int base = offset(address);
+        slab.putInt(base + POSITION, size);
+        slab.putInt(base + TOTAL_COPIES, book.getTotalCopies());
+        slab.putInt(base + ISSUED_COPIES, book.getIssuedCopies());
+        slab.putInt(base + AUTHOR_CODE, encode(CatalogStrings.AUTHORS, book.getAuthor()));
+        slab.putInt(base + CATEGORY_CODE, encode(CatalogStrings.CATEGORIES, book.getCategory()));
+        if (book instanceof EBook) {
+            EBook eBook = (EBook) book;
+            slab.putInt(base + FORMAT_CODE, encode(CatalogStrings.FORMATS, eBook.getFileFormat()));
+            slab.putDouble(base + FILE_SIZE_MB, eBook.getFileSizeMB());
+        } else {
+            slab.putInt(base + FORMAT_CODE, PRINTED);
+            slab.putDouble(base + FILE_SIZE_MB, 0);
+        }
+        slab.putInt(base + ID_LENGTH, id.length);
+        slab.putInt(base + TITLE_LENGTH, title == null ? NONE : title.length);
+        putBytes(slab, base + HEADER, id);
+        if (title != null) {
+            putBytes(slab, base + HEADER + id.length, title);
+        }
+        liveBytes += 1 << (sizeClass + MIN_BLOCK_SHIFT);
+
+        addresses[size++] = address;
+        insertIdSlot(address, hash(id));
+        return address;
+    }
+
+    @Override
+    public int rowOf(String bookId) {
+        return find(bookId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public int rowAt(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + " outside 0.." + (size - 1));
+        }
+        return addresses[position];
+    }
+
+    // Each record holds its own scan position
+    @Override
+    public int positionOf(int row) {
+        return getInt(row, POSITION);
+    }
+
+    // Remove a book and put its block on the free list; the last row takes its place in scans
+    @Override
+    public boolean remove(String bookId) {
+        int address = rowOf(bookId);
+        if (address < 0) {
+            return false;
+        }
+        deleteIdSlot(slotOf(address));
+        ByteBuffer slab = slabs[address >>> UNIT_BITS];
+        int base = offset(address);
+        int position = slab.getInt(base + POSITION);
+        int last = addresses[--size];
+        if (position != size) {
+            addresses[position] = last;
+            slabs[last >>> UNIT_BITS].putInt(offset(last) + POSITION, position);
+        }
+
+        int titleLength = slab.getInt(base + TITLE_LENGTH);
+        int sizeClass = sizeClass(HEADER + slab.getInt(base + ID_LENGTH) + Math.max(titleLength, 0));
+        slab.putInt(base + POSITION, freeLists[sizeClass]);
+        freeLists[sizeClass] = address;
+        liveBytes -= 1 << (sizeClass + MIN_BLOCK_SHIFT);
+        return true;
+    }
+
+    @Override
+    public String getBookId(int row) {
+        ByteBuffer slab = slabs[checkRow(row) >>> UNIT_BITS];
+        int base = offset(row);
+        return getString(slab, base + HEADER, slab.getInt(base + ID_LENGTH));
+    }
+
+    @Override
+    public String getTitle(int row) {
+        ByteBuffer slab = slabs[checkRow(row) >>> UNIT_BITS];
+        int base = offset(row);
+        return getString(slab, base + HEADER + slab.getInt(base + ID_LENGTH), slab.getInt(base + TITLE_LENGTH));
+    }
+
+    @Override
+    public String getAuthor(int row) {
+        return decode(CatalogStrings.AUTHORS, getInt(row, AUTHOR_CODE));
+    }
+
+    @Override
+    public String getCategory(int row) {
+        return decode(CatalogStrings.CATEGORIES, getInt(row, CATEGORY_CODE));
+    }
+
+    @Override
+    public int getTotalCopies(int row) {
+        return getInt(row, TOTAL_COPIES);
+    }
+
+    @Override
+    public int getIssuedCopies(int row) {
+        return getInt(row, ISSUED_COPIES);
+    }
+
+    @Override
+    public boolean isEBook(int row) {
+        return getInt(row, FORMAT_CODE) != PRINTED;
+    }
+
+    @Override
+    public String getFileFormat(int row) {
+        return decode(CatalogStrings.FORMATS, getInt(row, FORMAT_CODE));
+    }
+
+    @Override
+    public double getFileSizeMB(int row) {
+        return slabs[checkRow(row) >>> UNIT_BITS].getDouble(offset(row) + FILE_SIZE_MB);
+    }
+
+    @Override
+    public boolean issue(int row) {
+        if (!isAvailable(row)) {
+            return false;
+        }
+        if (getInt(row, FORMAT_CODE) == PRINTED) {
+            slabs[row >>> UNIT_BITS].putInt(offset(row) + ISSUED_COPIES, getInt(row, ISSUED_COPIES) + 1);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean returnCopy(int row) {
+        int issued = getInt(row, ISSUED_COPIES);
+        if (issued == 0) {
+            return false;
+        }
+        slabs[row >>> UNIT_BITS].putInt(offset(row) + ISSUED_COPIES, issued - 1);
+        return true;
+    }
+
+    @Override
+    public void setIssuedCopies(int row, int issuedCopies) {
+        slabs[checkRow(row) >>> UNIT_BITS].putInt(offset(row) + ISSUED_COPIES, issuedCopies);
+    }
+
+    // Valid until the record is removed
+    @Override
+    public BookView view(int row) {
+        return new BookView(this, checkRow(row));
+    }
+
+    @Override
+    public Book toBook(int row) {
+        Book book = isEBook(row)
+                ? new EBook(getBookId(row), getTitle(row), getAuthor(row), getCategory(row), getTotalCopies(row),
+                        getFileFormat(row), getFileSizeMB(row))
+                : new Book(getBookId(row), getTitle(row), getAuthor(row), getCategory(row), getTotalCopies(row));
+        book.setIssuedCopies(getIssuedCopies(row));
+        return book;
+    }
+
+    @Override
+    public int countAvailable() {
+        ByteBuffer[] slabs = this.slabs;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int address = addresses[i];
+            ByteBuffer slab = slabs[address >>> UNIT_BITS];
+            int base = offset(address);
+            // Sign bit of issued - total is set exactly when copies remain
+            count += (slab.getInt(base + ISSUED_COPIES) - slab.getInt(base + TOTAL_COPIES)) >>> 31;
+        }
+        return count;
+    }
+
+    @Override
+    public long sumIssuedCopies() {
+        return sum(ISSUED_COPIES);
+    }
+
+    @Override
+    public long sumTotalCopies() {
+        return sum(TOTAL_COPIES);
+    }
+
+    @Override
+    public int countEBooks() {
+        ByteBuffer[] slabs = this.slabs;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int address = addresses[i];
+            count += slabs[address >>> UNIT_BITS].getInt(offset(address) + FORMAT_CODE) == PRINTED ? 0 : 1;
+        }
+        return count;
+    }
+
+    @Override
+    public int[] countByCategory() {
+        int[] counts = new int[CatalogStrings.CATEGORIES.size()];
+        ByteBuffer[] slabs = this.slabs;
+        for (int i = 0; i < size; i++) {
+            int address = addresses[i];
+            int code = slabs[address >>> UNIT_BITS].getInt(offset(address) + CATEGORY_CODE);
+            if (code >= 0) {
+                counts[code]++;
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public int[] availableRows() {
+        ByteBuffer[] slabs = this.slabs;
+        int[] rows = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int address = addresses[i];
+            ByteBuffer slab = slabs[address >>> UNIT_BITS];
+            int base = offset(address);
+            rows[count] = address;
+            count += (slab.getInt(base + ISSUED_COPIES) - slab.getInt(base + TOTAL_COPIES)) >>> 31;
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    @Override
+    public int[] rowsByAuthor(String author) {
+        boolean[] matches = CatalogStrings.authorMatches(author);
+        return matches == null ? new int[0] : rowsWithCode(AUTHOR_CODE, matches);
+    }
+
+    @Override
+    public int[] rowsByCategory(String category) {
+        int code = CatalogStrings.CATEGORIES.codeOf(category);
+        if (code < 0) {
+            return new int[0];
+        }
+        boolean[] matches = new boolean[code + 1];
+        matches[code] = true;
+        return rowsWithCode(CATEGORY_CODE, matches);
+    }
+
+    // Release the slabs; direct memory is returned when the buffers are collected
+    @Override
+    public void close() throws IOException {
+        Arrays.fill(slabs, null);
+        slabCount = 0;
+        size = 0;
+        liveBytes = 0;
+        Arrays.fill(idSlots, 0);
+        Arrays.fill(freeLists, NO_BLOCK);
+        Arrays.fill(carveSlabs, NO_BLOCK);
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private int[] rowsWithCode(int field, boolean[] matches) {
+        ByteBuffer[] slabs = this.slabs;
+        int[] rows = new int[Math.min(size, 64)];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int address = addresses[i];
+            int code = slabs[address >>> UNIT_BITS].getInt(offset(address) + field);
+            if (code >= 0 && code < matches.length && matches[code]) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, Math.max(count * 2, 16));
+                }
+                rows[count++] = address;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private long sum(int field) {
+        ByteBuffer[] slabs = this.slabs;
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            int address = addresses[i];
+            total += slabs[address >>> UNIT_BITS].getInt(offset(address) + field);
+        }
+        return total;
+    }
+
+    private int getInt(int row, int field) {
+        return slabs[checkRow(row) >>> UNIT_BITS].getInt(offset(row) + field);
+    }
+
+    // A row must be the address of a live record, which records its own position in addresses[]
+    private int checkRow(int row) {
+        if (row >= 0 && (row >>> UNIT_BITS) < slabCount) {
+            int position = slabs[row >>> UNIT_BITS].getInt(offset(row) + POSITION);
+            if (position >= 0 && position < size && addresses[position] == row) {
+                return row;
+            }
+        }
+        throw new IndexOutOfBoundsException("No book record at row " + row);
+    }
+
+    // Take a block from the size class's free list, or carve one from its current slab
+    private int allocate(int sizeClass) {
+        int address = freeLists[sizeClass];
+        if (address != NO_BLOCK) {
+            freeLists[sizeClass] = slabs[address >>> UNIT_BITS].getInt(offset(address) + POSITION);
+            return address;
+        }
+        int blockSize = 1 << (sizeClass + MIN_BLOCK_SHIFT);
+        if (carveSlabs[sizeClass] == NO_BLOCK || carveOffsets[sizeClass] + blockSize > SLAB_SIZE) {
+            carveSlabs[sizeClass] = newSlab();
+            carveOffsets[sizeClass] = 0;
+        }
+        address = (carveSlabs[sizeClass] << UNIT_BITS) | (carveOffsets[sizeClass] >>> UNIT_SHIFT);
+        carveOffsets[sizeClass] += blockSize;
+        return address;
+    }
+
+    private int newSlab() {
+        if (slabCount == MAX_SLABS) {
+            throw new IllegalStateException("Off-heap book store is full (" + MAX_SLABS + " slabs).");
+        }
+        ByteBuffer slab;
+        if (channel == null) {
+            slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+        } else {
+            try {
+                slab = channel.map(FileChannel.MapMode.READ_WRITE, (long) slabCount * SLAB_SIZE, SLAB_SIZE);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to map a slab of the book store file: " + e.getMessage(), e);
+            }
+        }
+        if (slabCount == slabs.length) {
+            slabs = Arrays.copyOf(slabs, slabCount * 2);
+        }
+        slabs[slabCount] = slab;
+        return slabCount++;
+    }
+
+    private void growAddresses(int capacity) {
+        addresses = Arrays.copyOf(addresses, capacity);
+        allocateIdSlots(capacity);
+        for (int i = 0; i < size; i++) {
+            insertIdSlot(addresses[i], hashOf(addresses[i]));
+        }
+    }
+
+    private int find(byte[] id) {
+        int slot = hash(id) & idMask;
+        int entry;
+        while ((entry = idSlots[slot]) != 0) {
+            if (idEquals(entry - 1, id)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & idMask;
+        }
+        return -1;
+    }
+
+    private boolean idEquals(int address, byte[] id) {
+        ByteBuffer slab = slabs[address >>> UNIT_BITS];
+        int base = offset(address);
+        if (slab.getInt(base + ID_LENGTH) != id.length) {
+            return false;
+        }
+        for (int i = 0; i < id.length; i++) {
+            if (slab.get(base + HEADER + i) != id[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Keep the ID index at most half full
+    private void allocateIdSlots(int rowCapacity) {
+        int slots = Integer.highestOneBit(Math.max(rowCapacity, 8) - 1) << 2;
+        idSlots = new int[slots];
+        idMask = slots - 1;
+    }
+
+    private void insertIdSlot(int address, int hash) {
+        int slot = hash & idMask;
+        while (idSlots[slot] != 0) {
+            slot = (slot + 1) & idMask;
+        }
+        idSlots[slot] = address + 1;
+    }
+
+    private int slotOf(int address) {
+        int slot = hashOf(address) & idMask;
+        while (idSlots[slot] != address + 1) {
+            slot = (slot + 1) & idMask;
+        }
+        return slot;
+    }
+
+    // Backward-shift deletion, as in IntObjectMap, so there are no tombstones
+    private void deleteIdSlot(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & idMask;
+            int entry = idSlots[slot];
+            if (entry == 0) {
+                break;
+            }
+            int home = hashOf(entry - 1) & idMask;
+            if (((slot - home) & idMask) >= ((slot - gap) & idMask)) {
+                idSlots[gap] = entry;
+                gap = slot;
+            }
+        }
+        idSlots[gap] = 0;
+    }
+
+    // Hash of the stored book ID, equal to hash() of its UTF-8 bytes
+    private int hashOf(int address) {
+        ByteBuffer slab = slabs[address >>> UNIT_BITS];
+        int base = offset(address);
+        int length = slab.getInt(base + ID_LENGTH);
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + slab.get(base + HEADER + i);
+        }
+        return mix(h);
+    }
+
+    private static int hash(byte[] id) {
+        int h = 0;
+        for (byte b : id) {
+            h = 31 * h + b;
+        }
+        return mix(h);
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int offset(int address) {
+        return (address & UNIT_MASK) << UNIT_SHIFT;
+    }
+
+    // Smallest block size class, 64 bytes and up, that holds recordSize bytes
+    private static int sizeClass(int recordSize) {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(recordSize, 1 << MIN_BLOCK_SHIFT) - 1);
+        return shift - MIN_BLOCK_SHIFT;
+    }
+
+    // Absolute bulk put/get need Java 16, so bytes are copied one at a time
+    private static void putBytes(ByteBuffer slab, int index, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            slab.put(index + i, bytes[i]);
+        }
+    }
+
+    private static String getString(ByteBuffer slab, int index, int length) {
+        if (length == NONE) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = slab.get(index + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int encode(StringDictionary dictionary, String value) {
+        return value == null ? NONE : dictionary.encode(value);
+    }
+
+    private static String decode(StringDictionary dictionary, int code) {
+        return code < 0 ? null : dictionary.decode(code);
+    }
+}
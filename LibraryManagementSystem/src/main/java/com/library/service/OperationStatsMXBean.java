@@ -0,0 +1,22 @@
+package com.library.service;
+
+/**
+ * JMX view of one ServiceMetrics operation: call count and latency percentiles in microseconds.
+ */
+public interface OperationStatsMXBean {
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    void reset();
+}
@@ -0,0 +1,354 @@
+package com.library.service;
+
+import com.library.model.Loan;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Nightly-style batch computing overdue loans and fines per library.
+ * Each library keeps a cursor into the ledger's due-date index: a run only walks loans
+ * that fell due since the cursor, and keeps a running overdue count and sum of due days,
+ * so a library's fine total is O(1) to compute. Returned loans are subtracted as they close,
+ * and loans restored already past the cursor are counted as they register.
+ * Libraries are processed in parallel on a fork-join pool; each holds the ledger lock only
+ * to copy its due range. Cursors are written to a checkpoint file once per run, so a
+ * restart resumes from the last completed run.
+ */
+public class OverdueFinesJob implements AutoCloseable {
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final String CURSOR_PREFIX = "cursor.";
+
+    private final LoanLedger loanLedger;
+    private final Path checkpointFile;
+    private final long finePerDayCents;
+    private final ForkJoinPool pool;
+    private final Map<String, LibraryState> states = new ConcurrentHashMap<>();
+    private final Object checkpointLock = new Object();
+    private ScheduledExecutorService scheduler;
+
+    // Progress of the current or last run
+    private final AtomicInteger librariesDone = new AtomicInteger();
+    private volatile int librariesTotal;
+    private volatile boolean runInProgress;
+    private volatile long runsCompleted;
+    private volatile long lastRunMillis;
+    private volatile long lastRunDurationMillis;
+    private volatile long lastLoansWalked;
+
+    public OverdueFinesJob(LoanLedger loanLedger, Path checkpointFile, long finePerDayCents, int parallelism) {
+        if (finePerDayCents < 0) {
+            throw new IllegalArgumentException("Fine per day cannot be negative.");
+        }
+        this.loanLedger = loanLedger;
+        this.checkpointFile = checkpointFile;
+        this.finePerDayCents = finePerDayCents;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+        loadCheckpoint();
+        loanLedger.setLoanOpenedListener(this::onLoanOpened);
+        loanLedger.setLoanClosedListener(this::onLoanClosed);
+    }
+
+    // Run every periodMillis on a background thread, printing a one-line summary when loans are overdue
+    public synchronized void start(long initialDelayMillis, long periodMillis) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Overdue job is already scheduled.");
+        }
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "OverdueFinesJob");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+        executor.scheduleAtFixedRate(this::runScheduled, initialDelayMillis, periodMillis, TimeUnit.MILLISECONDS);
+        scheduler = executor;
+    }
+
+    @Override
+    public synchronized void close() {
+        loanLedger.setLoanOpenedListener(null);
+        loanLedger.setLoanClosedListener(null);
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        pool.shutdown();
+    }
+
+    // Bring every library up to date and return its overdue summary, most fines first
+    public synchronized List<LibraryFines> runOnce() {
+        long start = System.currentTimeMillis();
+        long now = loanLedger.getClock().millis();
+        List<String> libraryKeys = loanLedger.getLibraryKeysWithLoans();
+        for (String key : states.keySet()) {
+            if (!libraryKeys.contains(key)) {
+                libraryKeys.add(key);
+            }
+        }
+
+        runInProgress = true;
+        librariesTotal = libraryKeys.size();
+        librariesDone.set(0);
+        AtomicInteger loansWalked = new AtomicInteger();
+        List<Callable<LibraryFines>> tasks = new ArrayList<>();
+        for (String key : libraryKeys) {
+            tasks.add(() -> {
+                LibraryFines fines = processLibrary(key, now, loansWalked);
+                librariesDone.incrementAndGet();
+                return fines;
+            });
+        }
+
+        List<LibraryFines> results = new ArrayList<>();
+        try {
+            for (Future<LibraryFines> future : pool.invokeAll(tasks)) {
+                LibraryFines fines = future.get();
+                if (fines.getOverdueLoans() > 0) {
+                    results.add(fines);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Overdue job interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Overdue job failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            runInProgress = false;
+        }
+        saveCheckpoint();
+
+        results.sort((a, b) -> Long.compare(b.getFineCents(), a.getFineCents()));
+        lastRunMillis = now;
+        lastLoansWalked = loansWalked.get();
+        lastRunDurationMillis = System.currentTimeMillis() - start;
+        runsCompleted++;
+        return results;
+    }
+
+    public String getFormattedProgress() {
+        String state = runInProgress
+                ? "running, " + librariesDone.get() + "/" + librariesTotal + " libraries done"
+                : "idle";
+        return "Overdue job: " + state + ", runs completed: " + runsCompleted
+                + ", last run walked " + lastLoansWalked + " loan(s) across " + librariesTotal
+                + " libraries in " + lastRunDurationMillis + " ms";
+    }
+
+    public long getLastRunMillis() {
+        return lastRunMillis;
+    }
+
+    private void runScheduled() {
+        try {
+            List<LibraryFines> results = runOnce();
+            long overdue = 0;
+            long newlyOverdue = 0;
+            long fineCents = 0;
+            for (LibraryFines fines : results) {
+                overdue += fines.getOverdueLoans();
+                newlyOverdue += fines.getNewlyOverdue().size();
+                fineCents += fines.getFineCents();
+            }
+            if (overdue > 0) {
+                System.out.println("\n[OVERDUE JOB] " + overdue + " overdue loan(s) in " + results.size()
+                        + " libraries (" + newlyOverdue + " new), outstanding fines " + formatCents(fineCents) + ".");
+            }
+        } catch (RuntimeException e) {
+            System.out.println("\n[OVERDUE JOB] Run failed: " + e.getMessage());
+        }
+    }
+
+    // Count loans that fell due since the library's cursor and advance the cursor to now.
+    // The ledger lock is held only to copy the due range and move the cursor. Loans closed or
+    // restored after that adjust the totals through the listeners, and the copied loans are added
+    // under the lock again afterwards, so a loan closed in between nets out.
+    private LibraryFines processLibrary(String libraryKey, long now, AtomicInteger loansWalked) {
+        LibraryState state = states.computeIfAbsent(libraryKey, k -> new LibraryState(Long.MIN_VALUE, false));
+        List<Loan> recounted = new ArrayList<>();
+        List<Loan> newlyOverdue = new ArrayList<>();
+        synchronized (loanLedger) {
+            if (state.needsRebuild) {
+                // Resumed from a checkpoint: recount loans already past the cursor without reporting them again
+                loanLedger.walkDueRange(libraryKey, Long.MIN_VALUE, state.cursor, recounted::add);
+                state.needsRebuild = false;
+            }
+            loanLedger.walkDueRange(libraryKey, state.cursor, now, newlyOverdue::add);
+            state.cursor = Math.max(state.cursor, now);
+        }
+
+        long addedLoans = recounted.size() + newlyOverdue.size();
+        long addedDays = 0;
+        for (Loan loan : recounted) {
+            addedDays += dayOf(loan.getDueAtMillis());
+        }
+        for (Loan loan : newlyOverdue) {
+            addedDays += dayOf(loan.getDueAtMillis());
+        }
+        loansWalked.addAndGet((int) addedLoans);
+
+        long overdueLoans;
+        long dueDaySum;
+        synchronized (loanLedger) {
+            state.overdueLoans += addedLoans;
+            state.dueDaySum += addedDays;
+            overdueLoans = state.overdueLoans;
+            dueDaySum = state.dueDaySum;
+        }
+
+        // Every counted loan is due on or before now, so each contributes (today - due day) days
+        long fineCents = (overdueLoans * dayOf(now) - dueDaySum) * finePerDayCents;
+        return new LibraryFines(libraryKey, overdueLoans, fineCents, newlyOverdue);
+    }
+
+    // Ledger listener: a loan restored (or opened) already due by the cursor is never walked, so count it now
+    private void onLoanOpened(String libraryKey, Loan loan) {
+        LibraryState state = states.get(libraryKey);
+        if (state != null && !state.needsRebuild && loan.getDueAtMillis() <= state.cursor) {
+            state.add(loan);
+        }
+    }
+
+    // Ledger listener: drop a closed loan from its library's running totals if it was counted
+    private void onLoanClosed(String libraryKey, Loan loan) {
+        LibraryState state = states.get(libraryKey);
+        if (state != null && !state.needsRebuild && loan.getDueAtMillis() <= state.cursor) {
+            state.overdueLoans--;
+            state.dueDaySum -= dayOf(loan.getDueAtMillis());
+        }
+    }
+
+    private void saveCheckpoint() {
+        if (checkpointFile == null) {
+            return;
+        }
+        Properties properties = new Properties();
+        synchronized (loanLedger) {
+            for (Map.Entry<String, LibraryState> entry : states.entrySet()) {
+                properties.setProperty(CURSOR_PREFIX + entry.getKey(), Long.toString(entry.getValue().cursor));
+            }
+        }
+        synchronized (checkpointLock) {
+            writeCheckpoint(properties);
+        }
+    }
+
+    private void writeCheckpoint(Properties properties) {
+        try {
+            Path directory = checkpointFile.toAbsolutePath().getParent();
+            Path temp = Files.createTempFile(directory, "overdue-checkpoint", ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, "Overdue job cursors (due time in epoch millis) per library");
+            }
+            try {
+                Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write overdue checkpoint: " + e.getMessage(), e);
+        }
+    }
+
+    private void loadCheckpoint() {
+        if (checkpointFile == null || !Files.exists(checkpointFile)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(checkpointFile)) {
+            properties.load(in);
+        } catch (IOException e) {
+            System.out.println("Could not read overdue checkpoint, starting from scratch: " + e.getMessage());
+            return;
+        }
+        for (String name : properties.stringPropertyNames()) {
+            if (!name.startsWith(CURSOR_PREFIX)) {
+                continue;
+            }
+            try {
+                long cursor = Long.parseLong(properties.getProperty(name).trim());
+                states.put(name.substring(CURSOR_PREFIX.length()), new LibraryState(cursor, true));
+            } catch (NumberFormatException e) {
+                System.out.println("Skipping bad overdue checkpoint entry: " + name);
+            }
+        }
+    }
+
+    private static long dayOf(long epochMillis) {
+        return Math.floorDiv(epochMillis, DAY_MILLIS);
+    }
+
+    public static String formatCents(long cents) {
+        return String.format("$%d.%02d", cents / 100, Math.abs(cents % 100));
+    }
+
+    // Guarded by the ledger lock
+    private static final class LibraryState {
+        long cursor;
+        boolean needsRebuild;
+        long overdueLoans;
+        long dueDaySum;
+
+        LibraryState(long cursor, boolean needsRebuild) {
+            this.cursor = cursor;
+            this.needsRebuild = needsRebuild;
+        }
+
+        void add(Loan loan) {
+            overdueLoans++;
+            dueDaySum += dayOf(loan.getDueAtMillis());
+        }
+    }
+
+    /**
+     * Overdue summary of one library after a run.
+     */
+    public static final class LibraryFines {
+        private final String libraryKey;
+        private final long overdueLoans;
+        private final long fineCents;
+        private final List<Loan> newlyOverdue;
+
+        LibraryFines(String libraryKey, long overdueLoans, long fineCents, List<Loan> newlyOverdue) {
+            this.libraryKey = libraryKey;
+            this.overdueLoans = overdueLoans;
+            this.fineCents = fineCents;
+            this.newlyOverdue = newlyOverdue;
+        }
+
+        public String getLibraryKey() {
+            return libraryKey;
+        }
+
+        public long getOverdueLoans() {
+            return overdueLoans;
+        }
+
+        public long getFineCents() {
+            return fineCents;
+        }
+
+        // Loans that became overdue since the previous run
+        public List<Loan> getNewlyOverdue() {
+            return newlyOverdue;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.library.service;
+
+import java.util.Arrays;
+
+/**
+ * Multimap from int keys to BookStore rows, the title and author indexes of a stored library.
+ * Entries are chained per bucket through parallel int arrays and freed entries are reused, so
+ * an index over tens of millions of rows holds no object per row. All rows of a key share one
+ * chain: a lookup walks the rows it returns plus any keys that collide with it.
+ */
+final class RowIndex {
+    private static final int NONE = -1;
+
+    // First entry of each bucket
+    private int[] heads;
+    private int mask;
+    private int[] keys;
+    private int[] rows;
+    // Next entry in the same bucket, or the next free entry
+    private int[] next;
+    // Entries handed out so far, live or free
+    private int used;
+    private int free = NONE;
+    private int size;
+
+    RowIndex() {
+        this(16);
+    }
+
+    RowIndex(int expectedRows) {
+        allocate(Integer.highestOneBit(Math.max(expectedRows, 8) - 1) << 1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    void add(int key, int row) {
+        if (free == NONE && used == keys.length) {
+            grow();
+        }
+        int entry;
+        if (free != NONE) {
+            entry = free;
+            free = next[entry];
+        } else {
+            entry = used++;
+        }
+        int bucket = mix(key) & mask;
+        keys[entry] = key;
+        rows[entry] = row;
+        next[entry] = heads[bucket];
+        heads[bucket] = entry;
+        size++;
+    }
+
+    // Returns false if the row is not filed under the key
+    boolean remove(int key, int row) {
+        int bucket = mix(key) & mask;
+        int previous = NONE;
+        for (int entry = heads[bucket]; entry != NONE; previous = entry, entry = next[entry]) {
+            if (keys[entry] == key && rows[entry] == row) {
+                if (previous == NONE) {
+                    heads[bucket] = next[entry];
+                } else {
+                    next[previous] = next[entry];
+                }
+                next[entry] = free;
+                free = entry;
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // File the row under a new number, e.g. after the store moved it; false if it is not filed
+    boolean renumber(int key, int row, int newRow) {
+        for (int entry = heads[mix(key) & mask]; entry != NONE; entry = next[entry]) {
+            if (keys[entry] == key && rows[entry] == row) {
+                rows[entry] = newRow;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Rows filed under the key, oldest first
+    int[] rows(int key) {
+        int[] found = new int[8];
+        int count = 0;
+        for (int entry = heads[mix(key) & mask]; entry != NONE; entry = next[entry]) {
+            if (keys[entry] == key) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = rows[entry];
+            }
+        }
+        // Chains are newest first
+        for (int i = 0, j = count - 1; i < j; i++, j--) {
+            int row = found[i];
+            found[i] = found[j];
+            found[j] = row;
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    boolean contains(int key, int row) {
+        for (int entry = heads[mix(key) & mask]; entry != NONE; entry = next[entry]) {
+            if (keys[entry] == key && rows[entry] == row) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Double the entries and buckets, keeping each chain's order
+    private void grow() {
+        int[] oldHeads = heads;
+        int[] oldKeys = keys;
+        int[] oldRows = rows;
+        int[] oldNext = next;
+        allocate(oldKeys.length * 2);
+        int[] chain = new int[16];
+        for (int head : oldHeads) {
+            int length = 0;
+            for (int entry = head; entry != NONE; entry = oldNext[entry]) {
+                if (length == chain.length) {
+                    chain = Arrays.copyOf(chain, length * 2);
+                }
+                chain[length++] = entry;
+            }
+            // Oldest first, so each new chain is newest first again
+            for (int i = length - 1; i >= 0; i--) {
+                int entry = chain[i];
+                add(oldKeys[entry], oldRows[entry]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        heads = new int[capacity];
+        Arrays.fill(heads, NONE);
+        mask = capacity - 1;
+        keys = new int[capacity];
+        rows = new int[capacity];
+        next = new int[capacity];
+        used = 0;
+        free = NONE;
+        size = 0;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
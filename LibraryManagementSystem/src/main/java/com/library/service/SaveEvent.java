@@ -0,0 +1,35 @@
+package com.library.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for one LibraryService save: a full rewrite of the data file, or a
+ * journal commit when journaling is enabled.
+ */
+@Name("com.library.Save")
+@Label("Catalog Save")
+@Category({"Library", "Persistence"})
+@Description("Data file rewrite or journal commit")
+final class SaveEvent extends jdk.jfr.Event {
+    @Label("Data File")
+    String dataFile;
+
+    @Label("Format")
+    @Description("JSON, a snapshot codec, or JOURNAL for a journal commit")
+    String format;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+
+    @Label("Records")
+    @Description("Patrons, libraries, books and loans written, or journal records appended")
+    long recordCount;
+
+    @Label("Sequence")
+    long sequence;
+}
@@ -0,0 +1,247 @@
+package com.library.service;
+
+import com.library.util.LatencyHistogram;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-operation call counts and latency histograms for one LibraryService, plus gauges read
+ * from the service on demand. Only calls that complete are recorded; mutations are timed
+ * without the save, which is recorded as its own operation. Recording costs two
+ * System.nanoTime() calls and a few atomic increments, with no allocation, so it is always on.
+ * registerMBeans() publishes everything over JMX under "com.library:type=LibraryService,file=<data file>".
+ */
+public class ServiceMetrics implements LibraryGaugesMXBean {
+    // Libraries listed by formatReport(); larger services are summarized
+    private static final int REPORT_LIBRARIES = 20;
+
+    public enum Operation {
+        ISSUE("issue"),
+        RETURN("return"),
+        ADD("add"),
+        DELETE("delete"),
+        SEARCH_BY_ID("searchById"),
+        SEARCH_BY_TITLE("searchByTitle"),
+        SEARCH_BY_AUTHOR("searchByAuthor"),
+        SORT("sort"),
+        SAVE("save"),
+        LOAD("load"),
+        INDEX_REBUILD("indexRebuild");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final LibraryService libraryService;
+    private final LatencyHistogram[] histograms;
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+
+    ServiceMetrics(LibraryService libraryService) {
+        this.libraryService = libraryService;
+        this.histograms = new LatencyHistogram[Operation.values().length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    // Record one call that started at startNanos, a System.nanoTime() value
+    public void record(Operation operation, long startNanos) {
+        histograms[operation.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    public LatencyHistogram getHistogram(Operation operation) {
+        return histograms[operation.ordinal()];
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    @Override
+    public int getLibraryCount() {
+        return libraryService.getLibraries().size();
+    }
+
+    @Override
+    public long getTotalBooks() {
+        long total = 0;
+        for (LibraryInfo library : libraryService.getLibraries()) {
+            total += library.getBookCount();
+        }
+        return total;
+    }
+
+    @Override
+    public Map<String, Integer> getBooksPerLibrary() {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (LibraryInfo library : libraryService.getLibraries()) {
+            result.put(library.getName() + " (" + library.getLocation() + ")", library.getBookCount());
+        }
+        return result;
+    }
+
+    @Override
+    public int getOpenLoans() {
+        return libraryService.getLoanLedger().getOpenLoanCount();
+    }
+
+    @Override
+    public long getDataFileBytes() {
+        try {
+            Path dataFile = libraryService.getDataFilePath();
+            return Files.exists(dataFile) ? Files.size(dataFile) : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    public String formatReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("=======================================================\n");
+        sb.append("                  SERVICE METRICS\n");
+        sb.append("=======================================================\n");
+        sb.append(String.format("%-15s %9s %10s %10s %10s %10s %10s%n",
+                "Operation", "Count", "Mean", "p50", "p99", "p99.9", "Max"));
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = getHistogram(operation);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            sb.append(String.format("%-15s %9d %10s %10s %10s %10s %10s%n", operation.getLabel(),
+                    histogram.getCount(), formatNanos((long) histogram.getMeanNanos()),
+                    formatNanos(histogram.getValueAtPercentile(50)), formatNanos(histogram.getValueAtPercentile(99)),
+                    formatNanos(histogram.getValueAtPercentile(99.9)), formatNanos(histogram.getMaxNanos())));
+        }
+
+        List<LibraryInfo> libraries = libraryService.getLibraries();
+        long totalBooks = 0;
+        for (LibraryInfo library : libraries) {
+            totalBooks += library.getBookCount();
+        }
+        sb.append("-------------------------------------------------------\n");
+        sb.append(String.format("Libraries: %d, Books: %d, Open loans: %d, Data file: %s%n", libraries.size(),
+                totalBooks, getOpenLoans(), getDataFileBytes() < 0 ? "not saved yet" : getDataFileBytes() + " bytes"));
+        libraries.sort(Comparator.comparingInt(LibraryInfo::getBookCount).reversed());
+        for (LibraryInfo library : libraries.subList(0, Math.min(REPORT_LIBRARIES, libraries.size()))) {
+            sb.append(String.format("  %-40s %9d books%n", library.getName() + " (" + library.getLocation() + ")",
+                    library.getBookCount()));
+        }
+        if (libraries.size() > REPORT_LIBRARIES) {
+            sb.append(String.format("  ... and %d smaller libraries%n", libraries.size() - REPORT_LIBRARIES));
+        }
+        sb.append("=======================================================");
+        return sb.toString();
+    }
+
+    // Publish the gauges and one MBean per operation on the platform MBean server
+    public synchronized void registerMBeans() throws JMException {
+        if (!registeredNames.isEmpty()) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String base = "com.library:type=LibraryService,file="
+                + ObjectName.quote(libraryService.getDataFilePath().toAbsolutePath().toString());
+        try {
+            ObjectName gaugesName = new ObjectName(base + ",name=gauges");
+            server.registerMBean(new StandardMBean(this, LibraryGaugesMXBean.class, true), gaugesName);
+            registeredNames.add(gaugesName);
+            for (Operation operation : Operation.values()) {
+                ObjectName name = new ObjectName(base + ",operation=" + operation.getLabel());
+                server.registerMBean(new StandardMBean(new OperationStats(getHistogram(operation)),
+                        OperationStatsMXBean.class, true), name);
+                registeredNames.add(name);
+            }
+        } catch (JMException e) {
+            unregisterMBeans();
+            throw e;
+        }
+    }
+
+    public synchronized void unregisterMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredNames) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // Already gone
+            }
+        }
+        registeredNames.clear();
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos >= 1_000_000) {
+            return String.format("%.2f ms", nanos / 1_000_000.0);
+        }
+        return String.format("%.1f us", nanos / 1_000.0);
+    }
+
+    private static final class OperationStats implements OperationStatsMXBean {
+        private final LatencyHistogram histogram;
+
+        OperationStats(LatencyHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        @Override
+        public double getMeanMicros() {
+            return histogram.getMeanNanos() / 1_000.0;
+        }
+
+        @Override
+        public double getP50Micros() {
+            return histogram.getValueAtPercentile(50) / 1_000.0;
+        }
+
+        @Override
+        public double getP90Micros() {
+            return histogram.getValueAtPercentile(90) / 1_000.0;
+        }
+
+        @Override
+        public double getP99Micros() {
+            return histogram.getValueAtPercentile(99) / 1_000.0;
+        }
+
+        @Override
+        public double getP999Micros() {
+            return histogram.getValueAtPercentile(99.9) / 1_000.0;
+        }
+
+        @Override
+        public double getMaxMicros() {
+            return histogram.getMaxNanos() / 1_000.0;
+        }
+
+        @Override
+        public void reset() {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.library.service;
+
+/**
+ * Thrown when an operation is refused because its admission queue is full
+ * or the wait for a slot timed out. The operation was not executed and can be retried.
+ * Not an IllegalStateException, so handlers of business-rule failures do not swallow it.
+ */
+public class ServiceSaturatedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final AdmissionClass admissionClass;
+    private final long retryAfterMillis;
+
+    public ServiceSaturatedException(AdmissionClass admissionClass, String message, long retryAfterMillis) {
+        super(message);
+        this.admissionClass = admissionClass;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public AdmissionClass getAdmissionClass() {
+        return admissionClass;
+    }
+
+    // Suggested back-off before retrying
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    public boolean isRetryable() {
+        return true;
+    }
+}
@@ -0,0 +1,99 @@
+package com.library.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Cross-process coordination for a data file shared by several LibraryService processes.
+ * Writers hold an exclusive FileChannel lock on a sidecar "<data file>.lock" (the data file
+ * itself is replaced by rename on every save, so it cannot carry the lock). A watcher thread
+ * reports when another process replaces the data file. File locks are held per JVM, so one
+ * process must not open two shared services on the same file.
+ */
+final class SharedDataFile implements Closeable {
+    // Let a burst of events for one save settle before reloading
+    private static final long EVENT_SETTLE_MILLIS = 50;
+
+    private final Path dataFile;
+    private final Path lockFile;
+    private final FileChannel lockChannel;
+    private final WatchService watchService;
+    private final Thread watcher;
+    private FileLock lock;
+
+    SharedDataFile(Path dataFile, Runnable onChange) throws IOException {
+        this.dataFile = dataFile.toAbsolutePath();
+        this.lockFile = this.dataFile.resolveSibling(this.dataFile.getFileName() + ".lock");
+        this.lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.dataFile.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        this.watcher = new Thread(() -> watch(onChange), "DataFileWatcher");
+        this.watcher.setDaemon(true);
+        this.watcher.start();
+    }
+
+    // Block until this process holds the write lock
+    void lock() throws IOException {
+        LockWaitEvent event = new LockWaitEvent();
+        event.begin();
+        lock = lockChannel.lock();
+        if (event.shouldCommit()) {
+            event.lockFile = lockFile.toString();
+            event.commit();
+        }
+    }
+
+    void unlock() throws IOException {
+        if (lock != null) {
+            lock.release();
+            lock = null;
+        }
+    }
+
+    boolean isLocked() {
+        return lock != null;
+    }
+
+    private void watch(Runnable onChange) {
+        String fileName = dataFile.getFileName().toString();
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Object context = event.context();
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || (context instanceof Path && context.toString().equals(fileName))) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (changed) {
+                    Thread.sleep(EVENT_SETTLE_MILLIS);
+                    onChange.run();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        watcher.interrupt();
+        unlock();
+        lockChannel.close();
+    }
+}
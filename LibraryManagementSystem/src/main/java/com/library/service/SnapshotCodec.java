@@ -0,0 +1,120 @@
+package com.library.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Block compression used by catalog snapshots.
+ * NONE stores blocks as-is, DEFLATE uses raw zlib blocks, GZIP wraps each block in its own
+ * gzip member (larger headers, but each block can be inspected with standard tools).
+ */
+public enum SnapshotCodec {
+    NONE(0),
+    DEFLATE(1),
+    GZIP(2);
+
+    private final int id;
+
+    SnapshotCodec(int id) {
+        this.id = id;
+    }
+
+    // Identifier written to the snapshot header
+    int getId() {
+        return id;
+    }
+
+    static SnapshotCodec fromId(int id) {
+        for (SnapshotCodec codec : values()) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unknown snapshot codec: " + id);
+    }
+
+    // Compress the first length bytes of raw into a new array
+    byte[] compress(byte[] raw, int length) throws IOException {
+        switch (this) {
+            case DEFLATE: {
+                Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+                try {
+                    deflater.setInput(raw, 0, length);
+                    deflater.finish();
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length / 4));
+                    byte[] buffer = new byte[16 * 1024];
+                    while (!deflater.finished()) {
+                        int written = deflater.deflate(buffer);
+                        out.write(buffer, 0, written);
+                    }
+                    return out.toByteArray();
+                } finally {
+                    deflater.end();
+                }
+            }
+            case GZIP: {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length / 4));
+                try (GZIPOutputStream gzip = new GZIPOutputStream(out, 16 * 1024)) {
+                    gzip.write(raw, 0, length);
+                }
+                return out.toByteArray();
+            }
+            default: {
+                byte[] copy = new byte[length];
+                System.arraycopy(raw, 0, copy, 0, length);
+                return copy;
+            }
+        }
+    }
+
+    // Decompress data[offset, offset + length) into exactly rawLength bytes
+    byte[] decompress(byte[] data, int offset, int length, int rawLength) throws IOException {
+        byte[] raw = new byte[rawLength];
+        switch (this) {
+            case DEFLATE: {
+                Inflater inflater = new Inflater();
+                try {
+                    inflater.setInput(data, offset, length);
+                    int filled = 0;
+                    while (filled < rawLength && !inflater.finished()) {
+                        int read = inflater.inflate(raw, filled, rawLength - filled);
+                        if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            break;
+                        }
+                        filled += read;
+                    }
+                    if (filled != rawLength || !inflater.finished()) {
+                        throw new IOException("Corrupt snapshot block: expected " + rawLength + " bytes, got " + filled);
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupt snapshot block: " + e.getMessage(), e);
+                } finally {
+                    inflater.end();
+                }
+                return raw;
+            }
+            case GZIP: {
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data, offset, length), 16 * 1024)) {
+                    int filled = in.readNBytes(raw, 0, rawLength);
+                    if (filled != rawLength || in.read() != -1) {
+                        throw new IOException("Corrupt snapshot block: expected " + rawLength + " bytes");
+                    }
+                }
+                return raw;
+            }
+            default:
+                if (length != rawLength) {
+                    throw new IOException("Corrupt snapshot block: stored length " + length + " != " + rawLength);
+                }
+                System.arraycopy(data, offset, raw, 0, rawLength);
+                return raw;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.library.service;
+
+import com.library.util.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Re-drives a workload trace captured with LibraryService.startCapture() against a fresh
+ * LibraryService, started in a scratch directory from the state saved with the trace. Calls run
+ * at the captured pace, N times faster, or as fast as possible, on any number of threads; calls
+ * captured on one thread always run in order on the same replay thread. The storage format and
+ * journaling can differ from the capture, which is how persistence modes are compared on real load.
+ */
+public class WorkloadReplayer {
+    // Calls queued per replay thread before the reader waits
+    private static final int QUEUE_CAPACITY = 4096;
+
+    private final Path traceFile;
+    private double speed = 1.0;
+    private int threads = 1;
+    private SnapshotCodec snapshotCodec;
+    private long checkpointIntervalMillis;
+
+    public WorkloadReplayer(Path traceFile) {
+        this.traceFile = traceFile;
+    }
+
+    // Multiple of the captured pace; 0 replays as fast as possible
+    public WorkloadReplayer setSpeed(double speed) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("Speed cannot be negative.");
+        }
+        this.speed = speed;
+        return this;
+    }
+
+    public WorkloadReplayer setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be greater than 0.");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    // Storage format of the replay service; null for JSON
+    public WorkloadReplayer setSnapshotCodec(SnapshotCodec snapshotCodec) {
+        this.snapshotCodec = snapshotCodec;
+        return this;
+    }
+
+    // Journal with this checkpoint interval; 0 saves the data file on every call
+    public WorkloadReplayer setCheckpointIntervalMillis(long checkpointIntervalMillis) {
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+        return this;
+    }
+
+    // Replay the whole trace and return a report of throughput, failures and per-operation latency
+    public String run() throws IOException, InterruptedException {
+        Path base = WorkloadTrace.basePath(traceFile);
+        if (!Files.exists(base)) {
+            throw new IllegalArgumentException("Trace base state not found: " + base);
+        }
+        if (checkpointIntervalMillis > 0 && snapshotCodec == null) {
+            throw new IllegalArgumentException("Journaling requires a snapshot format.");
+        }
+        Path directory = Files.createTempDirectory("library-replay");
+        Path dataFile = directory.resolve(snapshotCodec == null ? "library-data.json" : "library-data.snap");
+        Files.copy(base, dataFile);
+
+        LongAdder[] calls = newCounters();
+        LongAdder[] failures = newCounters();
+        LatencyHistogram lag = new LatencyHistogram();
+
+        // Book and EBook print on every issue/return; keep that noise out of the measurement
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try (WorkloadTrace.Reader reader = new WorkloadTrace.Reader(traceFile)) {
+            LibraryService service = snapshotCodec == null
+                    ? new LibraryService(dataFile) : new LibraryService(dataFile, snapshotCodec);
+            if (checkpointIntervalMillis > 0) {
+                service.enableJournal(checkpointIntervalMillis);
+            }
+            if (!reader.getLibraryName().isEmpty()) {
+                service.selectLibrary(reader.getLibraryName(), reader.getLibraryLocation());
+            }
+            service.getMetrics().reset();
+
+            List<BlockingQueue<Task>> queues = new ArrayList<>();
+            List<Thread> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                BlockingQueue<Task> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+                Thread worker = new Thread(() -> drain(service, queue, calls, failures, lag), "replay-" + i);
+                queues.add(queue);
+                workers.add(worker);
+                worker.start();
+            }
+
+            long start = System.nanoTime();
+            WorkloadTrace.Call call;
+            while ((call = reader.next()) != null) {
+                long due = speed == 0 ? 0 : start + (long) (call.offsetNanos / speed);
+                if (speed > 0) {
+                    long wait;
+                    while ((wait = due - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                queues.get(call.thread % threads).put(new Task(call, due));
+            }
+            for (BlockingQueue<Task> queue : queues) {
+                queue.put(Task.END);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long elapsed = System.nanoTime() - start;
+            if (checkpointIntervalMillis > 0) {
+                service.closeJournal();
+            }
+            return formatReport(service, reader.getThreadNames().size(), elapsed, calls, failures, lag);
+        } finally {
+            System.setOut(console);
+            deleteRecursively(directory);
+        }
+    }
+
+    private void drain(LibraryService service, BlockingQueue<Task> queue, LongAdder[] calls, LongAdder[] failures,
+                       LatencyHistogram lag) {
+        try {
+            while (true) {
+                Task task = queue.take();
+                if (task == Task.END) {
+                    return;
+                }
+                if (task.due != 0) {
+                    lag.record(System.nanoTime() - task.due);
+                }
+                calls[task.call.op].increment();
+                try {
+                    invoke(service, task.call);
+                } catch (RuntimeException e) {
+                    // Calls that failed when captured usually fail again; both are counted
+                    failures[task.call.op].increment();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void invoke(LibraryService service, WorkloadTrace.Call call) {
+        if (call.libraryName != null) {
+            invokeIn(service, call, call.libraryName, call.libraryLocation);
+            return;
+        }
+        switch (call.op) {
+            case WorkloadTrace.CREATE_LIBRARY:
+                service.createLibrary(call.text, call.location);
+                break;
+            case WorkloadTrace.SELECT_LIBRARY:
+                service.selectLibrary(call.text, call.location);
+                break;
+            case WorkloadTrace.DELETE_LIBRARY:
+                service.deleteCurrentLibrary();
+                break;
+            case WorkloadTrace.REGISTER_PATRON:
+                service.registerPatron(call.text);
+                break;
+            case WorkloadTrace.ADD_BOOK:
+                service.addBook(call.book);
+                break;
+            case WorkloadTrace.ADD_BOOKS:
+                service.addBooks(call.books);
+                break;
+            case WorkloadTrace.ISSUE:
+                service.issueBook(call.text, call.number);
+                break;
+            case WorkloadTrace.RETURN:
+                if (call.number == LoanLedger.ANY_PATRON) {
+                    service.returnBook(call.text);
+                } else {
+                    service.returnBook(call.text, call.number);
+                }
+                break;
+            case WorkloadTrace.DELETE_BOOK:
+                service.deleteBook(call.text);
+                break;
+            case WorkloadTrace.SEARCH_BY_ID:
+                service.searchById(call.text);
+                break;
+            case WorkloadTrace.SEARCH_BY_TITLE:
+                service.searchByTitle(call.text);
+                break;
+            case WorkloadTrace.SEARCH_BY_AUTHOR:
+                service.searchByAuthor(call.text);
+                break;
+            case WorkloadTrace.SORT_BY_TITLE:
+                service.sortByTitle();
+                break;
+            case WorkloadTrace.SORT_BY_AUTHOR:
+                service.sortByAuthor();
+                break;
+            case WorkloadTrace.SORT_BY_ID:
+                service.sortById();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown trace operation: " + call.op);
+        }
+    }
+
+    // A call that named its library rather than using the selected one
+    private static void invokeIn(LibraryService service, WorkloadTrace.Call call, String library, String location) {
+        switch (call.op) {
+            case WorkloadTrace.ISSUE:
+                service.issueBook(library, location, call.text, call.number);
+                break;
+            case WorkloadTrace.RETURN:
+                if (call.number == LoanLedger.ANY_PATRON) {
+                    service.returnBook(library, location, call.text);
+                } else {
+                    service.returnBook(library, location, call.text, call.number);
+                }
+                break;
+            case WorkloadTrace.SEARCH_BY_ID:
+                service.searchById(library, location, call.text);
+                break;
+            case WorkloadTrace.SEARCH_BY_TITLE:
+                service.searchByTitle(library, location, call.text);
+                break;
+            case WorkloadTrace.SEARCH_BY_AUTHOR:
+                service.searchByAuthor(library, location, call.text);
+                break;
+            case WorkloadTrace.SORT_BY_TITLE:
+                service.sortByTitle(library, location);
+                break;
+            case WorkloadTrace.SORT_BY_AUTHOR:
+                service.sortByAuthor(library, location);
+                break;
+            case WorkloadTrace.SORT_BY_ID:
+                service.sortById(library, location);
+                break;
+            default:
+                throw new IllegalArgumentException("Trace operation " + WorkloadTrace.name(call.op)
+                        + " cannot name a library.");
+        }
+    }
+
+    private String formatReport(LibraryService service, int capturedThreads, long elapsedNanos, LongAdder[] calls,
+                                LongAdder[] failures, LatencyHistogram lag) {
+        long totalCalls = 0;
+        long totalFailures = 0;
+        StringBuilder perOperation = new StringBuilder();
+        for (byte op = 0; op < calls.length; op++) {
+            long count = calls[op].sum();
+            if (count == 0) {
+                continue;
+            }
+            totalCalls += count;
+            totalFailures += failures[op].sum();
+            perOperation.append(String.format("  %-16s %,12d calls %,10d failed%n", WorkloadTrace.name(op), count,
+                    failures[op].sum()));
+        }
+
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Replayed %,d calls in %,.1f ms (%,.0f calls/s); captured threads: %d, replay threads: %d%n",
+                totalCalls, elapsedNanos / 1_000_000.0, seconds > 0 ? totalCalls / seconds : 0,
+                capturedThreads, threads));
+        sb.append(String.format("Speed: %s, storage: %s%s, failed calls: %,d%n",
+                speed == 0 ? "as fast as possible" : speed + "x captured pace",
+                snapshotCodec == null ? "JSON" : snapshotCodec.name(),
+                checkpointIntervalMillis > 0 ? " with journal" : "", totalFailures));
+        if (lag.getCount() > 0) {
+            sb.append(String.format("Start lag behind schedule: p50 %,.1f us, p99 %,.1f us, max %,.1f us%n",
+                    lag.getValueAtPercentile(50) / 1_000.0, lag.getValueAtPercentile(99) / 1_000.0,
+                    lag.getMaxNanos() / 1_000.0));
+        }
+        sb.append(perOperation);
+        sb.append(service.getMetrics().formatReport());
+        return sb.toString();
+    }
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[WorkloadTrace.SORT_BY_ID + 1];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static final class Task {
+        static final Task END = new Task(null, 0);
+
+        final WorkloadTrace.Call call;
+        // System.nanoTime() the call is scheduled for; 0 when replaying as fast as possible
+        final long due;
+
+        Task(WorkloadTrace.Call call, long due) {
+            this.call = call;
+            this.due = due;
+        }
+    }
+
+    /**
+     * Usage: WorkloadReplayer trace [--speed=original|max|N] [--threads=N]
+     *                         [--format=json|none|deflate|gzip] [--journal=checkpointMillis]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: WorkloadReplayer trace [--speed=original|max|N] [--threads=N] "
+                    + "[--format=json|none|deflate|gzip] [--journal=checkpointMillis]");
+            System.exit(2);
+        }
+        WorkloadReplayer replayer = new WorkloadReplayer(Paths.get(args[0]));
+        for (int i = 1; i < args.length; i++) {
+            String[] parts = args[i].split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + args[i]);
+            }
+            switch (parts[0]) {
+                case "--speed":
+                    replayer.setSpeed(parts[1].equalsIgnoreCase("original") ? 1.0
+                            : parts[1].equalsIgnoreCase("max") ? 0 : Double.parseDouble(parts[1]));
+                    break;
+                case "--threads":
+                    replayer.setThreads(Integer.parseInt(parts[1]));
+                    break;
+                case "--format":
+                    replayer.setSnapshotCodec(parts[1].equalsIgnoreCase("json") ? null
+                            : SnapshotCodec.valueOf(parts[1].toUpperCase()));
+                    break;
+                case "--journal":
+                    replayer.setCheckpointIntervalMillis(Long.parseLong(parts[1]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + parts[0]);
+            }
+        }
+        System.out.println(replayer.run());
+    }
+}
@@ -0,0 +1,379 @@
+package com.library.service;
+
+import com.library.model.Book;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary trace of LibraryService calls, written by a capture and re-driven by WorkloadReplayer.
+ * The header holds the wall-clock start and the library selected when capture began. Each call
+ * is an op code, the nanoseconds since the previous call, a small per-thread number and the
+ * arguments; a THREAD record names each thread the first time it appears, and an IN_LIBRARY
+ * record before a call names the library it acted on when the caller did not use the selected one. Strings use
+ * DataOutput.writeUTF and books the BookRecordCodec encoding. The state the trace starts from is
+ * saved next to it as "<trace>.base".
+ */
+final class WorkloadTrace {
+    static final int MAGIC = 0x4C575431; // "LWT1"
+    // Version 2 added IN_LIBRARY; version 1 traces are still read
+    private static final byte VERSION = 2;
+
+    static final byte THREAD = 0;
+    static final byte CREATE_LIBRARY = 1;
+    static final byte SELECT_LIBRARY = 2;
+    static final byte DELETE_LIBRARY = 3;
+    static final byte REGISTER_PATRON = 4;
+    static final byte ADD_BOOK = 5;
+    static final byte ADD_BOOKS = 6;
+    static final byte ISSUE = 7;
+    static final byte RETURN = 8;
+    static final byte DELETE_BOOK = 9;
+    static final byte SEARCH_BY_ID = 10;
+    static final byte SEARCH_BY_TITLE = 11;
+    static final byte SEARCH_BY_AUTHOR = 12;
+    static final byte SORT_BY_TITLE = 13;
+    static final byte SORT_BY_AUTHOR = 14;
+    static final byte SORT_BY_ID = 15;
+    // Names the library the thread's next call acts on, instead of the selected one
+    static final byte IN_LIBRARY = 16;
+
+    private static final String[] NAMES = {
+        "thread", "createLibrary", "selectLibrary", "deleteLibrary", "registerPatron", "addBook", "addBooks",
+        "issue", "return", "deleteBook", "searchById", "searchByTitle", "searchByAuthor",
+        "sortByTitle", "sortByAuthor", "sortById", "inLibrary"
+    };
+
+    private WorkloadTrace() {
+    }
+
+    static String name(byte op) {
+        return op >= 0 && op < NAMES.length ? NAMES[op] : "op" + op;
+    }
+
+    static Path basePath(Path traceFile) {
+        return traceFile.resolveSibling(traceFile.getFileName() + ".base");
+    }
+
+    // One recorded call; fields an op does not use are left empty
+    static final class Call {
+        byte op;
+        long offsetNanos;
+        int thread;
+        String text;
+        String location;
+        int number;
+        Book book;
+        // Set when the call named its library instead of using the selected one
+        String libraryName;
+        String libraryLocation;
+        List<Book> books;
+    }
+
+    /**
+     * Appends calls from any thread. The first I/O error stops the capture with a warning,
+     * so a full disk never fails the service calls being traced.
+     */
+    static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final Map<Long, Integer> threadNumbers = new HashMap<>();
+        private long lastNanos;
+        private long calls;
+        private boolean failed;
+
+        Writer(Path traceFile, String libraryName, String libraryLocation) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(traceFile), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeUTF(libraryName);
+            out.writeUTF(libraryLocation);
+            this.lastNanos = System.nanoTime();
+        }
+
+        synchronized void call(byte op) {
+            try {
+                begin(op);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        synchronized void call(byte op, String text) {
+            try {
+                begin(op);
+                out.writeUTF(text);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        synchronized void call(byte op, String text, String location) {
+            try {
+                begin(op);
+                out.writeUTF(text);
+                out.writeUTF(location);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        synchronized void call(byte op, String text, int number) {
+            try {
+                begin(op);
+                out.writeUTF(text);
+                writeVarLong(out, number);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        // Precedes the thread's next call; not counted as a call
+        synchronized void inLibrary(String libraryName, String location) {
+            try {
+                writeHeader(IN_LIBRARY);
+                out.writeUTF(libraryName);
+                out.writeUTF(location);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        synchronized void addBook(Book book) {
+            try {
+                begin(ADD_BOOK);
+                BookRecordCodec.writeBook(out, book);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        synchronized void addBooks(List<Book> books) {
+            try {
+                begin(ADD_BOOKS);
+                writeVarLong(out, books.size());
+                for (Book book : books) {
+                    BookRecordCodec.writeBook(out, book);
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        synchronized long getCalls() {
+            return calls;
+        }
+
+        private void begin(byte op) throws IOException {
+            writeHeader(op);
+            calls++;
+        }
+
+        // Nanoseconds since the previous record, then this thread's number; names new threads first
+        private void writeHeader(byte op) throws IOException {
+            if (failed) {
+                throw new IOException("Capture stopped.");
+            }
+            Thread thread = Thread.currentThread();
+            Integer number = threadNumbers.get(thread.getId());
+            if (number == null) {
+                number = threadNumbers.size();
+                threadNumbers.put(thread.getId(), number);
+                out.writeByte(THREAD);
+                writeVarLong(out, number);
+                out.writeUTF(thread.getName());
+            }
+            long now = System.nanoTime();
+            out.writeByte(op);
+            writeVarLong(out, now - lastNanos);
+            writeVarLong(out, number);
+            lastNanos = now;
+        }
+
+        private void fail(IOException e) {
+            if (!failed) {
+                failed = true;
+                System.err.println("Warning: Workload capture stopped. " + e.getMessage());
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            // Calls racing with close are dropped quietly
+            failed = true;
+            out.close();
+        }
+    }
+
+    static final class Reader implements Closeable {
+        private final DataInputStream in;
+        private final long startMillis;
+        private final String libraryName;
+        private final String libraryLocation;
+        private final List<String> threadNames = new ArrayList<>();
+        // IN_LIBRARY records waiting for their thread's next call, by thread number
+        private final Map<Integer, String[]> pendingLibraries = new HashMap<>();
+        private long offsetNanos;
+
+        Reader(Path traceFile) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(traceFile), 1 << 16));
+            int magic = in.readInt();
+            if (magic != MAGIC) {
+                in.close();
+                throw new IOException("Not a workload trace (magic " + Integer.toHexString(magic) + ").");
+            }
+            byte version = in.readByte();
+            if (version < 1 || version > VERSION) {
+                in.close();
+                throw new IOException("Unsupported workload trace version: " + version);
+            }
+            this.startMillis = in.readLong();
+            this.libraryName = in.readUTF();
+            this.libraryLocation = in.readUTF();
+        }
+
+        long getStartMillis() {
+            return startMillis;
+        }
+
+        // Library selected when capture began; empty when there was none
+        String getLibraryName() {
+            return libraryName;
+        }
+
+        String getLibraryLocation() {
+            return libraryLocation;
+        }
+
+        // Names of the threads seen so far, by thread number
+        List<String> getThreadNames() {
+            return threadNames;
+        }
+
+        // Next call, or null at the end of the trace; a call cut off by a crash ends the trace
+        Call next() throws IOException {
+            try {
+                while (true) {
+                    int op = in.read();
+                    if (op < 0) {
+                        return null;
+                    }
+                    if (op == THREAD) {
+                        int number = (int) readVarLong(in);
+                        String name = in.readUTF();
+                        while (threadNames.size() <= number) {
+                            threadNames.add("");
+                        }
+                        threadNames.set(number, name);
+                        continue;
+                    }
+                    Call call = readCall((byte) op);
+                    if (op == IN_LIBRARY) {
+                        pendingLibraries.put(call.thread, new String[] {call.text, call.location});
+                        continue;
+                    }
+                    String[] library = pendingLibraries.remove(call.thread);
+                    if (library != null) {
+                        call.libraryName = library[0];
+                        call.libraryLocation = library[1];
+                    }
+                    return call;
+                }
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        private Call readCall(byte op) throws IOException {
+            Call call = new Call();
+            call.op = op;
+            offsetNanos += readVarLong(in);
+            call.offsetNanos = offsetNanos;
+            call.thread = (int) readVarLong(in);
+            switch (op) {
+                case CREATE_LIBRARY:
+                case SELECT_LIBRARY:
+                case IN_LIBRARY:
+                    call.text = in.readUTF();
+                    call.location = in.readUTF();
+                    break;
+                case REGISTER_PATRON:
+                case DELETE_BOOK:
+                case SEARCH_BY_ID:
+                case SEARCH_BY_TITLE:
+                case SEARCH_BY_AUTHOR:
+                    call.text = in.readUTF();
+                    break;
+                case ISSUE:
+                case RETURN:
+                    call.text = in.readUTF();
+                    call.number = (int) readVarLong(in);
+                    break;
+                case ADD_BOOK:
+                    call.book = readBook(in);
+                    break;
+                case ADD_BOOKS:
+                    int count = (int) readVarLong(in);
+                    call.books = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        call.books.add(readBook(in));
+                    }
+                    break;
+                case DELETE_LIBRARY:
+                case SORT_BY_TITLE:
+                case SORT_BY_AUTHOR:
+                case SORT_BY_ID:
+                    break;
+                default:
+                    throw new IOException("Unknown trace operation: " + op);
+            }
+            return call;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static Book readBook(DataInputStream in) throws IOException {
+        byte tag = BookRecordCodec.readTag(in);
+        if (tag != BookRecordCodec.TAG_BOOK) {
+            throw new IOException("Expected a book record but found tag " + tag + ".");
+        }
+        return BookRecordCodec.readBook(in);
+    }
+
+    // Zigzag varint, so the walk-in and any-patron sentinels stay one byte
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.writeByte((int) zigzag);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Malformed varint in workload trace.");
+    }
+}
@@ -0,0 +1,444 @@
+package com.library.util;
+
+import com.library.model.Book;
+import com.library.service.AsyncLibraryService;
+import com.library.service.LibraryService;
+import com.library.service.MutationPipeline;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Concurrency stress harness for circulation.
+ * Hammers issue/return/add/delete, searches, sorts and selectLibrary from many threads
+ * against a scratch data file, records every call, and then checks:
+ * - service invariants (LibraryService.verifyIntegrity), continuously during the run and at the end
+ * - final issued counts against the recorded history of successful issues and returns
+ * - that no point of the recorded history forces more copies out than a book has
+ * - that reads never fail with anything but a business-rule exception
+ * Calls go straight to the synchronized LibraryService API (reads under its monitor, as
+ * LibraryHttpServer does), through a MutationPipeline, or through an AsyncLibraryService.
+ */
+public class CirculationStressHarness {
+    private static final int ISSUE = 0;
+    private static final int RETURN = 1;
+    private static final int DELETE = 2;
+    private static final int SELECT = 3;
+    private static final int ADD = 4;
+    private static final int READ = 5;
+
+    public enum Mode {
+        DIRECT,
+        PIPELINE,
+        ASYNC
+    }
+
+    private final Mode mode;
+    private final int threads;
+    private final int operationsPerThread;
+    private final int libraryCount;
+    private final int booksPerLibrary;
+    private final long seed;
+    private long recordedOperations;
+    private long succeededOperations;
+    private MutationPipeline pipeline;
+    private AsyncLibraryService asyncService;
+
+    public CirculationStressHarness(int threads, int operationsPerThread, int libraryCount, int booksPerLibrary, long seed) {
+        this(Mode.DIRECT, threads, operationsPerThread, libraryCount, booksPerLibrary, seed);
+    }
+
+    public CirculationStressHarness(Mode mode, int threads, int operationsPerThread, int libraryCount, int booksPerLibrary,
+                                    long seed) {
+        this.mode = mode;
+        this.threads = threads;
+        this.operationsPerThread = operationsPerThread;
+        this.libraryCount = libraryCount;
+        this.booksPerLibrary = booksPerLibrary;
+        this.seed = seed;
+    }
+
+    // Run the stress test and return all violations found (empty when the service behaved)
+    public List<String> run() throws Exception {
+        Path dataFile = Files.createTempFile("library-stress", ".json");
+        Files.delete(dataFile);
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            LibraryService service = new LibraryService(dataFile);
+            Map<String, Book> initialBooks = seedLibraries(service);
+            if (mode == Mode.PIPELINE) {
+                pipeline = new MutationPipeline(service, 256);
+            } else if (mode == Mode.ASYNC) {
+                asyncService = new AsyncLibraryService(service, 4, 10_000);
+            }
+
+            List<String> violations = new CopyOnWriteArrayList<>();
+            List<List<Event>> histories = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                histories.add(new ArrayList<>());
+            }
+
+            AtomicBoolean running = new AtomicBoolean(true);
+            Thread checker = new Thread(() -> {
+                while (running.get()) {
+                    for (String violation : service.verifyIntegrity()) {
+                        violations.add("During run: " + violation);
+                    }
+                    Thread.yield();
+                }
+            }, "StressInvariantChecker");
+
+            CountDownLatch startGate = new CountDownLatch(1);
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int workerIndex = t;
+                Thread worker = new Thread(() -> runWorker(service, workerIndex, histories.get(workerIndex), startGate),
+                        "StressWorker-" + t);
+                workers.add(worker);
+                worker.start();
+            }
+            checker.start();
+            startGate.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            running.set(false);
+            checker.join();
+            if (pipeline != null) {
+                pipeline.close();
+            }
+            if (asyncService != null) {
+                asyncService.close();
+            }
+
+            for (String violation : service.verifyIntegrity()) {
+                violations.add("After run: " + violation);
+            }
+            checkHistory(service, initialBooks, histories, violations);
+            return new ArrayList<>(violations);
+        } finally {
+            System.setOut(console);
+            Files.deleteIfExists(dataFile);
+        }
+    }
+
+    public long getRecordedOperations() {
+        return recordedOperations;
+    }
+
+    public long getSucceededOperations() {
+        return succeededOperations;
+    }
+
+    private Map<String, Book> seedLibraries(LibraryService service) {
+        Random random = new Random(seed);
+        Map<String, Book> initialBooks = new HashMap<>();
+        for (int lib = 0; lib < libraryCount; lib++) {
+            service.createLibrary("Stress Library " + lib, "Harness");
+            List<Book> seedBooks = new ArrayList<>();
+            for (int i = 0; i < booksPerLibrary; i++) {
+                // Few copies so books regularly run out under contention
+                Book book = new Book(bookId(lib, i), "Stress Title " + i, "Stress Author", "Stress", 1 + random.nextInt(3));
+                seedBooks.add(book);
+                initialBooks.put(book.getBookId(), book);
+            }
+            service.addBooks(seedBooks);
+        }
+        return initialBooks;
+    }
+
+    private void runWorker(LibraryService service, int workerIndex, List<Event> history, CountDownLatch startGate) {
+        Random random = new Random(seed * 31 + workerIndex);
+        List<String> held = new ArrayList<>();
+        try {
+            startGate.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        for (int i = 0; i < operationsPerThread; i++) {
+            int roll = random.nextInt(1000);
+            int operation;
+            String target;
+            if (roll < 2) {
+                operation = DELETE;
+                target = bookId(random.nextInt(libraryCount), random.nextInt(booksPerLibrary));
+            } else if (roll < 20) {
+                // New books are never issued or deleted; they only change the book list under the readers
+                operation = ADD;
+                target = "N" + workerIndex + "-" + i;
+            } else if (roll < 80) {
+                operation = SELECT;
+                target = "Stress Library " + random.nextInt(libraryCount);
+            } else if (roll < 160) {
+                // Indexed title, a title that misses the index and scans every book, or a sort
+                operation = READ;
+                int read = random.nextInt(3);
+                target = read == 0 ? "Stress Title " + random.nextInt(booksPerLibrary) : read == 1 ? "Missing Title" : "";
+            } else if (roll < 550 || held.isEmpty()) {
+                operation = ISSUE;
+                target = bookId(random.nextInt(libraryCount), random.nextInt(booksPerLibrary));
+            } else {
+                // Only return copies this worker actually holds, so every successful return is real
+                operation = RETURN;
+                target = held.get(random.nextInt(held.size()));
+            }
+
+            long start = System.nanoTime();
+            boolean succeeded = true;
+            try {
+                execute(service, operation, target);
+                if (operation == ISSUE) {
+                    held.add(target);
+                } else if (operation == RETURN) {
+                    held.remove(target);
+                }
+            } catch (CompletionException e) {
+                succeeded = false;
+                if (!(e.getCause() instanceof IllegalArgumentException || e.getCause() instanceof IllegalStateException)) {
+                    history.add(new Event(operation, target, start, System.nanoTime(), false, e.getCause().toString()));
+                    continue;
+                }
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                succeeded = false;
+            } catch (RuntimeException e) {
+                succeeded = false;
+                history.add(new Event(operation, target, start, System.nanoTime(), false, e.toString()));
+                continue;
+            }
+            history.add(new Event(operation, target, start, System.nanoTime(), succeeded, null));
+        }
+    }
+
+    // Library selection is not a pipeline or async operation and always goes to the service.
+    // A READ target is a title to search for, or empty for a sort by title.
+    private void execute(LibraryService service, int operation, String target) {
+        if (operation == SELECT) {
+            service.selectLibrary(target, "Harness");
+            return;
+        }
+        if (mode == Mode.ASYNC) {
+            switch (operation) {
+                case ISSUE:
+                    asyncService.issueBook(target).join();
+                    break;
+                case RETURN:
+                    asyncService.returnBook(target).join();
+                    break;
+                case ADD:
+                    asyncService.addBook(newBook(target)).join();
+                    break;
+                case DELETE:
+                    asyncService.deleteBook(target).join();
+                    break;
+                default:
+                    (target.isEmpty() ? asyncService.sortByTitle() : asyncService.searchByTitle(target)).join();
+            }
+            return;
+        }
+        if (operation == READ) {
+            synchronized (service) {
+                if (target.isEmpty()) {
+                    service.sortByTitle();
+                } else {
+                    service.searchByTitle(target);
+                }
+            }
+            return;
+        }
+        if (mode == Mode.PIPELINE) {
+            switch (operation) {
+                case ISSUE:
+                    pipeline.issueBook(target).await();
+                    break;
+                case RETURN:
+                    pipeline.returnBook(target).await();
+                    break;
+                case ADD:
+                    pipeline.addBook(newBook(target)).await();
+                    break;
+                default:
+                    pipeline.deleteBook(target).await();
+            }
+            return;
+        }
+        switch (operation) {
+            case ISSUE:
+                service.issueBook(target);
+                break;
+            case RETURN:
+                service.returnBook(target);
+                break;
+            case ADD:
+                service.addBook(newBook(target));
+                break;
+            default:
+                service.deleteBook(target);
+        }
+    }
+
+    private static Book newBook(String bookId) {
+        return new Book(bookId, "Added Title " + bookId, "Stress Author", "Stress", 1);
+    }
+
+    private void checkHistory(LibraryService service, Map<String, Book> initialBooks, List<List<Event>> histories,
+                              List<String> violations) {
+        Map<String, List<Event>> eventsByBook = new HashMap<>();
+        Map<String, Boolean> deleted = new HashMap<>();
+        List<String> added = new ArrayList<>();
+        recordedOperations = 0;
+        succeededOperations = 0;
+        for (List<Event> history : histories) {
+            recordedOperations += history.size();
+            for (Event event : history) {
+                if (event.succeeded) {
+                    succeededOperations++;
+                }
+                if (event.unexpectedError != null) {
+                    violations.add("Unexpected exception from " + event.target + ": " + event.unexpectedError);
+                }
+                if (!event.succeeded || event.operation == SELECT || event.operation == READ) {
+                    continue;
+                }
+                if (event.operation == ADD) {
+                    added.add(event.target);
+                    continue;
+                }
+                if (event.operation == DELETE) {
+                    deleted.put(event.target, true);
+                    continue;
+                }
+                eventsByBook.computeIfAbsent(event.target, k -> new ArrayList<>()).add(event);
+            }
+        }
+
+        Set<String> catalogIds = new HashSet<>();
+        for (int lib = 0; lib < libraryCount; lib++) {
+            service.selectLibrary("Stress Library " + lib, "Harness");
+            service.getAllBooks().forEach(book -> catalogIds.add(book.getBookId()));
+            for (int i = 0; i < booksPerLibrary; i++) {
+                String bookId = bookId(lib, i);
+                if (deleted.containsKey(bookId)) {
+                    if (service.searchById(bookId) != null) {
+                        violations.add(bookId + " was deleted successfully but is still in the catalog");
+                    }
+                    continue;
+                }
+
+                List<Event> events = eventsByBook.getOrDefault(bookId, Collections.emptyList());
+                int expectedIssued = 0;
+                for (Event event : events) {
+                    expectedIssued += event.operation == ISSUE ? 1 : -1;
+                }
+                Book book = service.searchById(bookId);
+                if (book == null) {
+                    violations.add(bookId + " disappeared without a successful delete");
+                    continue;
+                }
+                if (book.getIssuedCopies() != expectedIssued) {
+                    violations.add(bookId + " has " + book.getIssuedCopies() + " issued copies but history says "
+                            + expectedIssued);
+                }
+                checkCopiesNeverExceeded(bookId, initialBooks.get(bookId).getTotalCopies(), events, violations);
+            }
+        }
+        for (String bookId : added) {
+            if (!catalogIds.contains(bookId)) {
+                violations.add(bookId + " was added successfully but is in no library");
+            }
+        }
+    }
+
+    // Lower bound on copies out: issues take effect at their response, returns at their invocation.
+    // If even this optimistic ordering exceeds the copy count, no valid linearization exists.
+    private void checkCopiesNeverExceeded(String bookId, int totalCopies, List<Event> events, List<String> violations) {
+        List<long[]> points = new ArrayList<>();
+        for (Event event : events) {
+            if (event.operation == ISSUE) {
+                points.add(new long[]{event.endNanos, 1});
+            } else {
+                points.add(new long[]{event.startNanos, -1});
+            }
+        }
+        points.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+
+        int out = 0;
+        for (long[] point : points) {
+            out += (int) point[1];
+            if (out > totalCopies) {
+                violations.add(bookId + " had at least " + out + " copies out of " + totalCopies);
+                return;
+            }
+        }
+    }
+
+    private static String bookId(int library, int index) {
+        return "S" + library + "-" + index;
+    }
+
+    private static final class Event {
+        final int operation;
+        final String target;
+        final long startNanos;
+        final long endNanos;
+        final boolean succeeded;
+        final String unexpectedError;
+
+        Event(int operation, String target, long startNanos, long endNanos, boolean succeeded, String unexpectedError) {
+            this.operation = operation;
+            this.target = target;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.succeeded = succeeded;
+            this.unexpectedError = unexpectedError;
+        }
+    }
+
+    /**
+     * Usage: CirculationStressHarness [--mode=direct|pipeline|async] [threads] [operationsPerThread] [libraries]
+     * [booksPerLibrary] [seed]
+     * Exits with status 1 when any violation is found.
+     */
+    public static void main(String[] args) throws Exception {
+        Mode mode = Mode.DIRECT;
+        if (args.length > 0 && args[0].startsWith("--mode=")) {
+            mode = Mode.valueOf(args[0].substring("--mode=".length()).toUpperCase());
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int libraries = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int books = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 7L;
+
+        CirculationStressHarness harness = new CirculationStressHarness(mode, threads, operations, libraries, books, seed);
+        List<String> violations = harness.run();
+        System.out.println("Mode: " + mode.name().toLowerCase() + ", threads: " + threads + ", operations recorded: " + harness.getRecordedOperations()
+                + " (" + harness.getSucceededOperations() + " succeeded)");
+        if (violations.isEmpty()) {
+            System.out.println("PASSED: no invariant or history violations.");
+            return;
+        }
+        System.out.println("FAILED: " + violations.size() + " violation(s)");
+        violations.stream().limit(50).forEach(violation -> System.out.println("  " + violation));
+        System.exit(1);
+    }
+}
@@ -0,0 +1,236 @@
+package com.library.util;
+
+import com.library.model.Book;
+import com.library.service.LibraryService;
+import com.library.service.SnapshotCodec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Crash-recovery check for the journaled snapshot store.
+ * Each round starts a child JVM that runs a deterministic stream of adds, issues, returns,
+ * deletes and patron registrations against a journaled service with frequent checkpoints,
+ * printing an acknowledgement after every completed call. The child is killed (SIGKILL)
+ * at a random moment, so the kill can land mid-append or mid-checkpoint. The data file is
+ * then reopened and checked:
+ * - service invariants (LibraryService.verifyIntegrity)
+ * - the recovered catalog equals a replay of the acknowledged operations, plus at most the
+ *   one operation in flight when the child died
+ * - recovery time and the journal size it had to replay
+ * Usage: CrashRecoveryCheck [rounds] [checkpointMillis] [seedBooks] [seed]
+ */
+public class CrashRecoveryCheck {
+    private static final String LIBRARY_NAME = "Crash Lab";
+    private static final String LIBRARY_LOCATION = "Bench";
+    private static final int PATRONS = 20;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--child")) {
+            runChild(Paths.get(args[1]), Long.parseLong(args[2]), Integer.parseInt(args[3]));
+            return;
+        }
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        long checkpointMillis = args.length > 1 ? Long.parseLong(args[1]) : 250;
+        int seedBooks = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+        Random random = new Random(args.length > 3 ? Long.parseLong(args[3]) : 39L);
+
+        List<String> failures = new ArrayList<>();
+        for (int round = 1; round <= rounds; round++) {
+            long killAfterMillis = 300 + random.nextInt(2_000);
+            String failure = runRound(round, checkpointMillis, seedBooks, killAfterMillis);
+            if (failure != null) {
+                failures.add("Round " + round + ": " + failure);
+            }
+        }
+        if (failures.isEmpty()) {
+            System.out.println("PASSED: every crash recovered to an acknowledged state.");
+            return;
+        }
+        System.out.println("FAILED: " + failures.size() + " round(s)");
+        failures.forEach(failure -> System.out.println("  " + failure));
+        System.exit(1);
+    }
+
+    // Returns a description of the failure, or null if the round passed
+    private static String runRound(int round, long checkpointMillis, int seedBooks, long killAfterMillis) throws Exception {
+        Path directory = Files.createTempDirectory("crash-recovery");
+        Path dataFile = directory.resolve("library-data.snap");
+
+        // Acknowledgements go to a file rather than a pipe: after the kill the JDK closes the
+        // pipe under a blocked reader, which can drop the last lines
+        Path ackFile = directory.resolve("child.log");
+        Process child = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), CrashRecoveryCheck.class.getName(),
+                "--child", dataFile.toString(), String.valueOf(checkpointMillis), String.valueOf(seedBooks))
+                .redirectErrorStream(true)
+                .redirectOutput(ackFile.toFile())
+                .start();
+
+        while (lastAcknowledged(ackFile) < -1 && child.isAlive()) {
+            Thread.sleep(10);
+        }
+        if (!child.isAlive()) {
+            return "child exited before setup completed (exit " + child.exitValue() + ")";
+        }
+        Thread.sleep(killAfterMillis);
+        child.destroyForcibly().waitFor();
+        long acknowledged = lastAcknowledged(ackFile);
+
+        long journalBytes = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.journal.*")) {
+            for (Path file : files) {
+                journalBytes += Files.size(file);
+            }
+        }
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        String failure;
+        long recoveryNanos;
+        try {
+            long start = System.nanoTime();
+            LibraryService recovered = new LibraryService(dataFile, SnapshotCodec.DEFLATE);
+            recoveryNanos = System.nanoTime() - start;
+            failure = verify(recovered, acknowledged, seedBooks);
+        } finally {
+            System.setOut(console);
+        }
+
+        System.out.printf("Round %d: killed after %,d ms at operation %,d, replayed %,d journal bytes, recovered in %,d ms: %s%n",
+                round, killAfterMillis, acknowledged + 1, journalBytes, recoveryNanos / 1_000_000,
+                failure == null ? "OK" : "FAILED");
+        deleteRecursively(directory);
+        return failure;
+    }
+
+    // -2 before setup is done, -1 after, then the last acknowledged operation
+    private static long lastAcknowledged(Path ackFile) throws IOException {
+        long last = -2;
+        for (String line : Files.readAllLines(ackFile, StandardCharsets.UTF_8)) {
+            if (line.startsWith("ACK ")) {
+                last = Long.parseLong(line.substring(4));
+            } else if (line.equals("READY")) {
+                last = -1;
+            }
+        }
+        return last;
+    }
+
+    private static String verify(LibraryService recovered, long acknowledged, int seedBooks) throws IOException {
+        List<String> violations = recovered.verifyIntegrity();
+        if (!violations.isEmpty()) {
+            return "integrity violations: " + violations.subList(0, Math.min(5, violations.size()));
+        }
+        if (!recovered.libraryExists(LIBRARY_NAME, LIBRARY_LOCATION)) {
+            return "library missing after recovery";
+        }
+        String actual = signature(recovered);
+        // The operation in flight at the kill may or may not have been persisted
+        for (long last = acknowledged; last <= acknowledged + 1; last++) {
+            if (actual.equals(signature(model(seedBooks, last)))) {
+                return null;
+            }
+        }
+        return "recovered state matches neither operation " + acknowledged + " nor " + (acknowledged + 1);
+    }
+
+    // Expected state after setup and operations 0..last, built without persistence
+    private static LibraryService model(int seedBooks, long last) throws IOException {
+        Path scratch = Files.createTempFile("crash-model", ".json");
+        Files.delete(scratch);
+        LibraryService model = new LibraryService(scratch);
+        model.inBatch(() -> {
+            setup(model, seedBooks);
+            for (long i = 0; i <= last; i++) {
+                operation(model, i, seedBooks);
+            }
+        });
+        Files.deleteIfExists(scratch);
+        return model;
+    }
+
+    private static String signature(LibraryService service) {
+        service.selectLibrary(LIBRARY_NAME, LIBRARY_LOCATION);
+        StringBuilder sb = new StringBuilder();
+        for (Book book : service.sortById()) {
+            sb.append(book.getBookId()).append(':').append(book.getIssuedCopies()).append(';');
+        }
+        sb.append("loans=").append(service.getLoanLedger().getOpenLoanCount());
+        sb.append(";patrons=").append(service.getPatrons().size());
+        return sb.toString();
+    }
+
+    private static void runChild(Path dataFile, long checkpointMillis, int seedBooks) throws IOException {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        LibraryService service = new LibraryService(dataFile, SnapshotCodec.DEFLATE);
+        service.inBatch(() -> setup(service, seedBooks));
+        service.enableJournal(checkpointMillis);
+        console.println("READY");
+        console.flush();
+        for (long i = 0; ; i++) {
+            operation(service, i, seedBooks);
+            console.println("ACK " + i);
+            console.flush();
+        }
+    }
+
+    private static void setup(LibraryService service, int seedBooks) {
+        service.createLibrary(LIBRARY_NAME, LIBRARY_LOCATION);
+        for (int p = 0; p < PATRONS; p++) {
+            service.registerPatron("Patron " + p);
+        }
+        List<Book> books = new ArrayList<>();
+        for (int b = 0; b < seedBooks; b++) {
+            books.add(new Book("SEED-" + b, "Seed Title " + b, "Seed Author", "Fiction", 3));
+        }
+        service.addBooks(books);
+    }
+
+    // Deterministic operation i; rejected calls are rejected identically in the model
+    private static void operation(LibraryService service, long i, int seedBooks) {
+        int patronId = 1 + (int) (i % PATRONS);
+        try {
+            switch ((int) (i % 4)) {
+                case 0:
+                    service.addBook(new Book("CR-" + i, "Crash Title " + i, "Crash Author", "Science", 2));
+                    break;
+                case 1:
+                    service.issueBook("SEED-" + (i * 7 % seedBooks), patronId);
+                    break;
+                case 2:
+                    service.returnBook("SEED-" + ((i - 1) * 7 % seedBooks), 1 + (int) ((i - 1) % PATRONS));
+                    break;
+                default:
+                    if (i % 40 == 3) {
+                        service.registerPatron("Late Patron " + i);
+                    } else if (i % 8 == 3) {
+                        service.deleteBook("CR-" + (i - 3));
+                    } else {
+                        service.issueBook("CR-" + (i - 3), patronId);
+                    }
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            // Unavailable or already returned
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
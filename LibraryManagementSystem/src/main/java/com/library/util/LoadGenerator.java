@@ -0,0 +1,298 @@
+package com.library.util;
+
+import com.library.model.Book;
+import com.library.service.AdmissionController;
+import com.library.service.GuardedLibraryService;
+import com.library.service.LibraryService;
+import com.library.service.ServiceSaturatedException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load-generation tool that drives LibraryService from many concurrent clients.
+ * Each client runs on its own (virtual, when available) thread with a configurable
+ * issue/return/search/add mix and Zipfian book popularity. With admission control on,
+ * calls go through a GuardedLibraryService and refused calls are reported as shed.
+ */
+public class LoadGenerator {
+    private static final String[] AUTHORS = {
+        "Paulo Coelho", "Rhonda Byrne", "Jane Austen", "Mark Twain", "Toni Morrison",
+        "George Orwell", "Leo Tolstoy", "Agatha Christie", "Haruki Murakami", "Chinua Achebe"
+    };
+    private static final String[] CATEGORIES = {
+        "Fiction", "Non-Fiction", "Science", "History", "Poetry", "Biography"
+    };
+    private static final String[] OPERATIONS = {"issue", "return", "search", "add"};
+
+    private final LibraryService libraryService;
+    private final GuardedLibraryService guardedService;
+    private final LoadProfile profile;
+    private final List<String> bookIds;
+
+    public LoadGenerator(LibraryService libraryService, LoadProfile profile) {
+        this.libraryService = libraryService;
+        this.guardedService = profile.isAdmissionControl()
+                ? new GuardedLibraryService(libraryService, new AdmissionController()) : null;
+        this.profile = profile;
+        this.bookIds = new ArrayList<>();
+    }
+
+    // Fill the currently selected library with the profile's book count
+    public void seedBooks() {
+        Random random = new Random(profile.getSeed());
+        List<Book> seed = new ArrayList<>();
+        for (int i = 0; i < profile.getBooks(); i++) {
+            seed.add(new Book(
+                    "LOAD-" + i,
+                    "Load Title " + i,
+                    AUTHORS[i % AUTHORS.length],
+                    CATEGORIES[random.nextInt(CATEGORIES.length)],
+                    1 + random.nextInt(10)));
+        }
+        libraryService.addBooks(seed);
+    }
+
+    public LoadReport run() throws InterruptedException {
+        bookIds.clear();
+        libraryService.getAllBooks().forEach(book -> bookIds.add(book.getBookId()));
+        if (bookIds.isEmpty()) {
+            throw new IllegalStateException("Load test needs at least one book in the current library.");
+        }
+
+        ZipfDistribution popularity = new ZipfDistribution(bookIds.size(), profile.getZipfExponent());
+        int clients = profile.getClients();
+        long[][] latencies = new long[clients][];
+        LongAdder succeeded = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        LongAdder shed = new LongAdder();
+        LongAdder[] operationCounts = new LongAdder[OPERATIONS.length];
+        for (int i = 0; i < operationCounts.length; i++) {
+            operationCounts[i] = new LongAdder();
+        }
+        Map<String, AtomicLong> failures = new ConcurrentHashMap<>();
+
+        CountDownLatch startGate = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(clients);
+        ExecutorService executor = VirtualThreads.newPerTaskExecutor("load-client");
+
+        // Book and EBook print on every issue/return; keep that noise out of the measurement
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long elapsed;
+        try {
+            for (int c = 0; c < clients; c++) {
+                int clientIndex = c;
+                executor.execute(() -> {
+                    try {
+                        startGate.await();
+                        latencies[clientIndex] = runClient(clientIndex, popularity, succeeded, rejected, shed,
+                                operationCounts, failures);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        latencies[clientIndex] = new long[0];
+                    } finally {
+                        finished.countDown();
+                    }
+                });
+            }
+
+            long start = System.nanoTime();
+            startGate.countDown();
+            finished.await();
+            elapsed = System.nanoTime() - start;
+        } finally {
+            System.setOut(console);
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+
+        return buildReport(elapsed, latencies, succeeded, rejected, shed, operationCounts, failures);
+    }
+
+    private long[] runClient(int clientIndex, ZipfDistribution popularity, LongAdder succeeded, LongAdder rejected,
+                             LongAdder shed, LongAdder[] operationCounts, Map<String, AtomicLong> failures) {
+        Random random = new Random(profile.getSeed() * 31 + clientIndex);
+        int totalWeight = profile.getIssuePercent() + profile.getReturnPercent()
+                + profile.getSearchPercent() + profile.getAddPercent();
+        long[] samples = new long[profile.getOperationsPerClient()];
+
+        for (int i = 0; i < samples.length; i++) {
+            int operation = chooseOperation(random.nextInt(totalWeight));
+            String bookId = bookIds.get(popularity.sample(random));
+
+            long start = System.nanoTime();
+            try {
+                switch (operation) {
+                    case 0:
+                        if (guardedService != null) {
+                            guardedService.issueBook(bookId);
+                        } else {
+                            libraryService.issueBook(bookId);
+                        }
+                        break;
+                    case 1:
+                        if (guardedService != null) {
+                            guardedService.returnBook(bookId);
+                        } else {
+                            libraryService.returnBook(bookId);
+                        }
+                        break;
+                    case 2:
+                        search(random, bookId);
+                        break;
+                    default:
+                        Book book = new Book("LOAD-" + clientIndex + "-" + i, "Added Title " + i,
+                                AUTHORS[random.nextInt(AUTHORS.length)], CATEGORIES[0], 1);
+                        if (guardedService != null) {
+                            guardedService.addBook(book);
+                        } else {
+                            libraryService.addBook(book);
+                        }
+                }
+                succeeded.increment();
+            } catch (ServiceSaturatedException e) {
+                shed.increment();
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                rejected.increment();
+            } catch (RuntimeException e) {
+                failures.computeIfAbsent(e.getClass().getSimpleName(), k -> new AtomicLong()).incrementAndGet();
+            }
+            samples[i] = System.nanoTime() - start;
+            operationCounts[operation].increment();
+        }
+        return samples;
+    }
+
+    private int chooseOperation(int roll) {
+        int threshold = profile.getIssuePercent();
+        if (roll < threshold) {
+            return 0;
+        }
+        threshold += profile.getReturnPercent();
+        if (roll < threshold) {
+            return 1;
+        }
+        threshold += profile.getSearchPercent();
+        if (roll < threshold) {
+            return 2;
+        }
+        return 3;
+    }
+
+    private void search(Random random, String bookId) {
+        Book book = guardedService != null ? guardedService.searchById(bookId) : libraryService.searchById(bookId);
+        if (book == null) {
+            return;
+        }
+        if (random.nextBoolean()) {
+            if (guardedService != null) {
+                guardedService.searchByTitle(book.getTitle());
+            } else {
+                libraryService.searchByTitle(book.getTitle());
+            }
+        } else if (guardedService != null) {
+            guardedService.searchByAuthor(book.getAuthor());
+        } else {
+            libraryService.searchByAuthor(book.getAuthor());
+        }
+    }
+
+    private LoadReport buildReport(long elapsed, long[][] latencies, LongAdder succeeded, LongAdder rejected,
+                                   LongAdder shed, LongAdder[] operationCounts, Map<String, AtomicLong> failures) {
+        int total = 0;
+        for (long[] clientLatencies : latencies) {
+            total += clientLatencies.length;
+        }
+        long[] merged = new long[total];
+        int offset = 0;
+        for (long[] clientLatencies : latencies) {
+            System.arraycopy(clientLatencies, 0, merged, offset, clientLatencies.length);
+            offset += clientLatencies.length;
+        }
+
+        Map<String, Long> counts = new ConcurrentHashMap<>();
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            counts.put(OPERATIONS[i], operationCounts[i].sum());
+        }
+        Map<String, Long> failureCounts = new ConcurrentHashMap<>();
+        failures.forEach((type, count) -> failureCounts.put(type, count.get()));
+
+        return new LoadReport(elapsed, merged, succeeded.sum(), rejected.sum(), shed.sum(), counts, failureCounts,
+                VirtualThreads.isSupported());
+    }
+
+    // Run a load test against a scratch data file so the real catalog is never touched
+    public static LoadReport runScratch(LoadProfile profile) throws IOException, InterruptedException {
+        Path dataFile = Files.createTempFile("library-load", ".json");
+        try {
+            Files.delete(dataFile);
+            LibraryService service = new LibraryService(dataFile);
+            service.createLibrary("Load Test Library", "Benchmark");
+            LoadGenerator generator = new LoadGenerator(service, profile);
+            generator.seedBooks();
+            return generator.run();
+        } finally {
+            Files.deleteIfExists(dataFile);
+        }
+    }
+
+    /**
+     * Usage: LoadGenerator [--clients=N] [--ops=N] [--books=N] [--mix=issue,return,search,add]
+     *                      [--zipf=S] [--seed=N] [--admission=true]
+     */
+    public static void main(String[] args) throws Exception {
+        LoadProfile profile = new LoadProfile();
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            switch (parts[0]) {
+                case "--clients":
+                    profile.setClients(Integer.parseInt(parts[1]));
+                    break;
+                case "--ops":
+                    profile.setOperationsPerClient(Integer.parseInt(parts[1]));
+                    break;
+                case "--books":
+                    profile.setBooks(Integer.parseInt(parts[1]));
+                    break;
+                case "--mix":
+                    String[] weights = parts[1].split(",");
+                    if (weights.length != 4) {
+                        throw new IllegalArgumentException("--mix needs four weights: issue,return,search,add");
+                    }
+                    profile.setMix(Integer.parseInt(weights[0].trim()), Integer.parseInt(weights[1].trim()),
+                            Integer.parseInt(weights[2].trim()), Integer.parseInt(weights[3].trim()));
+                    break;
+                case "--zipf":
+                    profile.setZipfExponent(Double.parseDouble(parts[1]));
+                    break;
+                case "--seed":
+                    profile.setSeed(Long.parseLong(parts[1]));
+                    break;
+                case "--admission":
+                    profile.setAdmissionControl(Boolean.parseBoolean(parts[1]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + parts[0]);
+            }
+        }
+
+        System.out.println(runScratch(profile).getFormattedReport());
+    }
+}
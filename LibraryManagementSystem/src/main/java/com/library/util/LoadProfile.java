@@ -0,0 +1,114 @@
+package com.library.util;
+
+/**
+ * Settings for a LoadGenerator run: client count, operation mix and book popularity.
+ * Operation percentages are relative weights and do not need to add up to 100.
+ */
+public class LoadProfile {
+    private int clients = 2000;
+    private int operationsPerClient = 200;
+    private int books = 1000;
+    private int issuePercent = 40;
+    private int returnPercent = 30;
+    private int searchPercent = 25;
+    private int addPercent = 5;
+    private double zipfExponent = 1.0;
+    private long seed = 42L;
+    private boolean admissionControl;
+
+    public int getClients() {
+        return clients;
+    }
+
+    public LoadProfile setClients(int clients) {
+        this.clients = requirePositive(clients, "clients");
+        return this;
+    }
+
+    public int getOperationsPerClient() {
+        return operationsPerClient;
+    }
+
+    public LoadProfile setOperationsPerClient(int operationsPerClient) {
+        this.operationsPerClient = requirePositive(operationsPerClient, "operationsPerClient");
+        return this;
+    }
+
+    public int getBooks() {
+        return books;
+    }
+
+    public LoadProfile setBooks(int books) {
+        this.books = requirePositive(books, "books");
+        return this;
+    }
+
+    public int getIssuePercent() {
+        return issuePercent;
+    }
+
+    public int getReturnPercent() {
+        return returnPercent;
+    }
+
+    public int getSearchPercent() {
+        return searchPercent;
+    }
+
+    public int getAddPercent() {
+        return addPercent;
+    }
+
+    // Set the operation mix as issue/return/search/add weights
+    public LoadProfile setMix(int issuePercent, int returnPercent, int searchPercent, int addPercent) {
+        if (issuePercent < 0 || returnPercent < 0 || searchPercent < 0 || addPercent < 0) {
+            throw new IllegalArgumentException("Operation mix weights cannot be negative.");
+        }
+        if (issuePercent + returnPercent + searchPercent + addPercent == 0) {
+            throw new IllegalArgumentException("Operation mix needs at least one non-zero weight.");
+        }
+        this.issuePercent = issuePercent;
+        this.returnPercent = returnPercent;
+        this.searchPercent = searchPercent;
+        this.addPercent = addPercent;
+        return this;
+    }
+
+    public double getZipfExponent() {
+        return zipfExponent;
+    }
+
+    public LoadProfile setZipfExponent(double zipfExponent) {
+        if (zipfExponent < 0) {
+            throw new IllegalArgumentException("Zipf exponent cannot be negative.");
+        }
+        this.zipfExponent = zipfExponent;
+        return this;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public LoadProfile setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    // Send calls through a GuardedLibraryService with default admission limits
+    public boolean isAdmissionControl() {
+        return admissionControl;
+    }
+
+    public LoadProfile setAdmissionControl(boolean admissionControl) {
+        this.admissionControl = admissionControl;
+        return this;
+    }
+
+    private static int requirePositive(int value, String name) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be greater than 0.");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,108 @@
+package com.library.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Result of a LoadGenerator run: throughput, latency percentiles and outcome counts.
+ */
+public class LoadReport {
+    private final long elapsedNanos;
+    private final long[] sortedLatencies;
+    private final long succeeded;
+    private final long rejected;
+    private final long shed;
+    private final Map<String, Long> operationCounts;
+    private final Map<String, Long> failures;
+    private final boolean virtualThreads;
+
+    public LoadReport(long elapsedNanos, long[] latencies, long succeeded, long rejected, long shed,
+                      Map<String, Long> operationCounts, Map<String, Long> failures, boolean virtualThreads) {
+        this.elapsedNanos = elapsedNanos;
+        this.sortedLatencies = latencies.clone();
+        Arrays.sort(this.sortedLatencies);
+        this.succeeded = succeeded;
+        this.rejected = rejected;
+        this.shed = shed;
+        this.operationCounts = new TreeMap<>(operationCounts);
+        this.failures = new TreeMap<>(failures);
+        this.virtualThreads = virtualThreads;
+    }
+
+    public long getTotalOperations() {
+        return sortedLatencies.length;
+    }
+
+    public long getSucceeded() {
+        return succeeded;
+    }
+
+    // Operations refused by the service, e.g. issuing a book with no copies left
+    public long getRejected() {
+        return rejected;
+    }
+
+    // Operations refused by admission control because the service was saturated
+    public long getShed() {
+        return shed;
+    }
+
+    public long getFailed() {
+        return failures.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public Map<String, Long> getOperationCounts() {
+        return operationCounts;
+    }
+
+    public Map<String, Long> getFailures() {
+        return failures;
+    }
+
+    public double getThroughputPerSecond() {
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return sortedLatencies.length * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    // Latency at the given percentile (0-100) in nanoseconds
+    public long getLatencyPercentile(double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+        index = Math.max(0, Math.min(index, sortedLatencies.length - 1));
+        return sortedLatencies[index];
+    }
+
+    public String getFormattedReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("=======================================\n");
+        sb.append("           LOAD TEST REPORT\n");
+        sb.append("=======================================\n");
+        sb.append(String.format("Threads: %s%n", virtualThreads ? "virtual" : "platform (virtual threads need Java 21+)"));
+        sb.append(String.format("Operations: %d in %.2f s%n", sortedLatencies.length, elapsedNanos / 1_000_000_000.0));
+        sb.append(String.format("Throughput: %.1f ops/s%n", getThroughputPerSecond()));
+        sb.append(String.format("Succeeded: %d, Rejected: %d, Shed: %d, Failed: %d%n", succeeded, rejected, shed,
+                getFailed()));
+        operationCounts.forEach((operation, count) -> sb.append(String.format("  %-8s %d%n", operation, count)));
+        sb.append(String.format("Latency p50: %s, p99: %s, p99.9: %s, max: %s%n",
+                formatNanos(getLatencyPercentile(50)), formatNanos(getLatencyPercentile(99)),
+                formatNanos(getLatencyPercentile(99.9)), formatNanos(getLatencyPercentile(100))));
+        if (!failures.isEmpty()) {
+            sb.append("Failures:\n");
+            failures.forEach((type, count) -> sb.append(String.format("  %s: %d%n", type, count)));
+        }
+        sb.append("=======================================");
+        return sb.toString();
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos >= 1_000_000) {
+            return String.format("%.2f ms", nanos / 1_000_000.0);
+        }
+        return String.format("%.1f us", nanos / 1_000.0);
+    }
+}
@@ -0,0 +1,57 @@
+package com.library.util;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive longs, kept in insertion order.
+ */
+public class LongList {
+    private long[] elements;
+    private int size;
+
+    public LongList() {
+        this(4);
+    }
+
+    public LongList(int initialCapacity) {
+        this.elements = new long[Math.max(initialCapacity, 1)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return elements[index];
+    }
+
+    public void add(long value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, elements.length * 2);
+        }
+        elements[size++] = value;
+    }
+
+    // Remove the first occurrence of the value; returns false if it is not present
+    public boolean removeValue(long value) {
+        for (int i = 0; i < size; i++) {
+            if (elements[i] == value) {
+                System.arraycopy(elements, i + 1, elements, i, size - i - 1);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+}
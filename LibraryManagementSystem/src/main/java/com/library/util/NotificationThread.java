@@ -1,15 +1,29 @@
 package com.library.util;
 
+import com.library.model.Loan;
+import com.library.model.LoanEvent;
+import com.library.service.LoanLedger;
+
+import java.time.Instant;
+import java.time.ZoneId;
+
 /**
  * Background thread for sending notifications
  * Demonstrates concurrency and multithreading
+ * With a loan ledger it announces due-soon and overdue loans from the ledger's timing wheel.
  */
 public class NotificationThread extends Thread {
     private boolean running = true;
     private int notificationInterval = 60000; // 1 minute
+    private final LoanLedger loanLedger;
 
     public NotificationThread() {
+        this(null);
+    }
+
+    public NotificationThread(LoanLedger loanLedger) {
         super("LibraryNotificationThread");
+        this.loanLedger = loanLedger;
         setDaemon(true); // Daemon thread that won't prevent JVM exit
     }
 
@@ -27,7 +41,22 @@ public class NotificationThread extends Thread {
     }
 
     private void sendNotification() {
-        System.out.println("\n[NOTIFICATION] Reminder: Return your book if the due date is approaching!");
+        if (loanLedger == null) {
+            System.out.println("\n[NOTIFICATION] Reminder: Return your book if the due date is approaching!");
+            return;
+        }
+
+        for (LoanEvent event : loanLedger.collectDueEvents()) {
+            Loan loan = event.getLoan();
+            String dueDate = Instant.ofEpochMilli(loan.getDueAtMillis()).atZone(ZoneId.systemDefault()).toLocalDate().toString();
+            if (event.getType() == LoanEvent.Type.OVERDUE) {
+                System.out.println("\n[NOTIFICATION] Overdue: book " + loan.getBookId() + " (loan #" + loan.getLoanId()
+                        + ", patron " + loan.getPatronId() + ") was due on " + dueDate + ".");
+            } else {
+                System.out.println("\n[NOTIFICATION] Reminder: book " + loan.getBookId() + " (loan #" + loan.getLoanId()
+                        + ", patron " + loan.getPatronId() + ") is due on " + dueDate + ".");
+            }
+        }
     }
 
     public void stopNotifications() {
@@ -35,4 +64,3 @@ public class NotificationThread extends Thread {
         this.interrupt();
     }
 }
-
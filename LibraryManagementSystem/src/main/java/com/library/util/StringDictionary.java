@@ -0,0 +1,78 @@
+package com.library.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only dictionary assigning dense int codes to distinct strings, so heavily repeated
+ * values are held once and indexes can key on an int instead of a String. Each entry also knows
+ * the code of its lowercase form, which lets case-insensitive indexes fold keys without allocating.
+ * Lookups are lock-free; adding a new string takes a lock. Entries are never removed.
+ */
+public class StringDictionary {
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    // Replaced, never modified in place once published, when the dictionary grows
+    private volatile String[] values = new String[64];
+    private volatile int[] lowercaseCodes = new int[64];
+    private int size;
+
+    // Code of value, adding it if new
+    public int encode(String value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        synchronized (this) {
+            code = codes.get(value);
+            return code != null ? code : add(value);
+        }
+    }
+
+    // Code of value, or -1 if it has never been encoded
+    public int codeOf(String value) {
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    public String decode(int code) {
+        return values[code];
+    }
+
+    // The dictionary's instance of value; null stays null
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        // Encode first: adding the value may replace the array
+        int code = encode(value);
+        return values[code];
+    }
+
+    // Code of the lowercase form of the string with this code
+    public int lowercaseCode(int code) {
+        return lowercaseCodes[code];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Called holding the lock; arrays are filled before the code becomes visible through the map
+    private int add(String value) {
+        int code = size;
+        if (code == values.length) {
+            lowercaseCodes = Arrays.copyOf(lowercaseCodes, code * 2);
+            values = Arrays.copyOf(values, code * 2);
+        }
+        values[code] = value;
+        lowercaseCodes[code] = code;
+        size++;
+        String lowercase = value.toLowerCase();
+        if (!lowercase.equals(value)) {
+            int lowercaseCode = encode(lowercase);
+            lowercaseCodes[code] = lowercaseCode;
+        }
+        codes.put(value, code);
+        return code;
+    }
+}
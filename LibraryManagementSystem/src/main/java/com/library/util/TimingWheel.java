@@ -0,0 +1,182 @@
+package com.library.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel.
+ * Scheduling and cancelling are O(1); advancing costs O(1) per elapsed tick plus the
+ * timers that fire, with each timer cascading down at most once per level.
+ * Deadlines beyond the top level's range wait in the top level and are re-placed
+ * each time their slot comes round.
+ */
+public class TimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final Entry<T>[][] buckets;
+    private final Entry<T> expired;
+    private long currentTick;
+    private int size;
+
+    public TimingWheel(long tickMillis, long startMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("Tick must be at least 1 ms.");
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = startMillis / tickMillis;
+        // Generic arrays cannot be created directly; every element is an Entry<T> sentinel
+        @SuppressWarnings("unchecked")
+        Entry<T>[][] table = (Entry<T>[][]) new Entry<?>[LEVELS][SLOTS];
+        this.buckets = table;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                buckets[level][slot] = newSentinel();
+            }
+        }
+        this.expired = newSentinel();
+    }
+
+    public synchronized Entry<T> schedule(long deadlineMillis, T payload) {
+        Entry<T> entry = new Entry<>(this, deadlineMillis / tickMillis, payload);
+        place(entry, false);
+        size++;
+        return entry;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Advance to the given time and return the payloads whose deadlines have passed
+    public synchronized List<T> advance(long nowMillis) {
+        List<T> fired = new ArrayList<>();
+        drain(expired, fired);
+
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(buckets[level][slotIndex(currentTick, level)]);
+                }
+            }
+            drain(buckets[0][(int) (currentTick & SLOT_MASK)], fired);
+        }
+        return fired;
+    }
+
+    // While cascading, the current level-0 slot is about to be drained, so due-now entries go there
+    private void place(Entry<T> entry, boolean cascading) {
+        long delta = entry.deadlineTick - currentTick;
+        if (delta < 0 || (delta == 0 && !cascading)) {
+            link(expired, entry);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << (SLOT_BITS * (level + 1))) {
+                link(buckets[level][slotIndex(entry.deadlineTick, level)], entry);
+                return;
+            }
+        }
+        link(buckets[LEVELS - 1][slotIndex(entry.deadlineTick, LEVELS - 1)], entry);
+    }
+
+    private void cascade(Entry<T> sentinel) {
+        Entry<T> entry = detachAll(sentinel);
+        while (entry != null) {
+            Entry<T> next = entry.next;
+            entry.next = null;
+            entry.prev = null;
+            place(entry, true);
+            entry = next;
+        }
+    }
+
+    private void drain(Entry<T> sentinel, List<T> fired) {
+        Entry<T> entry = detachAll(sentinel);
+        while (entry != null) {
+            Entry<T> next = entry.next;
+            entry.next = null;
+            entry.prev = null;
+            entry.wheel = null;
+            size--;
+            fired.add(entry.payload);
+            entry = next;
+        }
+    }
+
+    // Unhook a bucket's chain, returning its first entry; the chain ends in null
+    private Entry<T> detachAll(Entry<T> sentinel) {
+        Entry<T> first = sentinel.next;
+        if (first == sentinel) {
+            return null;
+        }
+        sentinel.prev.next = null;
+        sentinel.next = sentinel;
+        sentinel.prev = sentinel;
+        return first;
+    }
+
+    private static int slotIndex(long tick, int level) {
+        return (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+    }
+
+    private static <T> void link(Entry<T> sentinel, Entry<T> entry) {
+        entry.prev = sentinel.prev;
+        entry.next = sentinel;
+        sentinel.prev.next = entry;
+        sentinel.prev = entry;
+    }
+
+    private Entry<T> newSentinel() {
+        Entry<T> sentinel = new Entry<>(null, 0, null);
+        sentinel.next = sentinel;
+        sentinel.prev = sentinel;
+        return sentinel;
+    }
+
+    /**
+     * Handle for a scheduled timer.
+     */
+    public static final class Entry<T> {
+        private TimingWheel<T> wheel;
+        private final long deadlineTick;
+        private final T payload;
+        private Entry<T> prev;
+        private Entry<T> next;
+
+        private Entry(TimingWheel<T> wheel, long deadlineTick, T payload) {
+            this.wheel = wheel;
+            this.deadlineTick = deadlineTick;
+            this.payload = payload;
+        }
+
+        public T getPayload() {
+            return payload;
+        }
+
+        // Remove the timer if it has not fired yet; returns false if it already fired or was cancelled
+        public boolean cancel() {
+            TimingWheel<T> owner = wheel;
+            if (owner == null) {
+                return false;
+            }
+            synchronized (owner) {
+                if (wheel == null) {
+                    return false;
+                }
+                prev.next = next;
+                next.prev = prev;
+                prev = null;
+                next = null;
+                wheel = null;
+                owner.size--;
+                return true;
+            }
+        }
+    }
+}
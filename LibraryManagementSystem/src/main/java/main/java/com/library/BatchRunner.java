@@ -0,0 +1,379 @@
+package main.java.com.library;
+
+import com.library.model.Book;
+import com.library.model.EBook;
+import com.library.model.Loan;
+import com.library.service.LibraryService;
+import com.library.service.LibraryStatistics;
+import com.library.service.LoanLedger;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Headless mode of LibraryApp: runs commands from a file or stdin, one per line, and writes one
+ * tab-separated result line per command to a buffered stdout, followed by one "book" line per
+ * result for searches and sorts. Failed commands print "error", line number and message, and the
+ * run continues; so does a chunk whose save fails. Any error makes the exit code 1. Commands run
+ * in chunks inside LibraryService.inBatch(), so the data file is saved once per chunk instead of
+ * after every command. Arguments are separated by spaces; quote those containing spaces. Blank
+ * lines and lines starting with # are skipped.
+ *
+ * <pre>
+ * library NAME LOCATION                          select a library, creating it if needed
+ * add ID TITLE AUTHOR CATEGORY COPIES
+ * add-ebook ID TITLE AUTHOR CATEGORY COPIES FORMAT SIZE_MB
+ * patron NAME                                    register a patron
+ * issue ID [PATRON]    return ID [PATRON]    delete ID
+ * search-id ID    search-title TITLE    search-author AUTHOR
+ * sort title|author|id    stats
+ * </pre>
+ */
+final class BatchRunner {
+    private static final int DEFAULT_CHUNK = 1000;
+    private static final String USAGE = "Usage: LibraryApp --batch[=commandFile] [--data=dataFile] [--chunk=N] [--shared]";
+
+    private final LibraryService libraryService;
+    private final PrintStream out;
+    private long commands;
+    private long errors;
+
+    private BatchRunner(LibraryService libraryService, PrintStream out) {
+        this.libraryService = libraryService;
+        this.out = out;
+    }
+
+    // Run a batch as described by LibraryApp's arguments; returns the process exit code
+    static int run(String[] args) {
+        String commandFile = null;
+        String dataFile = null;
+        int chunk = DEFAULT_CHUNK;
+        boolean batch = false;
+        boolean shared = false;
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            switch (parts[0]) {
+                case "--batch":
+                    batch = true;
+                    commandFile = parts.length == 2 && !parts[1].equals("-") ? parts[1] : null;
+                    break;
+                case "--data":
+                    dataFile = parts.length == 2 ? parts[1] : null;
+                    break;
+                case "--chunk":
+                    try {
+                        chunk = parts.length == 2 ? parseInt(parts[1], "chunk size") : 0;
+                    } catch (IllegalArgumentException e) {
+                        System.err.println(e.getMessage());
+                        System.err.println(USAGE);
+                        return 2;
+                    }
+                    break;
+                case "--shared":
+                    shared = true;
+                    break;
+                default:
+                    System.err.println("Unknown option: " + arg);
+                    System.err.println(USAGE);
+                    return 2;
+            }
+        }
+        if (!batch || chunk < 1) {
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        PrintStream results = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16),
+                false, StandardCharsets.UTF_8);
+        // Book and EBook print on every issue/return; only results go to stdout, and the
+        // service's warnings go to stderr
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long start = System.nanoTime();
+        BatchRunner runner;
+        try (BufferedReader in = commandFile == null
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(commandFile), StandardCharsets.UTF_8)) {
+            LibraryService service = dataFile == null ? new LibraryService() : new LibraryService(Paths.get(dataFile));
+            if (shared) {
+                service.enableSharedAccess();
+            }
+            runner = new BatchRunner(service, results);
+            runner.execute(in, chunk);
+            service.disableSharedAccess();
+        } catch (IOException e) {
+            results.flush();
+            System.err.println("Batch failed: " + e.getMessage());
+            return 2;
+        } finally {
+            results.flush();
+            System.setOut(console);
+        }
+        System.err.printf("Batch: %,d commands, %,d errors in %,.1f ms%n", runner.commands, runner.errors,
+                (System.nanoTime() - start) / 1_000_000.0);
+        return runner.errors == 0 ? 0 : 1;
+    }
+
+    private void execute(BufferedReader in, int chunk) throws IOException {
+        List<String> lines = new ArrayList<>(chunk);
+        long lineNumber = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            lines.add(line);
+            if (lines.size() == chunk) {
+                executeChunk(lines, lineNumber);
+                lineNumber += lines.size();
+                lines.clear();
+            }
+        }
+        if (!lines.isEmpty()) {
+            executeChunk(lines, lineNumber);
+        }
+    }
+
+    // One save for the whole chunk; firstLine is the number of lines before it. A failed save
+    // counts as an error on the chunk's last line.
+    private void executeChunk(List<String> lines, long firstLine) {
+        long failedSaves = libraryService.getFailedSaves();
+        libraryService.inBatch(() -> {
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i).trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                commands++;
+                try {
+                    executeCommand(tokenize(line));
+                } catch (RuntimeException e) {
+                    errors++;
+                    out.println("error\t" + (firstLine + i + 1) + "\t" + clean(e.getMessage()));
+                }
+            }
+        });
+        if (libraryService.getFailedSaves() != failedSaves) {
+            errors++;
+            out.println("error\t" + (firstLine + lines.size()) + "\tUnable to save library data.");
+        }
+    }
+
+    private void executeCommand(List<String> args) {
+        String command = args.get(0).toLowerCase();
+        switch (command) {
+            case "library":
+                requireArgs(args, 2);
+                String name = args.get(1);
+                String location = args.get(2);
+                if (libraryService.libraryExists(name, location)) {
+                    libraryService.selectLibrary(name, location);
+                } else {
+                    libraryService.createLibrary(name, location);
+                }
+                out.println("ok\tlibrary\t" + clean(libraryService.getCurrentLibraryName()) + "\t"
+                        + clean(libraryService.getCurrentLibraryLocation()) + "\t"
+                        + libraryService.getCurrentLibraryBookCount());
+                break;
+            case "add":
+                requireArgs(args, 5);
+                validateBook(args);
+                libraryService.addBook(new Book(args.get(1), args.get(2).trim(), args.get(3).trim(), args.get(4),
+                        parseCopies(args.get(5))));
+                out.println("ok\tadd\t" + clean(args.get(1)));
+                break;
+            case "add-ebook":
+                requireArgs(args, 7);
+                validateBook(args);
+                double size = parseDouble(args.get(7), "size");
+                if (size < 0) {
+                    throw new IllegalArgumentException("File size cannot be negative.");
+                }
+                libraryService.addBook(new EBook(args.get(1), args.get(2).trim(), args.get(3).trim(), args.get(4),
+                        parseCopies(args.get(5)), args.get(6), size));
+                out.println("ok\tadd-ebook\t" + clean(args.get(1)));
+                break;
+            case "patron":
+                requireArgs(args, 1);
+                out.println("ok\tpatron\t" + libraryService.registerPatron(args.get(1)).getPatronId());
+                break;
+            case "issue":
+                requireArgs(args, 1);
+                Loan loan = args.size() > 2
+                        ? libraryService.issueBook(args.get(1), parseInt(args.get(2), "patron"))
+                        : libraryService.issueBook(args.get(1), LoanLedger.WALK_IN_PATRON);
+                out.println("ok\tissue\t" + clean(args.get(1)) + "\t" + loan.getLoanId() + "\t" + loan.getDueAtMillis());
+                break;
+            case "return":
+                requireArgs(args, 1);
+                if (args.size() > 2) {
+                    libraryService.returnBook(args.get(1), parseInt(args.get(2), "patron"));
+                } else {
+                    libraryService.returnBook(args.get(1));
+                }
+                out.println("ok\treturn\t" + clean(args.get(1)));
+                break;
+            case "delete":
+                requireArgs(args, 1);
+                libraryService.deleteBook(args.get(1));
+                out.println("ok\tdelete\t" + clean(args.get(1)));
+                break;
+            case "search-id":
+                requireArgs(args, 1);
+                Book found = libraryService.searchById(args.get(1));
+                out.println("ok\tsearch-id\t" + (found == null ? 0 : 1));
+                if (found != null) {
+                    printBook(found);
+                }
+                break;
+            case "search-title":
+                requireArgs(args, 1);
+                printBooks("search-title", libraryService.searchByTitle(args.get(1)));
+                break;
+            case "search-author":
+                requireArgs(args, 1);
+                printBooks("search-author", libraryService.searchByAuthor(args.get(1)));
+                break;
+            case "sort":
+                requireArgs(args, 1);
+                printBooks("sort", sort(args.get(1)));
+                break;
+            case "stats":
+                printStats();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command: " + args.get(0));
+        }
+    }
+
+    private List<Book> sort(String key) {
+        switch (key.toLowerCase()) {
+            case "title":
+                return libraryService.sortByTitle();
+            case "author":
+                return libraryService.sortByAuthor();
+            case "id":
+                return libraryService.sortById();
+            default:
+                throw new IllegalArgumentException("Sort by title, author or id, not: " + key);
+        }
+    }
+
+    private void printStats() {
+        LibraryStatistics stats = libraryService.getStatistics();
+        out.println("ok\tstats\t" + stats.getTitles() + "\t" + stats.getAvailableTitles() + "\t" + stats.getIssuedCopies());
+    }
+
+    private void printBooks(String command, List<Book> books) {
+        out.println("ok\t" + command + "\t" + books.size());
+        for (Book book : books) {
+            printBook(book);
+        }
+    }
+
+    // book, ID, title, author, category, total copies, remaining copies, type
+    private void printBook(Book book) {
+        out.println("book\t" + clean(book.getBookId()) + "\t" + clean(book.getTitle()) + "\t" + clean(book.getAuthor())
+                + "\t" + clean(book.getCategory()) + "\t" + book.getTotalCopies() + "\t" + book.getRemainingCopies()
+                + "\t" + (book instanceof EBook ? "ebook" : "book"));
+    }
+
+    // Split on spaces, keeping "quoted text" together; \" and \\ escape inside quotes
+    static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean inToken = false;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '\\' && i + 1 < line.length()) {
+                    token.append(line.charAt(++i));
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    token.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                token.append(c);
+                inToken = true;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote.");
+        }
+        if (inToken) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    private static void requireArgs(List<String> args, int count) {
+        if (args.size() - 1 < count) {
+            throw new IllegalArgumentException(args.get(0) + " needs " + count + " argument(s).");
+        }
+    }
+
+    // Same rules as the Add Book form and the importer
+    private static void validateBook(List<String> args) {
+        if (args.get(1).trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing book ID.");
+        }
+        if (args.get(2).trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing title.");
+        }
+        String author = args.get(3).trim();
+        if (!author.matches(Book.AUTHOR_NAME_PATTERN)) {
+            throw new IllegalArgumentException("Invalid author name: '" + author + "'.");
+        }
+    }
+
+    private static int parseCopies(String value) {
+        int copies = parseInt(value, "copies");
+        if (copies < 1) {
+            throw new IllegalArgumentException("Total copies must be greater than 0.");
+        }
+        return copies;
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static double parseDouble(String value, String name) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    // Keep fields on one tab-separated line
+    private static String clean(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
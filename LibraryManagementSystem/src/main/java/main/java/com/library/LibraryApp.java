@@ -2,13 +2,26 @@ package main.java.com.library;
 
 import com.library.model.Book;
 import com.library.model.EBook;
+import com.library.model.Loan;
+import com.library.model.Patron;
+import com.library.service.ImportReport;
 import com.library.service.LibraryInfo;
 import com.library.service.LibraryService;
-import com.library.util.BookIssueThread;
+import com.library.service.LoanLedger;
+import com.library.service.OverdueFinesJob;
+import com.library.util.LoadGenerator;
+import com.library.util.LoadProfile;
+import com.library.util.LoadReport;
 import com.library.util.NotificationThread;
 
+import javax.management.JMException;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main application class for Library Management System.
@@ -17,11 +30,32 @@ public class LibraryApp {
     private static LibraryService libraryService;
     private static Scanner scanner;
     private static NotificationThread notificationThread;
-    private static final String AUTHOR_NAME_PATTERN = "^[A-Za-z][A-Za-z .'-]*$";
+    private static OverdueFinesJob overdueFinesJob;
+    private static final long FINE_PER_DAY_CENTS = 25;
 
     public static void main(String[] args) {
+        // Interactive: LibraryApp [--shared]
+        // Headless: LibraryApp --batch[=commandFile] [--data=dataFile] [--chunk=N] [--shared]
+        boolean shared = args.length == 1 && args[0].equals("--shared");
+        if (args.length > 0 && !shared) {
+            System.exit(BatchRunner.run(args));
+        }
         libraryService = new LibraryService();
         scanner = new Scanner(System.in);
+        // Other instances may run against the same data file
+        if (shared) {
+            try {
+                libraryService.enableSharedAccess();
+            } catch (IOException | IllegalStateException e) {
+                System.out.println("Warning: Unable to share the data file with other instances. " + e.getMessage());
+            }
+        }
+        // Operation latencies and gauges for JConsole / VisualVM
+        try {
+            libraryService.getMetrics().registerMBeans();
+        } catch (JMException e) {
+            System.out.println("Warning: Unable to publish metrics over JMX. " + e.getMessage());
+        }
 
         printWelcomeMessage();
         selectOrCreateLibrary();
@@ -38,6 +72,11 @@ public class LibraryApp {
         }
 
         stopNotificationThread();
+        try {
+            libraryService.disableSharedAccess();
+        } catch (IOException e) {
+            System.out.println("Warning: Unable to release the data file. " + e.getMessage());
+        }
         System.out.println("\nThank you for using Library Management System!");
         scanner.close();
     }
@@ -99,7 +138,8 @@ public class LibraryApp {
         for (int i = 0; i < libraries.size(); i++) {
             LibraryInfo info = libraries.get(i);
             String location = info.getLocation().isEmpty() ? "Unknown" : info.getLocation();
-            System.out.println((i + 1) + ". " + info.getName() + " (" + location + ") - " + info.getBookCount() + " book(s)");
+            System.out.println((i + 1) + ". " + info.getName() + " (" + location + ") - " + info.getBookCount() + " book(s), "
+                    + info.getAvailableBookCount() + " available");
         }
 
         System.out.print("Choose a library: ");
@@ -145,12 +185,19 @@ public class LibraryApp {
     }
 
     private static void startNotificationThread() {
-        notificationThread = new NotificationThread();
+        notificationThread = new NotificationThread(libraryService.getLoanLedger());
         notificationThread.start();
+        // Nightly overdue/fines batch; the first run catches up on loans that fell due while the app was closed
+        overdueFinesJob = new OverdueFinesJob(libraryService.getLoanLedger(), Paths.get("overdue-checkpoint.properties"),
+                FINE_PER_DAY_CENTS, Runtime.getRuntime().availableProcessors());
+        overdueFinesJob.start(TimeUnit.MINUTES.toMillis(1), TimeUnit.DAYS.toMillis(1));
         System.out.println("Background notification service started.\n");
     }
 
     private static void stopNotificationThread() {
+        if (overdueFinesJob != null) {
+            overdueFinesJob.close();
+        }
         if (notificationThread != null && notificationThread.isAlive()) {
             notificationThread.stopNotifications();
             try {
@@ -173,10 +220,13 @@ public class LibraryApp {
         System.out.println("5. Search Books (by Title/Author/ID)");
         System.out.println("6. Sort Books (by Title/Author/ID)");
         System.out.println("7. Display Statistics");
-        System.out.println("8. Demonstrate Concurrency (Multi-threaded Issue)");
+        System.out.println("8. Run Concurrency Load Test");
         System.out.println("9. Delete Book");
         System.out.println("10. Delete Current Library");
-        System.out.println("11. Exit");
+        System.out.println("11. Patrons & Loans");
+        System.out.println("12. Import Books (CSV/JSONL)");
+        System.out.println("13. Service Metrics");
+        System.out.println("14. Exit");
         System.out.println("=======================================================");
         System.out.print("Enter your choice: ");
 
@@ -219,9 +269,18 @@ public class LibraryApp {
                 deleteCurrentLibrary();
                 break;
             case 11:
+                patronsAndLoans();
+                break;
+            case 12:
+                importBooks();
+                break;
+            case 13:
+                System.out.println(libraryService.getMetrics().formatReport());
+                break;
+            case 14:
                 return false;
             default:
-                throw new IllegalArgumentException("Invalid menu choice! Please select 1-11.");
+                throw new IllegalArgumentException("Invalid menu choice! Please select 1-14.");
         }
         return true;
     }
@@ -286,6 +345,21 @@ public class LibraryApp {
         }
     }
 
+    private static void importBooks() {
+        System.out.print("Enter path of CSV or JSONL file: ");
+        String path = scanner.nextLine().trim();
+        if (path.isEmpty()) {
+            System.out.println("No file given.\n");
+            return;
+        }
+        try {
+            ImportReport report = libraryService.importBooks(Paths.get(path));
+            System.out.println(report.getFormattedReport());
+        } catch (IOException e) {
+            System.out.println("Could not read " + path + ": " + e.getMessage() + "\n");
+        }
+    }
+
     private static void issueBook() {
         System.out.println("\n=======================================");
         System.out.println("            ISSUE BOOK");
@@ -308,8 +382,10 @@ public class LibraryApp {
                 return;
             }
 
-            libraryService.issueBook(bookId);
+            int patronId = readPatronId("Enter Patron ID (blank for walk-in): ", LoanLedger.WALK_IN_PATRON);
+            Loan loan = libraryService.issueBook(bookId, patronId);
             System.out.println("Borrow Duration: " + book.borrowDuration() + " days");
+            System.out.println("Loan #" + loan.getLoanId() + " due on " + formatDate(loan.getDueAtMillis()));
             System.out.println();
         } catch (Exception e) {
             System.out.println("Error issuing book: " + e.getMessage());
@@ -333,13 +409,39 @@ public class LibraryApp {
                 throw new IllegalArgumentException("Book ID not found in this library: " + bookId);
             }
 
-            libraryService.returnBook(bookId);
+            int patronId = readPatronId("Enter Patron ID (blank if unknown): ", -1);
+            if (patronId < 0) {
+                libraryService.returnBook(bookId);
+            } else {
+                libraryService.returnBook(bookId, patronId);
+            }
             System.out.println();
         } catch (Exception e) {
             System.out.println("Error returning book: " + e.getMessage());
         }
     }
 
+    private static int readPatronId(String prompt, int blankValue) {
+        System.out.print(prompt);
+        String input = scanner.nextLine().trim();
+        if (input.isEmpty()) {
+            return blankValue;
+        }
+        try {
+            int patronId = Integer.parseInt(input);
+            if (patronId < 0) {
+                throw new IllegalArgumentException("Patron ID cannot be negative!");
+            }
+            return patronId;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number format for patron ID!");
+        }
+    }
+
+    private static String formatDate(long epochMillis) {
+        return Instant.ofEpochMilli(epochMillis).atZone(ZoneId.systemDefault()).toLocalDate().toString();
+    }
+
     private static void deleteBook() {
         System.out.println("\n=======================================");
         System.out.println("            DELETE BOOK");
@@ -406,6 +508,82 @@ public class LibraryApp {
         }
     }
 
+    private static void patronsAndLoans() {
+        System.out.println("\n=======================================");
+        System.out.println("          PATRONS & LOANS");
+        System.out.println("=======================================");
+        System.out.println("1. Register Patron");
+        System.out.println("2. List Patrons");
+        System.out.println("3. Loans of a Patron");
+        System.out.println("4. Loans of a Book");
+        System.out.println("5. Overdue & Fines Report");
+        System.out.print("Enter choice: ");
+
+        try {
+            int choice = Integer.parseInt(scanner.nextLine().trim());
+            switch (choice) {
+                case 1:
+                    System.out.print("Enter Patron Name: ");
+                    Patron patron = libraryService.registerPatron(scanner.nextLine());
+                    System.out.println("Registered " + patron.getName() + " with Patron ID " + patron.getPatronId() + ".\n");
+                    break;
+                case 2:
+                    List<Patron> patrons = libraryService.getPatrons();
+                    if (patrons.isEmpty()) {
+                        System.out.println("No patrons registered.\n");
+                    }
+                    patrons.forEach(p -> System.out.println(p.getPatronId() + ". " + p.getName()));
+                    break;
+                case 3:
+                    int patronId = readPatronId("Enter Patron ID: ", LoanLedger.WALK_IN_PATRON);
+                    printLoans(libraryService.getLoansForPatron(patronId), "No open loans for patron " + patronId + ".");
+                    break;
+                case 4:
+                    System.out.print("Enter Book ID: ");
+                    String bookId = scanner.nextLine().trim();
+                    printLoans(libraryService.getLoansForBook(bookId), "No open loans for book " + bookId + ".");
+                    break;
+                case 5:
+                    printOverdueReport();
+                    break;
+                default:
+                    System.out.println("Invalid choice! Please select 1-5.");
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid input! Please enter a number.");
+        } catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    private static void printOverdueReport() {
+        List<OverdueFinesJob.LibraryFines> report = overdueFinesJob.runOnce();
+        if (report.isEmpty()) {
+            System.out.println("No overdue loans.");
+        }
+        for (OverdueFinesJob.LibraryFines fines : report) {
+            System.out.println(fines.getLibraryKey() + ": " + fines.getOverdueLoans() + " overdue loan(s), fines "
+                    + OverdueFinesJob.formatCents(fines.getFineCents()) + ", " + fines.getNewlyOverdue().size()
+                    + " newly overdue");
+        }
+        System.out.println(overdueFinesJob.getFormattedProgress() + "\n");
+    }
+
+    private static void printLoans(List<Loan> loans, String emptyMessage) {
+        if (loans.isEmpty()) {
+            System.out.println(emptyMessage + "\n");
+            return;
+        }
+        System.out.println("\nFound " + loans.size() + " open loan(s):");
+        for (Loan loan : loans) {
+            Patron patron = libraryService.getPatron(loan.getPatronId());
+            String patronName = patron == null ? "Walk-in" : patron.getName();
+            System.out.println("Loan #" + loan.getLoanId() + ": book " + loan.getBookId() + " at " + loan.getLibraryName()
+                    + ", patron " + loan.getPatronId() + " (" + patronName + "), due " + formatDate(loan.getDueAtMillis()));
+        }
+        System.out.println();
+    }
+
     private static void showAllBooks() {
         libraryService.displayAllBooks();
     }
@@ -420,7 +598,7 @@ public class LibraryApp {
                 continue;
             }
 
-            if (!author.matches(AUTHOR_NAME_PATTERN)) {
+            if (!author.matches(Book.AUTHOR_NAME_PATTERN)) {
                 System.out.println("Invalid author name. Use letters, spaces, apostrophes ('), hyphens (-), and periods (.).");
                 continue;
             }
@@ -559,42 +737,23 @@ public class LibraryApp {
 
     private static void demonstrateConcurrency() {
         System.out.println("\n=======================================");
-        System.out.println("    MULTI-THREADED BOOK ISSUE DEMO");
+        System.out.println("       CONCURRENCY LOAD TEST");
         System.out.println("=======================================");
+        System.out.println("Running a short load test on a scratch library (your data is not modified)...");
 
-        if (libraryService.getAllBooks().isEmpty()) {
-            System.out.println("Please add at least one book first to demonstrate concurrency.");
-            return;
-        }
-
-        Book demoBook = libraryService.getAllBooks().get(0);
-        String bookId = demoBook.getBookId();
-
-        if (demoBook.getTotalCopies() < 2) {
-            System.out.println("Note: The demo book has only " + demoBook.getTotalCopies() + " copy. Adding more copies for demo...");
-            demoBook.setTotalCopies(5);
-            demoBook.setIssuedCopies(0);
-        }
-
-        System.out.println("Simulating two users issuing books simultaneously...");
-        System.out.println("Book ID: " + bookId);
-        System.out.println("Available copies before: " + demoBook.getRemainingCopies());
-        System.out.println();
-
-        BookIssueThread thread1 = new BookIssueThread(libraryService, bookId, "User1");
-        BookIssueThread thread2 = new BookIssueThread(libraryService, bookId, "User2");
-
-        thread1.start();
-        thread2.start();
-
+        LoadProfile profile = new LoadProfile()
+                .setClients(200)
+                .setOperationsPerClient(25)
+                .setBooks(50);
         try {
-            thread1.join();
-            thread2.join();
-            System.out.println("\nAll threads completed.");
-            System.out.println("Available copies after: " + demoBook.getRemainingCopies());
+            LoadReport report = LoadGenerator.runScratch(profile);
+            System.out.println(report.getFormattedReport());
             System.out.println();
         } catch (InterruptedException e) {
-            System.out.println("Thread execution interrupted.");
+            Thread.currentThread().interrupt();
+            System.out.println("Load test interrupted.");
+        } catch (Exception e) {
+            System.out.println("Load test failed: " + e.getMessage());
         }
     }
 }